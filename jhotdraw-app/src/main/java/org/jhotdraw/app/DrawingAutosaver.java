@@ -0,0 +1,221 @@
+/*
+ * @(#)DrawingAutosaver.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.app;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+import javax.swing.event.UndoableEditListener;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.io.DrawingJournal;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * Saves a drawing continuously into an autosave file, so that it can be recovered after a crash.
+ *
+ * <p>Instead of rewriting the complete drawing, the autosaver appends the changes to a {@link
+ * DrawingJournal}. Whenever the drawing fires an undoable edit, the figures which have been changed
+ * since the previous edit are encoded on the event dispatch thread, and are appended to the journal
+ * on a background thread. The cost of autosaving is therefore proportional to the edit, and not to
+ * the size of the drawing. When no edit has been made for the compaction delay, the journal is
+ * compacted into a new snapshot on the background thread.
+ *
+ * <p>Usage: create an autosaver when a drawing has been opened, and {@link #start} it. When the
+ * drawing has been saved or closed, {@link #discard} the autosaver. When an application is launched
+ * and the autosave file of a drawing still exists, the application has not been shut down cleanly,
+ * and the drawing can be {@link #recover recovered} from the autosave file.
+ *
+ * <p>Autosaving is opt-in. The applications and views of the framework and of the samples do not
+ * create autosavers; an application which wants autosaving creates an autosaver for each of its
+ * views, and chooses where the autosave files are stored.
+ *
+ * <p>All methods except {@link #recover} must be invoked on the event dispatch thread.
+ */
+public class DrawingAutosaver {
+
+  private static final Logger LOG = Logger.getLogger(DrawingAutosaver.class.getName());
+
+  /** The default time without edits, after which the journal is compacted: 30 seconds. */
+  public static final int DEFAULT_COMPACTION_DELAY = 30000;
+
+  private final Drawing drawing;
+  private final DrawingJournal journal;
+  private final DrawingJournal.Recorder recorder;
+
+  /** Writes the journal. The tasks are executed in the order in which they are submitted. */
+  private final ExecutorService executor;
+
+  private final Timer compactionTimer;
+  private boolean isStarted;
+  private boolean isFlushPending;
+  private final UndoableEditListener editHandler = e -> scheduleFlush();
+
+  /**
+   * Creates a new autosaver.
+   *
+   * @param drawing The drawing.
+   * @param file The autosave file.
+   * @param factory The factory for writing and reading the figures.
+   */
+  public DrawingAutosaver(Drawing drawing, File file, DOMFactory factory) {
+    this.drawing = drawing;
+    this.journal = new DrawingJournal(file, factory);
+    this.recorder = new DrawingJournal.Recorder(drawing, factory);
+    this.executor =
+        Executors.newSingleThreadExecutor(
+            r -> {
+              Thread t = new Thread(r, "DrawingAutosaver");
+              t.setDaemon(true);
+              t.setPriority(Thread.NORM_PRIORITY - 1);
+              return t;
+            });
+    compactionTimer = new Timer(DEFAULT_COMPACTION_DELAY, e -> compact());
+    compactionTimer.setRepeats(false);
+  }
+
+  public File getFile() {
+    return journal.getFile();
+  }
+
+  /** Sets the time without edits in milliseconds, after which the journal is compacted. */
+  public void setCompactionDelay(int delay) {
+    compactionTimer.setInitialDelay(delay);
+  }
+
+  public int getCompactionDelay() {
+    return compactionTimer.getInitialDelay();
+  }
+
+  /**
+   * Starts autosaving. A snapshot of the drawing is encoded, and is written on the background
+   * thread.
+   */
+  public void start() throws IOException {
+    if (isStarted) {
+      return;
+    }
+    byte[] snapshot = recorder.start();
+    drawing.addUndoableEditListener(editHandler);
+    isStarted = true;
+    submit(() -> journal.writeSnapshot(snapshot));
+  }
+
+  /**
+   * Stops autosaving. The changes which have not been written yet are written, and the autosave
+   * file is closed. The file is kept, until the autosaver is discarded.
+   */
+  public void stop() {
+    if (!isStarted) {
+      return;
+    }
+    flush();
+    isStarted = false;
+    drawing.removeUndoableEditListener(editHandler);
+    recorder.stop();
+    compactionTimer.stop();
+    submit(journal::close);
+  }
+
+  /** Stops autosaving, and deletes the autosave file. */
+  public void discard() {
+    stop();
+    submit(journal::delete);
+    executor.shutdown();
+  }
+
+  private void scheduleFlush() {
+    // Flush after the event, which has fired the edit, has been processed completely
+    if (!isFlushPending) {
+      isFlushPending = true;
+      SwingUtilities.invokeLater(this::flush);
+    }
+  }
+
+  /** Encodes the changes since the last flush, and appends them to the journal. */
+  public void flush() {
+    isFlushPending = false;
+    if (!isStarted) {
+      return;
+    }
+    byte[] entries;
+    try {
+      entries = recorder.flush();
+    } catch (IOException e) {
+      LOG.log(Level.WARNING, "Unable to encode changes for autosave", e);
+      return;
+    }
+    if (entries != null) {
+      submit(() -> journal.append(entries));
+      compactionTimer.restart();
+    }
+  }
+
+  private void compact() {
+    flush();
+    submit(
+        () -> {
+          if (journal.getJournalLength() > 0) {
+            journal.compact();
+          }
+        });
+  }
+
+  private void submit(IOTask task) {
+    executor.execute(
+        () -> {
+          try {
+            task.run();
+          } catch (IOException | RuntimeException e) {
+            LOG.log(Level.WARNING, "Autosave failed: " + journal.getFile(), e);
+          }
+        });
+  }
+
+  /** Waits until the pending writes have been completed. For testing. */
+  void awaitWrites() throws InterruptedException {
+    if (executor.isShutdown()) {
+      executor.awaitTermination(1, TimeUnit.MINUTES);
+      return;
+    }
+    CountDownLatch done = new CountDownLatch(1);
+    executor.execute(done::countDown);
+    done.await();
+  }
+
+  private interface IOTask {
+
+    void run() throws IOException;
+  }
+
+  /** Returns true, if an autosave file exists, from which a drawing can be recovered. */
+  public static boolean isRecoverable(File file) {
+    return file.isFile();
+  }
+
+  /**
+   * Recovers the figures of a drawing from an autosave file.
+   *
+   * @param file The autosave file.
+   * @param factory The factory for reading the figures.
+   * @return The figures in z-order.
+   */
+  public static List<Figure> recover(File file, DOMFactory factory) throws IOException {
+    try (DrawingJournal recovered = new DrawingJournal(file, factory)) {
+      return recovered.read();
+    }
+  }
+}
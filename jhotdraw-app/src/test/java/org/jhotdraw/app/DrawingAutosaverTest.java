@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.app;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.util.List;
+import javax.swing.SwingUtilities;
+import javax.swing.undo.AbstractUndoableEdit;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.io.DOMDefaultDrawFigureFactory;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DrawingAutosaverTest {
+
+  /** The length of the header of an empty journal. */
+  private static final long EMPTY_JOURNAL_LENGTH = 16;
+
+  @TempDir File dir;
+  private final DOMDefaultDrawFigureFactory factory = new DOMDefaultDrawFigureFactory();
+  private Drawing drawing;
+  private File file;
+  private File journalFile;
+  private DrawingAutosaver autosaver;
+
+  private interface Task {
+
+    void run() throws Exception;
+  }
+
+  private static void onEventDispatchThread(Task task) throws Throwable {
+    try {
+      SwingUtilities.invokeAndWait(
+          () -> {
+            try {
+              task.run();
+            } catch (Exception e) {
+              throw new IllegalStateException(e);
+            }
+          });
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  @BeforeEach
+  public void setUp() throws Throwable {
+    drawing = new DefaultDrawing();
+    for (int i = 0; i < 10; i++) {
+      drawing.add(new RectangleFigure(i * 20, 0, 10, 10));
+    }
+    file = new File(dir, "drawing.autosave");
+    journalFile = new File(file.getPath() + ".journal");
+    autosaver = new DrawingAutosaver(drawing, file, factory);
+    onEventDispatchThread(autosaver::start);
+  }
+
+  @AfterEach
+  public void tearDown() throws Throwable {
+    if (DrawingAutosaver.isRecoverable(file)) {
+      onEventDispatchThread(autosaver::discard);
+      autosaver.awaitWrites();
+    }
+  }
+
+  /** Moves a figure, adds a figure, and fires an undoable edit like a tool does. */
+  private void edit() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          Figure moved = drawing.getChild(3);
+          moved.willChange();
+          moved.setBounds(new Point2D.Double(100, 100), new Point2D.Double(130, 120));
+          moved.changed();
+          drawing.add(new RectangleFigure(300, 300, 5, 5));
+          drawing.fireUndoableEditHappened(new AbstractUndoableEdit());
+        });
+    // The autosaver flushes after the event which has fired the edit.
+    onEventDispatchThread(() -> {});
+    autosaver.awaitWrites();
+  }
+
+  /** Asserts that the recovered figures have the bounds of the figures of the drawing. */
+  private void assertRecovered() throws Exception {
+    List<Figure> recovered = DrawingAutosaver.recover(file, factory);
+    assertThat(recovered).hasSize(drawing.getChildCount());
+    for (int i = 0; i < recovered.size(); i++) {
+      assertThat(recovered.get(i).getBounds()).isEqualTo(drawing.getChild(i).getBounds());
+    }
+  }
+
+  @Test
+  public void testEditsAreAppendedCompactedAndRecovered() throws Throwable {
+    autosaver.awaitWrites();
+    assertThat(DrawingAutosaver.isRecoverable(file)).isTrue();
+    assertThat(journalFile.length()).isEqualTo(EMPTY_JOURNAL_LENGTH);
+
+    edit();
+    assertThat(journalFile.length()).isGreaterThan(EMPTY_JOURNAL_LENGTH);
+    assertRecovered();
+
+    onEventDispatchThread(() -> autosaver.setCompactionDelay(10));
+    edit();
+    waitForCompaction();
+    assertRecovered();
+
+    onEventDispatchThread(autosaver::stop);
+    autosaver.awaitWrites();
+    assertRecovered();
+  }
+
+  @Test
+  public void testJournalIsCompactedWhenIdle() throws Throwable {
+    onEventDispatchThread(() -> autosaver.setCompactionDelay(50));
+    edit();
+    assertThat(journalFile.length()).isGreaterThan(EMPTY_JOURNAL_LENGTH);
+
+    waitForCompaction();
+    assertRecovered();
+  }
+
+  @Test
+  public void testDiscardDeletesTheAutosaveFile() throws Throwable {
+    edit();
+    onEventDispatchThread(autosaver::discard);
+    autosaver.awaitWrites();
+
+    assertThat(DrawingAutosaver.isRecoverable(file)).isFalse();
+    assertThat(journalFile).doesNotExist();
+  }
+
+  private void waitForCompaction() throws Throwable {
+    long deadline = System.currentTimeMillis() + 10_000;
+    while (journalFile.length() > EMPTY_JOURNAL_LENGTH) {
+      if (System.currentTimeMillis() > deadline) {
+        fail("The journal has not been compacted in time");
+      }
+      Thread.sleep(10);
+    }
+    autosaver.awaitWrites();
+  }
+}
@@ -0,0 +1,95 @@
+/*
+ * @(#)BezierPathBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Point2D;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.geom.path.BezierPath;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures converting, flattening and hit-testing bezier paths. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class BezierPathBenchmark {
+
+  private static final int QUERY_COUNT = 256;
+
+  @Param({"8", "64", "512"})
+  public int nodeCount;
+
+  private BezierPath path;
+  private Point2D.Double[] points;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    Random r = new Random(5);
+    double size = 20 * nodeCount;
+    path = SyntheticDrawings.createBezierPath(r, 0, 0, size, nodeCount);
+    points = new Point2D.Double[QUERY_COUNT];
+    for (int i = 0; i < QUERY_COUNT; i++) {
+      points[i] = new Point2D.Double(r.nextDouble() * size, r.nextDouble() * size);
+    }
+  }
+
+  /** Converts the path into a general path. */
+  @Benchmark
+  public Path2D.Double toGeneralPath() {
+    return path.toGeneralPath();
+  }
+
+  /** Flattens the path into line segments, as a stroke or a hit test does. */
+  @Benchmark
+  public int flatten() {
+    int segmentCount = 0;
+    double[] coords = new double[6];
+    for (PathIterator i = path.getPathIterator(null, 0.25); !i.isDone(); i.next()) {
+      i.currentSegment(coords);
+      segmentCount++;
+    }
+    return segmentCount;
+  }
+
+  /** Tests if a point is on the outline of the path, as a selection tool does. */
+  @Benchmark
+  public boolean outlineContains() {
+    next = (next + 1) & (QUERY_COUNT - 1);
+    return path.outlineContains(points[next], 2);
+  }
+
+  /** Tests if a point is inside of the path. */
+  @Benchmark
+  public boolean contains() {
+    next = (next + 1) & (QUERY_COUNT - 1);
+    return path.contains(points[next]);
+  }
+
+  /** Computes the bounds of the path. */
+  @Benchmark
+  public Object getBounds2D() {
+    path.invalidatePath();
+    return path.getBounds2D();
+  }
+}
@@ -0,0 +1,108 @@
+/*
+ * @(#)DrawingModelBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.AffineTransform;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures adding figures to a drawing, and removing them from it. */
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class DrawingModelBenchmark {
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int figureCount;
+
+  @Param({"QuadTreeDrawing", "DefaultDrawing"})
+  public String drawingType;
+
+  /** A populated drawing for the single figure benchmarks. */
+  private Drawing drawing;
+
+  private Figure figure;
+
+  @Setup(Level.Trial)
+  public void setUpDrawing() {
+    drawing = SyntheticDrawings.createDrawing(drawingType, figureCount, 1);
+    double extent = SyntheticDrawings.getExtent(figureCount);
+    figure = new RectangleFigure(extent / 2, extent / 2, 20, 20);
+  }
+
+  /** Adds all figures of a synthetic drawing to an empty drawing. */
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 3, batchSize = 1)
+  @Measurement(iterations = 10, batchSize = 1)
+  public Drawing addAll(FreshFigures fresh) {
+    Drawing d = SyntheticDrawings.createEmptyDrawing(drawingType);
+    d.addAll(fresh.figures);
+    return d;
+  }
+
+  /** Adds a figure to a populated drawing, and removes it again. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public int addAndRemove() {
+    drawing.add(figure);
+    drawing.remove(figure);
+    return drawing.getChildCount();
+  }
+
+  /** Moves a figure of a populated drawing back and forth. */
+  @Benchmark
+  @BenchmarkMode(Mode.AverageTime)
+  @OutputTimeUnit(TimeUnit.MICROSECONDS)
+  public Figure moveFigure() {
+    Figure f = drawing.getChild(drawing.getChildCount() / 2);
+    f.willChange();
+    f.transform(AffineTransform.getTranslateInstance(3, 0));
+    f.changed();
+    f.willChange();
+    f.transform(AffineTransform.getTranslateInstance(-3, 0));
+    f.changed();
+    return f;
+  }
+
+  /**
+   * Figures which have not been added to a drawing yet. A figure can only be added to one drawing,
+   * so they are created anew for each invocation.
+   */
+  @State(Scope.Thread)
+  public static class FreshFigures {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int figureCount;
+
+    private List<Figure> figures;
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+      figures = SyntheticDrawings.createFigures(figureCount, 2);
+    }
+  }
+}
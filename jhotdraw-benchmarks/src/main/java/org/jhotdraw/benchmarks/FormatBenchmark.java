@@ -0,0 +1,196 @@
+/*
+ * @(#)FormatBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.io.InputFormat;
+import org.jhotdraw.draw.io.OutputFormat;
+import org.jhotdraw.io.BinaryDrawingInputFormat;
+import org.jhotdraw.io.BinaryDrawingOutputFormat;
+import org.jhotdraw.io.DOMDefaultDrawFigureFactory;
+import org.jhotdraw.io.DOMStorableInputFormat;
+import org.jhotdraw.io.DOMStorableOutputFormat;
+import org.jhotdraw.samples.odg.io.ODGInputFormat;
+import org.jhotdraw.samples.svg.io.SVGInputFormat;
+import org.jhotdraw.samples.svg.io.SVGOutputFormat;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures loading and saving drawings in the XML format of {@link DOMStorableInputFormat}, in the
+ * binary format of {@link BinaryDrawingInputFormat}, in SVG and in ODG. ODG documents can only be
+ * loaded.
+ *
+ * <p>The documents are held in memory, so that the benchmarks do not depend on the file system.
+ * Only {@link #loadBinaryMapped} reads a memory-mapped temporary file, and {@link #loadODGFile}
+ * reads an ODG archive from a temporary file. The size of each document is logged by the setup.
+ *
+ * <p>The parallel benchmarks run on the common ForkJoin pool. Its size can be changed with {@code
+ * -jvmArgsAppend -Djava.util.concurrent.ForkJoinPool.common.parallelism=<n>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(
+    value = 1,
+    jvmArgsAppend = {"-Djava.awt.headless=true", "-Xmx4g"})
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class FormatBenchmark {
+
+  private static final Logger LOG = Logger.getLogger(FormatBenchmark.class.getName());
+
+  @Param({"1000", "10000", "100000"})
+  public int figureCount;
+
+  private Drawing xmlDrawing;
+  private byte[] xmlDocument;
+  private byte[] binaryDocument;
+  private File binaryFile;
+  private Drawing svgDrawing;
+  private byte[] svgDocument;
+  private byte[] odgDocument;
+  private byte[] odgArchive;
+  private File odgFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    xmlDrawing = SyntheticDrawings.createDrawing("QuadTreeDrawing", figureCount, 1);
+    xmlDocument = write(new DOMStorableOutputFormat(new DOMDefaultDrawFigureFactory()), xmlDrawing);
+    binaryDocument =
+        write(new BinaryDrawingOutputFormat(new DOMDefaultDrawFigureFactory()), xmlDrawing);
+    binaryFile = File.createTempFile("FormatBenchmark", ".jhdb");
+    Files.write(binaryFile.toPath(), binaryDocument);
+    svgDrawing = SyntheticDrawings.createSVGDrawing(figureCount, 1);
+    svgDocument = write(new SVGOutputFormat(), svgDrawing);
+    odgDocument = SyntheticDrawings.createODGContent(figureCount, 1);
+    odgArchive = SyntheticDrawings.createODGArchive(figureCount, 1);
+    odgFile = File.createTempFile("FormatBenchmark", ".odg");
+    Files.write(odgFile.toPath(), odgArchive);
+    LOG.info(
+        String.format(
+            "Document sizes: XML %,d bytes, binary %,d bytes, SVG %,d bytes, ODG %,d bytes,"
+                + " ODG archive %,d bytes",
+            xmlDocument.length,
+            binaryDocument.length,
+            svgDocument.length,
+            odgDocument.length,
+            odgArchive.length));
+  }
+
+  @TearDown
+  public void tearDown() {
+    binaryFile.delete();
+    odgFile.delete();
+  }
+
+  private static byte[] write(OutputFormat format, Drawing drawing) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    format.write(out, drawing);
+    return out.toByteArray();
+  }
+
+  private static Drawing read(InputFormat format, byte[] document) throws IOException {
+    Drawing drawing = new QuadTreeDrawing();
+    format.read(new ByteArrayInputStream(document), drawing, true);
+    return drawing;
+  }
+
+  @Benchmark
+  public Drawing loadXML() throws IOException {
+    return read(new DOMStorableInputFormat(new DOMDefaultDrawFigureFactory()), xmlDocument);
+  }
+
+  @Benchmark
+  public byte[] saveXML() throws IOException {
+    return write(new DOMStorableOutputFormat(new DOMDefaultDrawFigureFactory()), xmlDrawing);
+  }
+
+  @Benchmark
+  public Drawing loadBinary() throws IOException {
+    return read(new BinaryDrawingInputFormat(new DOMDefaultDrawFigureFactory()), binaryDocument);
+  }
+
+  @Benchmark
+  public Drawing loadBinaryMapped() throws IOException {
+    Drawing drawing = new QuadTreeDrawing();
+    new BinaryDrawingInputFormat(new DOMDefaultDrawFigureFactory()).read(binaryFile, drawing, true);
+    return drawing;
+  }
+
+  @Benchmark
+  public byte[] saveBinary() throws IOException {
+    return write(new BinaryDrawingOutputFormat(new DOMDefaultDrawFigureFactory()), xmlDrawing);
+  }
+
+  @Benchmark
+  public Drawing loadSVG() throws IOException {
+    return read(new SVGInputFormat(), svgDocument);
+  }
+
+  @Benchmark
+  public Drawing loadSVGStreaming() throws IOException {
+    SVGInputFormat format = new SVGInputFormat();
+    format.setStreaming(true);
+    return read(format, svgDocument);
+  }
+
+  @Benchmark
+  public Drawing loadSVGParallel() throws IOException {
+    SVGInputFormat format = new SVGInputFormat();
+    format.setParallel(true);
+    return read(format, svgDocument);
+  }
+
+  @Benchmark
+  public byte[] saveSVG() throws IOException {
+    return write(new SVGOutputFormat(), svgDrawing);
+  }
+
+  @Benchmark
+  public Drawing loadODG() throws IOException {
+    return read(new ODGInputFormat(), odgDocument);
+  }
+
+  @Benchmark
+  public Drawing loadODGArchive() throws IOException {
+    return read(new ODGInputFormat(), odgArchive);
+  }
+
+  @Benchmark
+  public Drawing loadODGFile() throws IOException {
+    Drawing drawing = new QuadTreeDrawing();
+    new ODGInputFormat().read(odgFile, drawing, true);
+    return drawing;
+  }
+
+  @Benchmark
+  public Drawing loadODGParallel() throws IOException {
+    ODGInputFormat format = new ODGInputFormat();
+    format.setParallel(true);
+    return read(format, odgDocument);
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * @(#)HitTestBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures finding the figures at a point and in an area of a drawing. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HitTestBenchmark {
+
+  private static final int QUERY_COUNT = 1024;
+
+  @Param({"1000", "10000", "100000", "1000000"})
+  public int figureCount;
+
+  @Param({"QuadTreeDrawing", "DefaultDrawing"})
+  public String drawingType;
+
+  private Drawing drawing;
+  private Point2D.Double[] points;
+  private Rectangle2D.Double[] rectangles;
+  private int next;
+
+  @Setup
+  public void setUp() {
+    drawing = SyntheticDrawings.createDrawing(drawingType, figureCount, 1);
+    points = SyntheticDrawings.createPoints(figureCount, QUERY_COUNT, 3);
+    rectangles = SyntheticDrawings.createRectangles(figureCount, QUERY_COUNT, 300, 4);
+  }
+
+  /** Finds the topmost figure at a point, as a selection tool does on a mouse click. */
+  @Benchmark
+  public Figure findFigure() {
+    next = (next + 1) & (QUERY_COUNT - 1);
+    return drawing.findFigure(points[next]);
+  }
+
+  /** Finds the figures which intersect an area of about 5 by 5 figures. */
+  @Benchmark
+  public List<Figure> findFigures() {
+    next = (next + 1) & (QUERY_COUNT - 1);
+    return drawing.findFigures(rectangles[next]);
+  }
+
+  /** Finds the figures which lie within an area, as a rubber band selection does. */
+  @Benchmark
+  public List<Figure> findFiguresWithin() {
+    next = (next + 1) & (QUERY_COUNT - 1);
+    return drawing.findFiguresWithin(rectangles[next]);
+  }
+}
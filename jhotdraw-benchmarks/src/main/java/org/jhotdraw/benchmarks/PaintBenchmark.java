@@ -0,0 +1,95 @@
+/*
+ * @(#)PaintBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.draw.Drawing;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures drawing the visible part of a drawing into an offscreen image, like a drawing view of
+ * 1024 by 768 pixels does. At small scale factors the whole drawing may be visible, at large scale
+ * factors only a few figures are.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PaintBenchmark {
+
+  private static final int WIDTH = 1024;
+  private static final int HEIGHT = 768;
+
+  @Param({"1000", "10000", "100000"})
+  public int figureCount;
+
+  @Param({"0.1", "1", "4"})
+  public double scaleFactor;
+
+  @Param({"true", "false"})
+  public boolean antialiasing;
+
+  private Drawing drawing;
+  private BufferedImage image;
+  private Rectangle2D.Double visibleArea;
+
+  @Setup
+  public void setUp() {
+    drawing = SyntheticDrawings.createDrawing("QuadTreeDrawing", figureCount, 1);
+    image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_ARGB_PRE);
+    double extent = SyntheticDrawings.getExtent(figureCount);
+    double w = WIDTH / scaleFactor;
+    double h = HEIGHT / scaleFactor;
+    visibleArea = new Rectangle2D.Double((extent - w) / 2, (extent - h) / 2, w, h);
+  }
+
+  @TearDown
+  public void tearDown() {
+    image.flush();
+  }
+
+  @Benchmark
+  public BufferedImage draw() {
+    Graphics2D g = image.createGraphics();
+    try {
+      g.setRenderingHint(
+          RenderingHints.KEY_ANTIALIASING,
+          antialiasing ? RenderingHints.VALUE_ANTIALIAS_ON : RenderingHints.VALUE_ANTIALIAS_OFF);
+      g.setRenderingHint(
+          RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+      g.setColor(Color.WHITE);
+      g.fillRect(0, 0, WIDTH, HEIGHT);
+      g.scale(scaleFactor, scaleFactor);
+      g.translate(-visibleArea.x, -visibleArea.y);
+      g.clip(visibleArea);
+      drawing.setFontRenderContext(g.getFontRenderContext());
+      drawing.draw(g);
+    } finally {
+      g.dispose();
+    }
+    return image;
+  }
+}
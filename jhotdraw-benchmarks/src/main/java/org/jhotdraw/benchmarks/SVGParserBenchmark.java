@@ -0,0 +1,127 @@
+/*
+ * @(#)SVGParserBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.jhotdraw.geom.path.BezierPath;
+import org.jhotdraw.samples.svg.io.SVGOutputFormat;
+import org.jhotdraw.samples.svg.io.SVGPathParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares parsing SVG path data and transform lists with {@link SVGPathParser} and with the
+ * {@code StreamPosTokenizer} based parsers which it replaced.
+ *
+ * <p>The "absolute" path style is the output of {@link SVGOutputFormat}. The "relative" style uses
+ * relative commands, commas and the compact number syntax of editors like Inkscape.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SVGParserBenchmark {
+
+  private static final String[] TRANSFORMS = {
+    "translate(12.5 -3)",
+    "scale(2)",
+    "rotate(45 100 100)",
+    "matrix(0.70710677 0.70710677 -0.70710677 0.70710677 150.25 -20.125)",
+    "translate(10,20) scale(1.5,0.5)",
+    "skewX(30)",
+    "matrix(1,0,0,1,-247.14285,-195.21933)",
+    "rotate(-90) translate(-480.5 0)"
+  };
+
+  @Param({"8", "64", "512"})
+  public int nodeCount;
+
+  @Param({"absolute", "relative"})
+  public String pathStyle;
+
+  private String pathData;
+  private final SVGPathParser parser = new SVGPathParser();
+
+  @Setup
+  public void setUp() {
+    BezierPath path =
+        SyntheticDrawings.createBezierPath(new Random(7), 0, 0, 20 * nodeCount, nodeCount);
+    pathData =
+        "absolute".equals(pathStyle)
+            ? SVGOutputFormat.toPath(new BezierPath[] {path})
+            : toRelativePath(path);
+  }
+
+  /** Writes a closed cubic path with relative commands and without redundant separators. */
+  private static String toRelativePath(BezierPath path) {
+    StringBuilder buf = new StringBuilder();
+    BezierPath.Node first = path.nodes().get(0);
+    buf.append(String.format(Locale.ENGLISH, "m%.4f,%.4fc", first.x[0], first.y[0]));
+    for (int i = 1, n = path.size(); i <= n; i++) {
+      BezierPath.Node p = path.nodes().get(i - 1);
+      BezierPath.Node c = path.nodes().get(i % n);
+      buf.append(
+          String.format(
+              Locale.ENGLISH,
+              "%.4f,%.4f %.4f,%.4f %.4f,%.4f ",
+              p.x[2] - p.x[0],
+              p.y[2] - p.y[0],
+              c.x[1] - p.x[0],
+              c.y[1] - p.y[0],
+              c.x[0] - p.x[0],
+              c.y[0] - p.y[0]));
+    }
+    buf.append('z');
+    return buf.toString().replace(" -", "-").replace("0.", ".");
+  }
+
+  @Benchmark
+  public BezierPath[] parsePathWithTokenizer() throws IOException {
+    return TokenizerSVGParser.toPath(pathData);
+  }
+
+  @Benchmark
+  public BezierPath[] parsePathWithParser() throws IOException {
+    return parser.parsePath(pathData);
+  }
+
+  @Benchmark
+  public double parseTransformsWithTokenizer() throws IOException {
+    double sum = 0;
+    for (String transform : TRANSFORMS) {
+      AffineTransform t = TokenizerSVGParser.toTransform(transform);
+      sum += t.getTranslateX();
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public double parseTransformsWithParser() throws IOException {
+    double sum = 0;
+    for (String transform : TRANSFORMS) {
+      AffineTransform t = parser.parseTransform(transform);
+      sum += t.getTranslateX();
+    }
+    return sum;
+  }
+}
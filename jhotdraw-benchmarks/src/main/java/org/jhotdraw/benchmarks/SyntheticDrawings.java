@@ -0,0 +1,298 @@
+/*
+ * @(#)SyntheticDrawings.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import static org.jhotdraw.draw.AttributeKeys.*;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.EllipseFigure;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.geom.path.BezierPath;
+import org.jhotdraw.samples.svg.figures.SVGBezierFigure;
+import org.jhotdraw.samples.svg.figures.SVGEllipseFigure;
+import org.jhotdraw.samples.svg.figures.SVGPathFigure;
+import org.jhotdraw.samples.svg.figures.SVGRectFigure;
+
+/**
+ * Generates reproducible drawings with a given number of figures for the benchmarks.
+ *
+ * <p>The figures are scattered over a square area whose size grows with the square root of the
+ * figure count, so that the density of the drawing does not depend on its size. The mix of figure
+ * types and the small palette of colors resemble typical diagrams: 40% rectangles, 30% ellipses,
+ * 20% closed bezier curves and 10% lines.
+ */
+public final class SyntheticDrawings {
+
+  /** The average distance between two figures. */
+  private static final double SPACING = 60;
+
+  /** The maximal width and height of a figure. */
+  private static final double FIGURE_SIZE = 48;
+
+  private static final Color[] PALETTE = {
+    Color.BLACK,
+    Color.WHITE,
+    new Color(0xff, 0xff, 0x66),
+    new Color(0x66, 0x99, 0xff),
+    new Color(0xcc, 0x33, 0x33),
+    new Color(0x33, 0x99, 0x33),
+    new Color(0x99, 0x99, 0x99),
+    new Color(0xff, 0x99, 0x00)
+  };
+
+  private static final String[] ODG_STYLES = {"gr1", "gr2", "gr3", "gr4"};
+
+  private SyntheticDrawings() {}
+
+  /** Returns the width and height of the area covered by a drawing with the given figure count. */
+  public static double getExtent(int figureCount) {
+    return Math.ceil(Math.sqrt(figureCount)) * SPACING;
+  }
+
+  /** Creates the figures of a synthetic drawing. */
+  public static List<Figure> createFigures(int figureCount, long seed) {
+    Random r = new Random(seed);
+    double extent = getExtent(figureCount);
+    ArrayList<Figure> figures = new ArrayList<>(figureCount);
+    for (int i = 0; i < figureCount; i++) {
+      double x = r.nextDouble() * extent;
+      double y = r.nextDouble() * extent;
+      double w = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      double h = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      int kind = r.nextInt(10);
+      Figure f;
+      if (kind < 4) {
+        f = new RectangleFigure(x, y, w, h);
+      } else if (kind < 7) {
+        f = new EllipseFigure(x, y, w, h);
+      } else if (kind < 9) {
+        BezierFigure b = new BezierFigure(true);
+        b.setBezierPath(createBezierPath(r, x, y, Math.max(w, h), 5));
+        f = b;
+      } else {
+        f = new LineFigure();
+        f.setBounds(new Point2D.Double(x, y), new Point2D.Double(x + w, y + h));
+      }
+      f.attr().set(STROKE_COLOR, PALETTE[r.nextInt(2) * 6]);
+      f.attr().set(STROKE_WIDTH, (double) (1 + r.nextInt(3)));
+      if (kind < 9) {
+        f.attr().set(FILL_COLOR, PALETTE[r.nextInt(PALETTE.length)]);
+      }
+      figures.add(f);
+    }
+    return figures;
+  }
+
+  /** Creates a synthetic drawing. */
+  public static Drawing createDrawing(String drawingType, int figureCount, long seed) {
+    Drawing drawing = createEmptyDrawing(drawingType);
+    drawing.addAll(createFigures(figureCount, seed));
+    return drawing;
+  }
+
+  /**
+   * Creates an empty drawing.
+   *
+   * @param drawingType "QuadTreeDrawing" or "DefaultDrawing"
+   */
+  public static Drawing createEmptyDrawing(String drawingType) {
+    switch (drawingType) {
+      case "QuadTreeDrawing":
+        return new QuadTreeDrawing();
+      case "DefaultDrawing":
+        return new DefaultDrawing();
+      default:
+        throw new IllegalArgumentException("Unknown drawing type: " + drawingType);
+    }
+  }
+
+  /** Creates a closed bezier path with cubic curve segments around a random center. */
+  public static BezierPath createBezierPath(Random r, double x, double y, double size, int count) {
+    BezierPath path = new BezierPath();
+    double radius = size / 2;
+    double cx = x + radius;
+    double cy = y + radius;
+    for (int i = 0; i < count; i++) {
+      double angle = 2 * Math.PI * i / count;
+      double d = radius * (0.5 + r.nextDouble() * 0.5);
+      double px = cx + Math.cos(angle) * d;
+      double py = cy + Math.sin(angle) * d;
+      double tx = -Math.sin(angle) * d * 0.4;
+      double ty = Math.cos(angle) * d * 0.4;
+      path.add(
+          new BezierPath.Node(BezierPath.C1C2_MASK, px, py, px - tx, py - ty, px + tx, py + ty));
+    }
+    path.setClosed(true);
+    return path;
+  }
+
+  /** Creates a synthetic drawing with the figures of the SVG sample application. */
+  public static Drawing createSVGDrawing(int figureCount, long seed) {
+    Random r = new Random(seed);
+    double extent = getExtent(figureCount);
+    ArrayList<Figure> figures = new ArrayList<>(figureCount);
+    for (int i = 0; i < figureCount; i++) {
+      double x = r.nextDouble() * extent;
+      double y = r.nextDouble() * extent;
+      double w = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      double h = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      int kind = r.nextInt(10);
+      Figure f;
+      if (kind < 5) {
+        f = new SVGRectFigure(x, y, w, h);
+      } else if (kind < 8) {
+        f = new SVGEllipseFigure(x, y, w, h);
+      } else {
+        SVGPathFigure p = new SVGPathFigure(true);
+        SVGBezierFigure b = new SVGBezierFigure(true);
+        b.setBezierPath(createBezierPath(r, x, y, Math.max(w, h), 5));
+        p.add(b);
+        f = p;
+      }
+      f.attr().set(STROKE_COLOR, PALETTE[r.nextInt(2) * 6]);
+      f.attr().set(FILL_COLOR, PALETTE[r.nextInt(PALETTE.length)]);
+      figures.add(f);
+    }
+    Drawing drawing = new QuadTreeDrawing();
+    drawing.addAll(figures);
+    return drawing;
+  }
+
+  /**
+   * Creates the content.xml file of a synthetic ODG document with rectangles and ellipses.
+   *
+   * @return the file encoded as UTF-8
+   */
+  public static byte[] createODGContent(int figureCount, long seed) {
+    Random r = new Random(seed);
+    double extent = getExtent(figureCount);
+    StringBuilder buf = new StringBuilder(figureCount * 360 + 2048);
+    buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+        .append("<office:document-content")
+        .append(" xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\"")
+        .append(" xmlns:style=\"urn:oasis:names:tc:opendocument:xmlns:style:1.0\"")
+        .append(" xmlns:draw=\"urn:oasis:names:tc:opendocument:xmlns:drawing:1.0\"")
+        .append(" xmlns:svg=\"urn:oasis:names:tc:opendocument:xmlns:svg-compatible:1.0\"")
+        .append(" office:version=\"1.0\">\n")
+        .append(" <office:automatic-styles>\n");
+    for (int i = 0; i < ODG_STYLES.length; i++) {
+      buf.append("  <style:style style:name=\"")
+          .append(ODG_STYLES[i])
+          .append("\" style:family=\"graphic\"><style:graphic-properties draw:fill-color=\"")
+          .append(String.format("#%06x", PALETTE[i + 2].getRGB() & 0xffffff))
+          .append("\"/></style:style>\n");
+    }
+    buf.append(" </office:automatic-styles>\n")
+        .append(" <office:body>\n")
+        .append("  <office:drawing>\n")
+        .append("   <draw:page draw:name=\"page1\">\n");
+    for (int i = 0; i < figureCount; i++) {
+      double x = r.nextDouble() * extent;
+      double y = r.nextDouble() * extent;
+      double w = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      double h = 4 + r.nextDouble() * (FIGURE_SIZE - 4);
+      buf.append("    <draw:custom-shape draw:style-name=\"")
+          .append(ODG_STYLES[r.nextInt(ODG_STYLES.length)])
+          .append("\"")
+          .append(String.format(Locale.ENGLISH, " svg:x=\"%.3fpx\"", x))
+          .append(String.format(Locale.ENGLISH, " svg:y=\"%.3fpx\"", y))
+          .append(String.format(Locale.ENGLISH, " svg:width=\"%.3fpx\"", w))
+          .append(String.format(Locale.ENGLISH, " svg:height=\"%.3fpx\"", h))
+          .append("><draw:enhanced-geometry draw:type=\"")
+          .append(r.nextBoolean() ? "rectangle" : "ellipse")
+          .append("\" svg:viewBox=\"0 0 21600 21600\"/></draw:custom-shape>\n");
+    }
+    buf.append("   </draw:page>\n")
+        .append("  </office:drawing>\n")
+        .append(" </office:body>\n")
+        .append("</office:document-content>\n");
+    return buf.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Returns an ODG archive with the document of {@link #createODGContent} and a "styles.xml" entry.
+   * As in archives written by office applications, the "content.xml" entry precedes the
+   * "styles.xml" entry.
+   */
+  public static byte[] createODGArchive(int figureCount, long seed) throws IOException {
+    byte[] mimetype =
+        "application/vnd.oasis.opendocument.graphics".getBytes(StandardCharsets.UTF_8);
+    byte[] styles =
+        ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<office:document-styles"
+                + " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+                + " xmlns:style=\"urn:oasis:names:tc:opendocument:xmlns:style:1.0\""
+                + " xmlns:draw=\"urn:oasis:names:tc:opendocument:xmlns:drawing:1.0\""
+                + " xmlns:svg=\"urn:oasis:names:tc:opendocument:xmlns:svg-compatible:1.0\""
+                + " office:version=\"1.0\">\n"
+                + " <office:styles>\n"
+                + "  <style:style style:name=\"standard\" style:family=\"graphic\">"
+                + "<style:graphic-properties svg:stroke-color=\"#000000\"/></style:style>\n"
+                + " </office:styles>\n"
+                + "</office:document-styles>\n")
+            .getBytes(StandardCharsets.UTF_8);
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(buf)) {
+      ZipEntry entry = new ZipEntry("mimetype");
+      entry.setMethod(ZipEntry.STORED);
+      entry.setSize(mimetype.length);
+      CRC32 crc = new CRC32();
+      crc.update(mimetype);
+      entry.setCrc(crc.getValue());
+      out.putNextEntry(entry);
+      out.write(mimetype);
+      out.putNextEntry(new ZipEntry("content.xml"));
+      out.write(createODGContent(figureCount, seed));
+      out.putNextEntry(new ZipEntry("styles.xml"));
+      out.write(styles);
+    }
+    return buf.toByteArray();
+  }
+
+  /** Returns random points in the area covered by a drawing with the given figure count. */
+  public static Point2D.Double[] createPoints(int figureCount, int pointCount, long seed) {
+    Random r = new Random(seed);
+    double extent = getExtent(figureCount);
+    Point2D.Double[] points = new Point2D.Double[pointCount];
+    for (int i = 0; i < pointCount; i++) {
+      points[i] = new Point2D.Double(r.nextDouble() * extent, r.nextDouble() * extent);
+    }
+    return points;
+  }
+
+  /** Returns random rectangles of the given size in the area covered by a drawing. */
+  public static Rectangle2D.Double[] createRectangles(
+      int figureCount, int rectangleCount, double size, long seed) {
+    Random r = new Random(seed);
+    double extent = getExtent(figureCount);
+    Rectangle2D.Double[] rectangles = new Rectangle2D.Double[rectangleCount];
+    for (int i = 0; i < rectangleCount; i++) {
+      rectangles[i] =
+          new Rectangle2D.Double(r.nextDouble() * extent, r.nextDouble() * extent, size, size);
+    }
+    return rectangles;
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * @(#)XMLPoolBenchmark.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.jhotdraw.io.DOMDefaultDrawFigureFactory;
+import org.jhotdraw.io.DOMStorableOutputFormat;
+import org.jhotdraw.xml.XMLPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+/**
+ * Measures the throughput of parsing and serializing XML documents on several threads, with the
+ * parsers and transformers of {@link XMLPool}, and with factories which are looked up for each
+ * document, as the input and output formats did before.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(4)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class XMLPoolBenchmark {
+
+  @Param({"10", "1000"})
+  public int figureCount;
+
+  private byte[] xmlDocument;
+  private Document document;
+
+  @Setup
+  public void setUp() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new DOMStorableOutputFormat(new DOMDefaultDrawFigureFactory())
+        .write(out, SyntheticDrawings.createDrawing("DefaultDrawing", figureCount, 1));
+    xmlDocument = out.toByteArray();
+    document = XMLPool.parse(new ByteArrayInputStream(xmlDocument));
+  }
+
+  @Benchmark
+  public Document parsePooled() throws IOException {
+    return XMLPool.parse(new ByteArrayInputStream(xmlDocument));
+  }
+
+  @Benchmark
+  public Document parseWithNewFactory() throws Exception {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    return factory.newDocumentBuilder().parse(new ByteArrayInputStream(xmlDocument));
+  }
+
+  @Benchmark
+  public int transformPooled() throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(xmlDocument.length);
+    XMLPool.transform(new DOMSource(document), new StreamResult(out));
+    return out.size();
+  }
+
+  @Benchmark
+  public int transformWithNewFactory() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(xmlDocument.length);
+    TransformerFactory.newInstance()
+        .newTransformer()
+        .transform(new DOMSource(document), new StreamResult(out));
+    return out.size();
+  }
+}
@@ -13,7 +13,9 @@ import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 import javax.swing.JPanel;
@@ -26,9 +28,11 @@ import org.jhotdraw.draw.event.DrawingListener;
 import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.draw.event.FigureListenerAdapter;
 import org.jhotdraw.draw.figure.Attributes;
+import org.jhotdraw.draw.figure.ConnectionUpdateScheduler;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.draw.io.OutputFormat;
+import org.jhotdraw.geom.IncrementalBounds;
 
 public abstract class AbstractDrawing implements Drawing {
 
@@ -37,8 +41,31 @@ public abstract class AbstractDrawing implements Drawing {
   /** Caches the bounds to improve the performance of method {@link #getBounds}. */
   protected transient Rectangle2D.Double cachedBounds;
 
-  protected transient Rectangle2D.Double cachedDrawingArea;
+  /**
+   * Drawing areas of the children at the scale factor which was requested most recently from
+   * {@link #getDrawingArea(double)}. The union is maintained incrementally as children are added,
+   * removed and changed.
+   */
+  private transient IncrementalBounds<Figure> drawingAreas;
+
+  private transient double drawingAreaFactor;
+
+  /** Drawing areas at the scale factor which was requested before {@link #drawingAreaFactor}. */
+  private transient IncrementalBounds<Figure> previousDrawingAreas;
+
+  private transient double previousDrawingAreaFactor;
+
   protected int changingDepth = 0;
+
+  /** The nesting depth of the change transaction, see {@link #beginChanges}. */
+  private transient int transactionDepth;
+
+  /** The union of the areas which have been invalidated during the change transaction. */
+  private transient Rectangle2D.Double transactionArea;
+
+  /** The figures which have changed during the change transaction. */
+  private transient Set<Figure> transactionFigures;
+
   protected final List<Figure> CHILDREN = new ArrayList<>();
   protected final List<Figure> UNMODIFIABLE_CHILDREN = Collections.unmodifiableList(CHILDREN);
 
@@ -101,6 +128,7 @@ public abstract class AbstractDrawing implements Drawing {
   public void basicAdd(int index, Figure figure) {
     CHILDREN.add(index, figure);
     figure.addFigureListener(eventHandler);
+    updateDrawingArea(figure, null);
   }
 
   @Override
@@ -153,6 +181,11 @@ public abstract class AbstractDrawing implements Drawing {
     }
     that.attributes = Attributes.from(attributes, that::fireDrawingAttributeChanged);
     that.listenerList = new EventListenerList();
+    that.drawingAreas = null;
+    that.previousDrawingAreas = null;
+    that.transactionDepth = 0;
+    that.transactionArea = null;
+    that.transactionFigures = null;
 
     that.inputFormats = (this.inputFormats == null) ? null : new ArrayList<>(this.inputFormats);
     that.outputFormats = (this.outputFormats == null) ? null : new ArrayList<>(this.outputFormats);
@@ -200,26 +233,62 @@ public abstract class AbstractDrawing implements Drawing {
     return getDrawingArea(1.0);
   }
 
+  /**
+   * Returns the union of the drawing areas of the children.
+   *
+   * <p>Implementation note: The drawing areas of the children are maintained incrementally for the
+   * two scale factors which were requested most recently. Requesting a third factor rebuilds the
+   * drawing areas from all children.
+   */
   @Override
   public Rectangle2D.Double getDrawingArea(double factor) {
-    if (cachedDrawingArea == null) {
-      if (getChildCount() == 0) {
-        cachedDrawingArea = new Rectangle2D.Double();
-      } else {
+    if (drawingAreas == null || drawingAreaFactor != factor) {
+      IncrementalBounds<Figure> areas = previousDrawingAreas;
+      if (areas == null || previousDrawingAreaFactor != factor) {
+        areas = new IncrementalBounds<>();
         for (Figure f : CHILDREN) {
-          if (cachedDrawingArea == null) {
-            cachedDrawingArea = f.getDrawingArea(factor);
-          } else {
-            cachedDrawingArea.add(f.getDrawingArea(factor));
-          }
+          areas.put(f, f.getDrawingArea(factor));
         }
       }
+      previousDrawingAreas = drawingAreas;
+      previousDrawingAreaFactor = drawingAreaFactor;
+      drawingAreas = areas;
+      drawingAreaFactor = factor;
+    }
+    return drawingAreas.getBounds();
+  }
+
+  /**
+   * Updates the drawing area of the specified child.
+   *
+   * @param invalidatedArea if not null, the old and the new drawing area of the child are added to
+   *     this rectangle
+   */
+  protected void updateDrawingArea(Figure child, Rectangle2D.Double invalidatedArea) {
+    if (previousDrawingAreas != null) {
+      previousDrawingAreas.put(child, child.getDrawingArea(previousDrawingAreaFactor));
+    }
+    if (drawingAreas != null) {
+      Rectangle2D.Double area = new Rectangle2D.Double();
+      if (invalidatedArea != null && drawingAreas.getBounds(child, area)) {
+        invalidatedArea.add(area);
+      }
+      area = child.getDrawingArea(drawingAreaFactor);
+      drawingAreas.put(child, area);
+      if (invalidatedArea != null) {
+        invalidatedArea.add(area);
+      }
     }
-    return new Rectangle2D.Double(
-        cachedDrawingArea.x,
-        cachedDrawingArea.y,
-        cachedDrawingArea.width,
-        cachedDrawingArea.height);
+  }
+
+  /**
+   * Discards the drawing areas of the children. They are rebuilt on the next call to {@link
+   * #getDrawingArea(double)}. Subclasses must call this method if the drawing area of a child has
+   * changed without a figure event.
+   */
+  protected void invalidateDrawingArea() {
+    drawingAreas = null;
+    previousDrawingAreas = null;
   }
 
   @Override
@@ -313,6 +382,57 @@ public abstract class AbstractDrawing implements Drawing {
     changingDepth++;
   }
 
+  @Override
+  public void beginChanges() {
+    if (transactionDepth++ == 0) {
+      transactionArea = null;
+      transactionFigures = Collections.newSetFromMap(new IdentityHashMap<>());
+      fireDrawingEvent(
+          (listener, event) -> listener.changesBegun(event), () -> new DrawingEvent(this, null));
+    }
+    ConnectionUpdateScheduler.begin();
+  }
+
+  @Override
+  public void commitChanges() {
+    if (transactionDepth == 0) {
+      throw new IllegalStateException(
+          "commitChanges was called without a prior call to beginChanges");
+    }
+    // Connections which are updated at the end of the batch still belong to the transaction
+    ConnectionUpdateScheduler.end();
+    if (--transactionDepth == 0) {
+      Rectangle2D.Double area = transactionArea;
+      Set<Figure> figures = Collections.unmodifiableSet(transactionFigures);
+      transactionArea = null;
+      transactionFigures = null;
+      if (area != null) {
+        invalidate();
+        validate();
+        fireDrawingEvent(
+            (listener, event) -> listener.drawingChanged(event),
+            () -> new DrawingEvent(this, area, figures));
+      }
+      fireDrawingEvent(
+          (listener, event) -> listener.changesCommitted(event),
+          () -> new DrawingEvent(this, area, figures));
+    }
+  }
+
+  /** Returns true, if a change transaction is in progress. */
+  protected boolean isInTransaction() {
+    return transactionDepth != 0;
+  }
+
+  /** Adds an invalidated area to the change transaction. */
+  private void addTransactionArea(Rectangle2D.Double area) {
+    if (transactionArea == null) {
+      transactionArea = (Rectangle2D.Double) area.clone();
+    } else {
+      transactionArea.add(area);
+    }
+  }
+
   protected int basicRemove(Figure child) {
     int index = CHILDREN.indexOf(child);
     if (index != -1) {
@@ -324,6 +444,12 @@ public abstract class AbstractDrawing implements Drawing {
   protected Figure basicRemoveChild(int index) {
     Figure figure = CHILDREN.remove(index);
     figure.removeFigureListener(eventHandler);
+    if (drawingAreas != null) {
+      drawingAreas.remove(figure);
+    }
+    if (previousDrawingAreas != null) {
+      previousDrawingAreas.remove(figure);
+    }
     invalidate();
     return figure;
   }
@@ -376,9 +502,14 @@ public abstract class AbstractDrawing implements Drawing {
     return changingDepth;
   }
 
+  /**
+   * Invalidates cached data of the drawing.
+   *
+   * <p>The drawing areas of the children are not discarded, because they are maintained
+   * incrementally. Use {@link #invalidateDrawingArea} to discard them.
+   */
   protected void invalidate() {
     cachedBounds = null;
-    cachedDrawingArea = null;
   }
 
   protected boolean isChanging() {
@@ -408,22 +539,34 @@ public abstract class AbstractDrawing implements Drawing {
 
     @Override
     public void figureChanged(FigureEvent e) {
-      if (!isChanging()) {
-        Rectangle2D.Double invalidatedArea = getDrawingArea();
-        invalidatedArea.add(e.getInvalidatedArea());
+      if (isChanging()) {
+        updateDrawingArea(e.getFigure(), null);
+      } else if (isInTransaction()) {
+        Rectangle2D.Double invalidatedArea = new Rectangle2D.Double();
+        invalidatedArea.setRect(e.getInvalidatedArea());
+        updateDrawingArea(e.getFigure(), invalidatedArea);
+        addTransactionArea(invalidatedArea);
+        transactionFigures.add(e.getFigure());
+      } else {
+        // Only the old and the new drawing area of the figure need to be repainted.
+        Rectangle2D.Double invalidatedArea = new Rectangle2D.Double();
+        invalidatedArea.setRect(e.getInvalidatedArea());
+        updateDrawingArea(e.getFigure(), invalidatedArea);
         // We call invalidate/validate here, because we must layout
         // the figure again.
         invalidate();
         validate();
-        // Forward the figureChanged event to listeners on AbstractCompositeFigure.
-        invalidatedArea.add(getDrawingArea());
         fireDrawingChanged(invalidatedArea);
       }
     }
 
     @Override
     public void areaInvalidated(FigureEvent e) {
-      fireDrawingChanged(e.getInvalidatedArea());
+      if (isInTransaction()) {
+        addTransactionArea(e.getInvalidatedArea());
+      } else {
+        fireDrawingChanged(e.getInvalidatedArea());
+      }
     }
 
     @Override
@@ -433,16 +576,19 @@ public abstract class AbstractDrawing implements Drawing {
 
     @Override
     public void attributeChanged(FigureEvent e) {
+      updateDrawingArea(e.getFigure(), null);
       invalidate();
     }
 
     @Override
     public void figureAdded(FigureEvent e) {
+      updateDrawingArea(e.getFigure(), null);
       invalidate();
     }
 
     @Override
     public void figureRemoved(FigureEvent e) {
+      updateDrawingArea(e.getFigure(), null);
       invalidate();
     }
   }
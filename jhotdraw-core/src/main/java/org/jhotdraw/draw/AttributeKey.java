@@ -7,7 +7,11 @@
  */
 package org.jhotdraw.draw;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.UndoableEdit;
@@ -29,11 +33,24 @@ import org.jhotdraw.util.ResourceBundleUtil;
  * </pre>
  *
  * <p>See {@link AttributeKeys} for a list of useful attribute keys.
+ *
+ * <p>Each attribute key name is assigned a dense ordinal when the first key with this name is
+ * created. Keys with the same name are equal and have the same ordinal. The ordinal is used by
+ * {@link org.jhotdraw.draw.figure.Attributes} to store attribute values compactly.
  */
 public class AttributeKey<T> implements Serializable {
 
   private static final long serialVersionUID = 1L;
 
+  /** Maps attribute key names to ordinals. Guarded by the class. */
+  private static final HashMap<String, Integer> ORDINALS = new HashMap<>();
+
+  /** Holds the first attribute key that has been created for each ordinal. */
+  private static volatile AttributeKey<?>[] keysByOrdinal = new AttributeKey<?>[64];
+
+  /** The ordinal of the attribute key name. */
+  private transient int ordinal;
+
   /** Holds a String representation of the attribute key. */
   private String key;
 
@@ -98,6 +115,53 @@ public class AttributeKey<T> implements Serializable {
     this.isNullValueAllowed = isNullValueAllowed;
     this.labels =
         (labels == null) ? ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels") : labels;
+    this.ordinal = register(this);
+  }
+
+  private static synchronized int register(AttributeKey<?> key) {
+    Integer ordinal = ORDINALS.get(key.key);
+    if (ordinal == null) {
+      ordinal = ORDINALS.size();
+      ORDINALS.put(key.key, ordinal);
+      AttributeKey<?>[] keys = keysByOrdinal;
+      if (ordinal == keys.length) {
+        keys = Arrays.copyOf(keys, keys.length * 2);
+      }
+      keys[ordinal] = key;
+      keysByOrdinal = keys;
+    }
+    return ordinal;
+  }
+
+  /**
+   * Makes the specified key the key which is returned by {@link #getAttributeKey(int)} for its
+   * ordinal. This is used by {@link AttributeKeys} for the keys declared there.
+   */
+  static synchronized void registerCanonicalKey(AttributeKey<?> key) {
+    AttributeKey<?>[] keys = keysByOrdinal;
+    keys[key.ordinal] = key;
+    keysByOrdinal = keys;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    ordinal = register(this);
+  }
+
+  /**
+   * Returns the ordinal of this attribute key. Ordinals are dense, starting at 0, and are only
+   * valid during the lifetime of the virtual machine.
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  /**
+   * Returns the first attribute key which has been created with the specified ordinal. Once {@link
+   * AttributeKeys} has been initialized, this is the key declared there for the standard names.
+   */
+  public static AttributeKey<?> getAttributeKey(int ordinal) {
+    return keysByOrdinal[ordinal];
   }
 
   /**
@@ -297,13 +361,13 @@ public class AttributeKey<T> implements Serializable {
 
   @Override
   public int hashCode() {
-    return key.hashCode();
+    return ordinal;
   }
 
   @Override
   public boolean equals(Object that) {
     if (that instanceof AttributeKey) {
-      return ((AttributeKey) that).key.equals(this.key);
+      return ((AttributeKey) that).ordinal == this.ordinal;
     }
     return false;
   }
@@ -13,6 +13,7 @@ import java.util.*;
 import java.util.function.Supplier;
 import org.jhotdraw.draw.decoration.LineDecoration;
 import org.jhotdraw.draw.figure.AbstractAttributedFigure;
+import org.jhotdraw.draw.figure.Attributes;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.liner.Liner;
 import org.jhotdraw.geom.Dimension2DDouble;
@@ -419,6 +420,7 @@ public class AttributeKeys {
     SUPPORTED_ATTRIBUTES = Collections.unmodifiableSet(as);
     HashMap<String, AttributeKey<?>> am = new HashMap<>();
     for (AttributeKey<?> a : as) {
+      AttributeKey.registerCanonicalKey(a);
       am.put(a.getKey(), a);
     }
     // XXX Redundant cast needed, becaues Collections.unmodifiableMap loses the <?>
@@ -490,17 +492,30 @@ public class AttributeKeys {
    * STROKE_INNER_WIDTH and STROKE_TYPE attributes.
    */
   public static double getStrokeTotalWidth(Figure f, double factor) {
+    return getStrokeDescriptor(f, factor).totalWidth;
+  }
+
+  private static double computeStrokeTotalWidth(Figure f, double globalFactor) {
     switch (f.attr().get(STROKE_TYPE)) {
       case BASIC:
       default:
-        return f.attr().get(STROKE_WIDTH) / getGlobalValueFactor(f, factor);
+        return f.attr().get(STROKE_WIDTH) / globalFactor;
       case DOUBLE:
         return f.attr().get(STROKE_WIDTH)
             * (1d + f.attr().get(STROKE_INNER_WIDTH_FACTOR))
-            / getGlobalValueFactor(f, factor);
+            / globalFactor;
     }
   }
 
+  /**
+   * Returns the distance by which the bounds of a figure need to grow, to contain the stroke of the
+   * figure. This is computed from the total stroke width, the STROKE_JOIN and the
+   * STROKE_MITER_LIMIT attributes.
+   */
+  public static double getStrokeDrawBoundsGrowth(Figure f, double factor) {
+    return getStrokeDescriptor(f, factor).drawBoundsGrowth;
+  }
+
   /**
    * Convenience method for computing the total stroke miter limit from the STROKE_MITER_LIMIT, and
    * IS_STROKE_MITER_LIMIT factor.
@@ -515,8 +530,58 @@ public class AttributeKeys {
     }
   }
 
+  /**
+   * Returns the stroke of a figure, as specified by the STROKE_WIDTH, STROKE_MITER_LIMIT,
+   * STROKE_DASHES, STROKE_TYPE and related attributes.
+   *
+   * <p>The stroke is cached in the attributes of the figure, until an attribute is changed or the
+   * figure is drawn with a different global value factor.
+   */
   public static Stroke getStroke(Figure f, double factor) {
-    double strokeWidth = f.attr().get(STROKE_WIDTH) / getGlobalValueFactor(f, factor);
+    return getStrokeDescriptor(f, factor).stroke;
+  }
+
+  private static StrokeDescriptor getStrokeDescriptor(Figure f, double factor) {
+    double globalFactor = getGlobalValueFactor(f, factor);
+    Attributes attr = f.attr();
+    // Read the revision before the attributes, so that a concurrent change can not be missed.
+    long revision = attr.getRevision();
+    Object cached = attr.getDerivedValue();
+    if (cached instanceof StrokeDescriptor) {
+      StrokeDescriptor d = (StrokeDescriptor) cached;
+      if (d.revision == revision && d.globalFactor == globalFactor) {
+        return d;
+      }
+    }
+    StrokeDescriptor d = new StrokeDescriptor(f, factor, revision, globalFactor);
+    attr.setDerivedValue(d);
+    return d;
+  }
+
+  /** Immutable stroke properties of a figure, which are derived from its attributes. */
+  private static final class StrokeDescriptor {
+
+    private final long revision;
+    private final double globalFactor;
+    private final Stroke stroke;
+    private final double totalWidth;
+    private final double drawBoundsGrowth;
+
+    StrokeDescriptor(Figure f, double factor, long revision, double globalFactor) {
+      this.revision = revision;
+      this.globalFactor = globalFactor;
+      this.stroke = createStroke(f, factor, globalFactor);
+      this.totalWidth = computeStrokeTotalWidth(f, globalFactor);
+      double growth = totalWidth / 2d;
+      if (f.attr().get(STROKE_JOIN) == BasicStroke.JOIN_MITER) {
+        growth *= f.attr().get(STROKE_MITER_LIMIT);
+      }
+      this.drawBoundsGrowth = growth + 1;
+    }
+  }
+
+  private static Stroke createStroke(Figure f, double factor, double globalFactor) {
+    double strokeWidth = f.attr().get(STROKE_WIDTH) / globalFactor;
     float miterLimit = (float) getStrokeTotalMiterLimit(f, factor);
     double dashFactor = f.attr().get(IS_STROKE_DASH_FACTOR) ? strokeWidth : 1d;
     double dashPhase = f.attr().get(STROKE_DASH_PHASE);
@@ -58,6 +58,9 @@ import org.jhotdraw.draw.event.FigureSelectionListener;
 import org.jhotdraw.draw.event.HandleEvent;
 import org.jhotdraw.draw.event.HandleListener;
 import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.ImageCache;
+import org.jhotdraw.draw.figure.TextLayoutCache;
+import org.jhotdraw.draw.handle.BulkSelectionHandle;
 import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.io.DefaultDrawingViewTransferHandler;
 import org.jhotdraw.util.ResourceBundleUtil;
@@ -95,6 +98,19 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
   private Handle activeHandle;
   private java.util.List<Handle> secondaryHandles = new ArrayList<>();
   private boolean handlesAreValid = true;
+
+  /** The figures which have selection handles. */
+  private final Set<Figure> handleOwners = new HashSet<>();
+
+  /**
+   * The area in drawing coordinates for which selection handles have been created, or null if
+   * handles have been created for all selected figures.
+   */
+  private Rectangle2D.Double handledArea;
+
+  /** Above this number of selected figures, a single {@link BulkSelectionHandle} is used. */
+  private int bulkSelectionThreshold = 1000;
+
   private transient Dimension cachedPreferredSize;
   private double scaleFactor = 1;
   private Point translation = new Point(0, 0);
@@ -115,6 +131,20 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
   /** Whether the drawing is double buffered */
   private boolean isDrawingDoubleBuffered = true;
 
+  public static final String DRAWING_TILED_PROPERTY = "drawingTiled";
+
+  /** Whether the drawing is rendered in tiles on worker threads. */
+  private boolean isDrawingTiled;
+
+  /** Renders the drawing when it is tiled. Is created on demand. */
+  private transient TiledDrawingRenderer tiledRenderer;
+
+  /** Whether a change transaction of the drawing is in progress. */
+  private transient boolean isDrawingChanging;
+
+  /** Coalesces the repaints of invalidated drawing areas and handles. */
+  private final transient RepaintScheduler repaintScheduler = new RepaintScheduler(this);
+
   /** The drawingBuffer holds a rendered image of the drawing (in view coordinates). */
   private VolatileImage drawingBufferV;
 
@@ -248,9 +278,25 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       invalidateDimension();
     }
 
+    @Override
+    public void changesBegun(DrawingEvent e) {
+      isDrawingChanging = true;
+      if (tiledRenderer != null) {
+        tiledRenderer.pause();
+      }
+    }
+
+    @Override
+    public void changesCommitted(DrawingEvent e) {
+      isDrawingChanging = false;
+      if (tiledRenderer != null) {
+        tiledRenderer.resume();
+      }
+    }
+
     @Override
     public void areaInvalidated(HandleEvent evt) {
-      repaint(evt.getInvalidatedArea());
+      repaintScheduler.addDirtyRegion(evt.getInvalidatedArea());
       invalidateDimension();
     }
 
@@ -284,7 +330,7 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       selectionHandles.remove(e.getHandle());
       e.getHandle().dispose();
       invalidateHandles();
-      repaint(e.getInvalidatedArea());
+      repaintScheduler.addDirtyRegion(e.getInvalidatedArea());
     }
 
     @Override
@@ -386,7 +432,9 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     drawBackground(g);
     drawCanvas(g);
     drawConstrainer(g);
-    if (isDrawingDoubleBuffered()) {
+    if (isDrawingTiled()) {
+      drawDrawingTiled(g);
+    } else if (isDrawingDoubleBuffered()) {
       if (IS_WINDOWS) {
         drawDrawingNonvolatileBuffered(g);
       } else {
@@ -399,6 +447,26 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     drawTool(g);
   }
 
+  /**
+   * Draws the drawing using tiles which are rendered on worker threads. Tiles which are not
+   * rendered yet are drawn at a lower resolution, or not at all.
+   */
+  protected void drawDrawingTiled(Graphics2D g) {
+    if (drawing != null) {
+      if (drawing.getChildCount() == 0 && emptyDrawingLabel != null) {
+        drawDrawing(g);
+      } else {
+        if (tiledRenderer == null) {
+          tiledRenderer = new TiledDrawingRenderer(this);
+          if (isDrawingChanging) {
+            tiledRenderer.pause();
+          }
+        }
+        tiledRenderer.paint(g, translation, scaleFactor);
+      }
+    }
+  }
+
   /** Draws the drawing double buffered using a volatile image. */
   protected void drawDrawingVolatileBuffered(Graphics2D g) {
     Rectangle vr = getVisibleRect();
@@ -665,6 +733,11 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
     g.setRenderingHint(
         RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+    // Decode images in the background
+    g.setRenderingHint(ImageCache.KEY_DEFERRED_DECODING, Boolean.TRUE);
+    // Greek text which is too small to be read
+    g.setRenderingHint(
+        TextLayoutCache.KEY_GREEKING_THRESHOLD, TextLayoutCache.DEFAULT_GREEKING_THRESHOLD);
   }
 
   /**
@@ -762,10 +835,14 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       clearSelection();
     }
     this.drawing = newValue;
+    isDrawingChanging = false;
     if (this.drawing != null) {
       this.drawing.addDrawingListener(eventHandler);
     }
     dirtyArea.add(bufferedArea);
+    if (tiledRenderer != null) {
+      tiledRenderer.clear();
+    }
     firePropertyChange(DRAWING_PROPERTY, oldValue, newValue);
     // Revalidate without flickering
     revalidate();
@@ -796,7 +873,10 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     Rectangle vr = drawingToView(r);
     vr.grow(2, 2);
     dirtyArea.add(vr);
-    repaint(vr);
+    if (tiledRenderer != null) {
+      tiledRenderer.invalidate(r);
+    }
+    repaintScheduler.addDirtyRegion(vr);
   }
 
   @Override
@@ -808,6 +888,7 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
   @Override
   public void removeNotify() {
     super.removeNotify();
+    repaintScheduler.clear();
     if (drawingBufferNV != null) {
       drawingBufferNV.flush();
       drawingBufferNV = null;
@@ -816,6 +897,10 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       drawingBufferV.flush();
       drawingBufferV = null;
     }
+    if (tiledRenderer != null) {
+      tiledRenderer.clear();
+      tiledRenderer = null;
+    }
   }
 
   /** Adds a figure to the current selection. */
@@ -827,15 +912,10 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       Set<Figure> newSelection = new HashSet<>(SELECTED_FIGURES);
       Rectangle invalidatedArea = null;
       if (handlesAreValid && getEditor() != null) {
-        for (Handle h : figure.createHandles(detailLevel)) {
-          h.setView(this);
-          selectionHandles.add(h);
-          h.addHandleListener(eventHandler);
-          if (invalidatedArea == null) {
-            invalidatedArea = h.getDrawingArea();
-          } else {
-            invalidatedArea.add(h.getDrawingArea());
-          }
+        if (isBulkSelection()) {
+          invalidateHandles();
+        } else if (isInHandledArea(figure)) {
+          invalidatedArea = createHandles(figure, null);
         }
       }
       fireSelectionChanged(oldSelection, newSelection);
@@ -858,15 +938,10 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
         newSelection.add(figure);
         figure.addFigureListener(handleInvalidator);
         if (handlesAreValid && getEditor() != null) {
-          for (Handle h : figure.createHandles(detailLevel)) {
-            h.setView(this);
-            selectionHandles.add(h);
-            h.addHandleListener(eventHandler);
-            if (invalidatedArea == null) {
-              invalidatedArea = h.getDrawingArea();
-            } else {
-              invalidatedArea.add(h.getDrawingArea());
-            }
+          if (isBulkSelection()) {
+            invalidateHandles();
+          } else if (isInHandledArea(figure)) {
+            invalidatedArea = createHandles(figure, invalidatedArea);
           }
         }
       }
@@ -960,7 +1035,7 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
   }
 
   /** Gets the currently active selection handles. */
-  private java.util.List<Handle> getSelectionHandles() {
+  java.util.List<Handle> getSelectionHandles() {
     validateHandles();
     return Collections.unmodifiableList(selectionHandles);
   }
@@ -996,6 +1071,7 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
       }
       selectionHandles.clear();
       secondaryHandles.clear();
+      handleOwners.clear();
       setActiveHandle(null);
       if (invalidatedArea != null) {
         repaint(invalidatedArea);
@@ -1003,39 +1079,178 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     }
   }
 
-  /** Validates the handles. */
+  /**
+   * Validates the handles.
+   *
+   * <p>Handles are only created for the selected figures which are in the visible area of the view,
+   * or close to it. When the visible area leaves the area for which handles have been created, the
+   * handles are updated. If more than {@link #getBulkSelectionThreshold} figures are selected, a
+   * single {@link BulkSelectionHandle} is created for the visible selected figures.
+   */
   private void validateHandles() {
     // Validate handles only, if they are invalid, and if
     // the DrawingView has a DrawingEditor.
-    if (!handlesAreValid && getEditor() != null) {
+    if (getEditor() == null) {
+      return;
+    }
+    if (!handlesAreValid) {
       handlesAreValid = true;
       selectionHandles.clear();
+      handleOwners.clear();
+      handledArea = computeHandledArea();
       Rectangle invalidatedArea = null;
-      while (true) {
-        for (Figure figure : getSelectedFigures()) {
-          for (Handle handle : figure.createHandles(detailLevel)) {
-            handle.setView(this);
-            selectionHandles.add(handle);
-            handle.addHandleListener(eventHandler);
-            if (invalidatedArea == null) {
-              invalidatedArea = handle.getDrawingArea();
-            } else {
-              invalidatedArea.add(handle.getDrawingArea());
+      if (isBulkSelection()) {
+        invalidatedArea = createBulkSelectionHandle();
+      } else {
+        while (true) {
+          boolean isAnyFigureInHandledArea = false;
+          for (Figure figure : getSelectedFigures()) {
+            if (isInHandledArea(figure)) {
+              isAnyFigureInHandledArea = true;
+              invalidatedArea = createHandles(figure, invalidatedArea);
             }
           }
+          if (selectionHandles.size() == 0 && isAnyFigureInHandledArea && detailLevel != 0) {
+            // No handles are available at the desired detail level.
+            // Retry with detail level 0.
+            detailLevel = 0;
+            continue;
+          }
+          break;
         }
-        if (selectionHandles.size() == 0 && detailLevel != 0) {
-          // No handles are available at the desired detail level.
-          // Retry with detail level 0.
-          detailLevel = 0;
-          continue;
-        }
-        break;
       }
       if (invalidatedArea != null) {
         repaint(invalidatedArea);
       }
+    } else if (handledArea != null) {
+      Rectangle2D.Double visibleArea = getVisibleDrawingArea();
+      if (visibleArea != null && !handledArea.contains(visibleArea)) {
+        updateHandlesForVisibleArea();
+      }
+    }
+  }
+
+  /**
+   * Creates the handles of a selected figure, and returns the union of the specified area and of
+   * the drawing areas of the handles.
+   */
+  private Rectangle createHandles(Figure figure, Rectangle invalidatedArea) {
+    handleOwners.add(figure);
+    for (Handle handle : figure.createHandles(detailLevel)) {
+      handle.setView(this);
+      selectionHandles.add(handle);
+      handle.addHandleListener(eventHandler);
+      if (invalidatedArea == null) {
+        invalidatedArea = handle.getDrawingArea();
+      } else {
+        invalidatedArea.add(handle.getDrawingArea());
+      }
+    }
+    return invalidatedArea;
+  }
+
+  /**
+   * Creates a bulk selection handle for the selected figures in the handled area, and returns its
+   * drawing area.
+   */
+  private Rectangle createBulkSelectionHandle() {
+    Collection<Figure> candidates =
+        (handledArea == null) ? getSelectedFigures() : drawing.findFigures(handledArea);
+    ArrayList<Figure> figures = new ArrayList<>();
+    for (Figure figure : candidates) {
+      if (isFigureSelected(figure)) {
+        figures.add(figure);
+      }
+    }
+    if (figures.isEmpty()) {
+      return null;
+    }
+    handleOwners.addAll(figures);
+    Handle handle = new BulkSelectionHandle(figures);
+    handle.setView(this);
+    selectionHandles.add(handle);
+    handle.addHandleListener(eventHandler);
+    return handle.getDrawingArea();
+  }
+
+  /**
+   * Updates the handles after the visible area has been moved. Keeps the handles of figures which
+   * are still in the handled area, and of the active handle. Handles which are removed are outside
+   * of the visible area, and thus need not be repainted.
+   */
+  private void updateHandlesForVisibleArea() {
+    handledArea = computeHandledArea();
+    if (isBulkSelection()) {
+      for (Handle handle : selectionHandles) {
+        handle.removeHandleListener(eventHandler);
+        handle.dispose();
+      }
+      selectionHandles.clear();
+      handleOwners.clear();
+      createBulkSelectionHandle();
+      return;
+    }
+    for (java.util.Iterator<Handle> i = selectionHandles.iterator(); i.hasNext(); ) {
+      Handle handle = i.next();
+      Figure owner = handle.getOwner();
+      if (!isInHandledArea(owner) && handle != activeHandle) {
+        handle.removeHandleListener(eventHandler);
+        handle.dispose();
+        handleOwners.remove(owner);
+        i.remove();
+      }
     }
+    for (Figure figure : getSelectedFigures()) {
+      if (!handleOwners.contains(figure) && isInHandledArea(figure)) {
+        createHandles(figure, null);
+      }
+    }
+  }
+
+  private boolean isBulkSelection() {
+    return getSelectionCount() > bulkSelectionThreshold;
+  }
+
+  private boolean isInHandledArea(Figure figure) {
+    return handledArea == null || handledArea.intersects(figure.getDrawingArea(getScaleFactor()));
+  }
+
+  /** Returns the visible area of the view in drawing coordinates, or null if it is unknown. */
+  private Rectangle2D.Double getVisibleDrawingArea() {
+    Rectangle vr = getVisibleRect();
+    return vr.isEmpty() ? null : viewToDrawing(vr);
+  }
+
+  /**
+   * Returns the area for which handles are created. This is the visible area, with a margin of half
+   * its size on each side, so that handles do not need to be updated on each scroll step.
+   */
+  private Rectangle2D.Double computeHandledArea() {
+    Rectangle2D.Double r = getVisibleDrawingArea();
+    if (r == null) {
+      return null;
+    }
+    r.x -= r.width / 2;
+    r.y -= r.height / 2;
+    r.width *= 2;
+    r.height *= 2;
+    return r;
+  }
+
+  /**
+   * Sets the number of selected figures above which a single bulk selection handle is shown instead
+   * of the handles of the individual figures.
+   */
+  public void setBulkSelectionThreshold(int newValue) {
+    if (newValue != bulkSelectionThreshold) {
+      bulkSelectionThreshold = newValue;
+      invalidateHandles();
+      repaint();
+    }
+  }
+
+  public int getBulkSelectionThreshold() {
+    return bulkSelectionThreshold;
   }
 
   /**
@@ -1532,6 +1747,44 @@ public class DefaultDrawingView extends JComponent implements DrawingView, Edita
     return isDrawingDoubleBuffered;
   }
 
+  /**
+   * Sets whether the drawing is rendered in tiles on worker threads. If this is true, the drawing
+   * is not double buffered.
+   *
+   * <p>The default value is false.
+   *
+   * <p>This is a bound property.
+   *
+   * <p>Tiled rendering keeps the view responsive while panning and zooming large drawings. Tiles
+   * which are not rendered yet are shown at a lower resolution, and changed tiles show their
+   * previous content until they have been rendered again. The figures of the drawing must support
+   * being drawn concurrently.
+   */
+  public void setDrawingTiled(boolean newValue) {
+    boolean oldValue = isDrawingTiled;
+    isDrawingTiled = newValue;
+    if (!isDrawingTiled && tiledRenderer != null) {
+      tiledRenderer.clear();
+      tiledRenderer = null;
+    }
+    dirtyArea.setBounds(bufferedArea);
+    repaint();
+    firePropertyChange(DRAWING_TILED_PROPERTY, oldValue, newValue);
+  }
+
+  /**
+   * Returns the scheduler which coalesces the repaints of invalidated drawing areas. The scheduler
+   * can be used to configure the maximal frame rate, and to read the repaint counters.
+   */
+  public RepaintScheduler getRepaintScheduler() {
+    return repaintScheduler;
+  }
+
+  /** Returns true, if the drawing is rendered in tiles. */
+  public boolean isDrawingTiled() {
+    return isDrawingTiled;
+  }
+
   /**
    * Returns a paint for drawing the background of the drawing area.
    *
@@ -102,6 +102,47 @@ public interface Drawing {
   /** Informs that a Drawing changed its visual representation and needs to be redrawn. */
   public void changed();
 
+  /**
+   * Begins a change transaction.
+   *
+   * <p>Until the transaction is committed, the changes of the figures of the drawing are not
+   * propagated to the listeners of the drawing one by one. The drawing collects the union of the
+   * invalidated areas and the changed figures instead, and fires a single {@code drawingChanged}
+   * event when the transaction is committed. Connections to the changed figures are updated once at
+   * the end of the transaction, see {@link org.jhotdraw.draw.figure.ConnectionUpdateScheduler}. The
+   * listeners are informed about the begin and the commit of the outermost transaction with {@code
+   * changesBegun} and {@code changesCommitted} events.
+   *
+   * <p>Transactions are nestable. Each call to {@code beginChanges} must be followed by a call to
+   * {@link #commitChanges}, typically in a {@code finally} block:
+   *
+   * <pre>
+   * drawing.beginChanges();
+   * try {
+   *   for (Figure f : figures) {
+   *     f.willChange();
+   *     f.transform(tx);
+   *     f.changed();
+   *   }
+   * } finally {
+   *   drawing.commitChanges();
+   * }
+   * </pre>
+   *
+   * <p>The default implementation does nothing, so that changes are propagated one by one.
+   */
+  default void beginChanges() {}
+
+  /**
+   * Commits a change transaction. If this is the outermost transaction, a single {@code
+   * drawingChanged} event is fired for all changes which have been made during the transaction.
+   *
+   * <p>The default implementation does nothing.
+   *
+   * @see #beginChanges
+   */
+  default void commitChanges() {}
+
   public void draw(Graphics2D g);
 
   /**
@@ -18,39 +18,54 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.geom.Geom;
-import org.jhotdraw.geom.QuadTree;
+import org.jhotdraw.geom.LooseQuadTree;
+import org.jhotdraw.geom.LooseQuadTree.SortedBuffer;
 import org.jhotdraw.util.*;
 
 /**
- * An implementation of {@link Drawing} which uses a {@link org.jhotdraw.geom.QuadTree} to provide a
- * good responsiveness for drawings which contain many figures.
+ * An implementation of {@link Drawing} which uses a {@link org.jhotdraw.geom.LooseQuadTree} to
+ * provide a good responsiveness for drawings which contain many figures.
  */
 public class QuadTreeDrawing extends AbstractDrawing {
 
   private static final long serialVersionUID = 1L;
-  private QuadTree<Figure> quadTree = new QuadTree<>();
-  private boolean needsSorting = false;
+
+  /** Distance between the order keys of adjacent children after renumbering. */
+  private static final long ORDER_GAP = 1L << 20;
+
+  /**
+   * Spatial index of the children. The order key of each child reflects its position in the
+   * z-order, so that queries return the children already sorted from back to front.
+   */
+  private LooseQuadTree<Figure> quadTree = new LooseQuadTree<>();
+
+  /** Query buffer which is handed out to one thread at a time. */
+  private transient AtomicReference<SortedBuffer<Figure>> spareBuffer;
 
   @Override
   public int indexOf(Figure figure) {
     return CHILDREN.indexOf(figure);
   }
 
+  /**
+   * Implementation note: The children are kept sorted by layer. If the figure does not belong to
+   * the layer at the specified index, it is added at the nearest index which belongs to its layer.
+   */
   @Override
   public void basicAdd(int index, Figure figure) {
+    index = layerIndex(index, figure.getLayer());
     super.basicAdd(index, figure);
-    quadTree.add(figure, figure.getDrawingArea());
-    needsSorting = true;
+    quadTree.add(figure, figure.getDrawingArea(), orderAt(index));
   }
 
   @Override
   public Figure basicRemoveChild(int index) {
     Figure figure = getChild(index);
     quadTree.remove(figure);
-    needsSorting = true;
     super.basicRemoveChild(index);
     return figure;
   }
@@ -59,17 +74,30 @@ public class QuadTreeDrawing extends AbstractDrawing {
   public void draw(Graphics2D g) {
     Rectangle2D clipBounds = g.getClipBounds();
     if (clipBounds != null) {
-      draw(g, sort(quadTree.findIntersects(clipBounds)));
+      SortedBuffer<Figure> buffer = acquireBuffer();
+      try {
+        quadTree.findIntersects(clipBounds, buffer);
+        for (int i = 0, n = buffer.size(); i < n; i++) {
+          Figure f = buffer.get(i);
+          if (f.isVisible()) {
+            f.draw(g);
+          }
+        }
+      } finally {
+        releaseBuffer(buffer);
+      }
     } else {
       draw(g, CHILDREN);
     }
   }
 
-  /** Implementation note: Sorting can not be done for orphaned children. */
+  /** Implementation note: Orphaned figures are sorted to the end of the list. */
   @Override
   public List<Figure> sort(Collection<? extends Figure> c) {
     List<Figure> sorted = new ArrayList<>(c);
-    Collections.sort(sorted, Comparator.comparing(Figure::getLayer));
+    sorted.sort(
+        Comparator.comparingLong(
+            f -> quadTree.contains(f) ? quadTree.getOrder(f) : Long.MAX_VALUE));
     return sorted;
   }
 
@@ -82,7 +110,7 @@ public class QuadTreeDrawing extends AbstractDrawing {
   }
 
   public List<Figure> getChildren(Rectangle2D.Double bounds) {
-    return new ArrayList<>(quadTree.findInside(bounds));
+    return quadTree.findInside(bounds);
   }
 
   @Override
@@ -92,82 +120,69 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
   @Override
   public Figure findFigureInside(Point2D.Double p) {
-    Collection<Figure> c = quadTree.findContains(p);
-    for (Figure f : getFiguresFrontToBack(c)) {
-      if (c.contains(f) && f.contains(p)) {
-        return f.findFigureInside(p);
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (f.contains(p)) {
+          return f.findFigureInside(p);
+        }
       }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
-    return null;
   }
 
   /** Returns an iterator to iterate in Z-order front to back over the children. */
   @Override
   public List<Figure> getFiguresFrontToBack() {
-    ensureSorted();
     return new ReversedList<>(CHILDREN);
   }
 
   protected List<Figure> getFiguresFrontToBack(Collection<Figure> smallCollection) {
-    List<Figure> list = new ArrayList<>(smallCollection);
-    Collections.sort(list, Comparator.comparing(Figure::getLayer).reversed());
+    List<Figure> list = sort(smallCollection);
+    Collections.reverse(list);
     return list;
   }
 
   @Override
   public Figure findFigure(Point2D.Double p) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (f.contains(p)) ? f : null;
-      default:
-        for (Figure f2 : getFiguresFrontToBack(c)) {
-          if (f2.contains(p)) {
-            return f2;
-          }
-        }
-        return null;
-    }
+    return findFigureExcept(p, (Figure) null);
   }
 
   @Override
   public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (f == ignore || !f.contains(p)) ? null : f;
-      default:
-        for (Figure f2 : getFiguresFrontToBack(c)) {
-          if (f2 != ignore && f2.contains(p)) {
-            return f2;
-          }
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (f != ignore && f.contains(p)) {
+          return f;
         }
-        return null;
+      }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
   @Override
   public Figure findFigureExcept(Point2D.Double p, Collection<? extends Figure> ignore) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (!ignore.contains(f) || !f.contains(p)) ? null : f;
-      default:
-        for (Figure f2 : getFiguresFrontToBack(c)) {
-          if (!ignore.contains(f2) && f2.contains(p)) {
-            return f2;
-          }
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (!ignore.contains(f) && f.contains(p)) {
+          return f;
         }
-        return null;
+      }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
@@ -205,14 +220,16 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
   @Override
   public List<Figure> findFigures(Rectangle2D.Double r) {
-    List<Figure> c = new ArrayList<>(quadTree.findIntersects(r));
-    switch (c.size()) {
-      case 0:
-        // fall through
-      case 1:
-        return c;
-      default:
-        return getFiguresFrontToBack(c);
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findIntersects(r, buffer);
+      List<Figure> c = new ArrayList<>(buffer.size());
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        c.add(buffer.get(i));
+      }
+      return c;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
@@ -239,8 +256,9 @@ public class QuadTreeDrawing extends AbstractDrawing {
   @Override
   public void bringToFront(Figure figure) {
     if (CHILDREN.remove(figure)) {
-      CHILDREN.add(figure);
-      needsSorting = true;
+      int index = layerIndex(CHILDREN.size(), figure.getLayer());
+      CHILDREN.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
       fireDrawingChanged(figure.getDrawingArea());
     }
   }
@@ -248,26 +266,114 @@ public class QuadTreeDrawing extends AbstractDrawing {
   @Override
   public void sendToBack(Figure figure) {
     if (CHILDREN.remove(figure)) {
-      CHILDREN.add(0, figure);
-      needsSorting = true;
+      int index = layerIndex(0, figure.getLayer());
+      CHILDREN.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
       fireDrawingChanged(figure.getDrawingArea());
     }
   }
 
-  /** Ensures that the children are sorted in z-order sequence. */
-  private void ensureSorted() {
-    if (needsSorting) {
-      Collections.sort(CHILDREN, Comparator.comparing(Figure::getLayer));
-      needsSorting = false;
+  /**
+   * Moves a child whose layer has changed to the nearest index at which the children stay sorted by
+   * layer. Children of the same layer keep their relative order.
+   */
+  private void updateLayerPosition(Figure figure) {
+    int index = childIndex(figure);
+    if (index == -1) {
+      return;
+    }
+    int layer = figure.getLayer();
+    if ((index > 0 && CHILDREN.get(index - 1).getLayer() > layer)
+        || (index < CHILDREN.size() - 1 && CHILDREN.get(index + 1).getLayer() < layer)) {
+      CHILDREN.remove(index);
+      index = layerIndex(index, layer);
+      CHILDREN.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
+    }
+  }
+
+  /**
+   * Returns the index of the specified child, or -1 if it is not a child. Since the order keys
+   * increase with the index, the child is found by a binary search.
+   */
+  private int childIndex(Figure figure) {
+    if (!quadTree.contains(figure)) {
+      return -1;
+    }
+    long order = quadTree.getOrder(figure);
+    int low = 0;
+    int high = CHILDREN.size() - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      long midOrder = quadTree.getOrder(CHILDREN.get(mid));
+      if (midOrder < order) {
+        low = mid + 1;
+      } else if (midOrder > order) {
+        high = mid - 1;
+      } else {
+        return CHILDREN.get(mid) == figure ? mid : CHILDREN.indexOf(figure);
+      }
+    }
+    return CHILDREN.indexOf(figure);
+  }
+
+  /** Returns the index nearest to the specified index at which the children stay sorted by layer. */
+  private int layerIndex(int index, int layer) {
+    while (index > 0 && CHILDREN.get(index - 1).getLayer() > layer) {
+      index--;
     }
+    while (index < CHILDREN.size() && CHILDREN.get(index).getLayer() < layer) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Returns an order key for the child at the specified index, which lies between the order keys
+   * of its neighbours. Renumbers the other children if there is no room left between them.
+   */
+  private long orderAt(int index) {
+    int n = CHILDREN.size();
+    if (n == 1) {
+      return 0;
+    }
+    long prev = (index > 0) ? quadTree.getOrder(CHILDREN.get(index - 1)) : 0;
+    long next = (index < n - 1) ? quadTree.getOrder(CHILDREN.get(index + 1)) : 0;
+    if (index == 0 && next > Long.MIN_VALUE + ORDER_GAP) {
+      return next - ORDER_GAP;
+    } else if (index == n - 1 && prev < Long.MAX_VALUE - ORDER_GAP) {
+      return prev + ORDER_GAP;
+    } else if (index > 0 && index < n - 1 && next - prev > 1) {
+      return prev + ((next - prev) >>> 1);
+    }
+    for (int i = 0; i < n; i++) {
+      if (i != index) {
+        quadTree.setOrder(CHILDREN.get(i), i * ORDER_GAP);
+      }
+    }
+    return index * ORDER_GAP;
+  }
+
+  private SortedBuffer<Figure> acquireBuffer() {
+    if (spareBuffer == null) {
+      spareBuffer = new AtomicReference<>();
+    }
+    SortedBuffer<Figure> buffer = spareBuffer.getAndSet(null);
+    return (buffer == null) ? new SortedBuffer<>() : buffer;
+  }
+
+  private void releaseBuffer(SortedBuffer<Figure> buffer) {
+    buffer.clear();
+    spareBuffer.set(buffer);
   }
 
   @Override
   public QuadTreeDrawing clone() {
     QuadTreeDrawing that = (QuadTreeDrawing) super.clone();
-    that.quadTree = new QuadTree<>();
+    that.quadTree = new LooseQuadTree<>();
+    that.spareBuffer = null;
     for (Figure f : getChildren()) {
-      quadTree.add(f, f.getDrawingArea());
+      that.quadTree.add(f, f.getDrawingArea(), quadTree.getOrder(f));
     }
     return that;
   }
@@ -282,12 +388,19 @@ public class QuadTreeDrawing extends AbstractDrawing {
     double tolerance = 10 / 2 / scaleDenominator;
     Rectangle2D.Double rect =
         new Rectangle2D.Double(p.x - tolerance, p.y - tolerance, 2 * tolerance, 2 * tolerance);
-    for (Figure figure : findFigures(rect)) {
-      if (figure.isVisible() && figure.contains(p, scaleDenominator)) {
-        return figure;
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findIntersects(rect, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure figure = buffer.get(i);
+        if (figure.isVisible() && figure.contains(p, scaleDenominator)) {
+          return figure;
+        }
       }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
-    return null;
   }
 
   @Override
@@ -296,14 +409,21 @@ public class QuadTreeDrawing extends AbstractDrawing {
     Rectangle2D.Double rect =
         new Rectangle2D.Double(p.x - tolerance, p.y - tolerance, 2 * tolerance, 2 * tolerance);
     boolean check = false;
-    for (Figure figure : findFigures(rect)) {
-      if (check && figure.isVisible() && figure.contains(p, scaleDenominator)) {
-        return figure;
-      } else if (figure == behindFigure) {
-        check = true;
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findIntersects(rect, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure figure = buffer.get(i);
+        if (check && figure.isVisible() && figure.contains(p, scaleDenominator)) {
+          return figure;
+        } else if (figure == behindFigure) {
+          check = true;
+        }
       }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
-    return null;
   }
 
   /** Handles all figure events fired by Figures contained in the Drawing. */
@@ -313,13 +433,9 @@ public class QuadTreeDrawing extends AbstractDrawing {
 
     @Override
     public void figureChanged(FigureEvent e) {
-      if (!isChanging()) {
-        quadTree.remove(e.getFigure());
-        quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
-        needsSorting = true;
-        invalidate();
-        fireDrawingChanged(e.getInvalidatedArea());
-      }
+      quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
+      updateLayerPosition(e.getFigure());
+      super.figureChanged(e);
     }
   }
 
@@ -0,0 +1,187 @@
+/*
+ * @(#)RepaintScheduler.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import javax.swing.JComponent;
+import javax.swing.Timer;
+
+/**
+ * Collects dirty regions of a component, and repaints them at most once per frame.
+ *
+ * <p>The dirty regions are kept as a small set of rectangles. When a rectangle is added, it is
+ * merged with an existing rectangle if the area which is needlessly repainted by the union is
+ * smaller than the cost of painting an additional rectangle. If there are more than {@link
+ * #getMaxRectangleCount} rectangles, the two rectangles with the cheapest union are merged.
+ *
+ * <p>The regions are flushed on the event dispatch thread by a timer, at most {@link
+ * #getMaxFrameRate} times per second. A flush paints each rectangle with {@link
+ * JComponent#paintImmediately(Rectangle)}. The rectangles are not passed to {@link
+ * JComponent#repaint}, because the {@code RepaintManager} would union them into a single dirty
+ * rectangle, and thus repaint the whole area between two distant regions.
+ *
+ * <p>All methods must be called on the event dispatch thread.
+ */
+public class RepaintScheduler {
+
+  /** The cost of painting an additional rectangle, expressed in pixels. */
+  private static final long RECTANGLE_COST = 64 * 64;
+
+  private final JComponent component;
+  private final ArrayList<Rectangle> regions = new ArrayList<>();
+  private final Timer timer;
+  private int maxFrameRate = 60;
+  private int maxRectangleCount = 16;
+  private long lastFlushTime;
+  private long flushCount;
+  private long repaintedPixelCount;
+
+  public RepaintScheduler(JComponent component) {
+    this.component = component;
+    this.timer = new Timer(0, e -> flush());
+    timer.setRepeats(false);
+  }
+
+  /** Sets the maximal number of flushes per second. The default value is 60. */
+  public void setMaxFrameRate(int newValue) {
+    maxFrameRate = Math.max(1, newValue);
+  }
+
+  public int getMaxFrameRate() {
+    return maxFrameRate;
+  }
+
+  /** Sets the maximal number of rectangles which are repainted per flush. The default is 16. */
+  public void setMaxRectangleCount(int newValue) {
+    maxRectangleCount = Math.max(1, newValue);
+  }
+
+  public int getMaxRectangleCount() {
+    return maxRectangleCount;
+  }
+
+  /**
+   * Adds a dirty region, and schedules a flush.
+   *
+   * @param r a rectangle in component coordinates. The rectangle is copied.
+   */
+  public void addDirtyRegion(Rectangle r) {
+    if (r.isEmpty()) {
+      return;
+    }
+    merge(new Rectangle(r));
+    while (regions.size() > maxRectangleCount) {
+      mergeCheapestPair();
+    }
+    if (!timer.isRunning()) {
+      long frameMillis = 1000L / maxFrameRate;
+      long delay = lastFlushTime + frameMillis - System.currentTimeMillis();
+      timer.setInitialDelay((int) Math.max(0, Math.min(delay, frameMillis)));
+      timer.start();
+    }
+  }
+
+  /** Adds a rectangle to the regions, merging it with the regions where this is cheap. */
+  private void merge(Rectangle r) {
+    for (boolean merged = true; merged; ) {
+      merged = false;
+      for (int i = regions.size() - 1; i >= 0; i--) {
+        Rectangle e = regions.get(i);
+        if (e.contains(r)) {
+          return;
+        }
+        if (mergeCost(e, r) <= RECTANGLE_COST) {
+          regions.remove(i);
+          r.add(e);
+          // The union may now be cheap to merge with a region we have already checked.
+          merged = true;
+        }
+      }
+    }
+    regions.add(r);
+  }
+
+  /**
+   * Returns the number of pixels which are painted in addition to the pixels of two rectangles if
+   * they are replaced by their union.
+   */
+  private static long mergeCost(Rectangle a, Rectangle b) {
+    Rectangle u = a.union(b);
+    Rectangle i = a.intersection(b);
+    long overlap = i.isEmpty() ? 0 : area(i);
+    return area(u) - area(a) - area(b) + overlap;
+  }
+
+  private void mergeCheapestPair() {
+    int bestA = 0;
+    int bestB = 1;
+    long bestCost = Long.MAX_VALUE;
+    for (int a = 0, n = regions.size(); a < n; a++) {
+      for (int b = a + 1; b < n; b++) {
+        long cost = mergeCost(regions.get(a), regions.get(b));
+        if (cost < bestCost) {
+          bestCost = cost;
+          bestA = a;
+          bestB = b;
+        }
+      }
+    }
+    Rectangle b = regions.remove(bestB);
+    regions.get(bestA).add(b);
+  }
+
+  private static long area(Rectangle r) {
+    return (long) r.width * r.height;
+  }
+
+  /** Repaints all dirty regions now. */
+  public void flush() {
+    timer.stop();
+    if (regions.isEmpty()) {
+      return;
+    }
+    lastFlushTime = System.currentTimeMillis();
+    flushCount++;
+    Rectangle[] rects = regions.toArray(new Rectangle[regions.size()]);
+    regions.clear();
+    if (!component.isShowing()) {
+      return;
+    }
+    Rectangle visible = component.getVisibleRect();
+    for (Rectangle r : rects) {
+      Rectangle vr = r.intersection(visible);
+      if (!vr.isEmpty()) {
+        repaintedPixelCount += area(vr);
+        component.paintImmediately(vr);
+      }
+    }
+  }
+
+  /** Discards all dirty regions without repainting them. */
+  public void clear() {
+    timer.stop();
+    regions.clear();
+  }
+
+  /** Returns the number of flushes which had at least one dirty region. */
+  public long getFlushCount() {
+    return flushCount;
+  }
+
+  /** Returns the number of pixels which have been painted by the flushes. */
+  public long getRepaintedPixelCount() {
+    return repaintedPixelCount;
+  }
+
+  /** Resets the flush and pixel counters. */
+  public void resetCounters() {
+    flushCount = 0;
+    repaintedPixelCount = 0;
+  }
+}
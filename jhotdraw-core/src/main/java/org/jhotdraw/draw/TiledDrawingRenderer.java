@@ -0,0 +1,559 @@
+/*
+ * @(#)TiledDrawingRenderer.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw;
+
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * Renders a drawing of a {@link DefaultDrawingView} in fixed-size tiles on a pool of worker
+ * threads.
+ *
+ * <p>The tiles form a grid in scaled drawing coordinates, so that panning the view does not
+ * invalidate them. Rendered tiles are cached by scale factor and tile coordinate; each tile
+ * remembers the drawing revision it has been rendered at, and the revision at which it has last
+ * been invalidated. Stale tiles keep their previous image until a fresh one is available. Tiles
+ * which have never been rendered are first rendered at a quarter of the resolution, and then at
+ * full resolution.
+ *
+ * <p>A job renders the figures which intersect its tile. For a {@link QuadTreeDrawing}, these
+ * figures are found with the spatial index of the drawing on the event dispatch thread, when the
+ * job is created. Their drawing areas are computed there as well, so that the geometry which
+ * figures cache for their drawing area is built on the event dispatch thread. For other drawings, a
+ * job renders a snapshot of the list of children, which is taken on the event dispatch thread once
+ * per revision, and skips the figures outside of its tile.
+ *
+ * <p>Figures may still update caches while they are drawn, for example the stroke or the text
+ * layout of the current scale factor. Because a figure can intersect several tiles, a worker only
+ * draws a figure while it holds the monitor of the figure, so that a figure is never drawn by two
+ * workers at the same time.
+ *
+ * <p>The figures are shared with the event dispatch thread, so the workers are paused while the
+ * drawing changes: A figure announces a change by invalidating its area before it changes, which
+ * pauses the workers until the event dispatch thread has processed the current event. A change
+ * transaction of the drawing pauses the workers until it is committed, see {@link #pause}. A worker
+ * only holds the pause lock while it draws a single figure, so the event dispatch thread does not
+ * wait for the rendering of a whole tile. A tile image is only accepted if the tile has not been
+ * invalidated since rendering started.
+ *
+ * <p>The worker threads are daemon threads, which terminate when they have been idle for a few
+ * seconds.
+ *
+ * <p>All methods must be called on the event dispatch thread.
+ */
+public class TiledDrawingRenderer {
+
+  /** The width and height of a tile in view pixels. */
+  public static final int TILE_SIZE = 256;
+
+  /** The ratio between the size of a full resolution tile and the size of a preview tile. */
+  private static final int PREVIEW_REDUCTION = 4;
+
+  /** The number of seconds after which an idle worker thread terminates. */
+  private static final long WORKER_KEEP_ALIVE_SECONDS = 5;
+
+  private static final ThreadPoolExecutor WORKERS =
+      new ThreadPoolExecutor(
+          Runtime.getRuntime().availableProcessors(),
+          Runtime.getRuntime().availableProcessors(),
+          WORKER_KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS,
+          new LinkedBlockingQueue<>(),
+          new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+              Thread t = new Thread(r, "TiledDrawingRenderer-" + count.incrementAndGet());
+              t.setDaemon(true);
+              t.setPriority(Thread.NORM_PRIORITY - 1);
+              return t;
+            }
+          });
+
+  static {
+    WORKERS.allowCoreThreadTimeOut(true);
+  }
+
+  private final DefaultDrawingView view;
+
+  /** The cached tiles in access order. */
+  private final LinkedHashMap<TileKey, Tile> tiles =
+      new LinkedHashMap<TileKey, Tile>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<TileKey, Tile> eldest) {
+          if (size() > maxTileCount) {
+            eldest.getValue().cancel();
+            return true;
+          }
+          return false;
+        }
+      };
+
+  private int maxTileCount = 256;
+
+  /** The drawing revision. Is incremented on each invalidation. */
+  private long revision;
+
+  private double paintedScaleFactor = Double.NaN;
+
+  /** The children of the drawing from back to front at {@link #snapshotRevision}. */
+  private Figure[] snapshot;
+
+  private long snapshotRevision = -1;
+
+  /**
+   * The workers hold the read lock while they draw a figure. The event dispatch thread holds the
+   * write lock while the workers are paused.
+   */
+  private final ReentrantReadWriteLock pauseLock = new ReentrantReadWriteLock();
+
+  /** The number of calls to {@link #pause} which have not been resumed yet. */
+  private int pauseCount;
+
+  /** Whether the workers have been paused until the current event has been processed. */
+  private boolean isPausedUntilIdle;
+
+  /** Is incremented by {@link #clear}, so that a pending resume does not resume a later pause. */
+  private int pauseGeneration;
+
+  public TiledDrawingRenderer(DefaultDrawingView view) {
+    this.view = view;
+  }
+
+  /**
+   * Sets the maximal number of cached tiles. A tile with full resolution uses {@code 4 *
+   * TILE_SIZE * TILE_SIZE} bytes. The value should be larger than the number of tiles needed to
+   * cover the view.
+   */
+  public void setMaxTileCount(int newValue) {
+    maxTileCount = Math.max(1, newValue);
+  }
+
+  public int getMaxTileCount() {
+    return maxTileCount;
+  }
+
+  /**
+   * Draws the tiles which intersect the clip bounds of the graphics, and schedules the rendering
+   * of tiles which are missing or stale.
+   *
+   * @param g the graphics in view coordinates
+   * @param translation the view translation
+   * @param scaleFactor the view scale factor
+   */
+  public void paint(Graphics2D g, Point translation, double scaleFactor) {
+    Drawing drawing = view.getDrawing();
+    if (drawing == null) {
+      return;
+    }
+    if (scaleFactor != paintedScaleFactor) {
+      // Tiles of other scale factors are no longer visible. We keep their images for zooming
+      // back, but we do not render them anymore.
+      for (Tile tile : tiles.values()) {
+        tile.cancel();
+      }
+      paintedScaleFactor = scaleFactor;
+    }
+    Rectangle clip = g.getClipBounds();
+    if (clip == null) {
+      clip = new Rectangle(0, 0, view.getWidth(), view.getHeight());
+    }
+    int tx0 = Math.floorDiv(clip.x + translation.x, TILE_SIZE);
+    int ty0 = Math.floorDiv(clip.y + translation.y, TILE_SIZE);
+    int tx1 = Math.floorDiv(clip.x + clip.width - 1 + translation.x, TILE_SIZE);
+    int ty1 = Math.floorDiv(clip.y + clip.height - 1 + translation.y, TILE_SIZE);
+    Object oldInterpolation = g.getRenderingHint(RenderingHints.KEY_INTERPOLATION);
+    g.setRenderingHint(
+        RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+    for (int ty = ty0; ty <= ty1; ty++) {
+      for (int tx = tx0; tx <= tx1; tx++) {
+        TileKey key = new TileKey(scaleFactor, tx, ty);
+        Tile tile = tiles.get(key);
+        if (tile == null) {
+          tile = new Tile(key);
+          tiles.put(key, tile);
+        }
+        if (!tile.isFresh() && tile.job == null) {
+          if (tile.image == null && tile.previewJob == null) {
+            tile.previewJob = createJob(tile, drawing, false);
+            WORKERS.execute(tile.previewJob);
+          }
+          tile.job = createJob(tile, drawing, true);
+          WORKERS.execute(tile.job);
+        }
+        if (tile.image != null) {
+          g.drawImage(
+              tile.image,
+              tx * TILE_SIZE - translation.x,
+              ty * TILE_SIZE - translation.y,
+              TILE_SIZE,
+              TILE_SIZE,
+              null);
+        }
+      }
+    }
+    if (oldInterpolation != null) {
+      g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, oldInterpolation);
+    }
+  }
+
+  /**
+   * Marks all cached tiles which intersect the specified area as stale.
+   *
+   * @param r an area in drawing coordinates
+   */
+  public void invalidate(Rectangle2D.Double r) {
+    pauseUntilIdle();
+    revision++;
+    for (Tile tile : tiles.values()) {
+      double scale = tile.key.scale;
+      // Grow the area by two pixels, like DefaultDrawingView.repaintDrawingArea does.
+      double x0 = r.x * scale - 2;
+      double y0 = r.y * scale - 2;
+      double x1 = (r.x + r.width) * scale + 2;
+      double y1 = (r.y + r.height) * scale + 2;
+      double tileX = (double) tile.key.x * TILE_SIZE;
+      double tileY = (double) tile.key.y * TILE_SIZE;
+      if (x0 < tileX + TILE_SIZE && x1 > tileX && y0 < tileY + TILE_SIZE && y1 > tileY) {
+        tile.invalidate(revision);
+      }
+    }
+  }
+
+  /** Marks all cached tiles as stale. */
+  public void invalidate() {
+    pauseUntilIdle();
+    revision++;
+    for (Tile tile : tiles.values()) {
+      tile.invalidate(revision);
+    }
+  }
+
+  /**
+   * Cancels all pending renderings and removes all tiles from the cache. Resumes the workers, if
+   * they have been paused.
+   */
+  public void clear() {
+    for (Tile tile : tiles.values()) {
+      tile.cancel();
+    }
+    tiles.clear();
+    snapshot = null;
+    pauseGeneration++;
+    isPausedUntilIdle = false;
+    if (pauseCount > 0) {
+      pauseCount = 0;
+      pauseLock.writeLock().unlock();
+    }
+  }
+
+  /**
+   * Pauses the workers until {@link #resume} is called. Waits until no worker is drawing a figure.
+   * Calls to this method nest.
+   *
+   * <p>The drawing view pauses the workers while a change transaction of the drawing is in
+   * progress, because the figures do not announce their changes before the transaction is
+   * committed.
+   */
+  public void pause() {
+    if (pauseCount++ == 0) {
+      pauseLock.writeLock().lock();
+    }
+  }
+
+  /** Resumes the workers after a call to {@link #pause}. */
+  public void resume() {
+    if (pauseCount > 0 && --pauseCount == 0) {
+      pauseLock.writeLock().unlock();
+    }
+  }
+
+  /** Pauses the workers until the event dispatch thread has processed the current event. */
+  private void pauseUntilIdle() {
+    if (!isPausedUntilIdle) {
+      isPausedUntilIdle = true;
+      pause();
+      int generation = pauseGeneration;
+      SwingUtilities.invokeLater(
+          () -> {
+            if (generation == pauseGeneration) {
+              isPausedUntilIdle = false;
+              resume();
+            }
+          });
+    }
+  }
+
+  /** Creates a job which renders the specified tile at the current revision. */
+  private Job createJob(Tile tile, Drawing drawing, boolean highResolution) {
+    if (!(drawing instanceof QuadTreeDrawing)) {
+      return new Job(tile, drawing, getSnapshot(drawing), false, revision, highResolution);
+    }
+    TileKey key = tile.key;
+    double s = TILE_SIZE / key.scale;
+    Rectangle2D.Double clip = new Rectangle2D.Double(key.x * s, key.y * s, s, s);
+    // The spatial index holds the drawing areas at scale factor 1. We grow the query by two
+    // pixels, like invalidate does, and then test the drawing areas at the scale of the job.
+    double grow = 2 / key.scale;
+    Rectangle2D.Double area =
+        new Rectangle2D.Double(clip.x - grow, clip.y - grow, s + 2 * grow, s + 2 * grow);
+    double drawingScale = highResolution ? key.scale : key.scale / PREVIEW_REDUCTION;
+    List<Figure> figures = new ArrayList<>();
+    for (Figure f : drawing.sort(drawing.findFigures(area))) {
+      if (f.isVisible() && f.getDrawingArea(drawingScale).intersects(clip)) {
+        figures.add(f);
+      }
+    }
+    return new Job(
+        tile, drawing, figures.toArray(new Figure[figures.size()]), true, revision, highResolution);
+  }
+
+  /** Returns the children of the drawing from back to front at the current revision. */
+  private Figure[] getSnapshot(Drawing drawing) {
+    if (snapshot == null || snapshotRevision != revision) {
+      List<Figure> frontToBack = drawing.getFiguresFrontToBack();
+      int n = frontToBack.size();
+      snapshot = new Figure[n];
+      for (Figure f : frontToBack) {
+        snapshot[--n] = f;
+      }
+      snapshotRevision = revision;
+    }
+    return snapshot;
+  }
+
+  /** Returns the image of the specified tile, or null if the tile has no image. For testing. */
+  BufferedImage getTileImage(double scaleFactor, int tx, int ty) {
+    Tile tile = tiles.get(new TileKey(scaleFactor, tx, ty));
+    return (tile == null) ? null : tile.image;
+  }
+
+  /** Accepts the result of a job. Is called on the event dispatch thread. */
+  private void accept(Job job, BufferedImage image) {
+    Tile tile = job.tile;
+    if (job.highResolution) {
+      if (tile.job != job) {
+        return;
+      }
+      tile.job = null;
+      if (image == null) {
+        // The rendering failed. We try again on the next paint.
+        return;
+      }
+      tile.image = image;
+      tile.highResolution = true;
+      tile.renderedRevision = job.revision;
+    } else {
+      if (tile.previewJob != job) {
+        return;
+      }
+      tile.previewJob = null;
+      if (image == null || tile.highResolution) {
+        return;
+      }
+      tile.image = image;
+      tile.renderedRevision = job.revision;
+    }
+    if (tiles.get(tile.key) == tile
+        && tile.key.scale == view.getScaleFactor()
+        && view.getDrawing() == job.drawing) {
+      double s = tile.key.scale;
+      view.repaint(
+          view.drawingToView(
+              new Rectangle2D.Double(
+                  tile.key.x * TILE_SIZE / s,
+                  tile.key.y * TILE_SIZE / s,
+                  TILE_SIZE / s,
+                  TILE_SIZE / s)));
+    }
+  }
+
+  private static class TileKey {
+
+    private final double scale;
+    private final int x;
+    private final int y;
+
+    TileKey(double scale, int x, int y) {
+      this.scale = scale;
+      this.x = x;
+      this.y = y;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof TileKey)) {
+        return false;
+      }
+      TileKey that = (TileKey) o;
+      return that.x == x && that.y == y && Double.compare(that.scale, scale) == 0;
+    }
+
+    @Override
+    public int hashCode() {
+      return (Double.hashCode(scale) * 31 + x) * 31 + y;
+    }
+  }
+
+  /** A cached tile. Is confined to the event dispatch thread. */
+  private static class Tile {
+
+    private final TileKey key;
+    private BufferedImage image;
+    private boolean highResolution;
+
+    /** The revision at which the image has been rendered. */
+    private long renderedRevision = -1;
+
+    /** The revision at which the tile has last been invalidated. */
+    private long invalidRevision;
+
+    /** The pending full resolution job. */
+    private Job job;
+
+    /** The pending preview job. */
+    private Job previewJob;
+
+    Tile(TileKey key) {
+      this.key = key;
+    }
+
+    boolean isFresh() {
+      return highResolution && renderedRevision >= invalidRevision;
+    }
+
+    void invalidate(long revision) {
+      invalidRevision = revision;
+      if (job != null) {
+        job.cancelled = true;
+        job = null;
+      }
+    }
+
+    void cancel() {
+      if (job != null) {
+        job.cancelled = true;
+        job = null;
+      }
+      if (previewJob != null) {
+        previewJob.cancelled = true;
+        previewJob = null;
+      }
+    }
+  }
+
+  /** Renders a tile on a worker thread. */
+  private class Job implements Runnable {
+
+    private final Tile tile;
+    private final Drawing drawing;
+    private final Figure[] figures;
+
+    /** Whether the figures are known to intersect the tile. */
+    private final boolean isClipped;
+
+    private final long revision;
+    private final boolean highResolution;
+    private final double scale;
+    private final int x;
+    private final int y;
+    private volatile boolean cancelled;
+
+    Job(
+        Tile tile,
+        Drawing drawing,
+        Figure[] figures,
+        boolean isClipped,
+        long revision,
+        boolean highResolution) {
+      this.tile = tile;
+      this.drawing = drawing;
+      this.figures = figures;
+      this.isClipped = isClipped;
+      this.revision = revision;
+      this.highResolution = highResolution;
+      this.scale = tile.key.scale;
+      this.x = tile.key.x;
+      this.y = tile.key.y;
+    }
+
+    @Override
+    public void run() {
+      if (cancelled) {
+        return;
+      }
+      BufferedImage image = null;
+      try {
+        image = render();
+      } finally {
+        // If the rendering has failed, the tile is rendered again on the next paint. The exception
+        // is reported by the worker thread.
+        BufferedImage result = image;
+        if (!cancelled) {
+          SwingUtilities.invokeLater(() -> accept(this, result));
+        }
+      }
+    }
+
+    private BufferedImage render() {
+      int reduction = highResolution ? 1 : PREVIEW_REDUCTION;
+      int size = TILE_SIZE / reduction;
+      BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+      Graphics2D g = image.createGraphics();
+      try {
+        view.setViewRenderingHints(g);
+        g.scale(1.0 / reduction, 1.0 / reduction);
+        g.translate(-x * TILE_SIZE, -y * TILE_SIZE);
+        g.scale(scale, scale);
+        double s = TILE_SIZE / scale;
+        Rectangle2D.Double clip = new Rectangle2D.Double(x * s, y * s, s, s);
+        g.clip(clip);
+        double drawingScale = AttributeKeys.getScaleFactorFromGraphics(g);
+        Lock lock = pauseLock.readLock();
+        for (Figure f : figures) {
+          lock.lock();
+          try {
+            if (cancelled) {
+              return null;
+            }
+            synchronized (f) {
+              if (isClipped || f.isVisible() && f.getDrawingArea(drawingScale).intersects(clip)) {
+                f.draw(g);
+              }
+            }
+          } finally {
+            lock.unlock();
+          }
+        }
+        return image;
+      } finally {
+        g.dispose();
+      }
+    }
+  }
+}
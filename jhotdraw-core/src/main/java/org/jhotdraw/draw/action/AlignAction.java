@@ -44,7 +44,12 @@ public class AlignAction extends AbstractSelectedAction {
   public void actionPerformed(java.awt.event.ActionEvent e) {
     CompositeEdit edit = new CompositeEdit(labels.getString("edit.align.text"));
     fireUndoableEditHappened(edit);
-    alignFigures(getView().getSelectedFigures(), getSelectionBounds());
+    getDrawing().beginChanges();
+    try {
+      alignFigures(getView().getSelectedFigures(), getSelectionBounds());
+    } finally {
+      getDrawing().commitChanges();
+    }
     fireUndoableEditHappened(edit);
   }
 
@@ -82,15 +82,21 @@ public class AttributeAction extends AbstractSelectedAction {
     for (Map.Entry<AttributeKey<?>, Object> entry : a.entrySet()) {
       getEditor().setDefaultAttribute((AttributeKey<Object>) entry.getKey(), entry.getValue());
     }
+    final Drawing drawing = getDrawing();
     final ArrayList<Figure> selectedFigures = new ArrayList<>(figures);
     final ArrayList<Object> restoreData = new ArrayList<>(selectedFigures.size());
-    for (Figure figure : selectedFigures) {
-      restoreData.add(figure.attr().getAttributesRestoreData());
-      figure.willChange();
-      for (Map.Entry<AttributeKey<?>, Object> entry : a.entrySet()) {
-        figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+    drawing.beginChanges();
+    try {
+      for (Figure figure : selectedFigures) {
+        restoreData.add(figure.attr().getAttributesRestoreData());
+        figure.willChange();
+        for (Map.Entry<AttributeKey<?>, Object> entry : a.entrySet()) {
+          figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+        }
+        figure.changed();
       }
-      figure.changed();
+    } finally {
+      drawing.commitChanges();
     }
     UndoableEdit edit =
         new AbstractUndoableEdit() {
@@ -113,27 +119,37 @@ public class AttributeAction extends AbstractSelectedAction {
           public void undo() {
             super.undo();
             Iterator<Object> iRestore = restoreData.iterator();
-            for (Figure figure : selectedFigures) {
-              figure.willChange();
-              figure.attr().restoreAttributesTo(iRestore.next());
-              figure.changed();
+            drawing.beginChanges();
+            try {
+              for (Figure figure : selectedFigures) {
+                figure.willChange();
+                figure.attr().restoreAttributesTo(iRestore.next());
+                figure.changed();
+              }
+            } finally {
+              drawing.commitChanges();
             }
           }
 
           @Override
           public void redo() {
             super.redo();
-            for (Figure figure : selectedFigures) {
-              // restoreData.add(figure.getAttributesRestoreData());
-              figure.willChange();
-              for (Map.Entry<AttributeKey<?>, Object> entry : a.entrySet()) {
-                figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+            drawing.beginChanges();
+            try {
+              for (Figure figure : selectedFigures) {
+                // restoreData.add(figure.getAttributesRestoreData());
+                figure.willChange();
+                for (Map.Entry<AttributeKey<?>, Object> entry : a.entrySet()) {
+                  figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+                }
+                figure.changed();
               }
-              figure.changed();
+            } finally {
+              drawing.commitChanges();
             }
           }
         };
-    getDrawing().fireUndoableEditHappened(edit);
+    drawing.fireUndoableEditHappened(edit);
   }
 
   @Override
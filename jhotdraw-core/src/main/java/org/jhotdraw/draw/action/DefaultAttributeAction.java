@@ -98,15 +98,20 @@ public class DefaultAttributeAction extends AbstractSelectedAction {
     CompositeEdit edit = new CompositeEdit("attributes");
     fireUndoableEditHappened(edit);
     DrawingEditor editor = getEditor();
-    for (Figure figure : getView().getSelectedFigures()) {
-      figure.willChange();
-      for (AttributeKey<?> key : keys) {
-        figure.attr().set((AttributeKey<Object>) key, editor.getDefaultAttribute(key));
+    getDrawing().beginChanges();
+    try {
+      for (Figure figure : getView().getSelectedFigures()) {
+        figure.willChange();
+        for (AttributeKey<?> key : keys) {
+          figure.attr().set((AttributeKey<Object>) key, editor.getDefaultAttribute(key));
+        }
+        for (Map.Entry<AttributeKey<?>, Object> entry : fixedAttributes.entrySet()) {
+          figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
+        }
+        figure.changed();
       }
-      for (Map.Entry<AttributeKey<?>, Object> entry : fixedAttributes.entrySet()) {
-        figure.attr().set((AttributeKey<Object>) entry.getKey(), entry.getValue());
-      }
-      figure.changed();
+    } finally {
+      getDrawing().commitChanges();
     }
     fireUndoableEditHappened(edit);
   }
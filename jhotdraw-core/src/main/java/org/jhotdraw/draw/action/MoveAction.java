@@ -34,15 +34,20 @@ public abstract class MoveAction extends AbstractSelectedAction {
     AffineTransform tx = new AffineTransform();
     tx.translate(dx, dy);
     HashSet<Figure> transformedFigures = new HashSet<>();
-    for (Figure f : getView().getSelectedFigures()) {
-      if (f.isTransformable()) {
-        transformedFigures.add(f);
-        f.willChange();
-        f.transform(tx);
-        f.changed();
+    getDrawing().beginChanges();
+    try {
+      for (Figure f : getView().getSelectedFigures()) {
+        if (f.isTransformable()) {
+          transformedFigures.add(f);
+          f.willChange();
+          f.transform(tx);
+          f.changed();
+        }
       }
+    } finally {
+      getDrawing().commitChanges();
     }
-    fireUndoableEditHappened(new TransformEdit(transformedFigures, tx));
+    fireUndoableEditHappened(new TransformEdit(getDrawing(), transformedFigures, tx));
   }
 
   public static class East extends MoveAction {
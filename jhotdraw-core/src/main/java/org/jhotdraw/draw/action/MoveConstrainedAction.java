@@ -72,13 +72,18 @@ public abstract class MoveConstrainedAction extends AbstractSelectedAction {
       }
       AffineTransform tx = new AffineTransform();
       tx.translate(r.x - p0.x, r.y - p0.y);
-      for (Figure f : transformedFigures) {
-        f.willChange();
-        f.transform(tx);
-        f.changed();
+      getDrawing().beginChanges();
+      try {
+        for (Figure f : transformedFigures) {
+          f.willChange();
+          f.transform(tx);
+          f.changed();
+        }
+      } finally {
+        getDrawing().commitChanges();
       }
       CompositeEdit edit;
-      fireUndoableEditHappened(new TransformEdit(transformedFigures, tx));
+      fireUndoableEditHappened(new TransformEdit(getDrawing(), transformedFigures, tx));
     }
   }
 
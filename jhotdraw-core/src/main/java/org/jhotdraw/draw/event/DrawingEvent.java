@@ -33,6 +33,7 @@ public class DrawingEvent extends EventObject {
   private Object newValue;
   private Figure figure;
   private int figureIndex;
+  private Set<Figure> changedFigures = Collections.emptySet();
 
   /**
    * Constructs an event for the given source Figure.
@@ -44,6 +45,19 @@ public class DrawingEvent extends EventObject {
     this.invalidatedArea = invalidatedArea;
   }
 
+  /**
+   * Constructs an event for the commit of a change transaction.
+   *
+   * @param invalidatedArea The union of the areas which have been invalidated in the transaction.
+   * @param changedFigures The figures which have changed in the transaction.
+   */
+  public DrawingEvent(
+      Drawing source, Rectangle2D.Double invalidatedArea, Set<Figure> changedFigures) {
+    super(source);
+    this.invalidatedArea = invalidatedArea;
+    this.changedFigures = changedFigures;
+  }
+
   public DrawingEvent(Drawing source, int figureIndex, Figure figure) {
     super(source);
     this.figure = figure;
@@ -76,6 +90,16 @@ public class DrawingEvent extends EventObject {
     return invalidatedArea;
   }
 
+  /**
+   * Gets the figures which have changed in a change transaction. Returns an empty set, if the event
+   * has not been fired by the commit of a transaction.
+   *
+   * @see Drawing#beginChanges
+   */
+  public Set<Figure> getChangedFigures() {
+    return changedFigures;
+  }
+
   public AttributeKey<?> getAttribute() {
     return attribute;
   }
@@ -29,4 +29,21 @@ public interface DrawingListener extends EventListener {
   void drawingChanged(DrawingEvent e);
 
   void drawingAttributeChanged(DrawingEvent e);
+
+  /**
+   * Is called when the outermost change transaction of the drawing begins. The figures of the
+   * drawing may change without notifying the listeners of the drawing until the transaction has
+   * been committed.
+   *
+   * @see org.jhotdraw.draw.Drawing#beginChanges
+   */
+  default void changesBegun(DrawingEvent e) {}
+
+  /**
+   * Is called when the outermost change transaction of the drawing has been committed, after the
+   * {@code drawingChanged} event for the changes of the transaction.
+   *
+   * @see org.jhotdraw.draw.Drawing#commitChanges
+   */
+  default void changesCommitted(DrawingEvent e) {}
 }
@@ -23,6 +23,10 @@ import org.jhotdraw.draw.figure.Figure;
  * observes area invalidations of its drawing object. Subject: {@link Figure}; Observer: {@link
  * FigureListener}; Event: {@link FigureEvent}; Concrete Observer: {@link
  * org.jhotdraw.draw.CompositeFigure}, {@link DrawingView}. <hr>
+ *
+ * <p>Figures may reuse the events which they send to {@link FigureListener#areaInvalidated} and
+ * {@link FigureListener#figureChanged}. A listener must not keep such an event after it has
+ * returned; it may keep the invalidated area, though.
  */
 public class FigureEvent extends EventObject {
 
@@ -60,6 +64,14 @@ public class FigureEvent extends EventObject {
     return invalidatedArea;
   }
 
+  /**
+   * Sets the bounds of the invalidated area on the drawing. This method is used by figures which
+   * reuse their events.
+   */
+  public void setInvalidatedArea(Rectangle2D.Double invalidatedArea) {
+    this.invalidatedArea = invalidatedArea;
+  }
+
   public AttributeKey<?> getAttribute() {
     return attribute;
   }
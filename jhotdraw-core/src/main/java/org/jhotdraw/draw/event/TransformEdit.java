@@ -15,6 +15,8 @@ import javax.swing.undo.AbstractUndoableEdit;
 import javax.swing.undo.CannotRedoException;
 import javax.swing.undo.CannotUndoException;
 import javax.swing.undo.UndoableEdit;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.ConnectionUpdateScheduler;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.util.ResourceBundleUtil;
 
@@ -31,16 +33,39 @@ import org.jhotdraw.util.ResourceBundleUtil;
 public class TransformEdit extends AbstractUndoableEdit {
 
   private static final long serialVersionUID = 1L;
+  private Drawing drawing;
   private Collection<Figure> figures;
   private AffineTransform tx;
 
   public TransformEdit(Figure figure, AffineTransform tx) {
+    this(null, figure, tx);
+  }
+
+  public TransformEdit(Collection<Figure> figures, AffineTransform tx) {
+    this(null, figures, tx);
+  }
+
+  /**
+   * Creates a new instance.
+   *
+   * @param drawing The drawing of the figure. Undo and redo transform the figure in a change
+   *     transaction of this drawing. Can be null.
+   */
+  public TransformEdit(Drawing drawing, Figure figure, AffineTransform tx) {
+    this.drawing = drawing;
     figures = new ArrayList<>();
     figures.add(figure);
     this.tx = (AffineTransform) tx.clone();
   }
 
-  public TransformEdit(Collection<Figure> figures, AffineTransform tx) {
+  /**
+   * Creates a new instance.
+   *
+   * @param drawing The drawing of the figures. Undo and redo transform the figures in a change
+   *     transaction of this drawing. Can be null.
+   */
+  public TransformEdit(Drawing drawing, Collection<Figure> figures, AffineTransform tx) {
+    this.drawing = drawing;
     this.figures = figures;
     this.tx = (AffineTransform) tx.clone();
   }
@@ -80,25 +105,41 @@ public class TransformEdit extends AbstractUndoableEdit {
   @Override
   public void redo() throws CannotRedoException {
     super.redo();
-    for (Figure f : figures) {
-      f.willChange();
-      f.transform(tx);
-      f.changed();
-    }
+    transformFigures(tx);
   }
 
   @Override
   public void undo() throws CannotUndoException {
     super.undo();
     try {
-      AffineTransform inverse = tx.createInverse();
+      transformFigures(tx.createInverse());
+    } catch (NoninvertibleTransformException e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * Transforms the figures in a change transaction of the drawing. If this edit has no drawing,
+   * only the updates of the connections are batched.
+   */
+  private void transformFigures(AffineTransform transform) {
+    if (drawing != null) {
+      drawing.beginChanges();
+    } else {
+      ConnectionUpdateScheduler.begin();
+    }
+    try {
       for (Figure f : figures) {
         f.willChange();
-        f.transform(inverse);
+        f.transform(transform);
         f.changed();
       }
-    } catch (NoninvertibleTransformException e) {
-      e.printStackTrace();
+    } finally {
+      if (drawing != null) {
+        drawing.commitChanges();
+      } else {
+        ConnectionUpdateScheduler.end();
+      }
     }
   }
 
@@ -9,7 +9,6 @@ package org.jhotdraw.draw.figure;
 
 import static org.jhotdraw.draw.AttributeKeys.*;
 
-import java.awt.BasicStroke;
 import java.awt.Graphics2D;
 import java.awt.Stroke;
 import java.awt.geom.AffineTransform;
@@ -705,11 +704,7 @@ public abstract class AbstractAttributedCompositeFigure extends AbstractAttribut
 
   public Rectangle2D.Double getFigureDrawBounds() {
     double width =
-        AttributeKeys.getStrokeTotalWidth(this, AttributeKeys.scaleFromContext(this)) / 2d;
-    if (attr().get(STROKE_JOIN) == BasicStroke.JOIN_MITER) {
-      width *= attr().get(STROKE_MITER_LIMIT);
-    }
-    width++;
+        AttributeKeys.getStrokeDrawBoundsGrowth(this, AttributeKeys.scaleFromContext(this));
     Rectangle2D.Double r = getBounds();
     Geom.grow(r, width, width);
     return r;
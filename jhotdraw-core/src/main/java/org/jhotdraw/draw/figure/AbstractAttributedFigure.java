@@ -23,7 +23,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
-import java.util.stream.Stream;
 import javax.swing.Action;
 import javax.swing.event.EventListenerList;
 import javax.swing.undo.UndoableEdit;
@@ -54,6 +53,12 @@ public abstract class AbstractAttributedFigure implements Figure, Cloneable {
 
   private static final long serialVersionUID = 1L;
   protected EventListenerList listenerList = new EventListenerList();
+  private FigureListenerList figureListeners = new FigureListenerList();
+
+  /** The event which is reused for area invalidations and changes, see {@link #acquireEvent}. */
+  private transient FigureEvent reusableEvent;
+
+  private transient boolean isReusableEventInUse;
   private Drawing drawing;
   private boolean isSelectable = true;
   private boolean isRemovable = true;
@@ -160,21 +165,21 @@ public abstract class AbstractAttributedFigure implements Figure, Cloneable {
     }
     that.attributes = Attributes.from(attributes, that::fireAttributeChanged);
     that.listenerList = new EventListenerList();
+    that.figureListeners = new FigureListenerList();
+    that.reusableEvent = null;
+    that.isReusableEventInUse = false;
     that.drawing = null; // Clones need to be explictly added to a drawing
     return that;
   }
 
   @Override
   public void addFigureListener(FigureListener l) {
-    if (Stream.of(listenerList.getListeners(FigureListener.class))
-        .noneMatch(listener -> listener.equals(l))) {
-      listenerList.add(FigureListener.class, l);
-    }
+    figureListeners.add(l);
   }
 
   @Override
   public void removeFigureListener(FigureListener l) {
-    listenerList.remove(FigureListener.class, l);
+    figureListeners.remove(l);
   }
 
   @Override
@@ -215,33 +220,66 @@ public abstract class AbstractAttributedFigure implements Figure, Cloneable {
   protected void fireFigureEvent(
       BiConsumer<FigureListener, FigureEvent> listenerConsumer,
       Supplier<FigureEvent> eventSupplier) {
-    FigureEvent event = null;
-    if (listenerList.getListenerCount() == 0) {
+    FigureListener[] listeners = figureListeners.getListeners();
+    if (listeners.length == 0) {
       return;
     }
-    for (FigureListener listener : listenerList.getListeners(FigureListener.class)) {
-      if (event == null) {
-        event = eventSupplier.get();
-      }
+    FigureEvent event = eventSupplier.get();
+    for (FigureListener listener : listeners) {
       listenerConsumer.accept(listener, event);
     }
   }
 
+  /**
+   * Returns the reusable event of this figure for the specified area. If the reusable event is still
+   * being dispatched, a new event is returned.
+   */
+  private FigureEvent acquireEvent(Rectangle2D.Double invalidatedArea) {
+    if (isReusableEventInUse) {
+      return new FigureEvent(this, invalidatedArea);
+    }
+    if (reusableEvent == null) {
+      reusableEvent = new FigureEvent(this, invalidatedArea);
+    } else {
+      reusableEvent.setInvalidatedArea(invalidatedArea);
+    }
+    isReusableEventInUse = true;
+    return reusableEvent;
+  }
+
+  private void releaseEvent(FigureEvent event) {
+    if (event == reusableEvent) {
+      event.setInvalidatedArea(null);
+      isReusableEventInUse = false;
+    }
+  }
+
   /** Notify all listenerList that have registered interest for notification on this event type. */
   public void fireAreaInvalidated() {
-    fireAreaInvalidated(getDrawingArea());
+    if (!figureListeners.isEmpty()) {
+      fireAreaInvalidated(getDrawingArea());
+    }
   }
 
   /** Notify all listenerList that have registered interest for notification on this event type. */
   protected void fireAreaInvalidated(Rectangle2D.Double invalidatedArea) {
-    fireFigureEvent(
-        (listener, event) -> listener.areaInvalidated(event),
-        () -> new FigureEvent(this, invalidatedArea));
+    FigureListener[] listeners = figureListeners.getListeners();
+    if (listeners.length == 0) {
+      return;
+    }
+    FigureEvent event = acquireEvent(invalidatedArea);
+    try {
+      for (FigureListener listener : listeners) {
+        listener.areaInvalidated(event);
+      }
+    } finally {
+      releaseEvent(event);
+    }
   }
 
   /** Notify all listenerList that have registered interest for notification on this event type. */
   protected void fireAreaInvalidated(FigureEvent event) {
-    for (FigureListener listener : listenerList.getListeners(FigureListener.class)) {
+    for (FigureListener listener : figureListeners.getListeners()) {
       listener.areaInvalidated(event);
     }
   }
@@ -268,18 +306,31 @@ public abstract class AbstractAttributedFigure implements Figure, Cloneable {
   }
 
   public void fireFigureChanged() {
-    fireFigureChanged(getDrawingArea());
+    if (!figureListeners.isEmpty()) {
+      fireFigureChanged(getDrawingArea());
+    }
   }
 
   /** Notify all listenerList that have registered interest for notification on this event type. */
   protected void fireFigureChanged(Rectangle2D.Double changedArea) {
-    fireFigureEvent(
-        (listener, event) -> listener.figureChanged(event),
-        () -> new FigureEvent(this, changedArea));
+    FigureListener[] listeners = figureListeners.getListeners();
+    if (listeners.length == 0) {
+      return;
+    }
+    FigureEvent event = acquireEvent(changedArea);
+    try {
+      for (FigureListener listener : listeners) {
+        listener.figureChanged(event);
+      }
+    } finally {
+      releaseEvent(event);
+    }
   }
 
   protected void fireFigureChanged(FigureEvent event) {
-    fireFigureEvent((listener, evt) -> listener.figureChanged(evt), () -> event);
+    for (FigureListener listener : figureListeners.getListeners()) {
+      listener.figureChanged(event);
+    }
   }
 
   /** Notify all listenerList that have registered interest for notification on this event type. */
@@ -0,0 +1,159 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Interns attribute styles, so that figures with equal attributes share the storage of their
+ * attribute values.
+ *
+ * <p>A style is the set of attribute values of an {@link Attributes} instance. Interning an
+ * instance replaces its storage by the storage of an equal style which has been interned before.
+ * The shared storage is copied when one of the instances is changed.
+ *
+ * <p>Only attributes whose values are all immutable are interned. Values such as gradients,
+ * transforms and arrays are changed in place by some figures, which would affect all figures that
+ * share them. Attributes with such values keep their own storage, and are not counted.
+ *
+ * <p>Input formats intern the figures which they read. The table reports how many instances have
+ * been interned, and how many distinct styles they have.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class AttributeStyleTable {
+
+  /** Value types which are immutable, in addition to enums, colors and fonts. */
+  private static final Set<Class<?>> IMMUTABLE_TYPES =
+      Set.of(
+          String.class,
+          Boolean.class,
+          Character.class,
+          Byte.class,
+          Short.class,
+          Integer.class,
+          Long.class,
+          Float.class,
+          Double.class);
+
+  private final HashMap<Style, Style> styles = new HashMap<>();
+  private long internCount;
+
+  /** Interns the attributes of a figure, and of all its children. */
+  public void intern(Figure f) {
+    intern(f.attr());
+    if (f instanceof CompositeFigure) {
+      for (Figure child : ((CompositeFigure) f).getChildren()) {
+        intern(child);
+      }
+    }
+  }
+
+  /** Interns the specified attributes, unless one of their values may be mutable. */
+  public synchronized void intern(Attributes attr) {
+    for (Object value : attr.getValues()) {
+      if (!isImmutable(value)) {
+        return;
+      }
+    }
+    Style style = new Style(attr.getPresentBits(), attr.getValues());
+    Style shared = styles.putIfAbsent(style, style);
+    if (shared == null) {
+      shared = style;
+    }
+    attr.share(shared.present, shared.values);
+    internCount++;
+  }
+
+  private static boolean isImmutable(Object value) {
+    return value == null
+        || IMMUTABLE_TYPES.contains(value.getClass())
+        || value instanceof Enum
+        || value instanceof Color
+        || value instanceof Font;
+  }
+
+  /** Returns the number of attributes instances which have been interned. */
+  public synchronized long getInternCount() {
+    return internCount;
+  }
+
+  /** Returns the number of distinct styles. */
+  public synchronized int getStyleCount() {
+    return styles.size();
+  }
+
+  /**
+   * Returns the deduplication ratio: the number of interned attributes instances per distinct
+   * style. Returns 1 if nothing has been interned.
+   */
+  public synchronized double getDeduplicationRatio() {
+    return styles.isEmpty() ? 1d : internCount / (double) styles.size();
+  }
+
+  /** Removes all styles, and resets the counters. */
+  public synchronized void clear() {
+    styles.clear();
+    internCount = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return "AttributeStyleTable{"
+        + internCount
+        + " attributes, "
+        + styles.size()
+        + " styles, ratio "
+        + String.format("%.2f", getDeduplicationRatio())
+        + "}";
+  }
+
+  private static final class Style {
+
+    private final long[] present;
+    private final Object[] values;
+    private final int hash;
+
+    Style(long[] present, Object[] values) {
+      this.present = present;
+      this.values = values;
+      this.hash = Arrays.hashCode(present) * 31 + Arrays.deepHashCode(values);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Style)) {
+        return false;
+      }
+      Style that = (Style) o;
+      return hash == that.hash
+          && Arrays.equals(present, that.present)
+          && Arrays.deepEquals(values, that.values);
+    }
+  }
+}
@@ -20,21 +20,52 @@ package org.jhotdraw.draw.figure;
 
 import static java.util.stream.Collectors.toList;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.Supplier;
 import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
 
-/** implementation of Attribute storage and processing. */
+/**
+ * implementation of Attribute storage and processing.
+ *
+ * <p>The values are stored in an array, in ascending order of the {@linkplain
+ * AttributeKey#getOrdinal ordinals} of their keys. A bitmap holds the ordinals of the keys which
+ * have a value, so that the index of a value is the number of bits set before its ordinal.
+ * Attributes which have not been set take up no space; their default value is held by the key.
+ *
+ * <p>The arrays can be shared with other instances, see {@link #from} and {@link
+ * AttributeStyleTable}. Shared arrays are never changed; they are copied on the first change.
+ */
 public final class Attributes {
 
-  private HashMap<AttributeKey<?>, Object> attributes = new HashMap<>();
+  private static final long[] NO_BITS = new long[0];
+  private static final Object[] NO_VALUES = new Object[0];
+
+  /** The ordinals of the attributes which have a value. */
+  private long[] present = NO_BITS;
+
+  /** The values in ascending order of the ordinals of their keys. */
+  private Object[] values = NO_VALUES;
+
+  private int size;
+
+  /** Whether the values array is shared with other instances. */
+  private boolean shared;
+
+  /** Unmodifiable view on the attributes. Is created on demand. */
+  private Map<AttributeKey<?>, Object> view;
 
   /**
    * Forbidden attributes can't be put by the put() operation. They can only be changed by put().
@@ -45,6 +76,15 @@ public final class Attributes {
 
   private Supplier<List<Attributes>> DEPENDENT;
 
+  /** Is incremented whenever an attribute is set or removed. */
+  private volatile long revision;
+
+  /**
+   * A value which has been derived from the attributes, for example a stroke. The holder of the
+   * value is responsible for checking that it is still valid, using {@link #getRevision}.
+   */
+  private volatile Object derivedValue;
+
   public Attributes() {
     this(null, null);
   }
@@ -89,8 +129,12 @@ public final class Attributes {
     }
   }
 
+  /** Returns an unmodifiable view on the attributes which have been set. */
   public Map<AttributeKey<?>, Object> getAttributes() {
-    return Collections.unmodifiableMap(attributes);
+    if (view == null) {
+      view = new AttributeMap();
+    }
+    return view;
   }
 
   /**
@@ -100,12 +144,12 @@ public final class Attributes {
   public Object getAttributesRestoreData() {
     List<Attributes> dependent = DEPENDENT.get();
     if (dependent.isEmpty()) {
-      return getAttributes();
+      return new HashMap<>(getAttributes());
     } else {
       List<Map<AttributeKey<?>, Object>> list = new ArrayList<>();
-      list.add(getAttributes());
+      list.add(new HashMap<>(getAttributes()));
       for (Attributes attr : dependent) {
-        list.add(attr.getAttributes());
+        list.add(new HashMap<>(attr.getAttributes()));
       }
       return list;
     }
@@ -122,7 +166,11 @@ public final class Attributes {
         idx++;
       }
     } else {
-      attributes.clear();
+      present = NO_BITS;
+      values = NO_VALUES;
+      shared = false;
+      size = 0;
+      revision++;
       Map<AttributeKey<?>, Object> restoreDataHashMap = (Map<AttributeKey<?>, Object>) restoreData;
       setAttributes(restoreDataHashMap);
     }
@@ -146,7 +194,11 @@ public final class Attributes {
    */
   public <T> Attributes set(final AttributeKey<T> key, final T newValue) {
     if (forbiddenAttributes == null || !forbiddenAttributes.contains(key)) {
-      T oldValue = key.put(attributes, newValue);
+      if (newValue == null && !key.isNullValueAllowed()) {
+        throw new NullPointerException("Null value not allowed for AttributeKey " + key);
+      }
+      T oldValue = put(key, newValue);
+      revision++;
       fireAttributeChanged(key, oldValue, newValue);
     }
 
@@ -161,8 +213,60 @@ public final class Attributes {
    * @return Returns the attribute value. If the Figure does not have an attribute with the
    *     specified key, returns key.getDefaultValue().
    */
+  @SuppressWarnings("unchecked")
   public <T> T get(AttributeKey<T> key) {
-    return key.get(attributes);
+    int index = indexOf(key.getOrdinal());
+    return index < 0 ? key.getDefaultValue() : (T) values[index];
+  }
+
+  /** Returns the index of the value of the attribute with the specified ordinal, or -1. */
+  private int indexOf(int ordinal) {
+    int word = ordinal >>> 6;
+    long[] bits = present;
+    if (word >= bits.length) {
+      return -1;
+    }
+    long bit = 1L << ordinal;
+    if ((bits[word] & bit) == 0) {
+      return -1;
+    }
+    int index = Long.bitCount(bits[word] & (bit - 1));
+    for (int i = 0; i < word; i++) {
+      index += Long.bitCount(bits[i]);
+    }
+    return index;
+  }
+
+  /** Sets the value of an attribute, and returns the previous value, or null. */
+  @SuppressWarnings("unchecked")
+  private <T> T put(AttributeKey<T> key, T value) {
+    int ordinal = key.getOrdinal();
+    int index = indexOf(ordinal);
+    if (index >= 0) {
+      T oldValue = (T) values[index];
+      if (shared) {
+        values = values.clone();
+        shared = false;
+      }
+      values[index] = value;
+      return oldValue;
+    }
+    int word = ordinal >>> 6;
+    long[] bits = present.length > word ? present.clone() : Arrays.copyOf(present, word + 1);
+    bits[word] |= 1L << ordinal;
+    index = Long.bitCount(bits[word] & ((1L << ordinal) - 1));
+    for (int i = 0; i < word; i++) {
+      index += Long.bitCount(bits[i]);
+    }
+    Object[] newValues = new Object[size + 1];
+    System.arraycopy(values, 0, newValues, 0, index);
+    newValues[index] = value;
+    System.arraycopy(values, index, newValues, index + 1, size - index);
+    values = newValues;
+    present = bits;
+    shared = false;
+    size++;
+    return null;
   }
 
   public static AttributeKey<?> getAttributeKey(String name) {
@@ -172,7 +276,17 @@ public final class Attributes {
   public <T> void removeAttribute(AttributeKey<T> key) {
     if (hasAttribute(key)) {
       T oldValue = get(key);
-      attributes.remove(key);
+      int index = indexOf(key.getOrdinal());
+      Object[] newValues = new Object[size - 1];
+      System.arraycopy(values, 0, newValues, 0, index);
+      System.arraycopy(values, index + 1, newValues, index, size - index - 1);
+      long[] bits = present.clone();
+      bits[key.getOrdinal() >>> 6] &= ~(1L << key.getOrdinal());
+      values = newValues;
+      present = bits;
+      shared = false;
+      size--;
+      revision++;
       fireAttributeChanged(key, oldValue, key.getDefaultValue());
     }
   }
@@ -184,7 +298,31 @@ public final class Attributes {
    * @return
    */
   public boolean hasAttribute(AttributeKey<?> key) {
-    return attributes.containsKey(key);
+    return indexOf(key.getOrdinal()) >= 0;
+  }
+
+  /**
+   * Returns the revision of the attributes. The revision changes whenever an attribute is set or
+   * removed, so that values derived from the attributes can be cached.
+   */
+  public long getRevision() {
+    return revision;
+  }
+
+  /**
+   * Returns the value which has been stored with {@link #setDerivedValue}, or null. The value may
+   * be stale; it should carry the revision it has been derived from.
+   */
+  public Object getDerivedValue() {
+    return derivedValue;
+  }
+
+  /**
+   * Stores a value which has been derived from the attributes. The value must be immutable, because
+   * it may be read by other threads.
+   */
+  public void setDerivedValue(Object newValue) {
+    derivedValue = newValue;
   }
 
   private <T> void fireAttributeChanged(AttributeKey<T> attribute, T oldValue, T newValue) {
@@ -209,7 +347,11 @@ public final class Attributes {
   public static Attributes from(
       Attributes source, AttributeListener listener, Supplier<List<Attributes>> dependent) {
     Attributes attr = new Attributes(listener, dependent);
-    attr.attributes.putAll(source.attributes);
+    attr.present = source.present;
+    attr.values = source.values;
+    attr.size = source.size;
+    attr.shared = true;
+    source.shared = true;
     if (source.forbiddenAttributes != null) {
       attr.forbiddenAttributes = new HashSet<>(source.forbiddenAttributes);
     }
@@ -220,4 +362,82 @@ public final class Attributes {
     return () ->
         dependent.get().stream().filter(f -> f != null).map(f -> f.attr()).collect(toList());
   }
+
+  long[] getPresentBits() {
+    return present;
+  }
+
+  Object[] getValues() {
+    return values;
+  }
+
+  /** Replaces the values by equal values which are shared with other instances. */
+  void share(long[] sharedPresent, Object[] sharedValues) {
+    present = sharedPresent;
+    values = sharedValues;
+    shared = true;
+  }
+
+  /** Unmodifiable map view on the attributes. */
+  private class AttributeMap extends AbstractMap<AttributeKey<?>, Object> {
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+      return (key instanceof AttributeKey) && hasAttribute((AttributeKey<?>) key);
+    }
+
+    @Override
+    public Object get(Object key) {
+      if (!(key instanceof AttributeKey)) {
+        return null;
+      }
+      int index = indexOf(((AttributeKey<?>) key).getOrdinal());
+      return index < 0 ? null : values[index];
+    }
+
+    @Override
+    public Set<Map.Entry<AttributeKey<?>, Object>> entrySet() {
+      return new AbstractSet<Map.Entry<AttributeKey<?>, Object>>() {
+        @Override
+        public int size() {
+          return size;
+        }
+
+        @Override
+        public Iterator<Map.Entry<AttributeKey<?>, Object>> iterator() {
+          return new Iterator<Map.Entry<AttributeKey<?>, Object>>() {
+            private final long[] bits = present;
+            private final Object[] vals = values;
+            private int index;
+            private int word;
+            private long remaining = bits.length == 0 ? 0 : bits[0];
+
+            @Override
+            public boolean hasNext() {
+              return index < vals.length;
+            }
+
+            @Override
+            public Map.Entry<AttributeKey<?>, Object> next() {
+              if (!hasNext()) {
+                throw new NoSuchElementException();
+              }
+              while (remaining == 0) {
+                remaining = bits[++word];
+              }
+              int ordinal = (word << 6) + Long.numberOfTrailingZeros(remaining);
+              remaining &= remaining - 1;
+              return new SimpleImmutableEntry<>(
+                  AttributeKey.getAttributeKey(ordinal), vals[index++]);
+            }
+          };
+        }
+      };
+    }
+  }
 }
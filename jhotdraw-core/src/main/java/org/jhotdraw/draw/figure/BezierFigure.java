@@ -38,6 +38,7 @@ import org.jhotdraw.draw.handle.BezierOutlineHandle;
 import org.jhotdraw.draw.handle.BezierScaleHandle;
 import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.handle.TransformHandleKit;
+import org.jhotdraw.geom.FlattenedPath;
 import org.jhotdraw.geom.Geom;
 import org.jhotdraw.geom.GrowStroke;
 import org.jhotdraw.geom.path.BezierPath;
@@ -76,6 +77,14 @@ public class BezierFigure extends AbstractAttributedFigure {
 
   private transient double cappedPathFactor;
 
+  /**
+   * The hitPath is the flattened cappedPath. We cache it to increase the speed of hit tests, which
+   * are performed on every mouse move. It depends on the factor and on the tolerance of the test.
+   */
+  private transient FlattenedPath hitPath;
+
+  private transient double hitPathFactor;
+
   /**
    * Creates an empty <code>BezierFigure</code>, for example without any <code>BezierPath.Node
    * </code>s. The BezierFigure will not draw anything, if at least two nodes are added to it. The
@@ -185,26 +194,13 @@ public class BezierFigure extends AbstractAttributedFigure {
       if (path.contains(p)) {
         return true;
       }
-      double grow = tolerance;
-      GrowStroke gs =
-          new GrowStroke(
-              grow,
-              AttributeKeys.getStrokeTotalWidth(this, scaleDenominator)
-                  * attr().get(STROKE_MITER_LIMIT));
-      if (gs.createStrokedShape(path).contains(p)) {
-        return true;
-      } else {
-        if (isClosed()) {
-          return false;
-        }
-      }
     }
-    if (!isClosed()) {
-      if (getCappedPath(scaleDenominator).outlineContains(p, tolerance)) {
-        return true;
-      }
+    if (getHitPath(scaleDenominator, tolerance).outlineContains(p.x, p.y, tolerance)) {
+      return true;
+    }
+    if (!isClosed() && path.size() > 1) {
+      BezierPath cp = getCappedPath(scaleDenominator);
       if (attr().get(START_DECORATION) != null) {
-        BezierPath cp = getCappedPath(scaleDenominator);
         Point2D.Double p1 = path.get(0, 0);
         Point2D.Double p2 = cp.get(0, 0);
         // FIXME - Check here, if caps path contains the point
@@ -213,7 +209,6 @@ public class BezierFigure extends AbstractAttributedFigure {
         }
       }
       if (attr().get(END_DECORATION) != null) {
-        BezierPath cp = getCappedPath(scaleDenominator);
         Point2D.Double p1 = path.get(path.size() - 1, 0);
         Point2D.Double p2 = cp.get(path.size() - 1, 0);
         // FIXME - Check here, if caps path contains the point
@@ -275,6 +270,7 @@ public class BezierFigure extends AbstractAttributedFigure {
     super.validate();
     path.invalidatePath();
     cappedPath = null;
+    hitPath = null;
   }
 
   /** Returns a clone of the bezier path of this figure. */
@@ -337,6 +333,7 @@ public class BezierFigure extends AbstractAttributedFigure {
     super.invalidate();
     path.invalidatePath();
     cappedPath = null;
+    hitPath = null;
   }
 
   /**
@@ -391,6 +388,20 @@ public class BezierFigure extends AbstractAttributedFigure {
     return cappedPath;
   }
 
+  /**
+   * Returns the flattened capped path, which is used for hit tests. The path is flattened with the
+   * tolerance of the hit test.
+   */
+  protected FlattenedPath getHitPath(double factor, double tolerance) {
+    FlattenedPath hp = hitPath;
+    if (hp == null || factor != hitPathFactor || tolerance != hp.getFlatness()) {
+      hp = new FlattenedPath(getCappedPath(factor), tolerance);
+      hitPath = hp;
+      hitPathFactor = factor;
+    }
+    return hp;
+  }
+
   public void layout() {}
 
   /** Adds a control point. */
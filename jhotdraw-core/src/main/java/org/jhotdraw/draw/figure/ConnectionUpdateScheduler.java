@@ -0,0 +1,114 @@
+/*
+ * @(#)ConnectionUpdateScheduler.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.figure;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Defers the updates of connections while many figures are changed together.
+ *
+ * <p>A {@link LineConnectionFigure} updates its connection whenever its start or end figure has
+ * changed. When a selection of connected figures is moved, a connection is therefore updated once
+ * for each of its moved end figures, and a figure with many connections fires an event for each of
+ * them. Between {@link #begin} and {@link #end}, the connections which are affected by a change are
+ * collected instead, and each of them is updated once, when the outermost batch ends.
+ *
+ * <p>Usage:
+ *
+ * <pre>
+ * ConnectionUpdateScheduler.begin();
+ * try {
+ *   for (Figure f : figures) {
+ *     f.willChange();
+ *     f.transform(tx);
+ *     f.changed();
+ *   }
+ * } finally {
+ *   ConnectionUpdateScheduler.end();
+ * }
+ * </pre>
+ *
+ * <p>Batches are nestable, and are confined to the thread which has begun them.
+ */
+public final class ConnectionUpdateScheduler {
+
+  private static final ThreadLocal<ConnectionUpdateScheduler> CURRENT =
+      ThreadLocal.withInitial(ConnectionUpdateScheduler::new);
+
+  private int depth;
+
+  /** The connections which must be updated, in the order in which they were affected. */
+  private final List<ConnectionFigure> pending = new ArrayList<>();
+
+  private final Set<ConnectionFigure> pendingSet =
+      Collections.newSetFromMap(new IdentityHashMap<>());
+
+  private ConnectionUpdateScheduler() {}
+
+  /** Begins a batch. Connections are not updated until the outermost batch ends. */
+  public static void begin() {
+    CURRENT.get().depth++;
+  }
+
+  /**
+   * Ends a batch. When the outermost batch ends, each connection which has been affected by a
+   * change is updated once.
+   */
+  public static void end() {
+    ConnectionUpdateScheduler scheduler = CURRENT.get();
+    if (scheduler.depth == 0) {
+      throw new IllegalStateException("end was called without a prior call to begin");
+    }
+    if (--scheduler.depth == 0) {
+      scheduler.flush();
+    }
+  }
+
+  /** Returns true, if a batch has been begun on the current thread. */
+  public static boolean isBatching() {
+    return CURRENT.get().depth > 0;
+  }
+
+  /**
+   * Schedules the update of a connection, if a batch has been begun.
+   *
+   * @return False, if no batch has been begun, and the connection must be updated immediately.
+   */
+  static boolean schedule(ConnectionFigure connection) {
+    ConnectionUpdateScheduler scheduler = CURRENT.get();
+    if (scheduler.depth == 0) {
+      return false;
+    }
+    if (scheduler.pendingSet.add(connection)) {
+      scheduler.pending.add(connection);
+    }
+    return true;
+  }
+
+  /**
+   * Updates the pending connections. The batch has ended, so that changes which are caused by the
+   * updates propagate immediately, as they do outside of a batch.
+   */
+  private void flush() {
+    if (pending.isEmpty()) {
+      return;
+    }
+    ConnectionFigure[] connections = pending.toArray(new ConnectionFigure[0]);
+    pending.clear();
+    pendingSet.clear();
+    for (ConnectionFigure c : connections) {
+      c.willChange();
+      c.updateConnection();
+      c.changed();
+    }
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * @(#)FigureListenerList.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.figure;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import org.jhotdraw.draw.event.FigureListener;
+
+/**
+ * The list of the {@link FigureListener}s of a figure.
+ *
+ * <p>Unlike {@code EventListenerList}, this list does not allocate an array on every event. The
+ * listeners are dispatched from a snapshot array, which is reused until the list changes. A
+ * listener which is added or removed while an event is dispatched, takes effect with the next
+ * event.
+ *
+ * <p>A listener is added at most once. Small lists are searched linearly. Lists with more than
+ * {@link #SET_THRESHOLD} listeners, such as the list of a figure with many connections, keep an
+ * identity set, so that a listener can be added in constant time.
+ *
+ * <p>Like {@code EventListenerList}, only listeners which are serializable are serialized.
+ */
+final class FigureListenerList implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private static final FigureListener[] EMPTY = new FigureListener[0];
+
+  /** The number of listeners up to which the list is searched linearly. */
+  private static final int SET_THRESHOLD = 8;
+
+  private transient FigureListener[] listeners = EMPTY;
+  private transient int size;
+
+  /** The listeners which are dispatched. Null, if the list has changed since it was created. */
+  private transient FigureListener[] snapshot = EMPTY;
+
+  /** The listeners as an identity set. Null, if the list is small. */
+  private transient Set<FigureListener> set;
+
+  /**
+   * Adds a listener, unless it has already been added.
+   *
+   * @return True, if the listener has been added.
+   */
+  public boolean add(FigureListener l) {
+    if (contains(l)) {
+      return false;
+    }
+    if (size == listeners.length) {
+      listeners = Arrays.copyOf(listeners, Math.max(4, size * 2));
+    }
+    listeners[size++] = l;
+    snapshot = null;
+    if (set != null) {
+      set.add(l);
+    } else if (size > SET_THRESHOLD) {
+      set = Collections.newSetFromMap(new IdentityHashMap<>());
+      set.addAll(Arrays.asList(listeners).subList(0, size));
+    }
+    return true;
+  }
+
+  /**
+   * Removes a listener.
+   *
+   * @return True, if the listener has been removed.
+   */
+  public boolean remove(FigureListener l) {
+    if (set != null && !set.remove(l)) {
+      return false;
+    }
+    for (int i = 0; i < size; i++) {
+      if (listeners[i] == l) {
+        System.arraycopy(listeners, i + 1, listeners, i, size - i - 1);
+        listeners[--size] = null;
+        snapshot = null;
+        if (set != null && size <= SET_THRESHOLD / 2) {
+          set = null;
+        }
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public boolean contains(FigureListener l) {
+    if (set != null) {
+      return set.contains(l);
+    }
+    for (int i = 0; i < size; i++) {
+      if (listeners[i] == l) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Returns the listeners in the order in which they have been added. The array is shared, and must
+   * not be modified.
+   */
+  public FigureListener[] getListeners() {
+    if (snapshot == null) {
+      snapshot = Arrays.copyOf(listeners, size);
+    }
+    return snapshot;
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.defaultWriteObject();
+    for (FigureListener l : getListeners()) {
+      if (l instanceof Serializable) {
+        out.writeObject(l);
+      }
+    }
+    out.writeObject(null);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    listeners = EMPTY;
+    snapshot = EMPTY;
+    for (Object l = in.readObject(); l != null; l = in.readObject()) {
+      add((FigureListener) l);
+    }
+  }
+}
@@ -0,0 +1,511 @@
+/*
+ * @(#)ImageCache.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.figure;
+
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Decodes the images of {@link ImageHolderFigure}s in the background, and keeps renditions of them
+ * at the resolutions at which they are drawn.
+ *
+ * <p>An image is identified by its source: the encoded image data (a byte array) or a buffered
+ * image. The renditions of a source form a mipmap: level n has 1/2<sup>n</sup> of the width and of
+ * the height of the image. {@link #getImage} returns the smallest level which is at least as large
+ * as the area into which the image is drawn. Levels are decoded with subsampling, so that a large
+ * image is only decoded at full resolution if it is drawn at full resolution.
+ *
+ * <p>{@link #drawImage} additionally caches renditions which have been resampled with a transform
+ * that rotates or shears the image, so that they can be drawn with a translation only.
+ *
+ * <p>The number of pixels of all renditions is bounded. When the bound is exceeded, the least
+ * recently used renditions are evicted. Sources are referenced weakly.
+ *
+ * <p>Figures only use the cache when they are drawn by a drawing view, which indicates this with
+ * the rendering hint {@link #KEY_DEFERRED_DECODING}. Otherwise, for example when a drawing is
+ * printed or exported, figures decode their images synchronously at full resolution.
+ *
+ * <p>This class is thread safe.
+ */
+public class ImageCache {
+
+  private static final Logger LOG = Logger.getLogger(ImageCache.class.getName());
+
+  /** The default bound of the number of pixels of all renditions: 32 mega pixels. */
+  public static final long DEFAULT_MAX_PIXELS = 32L << 20;
+
+  /** The coarsest mipmap level. */
+  private static final int MAX_LEVEL = 16;
+
+  /** Transformed renditions with more pixels are not cached. */
+  private static final long MAX_TRANSFORMED_PIXELS = 4L << 20;
+
+  /**
+   * Rendering hint key. If the value is {@code Boolean.TRUE}, images are drawn from the cache, and
+   * are decoded in the background.
+   */
+  public static final RenderingHints.Key KEY_DEFERRED_DECODING =
+      new RenderingHints.Key(0) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+          return val instanceof Boolean;
+        }
+
+        @Override
+        public String toString() {
+          return "Deferred image decoding";
+        }
+      };
+
+  private static final ImageCache DEFAULT_CACHE =
+      new ImageCache(DEFAULT_MAX_PIXELS, createDefaultExecutor());
+
+  private final Executor executor;
+  private long maxPixels;
+  private long pixelCount;
+
+  /** The state of each source. The sources are held weakly, and compared by identity. */
+  private final WeakHashMap<Object, Source> sources = new WeakHashMap<>();
+
+  /** All renditions in access order. */
+  private final LinkedHashMap<Rendition, Rendition> renditions =
+      new LinkedHashMap<>(16, 0.75f, true);
+
+  /** The state of a source. */
+  private static class Source {
+
+    /** The size of the image, or -1 if the size is not known yet. */
+    private int width = -1;
+
+    private int height = -1;
+
+    private boolean isBroken;
+
+    private final Rendition[] levels = new Rendition[MAX_LEVEL + 1];
+
+    private final HashMap<TransformKey, Rendition> transformed = new HashMap<>();
+
+    /**
+     * The callbacks of the scheduled decoding tasks by level. The level is -1, if the size of the
+     * image is not known when the task is scheduled.
+     */
+    private final HashMap<Integer, List<Runnable>> pending = new HashMap<>();
+  }
+
+  /** A mipmap level, or a transformed rendition. */
+  private static class Rendition {
+
+    private final Source source;
+    private final int level;
+    private final TransformKey key;
+    private final BufferedImage image;
+    private final long pixels;
+
+    Rendition(Source source, int level, TransformKey key, BufferedImage image) {
+      this.source = source;
+      this.level = level;
+      this.key = key;
+      this.image = image;
+      this.pixels = (long) image.getWidth() * image.getHeight();
+    }
+  }
+
+  /**
+   * Identifies a transformed rendition of a mipmap level. The transform maps the rectangle into the
+   * rendition.
+   */
+  private record TransformKey(
+      int level, AffineTransform transform, int x, int y, int width, int height) {}
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxPixels The bound of the number of pixels of all renditions.
+   * @param executor The executor which decodes the images.
+   */
+  public ImageCache(long maxPixels, Executor executor) {
+    this.maxPixels = maxPixels;
+    this.executor = executor;
+  }
+
+  /** Returns the cache which is shared by all figures. */
+  public static ImageCache getDefault() {
+    return DEFAULT_CACHE;
+  }
+
+  private static ExecutorService createDefaultExecutor() {
+    int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    return Executors.newFixedThreadPool(
+        threads,
+        r -> {
+          Thread t = new Thread(r, "ImageCache");
+          t.setDaemon(true);
+          t.setPriority(Thread.NORM_PRIORITY - 1);
+          return t;
+        });
+  }
+
+  /** Returns true, if the graphics has the rendering hint for deferred decoding. */
+  public static boolean isDeferredDecoding(Graphics2D g) {
+    return Boolean.TRUE.equals(g.getRenderingHint(KEY_DEFERRED_DECODING));
+  }
+
+  /** Sets the bound of the number of pixels of all renditions. */
+  public synchronized void setMaxPixels(long newValue) {
+    maxPixels = newValue;
+    evict();
+  }
+
+  public synchronized long getMaxPixels() {
+    return maxPixels;
+  }
+
+  /** Returns the number of pixels of all renditions. */
+  public synchronized long getPixelCount() {
+    return pixelCount;
+  }
+
+  /** Removes all renditions. */
+  public synchronized void clear() {
+    for (Rendition r : new ArrayList<>(renditions.keySet())) {
+      remove(r);
+    }
+  }
+
+  /**
+   * Returns a rendition of an image, which is suitable for drawing the image into an area of the
+   * specified size in device pixels.
+   *
+   * <p>If the rendition is not available, this method schedules its decoding, and returns the
+   * closest rendition which is available, or null. The callback is invoked on the decoding thread,
+   * when the rendition has been decoded, or when decoding has failed.
+   *
+   * @param source The encoded image data (a byte array), or a buffered image.
+   * @param width The width of the area in device pixels.
+   * @param height The height of the area in device pixels.
+   * @param whenReady The callback, can be null.
+   * @return A rendition, or null if no rendition is available yet, or if the image can not be
+   *     decoded.
+   */
+  public BufferedImage getImage(Object source, double width, double height, Runnable whenReady) {
+    Rendition r = getRendition(source, width, height, whenReady);
+    return r == null ? null : r.image;
+  }
+
+  private Rendition getRendition(Object source, double width, double height, Runnable whenReady) {
+    synchronized (this) {
+      Source s = getSource(source);
+      if (s.isBroken) {
+        return null;
+      }
+      int level = s.width < 0 ? -1 : getLevel(s.width, s.height, width, height);
+      if (level == 0 && source instanceof BufferedImage) {
+        return new Rendition(s, 0, null, (BufferedImage) source);
+      }
+      if (level >= 0 && s.levels[level] != null) {
+        return renditions.get(s.levels[level]);
+      }
+      List<Runnable> callbacks = s.pending.get(level);
+      if (callbacks == null) {
+        callbacks = new ArrayList<>();
+        s.pending.put(level, callbacks);
+        if (whenReady != null) {
+          callbacks.add(whenReady);
+        }
+        executor.execute(() -> decode(source, s, level, width, height));
+      } else if (whenReady != null) {
+        callbacks.add(whenReady);
+      }
+      return getClosestRendition(source, s, level);
+    }
+  }
+
+  private Source getSource(Object source) {
+    Source s = sources.get(source);
+    if (s == null) {
+      s = new Source();
+      if (source instanceof BufferedImage) {
+        s.width = ((BufferedImage) source).getWidth();
+        s.height = ((BufferedImage) source).getHeight();
+      }
+      sources.put(source, s);
+    }
+    return s;
+  }
+
+  /**
+   * Returns the smallest mipmap level of an image, which is at least as large as the specified
+   * area.
+   */
+  static int getLevel(int imageWidth, int imageHeight, double width, double height) {
+    int level = 0;
+    while (level < MAX_LEVEL
+        && (imageWidth >> (level + 1)) >= Math.max(1, width)
+        && (imageHeight >> (level + 1)) >= Math.max(1, height)) {
+      level++;
+    }
+    return level;
+  }
+
+  /**
+   * Returns the available rendition which is closest to a level. Finer levels are preferred over
+   * coarser levels.
+   */
+  private Rendition getClosestRendition(Object source, Source s, int level) {
+    if (level < 0) {
+      return null;
+    }
+    for (int i = level; i >= 0; i--) {
+      if (s.levels[i] != null) {
+        return renditions.get(s.levels[i]);
+      }
+    }
+    if (source instanceof BufferedImage) {
+      return new Rendition(s, 0, null, (BufferedImage) source);
+    }
+    for (int i = level + 1; i <= MAX_LEVEL; i++) {
+      if (s.levels[i] != null) {
+        return renditions.get(s.levels[i]);
+      }
+    }
+    return null;
+  }
+
+  /** Decodes a mipmap level. */
+  private void decode(Object source, Source s, int requestedLevel, double width, double height) {
+    BufferedImage image = null;
+    int level = requestedLevel;
+    int imageWidth = -1;
+    int imageHeight = -1;
+    try {
+      if (source instanceof BufferedImage) {
+        BufferedImage b = (BufferedImage) source;
+        imageWidth = b.getWidth();
+        imageHeight = b.getHeight();
+        image = scale(b, Math.max(1, imageWidth >> level), Math.max(1, imageHeight >> level));
+      } else {
+        try (ImageInputStream in =
+            ImageIO.createImageInputStream(new ByteArrayInputStream((byte[]) source))) {
+          Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+          if (!readers.hasNext()) {
+            throw new IOException("Unsupported image format");
+          }
+          ImageReader reader = readers.next();
+          try {
+            reader.setInput(in, true, true);
+            imageWidth = reader.getWidth(0);
+            imageHeight = reader.getHeight(0);
+            if (level < 0) {
+              level = getLevel(imageWidth, imageHeight, width, height);
+            }
+            // Subsample to twice the size of the level, and then scale down with interpolation.
+            ImageReadParam param = reader.getDefaultReadParam();
+            int subsampling = level > 1 ? 1 << (level - 1) : 1;
+            param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+            image = reader.read(0, param);
+            if (level > 0) {
+              image =
+                  scale(image, Math.max(1, imageWidth >> level), Math.max(1, imageHeight >> level));
+            }
+          } finally {
+            reader.dispose();
+          }
+        }
+      }
+    } catch (IOException | RuntimeException e) {
+      LOG.log(Level.WARNING, "Unable to decode image", e);
+      image = null;
+    }
+    List<Runnable> callbacks;
+    synchronized (this) {
+      callbacks = s.pending.remove(requestedLevel);
+      if (image == null) {
+        s.isBroken = true;
+      } else {
+        s.width = imageWidth;
+        s.height = imageHeight;
+        if (s.levels[level] == null) {
+          add(new Rendition(s, level, null, image));
+        }
+      }
+    }
+    if (callbacks != null) {
+      for (Runnable r : callbacks) {
+        r.run();
+      }
+    }
+  }
+
+  /** Scales an image with bilinear interpolation. */
+  private static BufferedImage scale(BufferedImage image, int width, int height) {
+    BufferedImage scaled =
+        new BufferedImage(
+            width,
+            height,
+            image.getColorModel().hasAlpha()
+                ? BufferedImage.TYPE_INT_ARGB_PRE
+                : BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = scaled.createGraphics();
+    try {
+      g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      g.dispose();
+    }
+    return scaled;
+  }
+
+  private void add(Rendition r) {
+    if (r.key == null) {
+      r.source.levels[r.level] = r;
+    } else {
+      r.source.transformed.put(r.key, r);
+    }
+    renditions.put(r, r);
+    pixelCount += r.pixels;
+    evict();
+  }
+
+  private void remove(Rendition r) {
+    if (r.key == null) {
+      r.source.levels[r.level] = null;
+    } else {
+      r.source.transformed.remove(r.key);
+    }
+    renditions.remove(r);
+    pixelCount -= r.pixels;
+  }
+
+  /** Evicts the least recently used renditions, but keeps the most recently used rendition. */
+  private void evict() {
+    while (pixelCount > maxPixels && renditions.size() > 1) {
+      remove(renditions.keySet().iterator().next());
+    }
+  }
+
+  /**
+   * Draws an image into a rectangle.
+   *
+   * <p>The rendition is chosen by the size of the rectangle on the device. If the transform rotates
+   * or shears the image, the rendition is resampled with the transform of the graphics and the
+   * specified transform, and the resampled rendition is cached as well.
+   *
+   * @param g The graphics.
+   * @param source The encoded image data (a byte array), or a buffered image.
+   * @param r The rectangle.
+   * @param transform A transform which is applied to the rectangle, can be null.
+   * @param whenReady Invoked on the decoding thread when a rendition has been decoded, can be null.
+   * @return True if the image has been drawn. False if no rendition is available yet, or if the
+   *     image can not be decoded.
+   */
+  public boolean drawImage(
+      Graphics2D g,
+      Object source,
+      Rectangle2D.Double r,
+      AffineTransform transform,
+      Runnable whenReady) {
+    AffineTransform device = g.getTransform();
+    if (transform != null) {
+      device.concatenate(transform);
+    }
+    double scaleX = Math.hypot(device.getScaleX(), device.getShearY());
+    double scaleY = Math.hypot(device.getShearX(), device.getScaleY());
+    Rendition rendition = getRendition(source, r.width * scaleX, r.height * scaleY, whenReady);
+    if (rendition == null) {
+      return false;
+    }
+    BufferedImage image = rendition.image;
+    int x = (int) r.x;
+    int y = (int) r.y;
+    int w = (int) r.width;
+    int h = (int) r.height;
+    AffineTransform savedTransform = g.getTransform();
+    if (transform == null) {
+      g.drawImage(image, x, y, w, h, null);
+      return true;
+    }
+    int rotation =
+        AffineTransform.TYPE_GENERAL_ROTATION
+            | AffineTransform.TYPE_QUADRANT_ROTATION
+            | AffineTransform.TYPE_GENERAL_TRANSFORM;
+    if ((device.getType() & rotation) != 0) {
+      Rectangle bounds = device.createTransformedShape(new Rectangle(x, y, w, h)).getBounds();
+      if (bounds.width > 0
+          && bounds.height > 0
+          && (long) bounds.width * bounds.height <= MAX_TRANSFORMED_PIXELS) {
+        AffineTransform t = AffineTransform.getTranslateInstance(-bounds.x, -bounds.y);
+        t.concatenate(device);
+        BufferedImage transformed =
+            getTransformedImage(
+                source,
+                image,
+                new TransformKey(rendition.level, t, x, y, w, h),
+                bounds.width,
+                bounds.height);
+        g.setTransform(AffineTransform.getTranslateInstance(bounds.x, bounds.y));
+        g.drawImage(transformed, 0, 0, null);
+        g.setTransform(savedTransform);
+        return true;
+      }
+    }
+    g.transform(transform);
+    g.drawImage(image, x, y, w, h, null);
+    g.setTransform(savedTransform);
+    return true;
+  }
+
+  /** Returns a transformed rendition, and creates it if necessary. */
+  private BufferedImage getTransformedImage(
+      Object source, BufferedImage image, TransformKey key, int width, int height) {
+    synchronized (this) {
+      Rendition r = getSource(source).transformed.get(key);
+      if (r != null) {
+        return renditions.get(r).image;
+      }
+    }
+    BufferedImage transformed = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    Graphics2D g = transformed.createGraphics();
+    try {
+      g.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      g.transform(key.transform());
+      g.drawImage(image, key.x(), key.y(), key.width(), key.height(), null);
+    } finally {
+      g.dispose();
+    }
+    synchronized (this) {
+      Source s = getSource(source);
+      if (!s.transformed.containsKey(key)) {
+        add(new Rendition(s, -1, key, transformed));
+      }
+    }
+    return transformed;
+  }
+}
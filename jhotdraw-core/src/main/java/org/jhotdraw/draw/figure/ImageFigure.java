@@ -28,6 +28,7 @@ import java.util.Collection;
 import java.util.Collections;
 import javax.imageio.ImageIO;
 import javax.swing.Action;
+import javax.swing.SwingUtilities;
 import org.jhotdraw.draw.AttributeKeys;
 import org.jhotdraw.draw.connector.ChopRectangleConnector;
 import org.jhotdraw.draw.connector.Connector;
@@ -49,6 +50,9 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure implements Im
   /** The buffered image. This can be null, if we haven't yet parsed the imageData. */
   private transient BufferedImage bufferedImage;
 
+  /** The color of the placeholder which is drawn while the image is being decoded. */
+  private static final Color PLACEHOLDER_COLOR = new Color(0xe0e0e0);
+
   public ImageFigure() {
     this(0, 0, 0, 0);
   }
@@ -93,6 +97,20 @@ public class ImageFigure extends AbstractAttributedDecoratedFigure implements Im
   }
 
   protected void drawImage(Graphics2D g) {
+    if (ImageCache.isDeferredDecoding(g) && (bufferedImage != null || imageData != null)) {
+      // Draw a rendition from the cache, which is decoded in the background
+      if (!ImageCache.getDefault()
+          .drawImage(
+              g,
+              bufferedImage != null ? bufferedImage : imageData,
+              rectangle,
+              null,
+              () -> SwingUtilities.invokeLater(this::fireAreaInvalidated))) {
+        g.setColor(PLACEHOLDER_COLOR);
+        g.fill(rectangle);
+      }
+      return;
+    }
     BufferedImage image = getBufferedImage();
     if (image != null) {
       g.drawImage(
@@ -71,7 +71,8 @@ public class LineConnectionFigure extends LineFigure implements ConnectionFigure
     @Override
     public void figureChanged(FigureEvent e) {
       if (!owner.isChanging()) {
-        if (e.getSource() == owner.getStartFigure() || e.getSource() == owner.getEndFigure()) {
+        if ((e.getSource() == owner.getStartFigure() || e.getSource() == owner.getEndFigure())
+            && !ConnectionUpdateScheduler.schedule(owner)) {
           owner.willChange();
           owner.updateConnection();
           owner.changed();
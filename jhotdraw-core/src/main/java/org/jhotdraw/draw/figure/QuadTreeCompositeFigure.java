@@ -17,20 +17,35 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.swing.event.UndoableEditEvent;
 import javax.swing.event.UndoableEditListener;
 import org.jhotdraw.draw.event.FigureEvent;
 import org.jhotdraw.draw.event.FigureListenerAdapter;
 import org.jhotdraw.geom.Dimension2DDouble;
-import org.jhotdraw.geom.QuadTree;
+import org.jhotdraw.geom.LooseQuadTree;
+import org.jhotdraw.geom.LooseQuadTree.SortedBuffer;
 import org.jhotdraw.util.ReversedList;
 
-/** QuadTreeCompositeFigure. */
+/**
+ * QuadTreeCompositeFigure.
+ *
+ * <p>Like {@link org.jhotdraw.draw.QuadTreeDrawing}, the children are kept sorted by layer, and the
+ * order key of each child in the spatial index reflects its position in the z-order, so that
+ * queries return the children already sorted from back to front.
+ */
 public abstract class QuadTreeCompositeFigure extends AbstractAttributedCompositeFigure {
 
   private static final long serialVersionUID = 1L;
-  private final QuadTree<Figure> quadTree = new QuadTree<>();
-  private boolean needsSorting = false;
+
+  /** Distance between the order keys of adjacent children after renumbering. */
+  private static final long ORDER_GAP = 1L << 20;
+
+  private final LooseQuadTree<Figure> quadTree = new LooseQuadTree<>();
+
+  /** Query buffer which is handed out to one thread at a time. */
+  private transient AtomicReference<SortedBuffer<Figure>> spareBuffer;
+
   private final FigureHandler figureHandler = new FigureHandler();
   private Dimension2DDouble canvasSize;
 
@@ -41,12 +56,16 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
     return children.indexOf(figure);
   }
 
+  /**
+   * Implementation note: The children are kept sorted by layer. If the figure does not belong to
+   * the layer at the specified index, it is added at the nearest index which belongs to its layer.
+   */
   @Override
   public void basicAdd(int index, Figure figure) {
+    index = layerIndex(index, figure.getLayer());
     children.add(index, figure);
-    quadTree.add(figure, figure.getDrawingArea());
+    quadTree.add(figure, figure.getDrawingArea(), orderAt(index));
     figure.addFigureListener(figureHandler);
-    needsSorting = true;
   }
 
   @Override
@@ -55,7 +74,6 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
     children.remove(index);
     quadTree.remove(figure);
     figure.removeFigureListener(figureHandler);
-    needsSorting = true;
     return figure;
   }
 
@@ -63,23 +81,26 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
   public void draw(Graphics2D g) {
     Rectangle2D clipBounds = g.getClipBounds();
     if (clipBounds != null) {
-      Collection<Figure> c = quadTree.findIntersects(clipBounds);
-      Collection<Figure> toDraw = sort(c);
-      draw(g, toDraw);
+      SortedBuffer<Figure> buffer = acquireBuffer();
+      try {
+        quadTree.findIntersects(clipBounds, buffer);
+        for (int i = 0, n = buffer.size(); i < n; i++) {
+          buffer.get(i).draw(g);
+        }
+      } finally {
+        releaseBuffer(buffer);
+      }
     } else {
       draw(g, children);
     }
   }
 
-  /** Implementation note: Sorting can not be done for orphaned children. */
+  /** Implementation note: Orphaned figures are sorted to the end of the list. */
   public java.util.List<Figure> sort(Collection<Figure> c) {
-    ensureSorted();
-    ArrayList<Figure> sorted = new ArrayList<>(c.size());
-    for (Figure f : children) {
-      if (c.contains(f)) {
-        sorted.add(f);
-      }
-    }
+    List<Figure> sorted = new ArrayList<>(c);
+    sorted.sort(
+        Comparator.comparingLong(
+            f -> quadTree.contains(f) ? quadTree.getOrder(f) : Long.MAX_VALUE));
     return sorted;
   }
 
@@ -100,73 +121,59 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
 
   @Override
   public Figure findFigureInside(Point2D.Double p) {
-    Collection<Figure> c = quadTree.findContains(p);
-    for (Figure f : getFiguresFrontToBack()) {
-      if (c.contains(f) && f.contains(p)) {
-        return f.findFigureInside(p);
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (f.contains(p)) {
+          return f.findFigureInside(p);
+        }
       }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
-    return null;
   }
 
   /** Returns an iterator to iterate in Z-order front to back over the children. */
   public java.util.List<Figure> getFiguresFrontToBack() {
-    ensureSorted();
     return new ReversedList<>(children);
   }
 
   public Figure findFigure(Point2D.Double p) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (f.contains(p)) ? f : null;
-
-      default:
-        for (Figure f2 : getFiguresFrontToBack()) {
-          if (c.contains(f2) && f2.contains(p)) {
-            return f2;
-          }
-        }
-        return null;
-    }
+    return findFigureExcept(p, (Figure) null);
   }
 
   public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (f == ignore || !f.contains(p)) ? null : f;
-      default:
-        for (Figure f2 : getFiguresFrontToBack()) {
-          if (f2 != ignore && f2.contains(p)) {
-            return f2;
-          }
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (f != ignore && f.contains(p)) {
+          return f;
         }
-        return null;
+      }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
   public Figure findFigureExcept(Point2D.Double p, Collection<Figure> ignore) {
-    Collection<Figure> c = quadTree.findContains(p);
-    switch (c.size()) {
-      case 0:
-        return null;
-      case 1:
-        Figure f = c.iterator().next();
-        return (!ignore.contains(f) || !f.contains(p)) ? null : f;
-      default:
-        for (Figure f2 : getFiguresFrontToBack()) {
-          if (!ignore.contains(f2) && f2.contains(p)) {
-            return f2;
-          }
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findContains(p, buffer);
+      for (int i = buffer.size() - 1; i >= 0; i--) {
+        Figure f = buffer.get(i);
+        if (!ignore.contains(f) && f.contains(p)) {
+          return f;
         }
-        return null;
+      }
+      return null;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
@@ -201,14 +208,16 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
   }
 
   public List<Figure> findFigures(Rectangle2D.Double r) {
-    List<Figure> c = new ArrayList<>(quadTree.findIntersects(r));
-    switch (c.size()) {
-      case 0:
-        // fall through
-      case 1:
-        return c;
-      default:
-        return sort(c);
+    SortedBuffer<Figure> buffer = acquireBuffer();
+    try {
+      quadTree.findIntersects(r, buffer);
+      List<Figure> c = new ArrayList<>(buffer.size());
+      for (int i = 0, n = buffer.size(); i < n; i++) {
+        c.add(buffer.get(i));
+      }
+      return c;
+    } finally {
+      releaseBuffer(buffer);
     }
   }
 
@@ -229,8 +238,9 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
   @Override
   public void bringToFront(Figure figure) {
     if (children.remove(figure)) {
-      children.add(figure);
-      needsSorting = true;
+      int index = layerIndex(children.size(), figure.getLayer());
+      children.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
       fireAreaInvalidated(figure.getDrawingArea());
     }
   }
@@ -238,8 +248,9 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
   @Override
   public void sendToBack(Figure figure) {
     if (children.remove(figure)) {
-      children.add(0, figure);
-      needsSorting = true;
+      int index = layerIndex(0, figure.getLayer());
+      children.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
       fireAreaInvalidated(figure.getDrawingArea());
     }
   }
@@ -249,12 +260,75 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
     return children.contains(f);
   }
 
-  /** Ensures that the children are sorted in z-order sequence. */
-  private void ensureSorted() {
-    if (needsSorting) {
-      Collections.sort(children, Comparator.comparing(Figure::getLayer));
-      needsSorting = false;
+  /**
+   * Moves a child whose layer has changed to the nearest index at which the children stay sorted by
+   * layer. Children of the same layer keep their relative order.
+   */
+  private void updateLayerPosition(Figure figure) {
+    int index = children.indexOf(figure);
+    if (index == -1) {
+      return;
+    }
+    int layer = figure.getLayer();
+    if ((index > 0 && children.get(index - 1).getLayer() > layer)
+        || (index < children.size() - 1 && children.get(index + 1).getLayer() < layer)) {
+      children.remove(index);
+      index = layerIndex(index, layer);
+      children.add(index, figure);
+      quadTree.setOrder(figure, orderAt(index));
+    }
+  }
+
+  /**
+   * Returns the index nearest to the specified index at which the children stay sorted by layer.
+   */
+  private int layerIndex(int index, int layer) {
+    while (index > 0 && children.get(index - 1).getLayer() > layer) {
+      index--;
+    }
+    while (index < children.size() && children.get(index).getLayer() < layer) {
+      index++;
+    }
+    return index;
+  }
+
+  /**
+   * Returns an order key for the child at the specified index, which lies between the order keys of
+   * its neighbours. Renumbers the other children if there is no room left between them.
+   */
+  private long orderAt(int index) {
+    int n = children.size();
+    if (n == 1) {
+      return 0;
+    }
+    long prev = (index > 0) ? quadTree.getOrder(children.get(index - 1)) : 0;
+    long next = (index < n - 1) ? quadTree.getOrder(children.get(index + 1)) : 0;
+    if (index == 0 && next > Long.MIN_VALUE + ORDER_GAP) {
+      return next - ORDER_GAP;
+    } else if (index == n - 1 && prev < Long.MAX_VALUE - ORDER_GAP) {
+      return prev + ORDER_GAP;
+    } else if (index > 0 && index < n - 1 && next - prev > 1) {
+      return prev + ((next - prev) >>> 1);
     }
+    for (int i = 0; i < n; i++) {
+      if (i != index) {
+        quadTree.setOrder(children.get(i), i * ORDER_GAP);
+      }
+    }
+    return index * ORDER_GAP;
+  }
+
+  private SortedBuffer<Figure> acquireBuffer() {
+    if (spareBuffer == null) {
+      spareBuffer = new AtomicReference<>();
+    }
+    SortedBuffer<Figure> buffer = spareBuffer.getAndSet(null);
+    return (buffer == null) ? new SortedBuffer<>() : buffer;
+  }
+
+  private void releaseBuffer(SortedBuffer<Figure> buffer) {
+    buffer.clear();
+    spareBuffer.set(buffer);
   }
 
   public void setCanvasSize(Dimension2DDouble newValue) {
@@ -285,9 +359,8 @@ public abstract class QuadTreeCompositeFigure extends AbstractAttributedComposit
 
     @Override
     public void figureChanged(FigureEvent e) {
-      quadTree.remove(e.getFigure());
       quadTree.add(e.getFigure(), e.getFigure().getDrawingArea());
-      needsSorting = true;
+      updateLayerPosition(e.getFigure());
       if (!isChanging()) {
         fireAreaInvalidated(e.getInvalidatedArea());
       }
@@ -14,18 +14,11 @@ import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
 import java.awt.Shape;
-import java.awt.font.LineBreakMeasurer;
-import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
-import java.text.AttributedCharacterIterator;
-import java.text.AttributedString;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Iterator;
-import java.util.List;
 import org.jhotdraw.draw.AttributeKeys;
 import org.jhotdraw.draw.handle.FontSizeHandle;
 import org.jhotdraw.draw.handle.Handle;
@@ -71,10 +64,16 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
   private static final BasicStroke DASHES =
       new BasicStroke(
           1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0f, new float[] {4f, 4f}, 0f);
+  private static final float[] NO_TAB_STOPS = new float[0];
 
   /** This is a cached value to improve the performance of method isTextOverflow(); */
   private Boolean isTextOverflow;
 
+  /** This is a cached value to improve the performance of method drawText(); */
+  private transient TextLayoutCache.TextBlock textBlock;
+
+  private transient float textBlockWidth;
+
   public TextAreaFigure() {
     this(
         ResourceBundleUtil.getBundle("org.jhotdraw.draw.Labels")
@@ -89,8 +88,6 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
   @Override
   protected void drawText(Graphics2D g) {
     if (getText() != null || isEditable()) {
-      Font font = getFont();
-      boolean isUnderlined = attr().get(FONT_UNDERLINE);
       Insets2D.Double insets = getInsets();
       Rectangle2D.Double textRect =
           new Rectangle2D.Double(
@@ -113,41 +110,45 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
       float verticalPos = (float) textRect.y;
       float maxVerticalPos = (float) (textRect.y + textRect.height);
       if (leftMargin < rightMargin) {
-        // float tabWidth = (float) (getTabSize() *
-        // g.getFontMetrics(font).charWidth('m'));
-        float tabWidth =
-            (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
-        float[] tabStops = new float[(int) (textRect.width / tabWidth)];
-        for (int i = 0; i < tabStops.length; i++) {
-          tabStops[i] = (float) (textRect.x + (int) (tabWidth * (i + 1)));
-        }
         if (getText() != null) {
           Shape savedClipArea = g.getClip();
           g2.clip(textRect);
-          String[] paragraphs = getText().split("\n"); // Strings.split(getText(), '\n');
-          for (int i = 0; i < paragraphs.length; i++) {
-            if (paragraphs[i].length() == 0) {
-              paragraphs[i] = " ";
-            }
-            AttributedString as = new AttributedString(paragraphs[i]);
-            as.addAttribute(TextAttribute.FONT, font);
-            if (isUnderlined) {
-              as.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
-            }
-            int tabCount = paragraphs[i].split("\t").length - 1;
-            ParagraphProperties properties = new ParagraphProperties();
-            properties.setStyledText(as.getIterator());
-            properties.setVerticalPos(verticalPos);
-            properties.setMaxVerticalPos(maxVerticalPos);
-            properties.setLeftMargin(leftMargin);
-            properties.setRightMargin(rightMargin);
-            properties.setTabStops(tabStops);
-            properties.setTabCount(tabCount);
-            Rectangle2D.Double paragraphBounds = drawParagraph(g2, properties);
-            verticalPos = (float) (paragraphBounds.y + paragraphBounds.height);
-            if (verticalPos > maxVerticalPos) {
+          TextLayoutCache.TextBlock block = getTextBlock(rightMargin - leftMargin, textRect.width);
+          boolean isGreeked = TextLayoutCache.isGreeked(g2, getFontSize());
+          for (int i = 0, n = block.getLineCount(); i < n; i++) {
+            TextLayoutCache.Line line = block.getLine(i);
+            if (verticalPos + line.getTop() > maxVerticalPos) {
               break;
             }
+            float baseline = verticalPos + line.getBaseline();
+            for (int j = 0, m = line.getLayoutCount(); j < m; j++) {
+              TextLayout layout = line.getLayout(j);
+              float penPosition = leftMargin + line.getPenPosition(j);
+              // If there is only one layout element on the line, honor alignment
+              if (m == 1) {
+                switch (attr().get(TEXT_ALIGNMENT)) {
+                  case TRAILING:
+                    penPosition = rightMargin - layout.getVisibleAdvance() - 1;
+                    break;
+                  case CENTER:
+                    penPosition =
+                        (rightMargin - 1 - leftMargin - layout.getVisibleAdvance()) / 2
+                            + leftMargin;
+                    break;
+                  case BLOCK:
+                    // not supported
+                    break;
+                  case LEADING:
+                  default:
+                    break;
+                }
+              }
+              if (isGreeked) {
+                TextLayoutCache.drawGreeked(g2, layout, penPosition, baseline);
+              } else {
+                layout.draw(g2, penPosition, baseline);
+              }
+            }
           }
           g2.setClip(savedClipArea);
         }
@@ -157,130 +158,36 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
   }
 
   /**
-   * Draws or measures a paragraph of text at the specified y location and the bounds of the
-   * paragraph.
+   * Returns the layout of the text in the text rectangle.
    *
-   * @param g Graphics object. This parameter is null, if we want to measure the size of the
-   *     paragraph.
-   * @param properties The properties of the paragraph, including the text, vertical bounds,
-   *     margins, and tab stops.
-   * @return Returns the actual bounds of the paragraph.
+   * @param wrappingWidth The width at which the lines are wrapped.
+   * @param textWidth The width of the text rectangle, which holds the tab stops.
    */
-  private Rectangle2D.Double drawParagraph(Graphics2D g, ParagraphProperties properties) {
-    AttributedCharacterIterator styledText = properties.getStyledText();
-    float verticalPos = properties.getVerticalPos();
-    float maxVerticalPos = properties.getMaxVerticalPos();
-    float leftMargin = properties.getLeftMargin();
-    float rightMargin = properties.getRightMargin();
-    float[] tabStops = properties.getTabStops();
-    int tabCount = properties.getTabCount();
-    // This method is based on the code sample given
-    // in the class comment of java.awt.font.LineBreakMeasurer,
-    // assume styledText is an AttributedCharacterIterator, and the number
-    // of tabs in styledText is tabCount
-    Rectangle2D.Double paragraphBounds = new Rectangle2D.Double(leftMargin, verticalPos, 0, 0);
-    int[] tabLocations = new int[tabCount + 1];
-    int i = 0;
-    for (char c = styledText.first();
-        c != AttributedCharacterIterator.DONE;
-        c = styledText.next()) {
-      if (c == '\t') {
-        tabLocations[i++] = styledText.getIndex();
-      }
-    }
-    tabLocations[tabCount] = styledText.getEndIndex() - 1;
-    // Now tabLocations has an entry for every tab's offset in
-    // the text. For convenience, the last entry is tabLocations
-    // is the offset of the last character in the text.
-    LineBreakMeasurer measurer = new LineBreakMeasurer(styledText, getFontRenderContext());
-    int currentTab = 0;
-    while (measurer.getPosition() < styledText.getEndIndex() && verticalPos <= maxVerticalPos) {
-      // Lay out and draw each line. All segments on a line
-      // must be computed before any drawing can occur, since
-      // we must know the largest ascent on the line.
-      // TextLayouts are computed and stored in a List;
-      // their horizontal positions are stored in a parallel
-      // List.
-      // lineContainsText is true after first segment is drawn
-      boolean lineContainsText = false;
-      boolean lineComplete = false;
-      float maxAscent = 0, maxDescent = 0;
-      float horizontalPos = leftMargin;
-      List<TextLayout> layouts = new ArrayList<>();
-      List<Float> penPositions = new ArrayList<>();
-      int first = layouts.size();
-      while (!lineComplete && verticalPos <= maxVerticalPos) {
-        float wrappingWidth = rightMargin - horizontalPos;
-        TextLayout layout = null;
-        layout = measurer.nextLayout(wrappingWidth, tabLocations[currentTab] + 1, lineContainsText);
-        // layout can be null if lineContainsText is true
-        if (layout != null) {
-          layouts.add(layout);
-          penPositions.add(horizontalPos);
-          horizontalPos += layout.getAdvance();
-          maxAscent = Math.max(maxAscent, layout.getAscent());
-          maxDescent = Math.max(maxDescent, layout.getDescent() + layout.getLeading());
-        } else {
-          lineComplete = true;
-        }
-        lineContainsText = true;
-        if (measurer.getPosition() == tabLocations[currentTab] + 1) {
-          currentTab++;
-        }
-        if (measurer.getPosition() == styledText.getEndIndex()) {
-          lineComplete = true;
-        } else if (tabStops.length == 0 || horizontalPos >= tabStops[tabStops.length - 1]) {
-          lineComplete = true;
-        }
-        if (!lineComplete) {
-          // move to next tab stop
-          int j;
-          for (j = 0; horizontalPos >= tabStops[j]; j++) {}
-          horizontalPos = tabStops[j];
-        }
-      }
-      // If there is only one layout element on the line, and we are
-      // drawing, then honor alignment
-      if (first == layouts.size() - 1 && g != null) {
-        switch (attr().get(TEXT_ALIGNMENT)) {
-          case TRAILING:
-            penPositions.set(first, rightMargin - layouts.get(first).getVisibleAdvance() - 1);
-            break;
-          case CENTER:
-            penPositions.set(
-                first,
-                (rightMargin - 1 - leftMargin - layouts.get(first).getVisibleAdvance()) / 2
-                    + leftMargin);
-            break;
-          case BLOCK:
-            // not supported
-            break;
-          case LEADING:
-          default:
-            break;
-        }
-      }
-      verticalPos += maxAscent;
-      Iterator<TextLayout> layoutEnum = layouts.iterator();
-      Iterator<Float> positionEnum = penPositions.iterator();
-      // now iterate through layouts and draw them
-      while (layoutEnum.hasNext()) {
-        TextLayout nextLayout = layoutEnum.next();
-        float nextPosition = positionEnum.next();
-        if (g != null) {
-          nextLayout.draw(g, nextPosition, verticalPos);
-        }
-        Rectangle2D layoutBounds = nextLayout.getBounds();
-        paragraphBounds.add(
-            new Rectangle2D.Double(
-                layoutBounds.getX() + nextPosition,
-                layoutBounds.getY() + verticalPos,
-                layoutBounds.getWidth(),
-                layoutBounds.getHeight()));
+  private TextLayoutCache.TextBlock getTextBlock(float wrappingWidth, double textWidth) {
+    TextLayoutCache.TextBlock block = textBlock;
+    if (block == null || textBlockWidth != wrappingWidth) {
+      Font font = getFont();
+      // float tabWidth = (float) (getTabSize() *
+      // g.getFontMetrics(font).charWidth('m'));
+      float tabWidth =
+          (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
+      float[] tabStops = new float[(int) (textWidth / tabWidth)];
+      for (int i = 0; i < tabStops.length; i++) {
+        tabStops[i] = (int) (tabWidth * (i + 1));
       }
-      verticalPos += maxDescent;
+      block =
+          TextLayoutCache.getDefault()
+              .getTextBlock(
+                  getText(),
+                  font,
+                  attr().get(FONT_UNDERLINE),
+                  wrappingWidth,
+                  tabStops,
+                  getFontRenderContext());
+      textBlock = block;
+      textBlockWidth = wrappingWidth;
     }
-    return paragraphBounds;
+    return block;
   }
 
   @Override
@@ -451,6 +358,7 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
   public void invalidate() {
     super.invalidate();
     isTextOverflow = null;
+    textBlock = null;
   }
 
   @Override
@@ -477,42 +385,19 @@ public class TextAreaFigure extends AbstractAttributedDecoratedFigure implements
   public Dimension2DDouble getPreferredTextSize(double maxWidth) {
     Rectangle2D.Double textRect = new Rectangle2D.Double();
     if (getText() != null) {
-      Font font = getFont();
-      boolean isUnderlined = attr().get(FONT_UNDERLINE);
       float leftMargin = 0;
       float rightMargin = (float) maxWidth - 1;
-      float verticalPos = 0;
-      float maxVerticalPos = Float.MAX_VALUE;
       if (leftMargin < rightMargin) {
-        float tabWidth =
-            (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
-        float[] tabStops = new float[(int) (textRect.width / tabWidth)];
-        for (int i = 0; i < tabStops.length; i++) {
-          tabStops[i] = (float) (textRect.x + (int) (tabWidth * (i + 1)));
-        }
-        String[] paragraphs = getText().split("\n"); // Strings.split(getText(), '\n');
-        for (int i = 0; i < paragraphs.length; i++) {
-          if (paragraphs[i].length() == 0) {
-            paragraphs[i] = " ";
-          }
-          AttributedString as = new AttributedString(paragraphs[i]);
-          as.addAttribute(TextAttribute.FONT, font);
-          if (isUnderlined) {
-            as.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
-          }
-          int tabCount = paragraphs[i].split("\t").length - 1;
-          ParagraphProperties properties = new ParagraphProperties();
-          properties.setStyledText(as.getIterator());
-          properties.setVerticalPos(verticalPos);
-          properties.setMaxVerticalPos(maxVerticalPos);
-          properties.setLeftMargin(leftMargin);
-          properties.setRightMargin(rightMargin);
-          properties.setTabStops(tabStops);
-          properties.setTabCount(tabCount);
-          Rectangle2D.Double paragraphBounds = drawParagraph(null, properties);
-          verticalPos = (float) (paragraphBounds.y + paragraphBounds.height);
-          textRect.add(paragraphBounds);
-        }
+        textRect =
+            TextLayoutCache.getDefault()
+                .getTextBlock(
+                    getText(),
+                    getFont(),
+                    attr().get(FONT_UNDERLINE),
+                    rightMargin,
+                    NO_TAB_STOPS,
+                    getFontRenderContext())
+                .getBounds();
       }
     }
     return new Dimension2DDouble(
@@ -12,15 +12,12 @@ import static org.jhotdraw.draw.AttributeKeys.*;
 import java.awt.Color;
 import java.awt.Font;
 import java.awt.Graphics2D;
-import java.awt.font.FontRenderContext;
-import java.awt.font.TextAttribute;
 import java.awt.font.TextLayout;
 import java.awt.geom.AffineTransform;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import org.jhotdraw.draw.AttributeKeys;
 import org.jhotdraw.draw.handle.BoundsOutlineHandle;
 import org.jhotdraw.draw.handle.FontSizeHandle;
@@ -56,6 +53,11 @@ public class TextFigure extends AbstractAttributedDecoratedFigure
   // cache of the TextFigure's layout
   protected transient TextLayout textLayout;
 
+  /**
+   * The font size of the cached layout. It depends on the scale, if IS_STROKE_PIXEL_VALUE is set.
+   */
+  private transient float textLayoutFontSize;
+
   protected double alignX;
   protected double alignY;
 
@@ -166,22 +168,20 @@ public class TextFigure extends AbstractAttributedDecoratedFigure
   }
 
   protected TextLayout getTextLayout(double sizeFactor) {
-    if (textLayout == null || attr().get(IS_STROKE_PIXEL_VALUE)) {
+    float fontSize = getFontSize() / (float) AttributeKeys.getGlobalValueFactor(this, sizeFactor);
+    if (textLayout == null || textLayoutFontSize != fontSize) {
       String text = getText();
       if (text == null || text.length() == 0) {
         text = " ";
       }
-      FontRenderContext frc = getFontRenderContext();
-      HashMap<TextAttribute, Object> textAttributes = new HashMap<>();
-      textAttributes.put(
-          TextAttribute.FONT,
-          getFont()
-              .deriveFont(
-                  getFontSize() / (float) AttributeKeys.getGlobalValueFactor(this, sizeFactor)));
-      if (attr().get(FONT_UNDERLINE)) {
-        textAttributes.put(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
-      }
-      textLayout = new TextLayout(text, textAttributes, frc);
+      textLayout =
+          TextLayoutCache.getDefault()
+              .getTextLayout(
+                  text,
+                  getFont().deriveFont(fontSize),
+                  attr().get(FONT_UNDERLINE),
+                  getFontRenderContext());
+      textLayoutFontSize = fontSize;
     }
     return textLayout;
   }
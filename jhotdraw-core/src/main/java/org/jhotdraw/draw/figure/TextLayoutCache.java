@@ -0,0 +1,466 @@
+/*
+ * @(#)TextLayoutCache.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.figure;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.font.FontRenderContext;
+import java.awt.font.LineBreakMeasurer;
+import java.awt.font.TextAttribute;
+import java.awt.font.TextLayout;
+import java.awt.geom.Rectangle2D;
+import java.text.AttributedCharacterIterator;
+import java.text.AttributedString;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Keeps the layouts of the texts of text figures.
+ *
+ * <p>Laying out a text with a {@link LineBreakMeasurer} is expensive. The cache keeps the layouts
+ * by text, font, underline, wrapping width, tab stops and font render context, so that figures can
+ * draw and measure their text without laying it out again, and figures with the same text and style
+ * share the layout. Figures keep a reference to their layout, and discard it when they are
+ * invalidated. The least recently used layouts are evicted when the number of layouts exceeds the
+ * bound of the cache.
+ *
+ * <p>A {@link TextBlock} holds the lines of a text which is broken into paragraphs at LF characters
+ * and wrapped at the wrapping width, as drawn by {@link TextAreaFigure}. The coordinates of the
+ * lines are relative to the top left corner of the text.
+ *
+ * <p>Text which is drawn at a very small size on the screen can be <i>greeked</i>: instead of the
+ * glyphs, a bar is drawn for each line. Figures only greek their text, when they are drawn by a
+ * drawing view, which indicates this with the rendering hint {@link #KEY_GREEKING_THRESHOLD}.
+ *
+ * <p>This class is thread safe.
+ */
+public class TextLayoutCache {
+
+  /** The default bound of the number of layouts. */
+  public static final int DEFAULT_MAX_SIZE = 2048;
+
+  /** The default greeking threshold: text smaller than 4 pixels on the screen is greeked. */
+  public static final float DEFAULT_GREEKING_THRESHOLD = 4f;
+
+  /**
+   * Rendering hint key. The value is a {@code Number}. Text whose font size on the device is
+   * smaller than the value is greeked.
+   */
+  public static final RenderingHints.Key KEY_GREEKING_THRESHOLD =
+      new RenderingHints.Key(0) {
+        @Override
+        public boolean isCompatibleValue(Object val) {
+          return val instanceof Number;
+        }
+
+        @Override
+        public String toString() {
+          return "Text greeking threshold";
+        }
+      };
+
+  private static final TextLayoutCache DEFAULT_CACHE = new TextLayoutCache(DEFAULT_MAX_SIZE);
+
+  private int maxSize;
+
+  /** The layouts in access order: {@code TextLayout}s and {@code TextBlock}s. */
+  private final LinkedHashMap<Key, Object> layouts =
+      new LinkedHashMap<>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Object> eldest) {
+          return size() > maxSize;
+        }
+      };
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxSize The bound of the number of layouts.
+   */
+  public TextLayoutCache(int maxSize) {
+    this.maxSize = maxSize;
+  }
+
+  /** Returns the cache which is shared by all figures. */
+  public static TextLayoutCache getDefault() {
+    return DEFAULT_CACHE;
+  }
+
+  /** Identifies a layout. The tab stops are null for a single line layout. */
+  private static final class Key {
+
+    private final String text;
+    private final Font font;
+    private final boolean isUnderlined;
+    private final float wrappingWidth;
+    private final float[] tabStops;
+    private final FontRenderContext frc;
+    private final int hash;
+
+    Key(
+        String text,
+        Font font,
+        boolean isUnderlined,
+        float wrappingWidth,
+        float[] tabStops,
+        FontRenderContext frc) {
+      this.text = text;
+      this.font = font;
+      this.isUnderlined = isUnderlined;
+      this.wrappingWidth = wrappingWidth;
+      this.tabStops = tabStops;
+      this.frc = frc;
+      this.hash =
+          Objects.hash(text, font, isUnderlined, wrappingWidth, Arrays.hashCode(tabStops), frc);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key that = (Key) obj;
+      return hash == that.hash
+          && isUnderlined == that.isUnderlined
+          && Float.compare(wrappingWidth, that.wrappingWidth) == 0
+          && text.equals(that.text)
+          && font.equals(that.font)
+          && Arrays.equals(tabStops, that.tabStops)
+          && frc.equals(that.frc);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  /** A line of a {@link TextBlock}. */
+  public static final class Line {
+
+    private final TextLayout[] layouts;
+    private final float[] penPositions;
+    private final float top;
+    private final float baseline;
+
+    Line(TextLayout[] layouts, float[] penPositions, float top, float baseline) {
+      this.layouts = layouts;
+      this.penPositions = penPositions;
+      this.top = top;
+      this.baseline = baseline;
+    }
+
+    /** Returns the number of layouts on the line. The layouts are separated by tabs. */
+    public int getLayoutCount() {
+      return layouts.length;
+    }
+
+    public TextLayout getLayout(int index) {
+      return layouts[index];
+    }
+
+    /** Returns the x coordinate at which the layout is drawn. */
+    public float getPenPosition(int index) {
+      return penPositions[index];
+    }
+
+    /** Returns the y coordinate of the top of the line. */
+    public float getTop() {
+      return top;
+    }
+
+    /** Returns the y coordinate of the baseline of the line. */
+    public float getBaseline() {
+      return baseline;
+    }
+  }
+
+  /** The lines of a text which has been laid out in paragraphs. */
+  public static final class TextBlock {
+
+    private final Line[] lines;
+    private final Rectangle2D.Double bounds;
+
+    TextBlock(Line[] lines, Rectangle2D.Double bounds) {
+      this.lines = lines;
+      this.bounds = bounds;
+    }
+
+    public int getLineCount() {
+      return lines.length;
+    }
+
+    public Line getLine(int index) {
+      return lines[index];
+    }
+
+    /**
+     * Returns the union of the bounds of the paragraphs and of the origin. The bounds of a
+     * paragraph extend from the top of its first line to the bottom of the visible glyphs.
+     */
+    public Rectangle2D.Double getBounds() {
+      return (Rectangle2D.Double) bounds.clone();
+    }
+  }
+
+  /**
+   * Returns the layout of a single line of text.
+   *
+   * @param text The text.
+   * @param font The font.
+   * @param isUnderlined Whether the text is underlined.
+   * @param frc The font render context.
+   */
+  public TextLayout getTextLayout(
+      String text, Font font, boolean isUnderlined, FontRenderContext frc) {
+    Key key = new Key(text, font, isUnderlined, 0f, null, frc);
+    TextLayout layout = (TextLayout) get(key);
+    if (layout == null) {
+      layout = new TextLayout(createStyledText(text, font, isUnderlined).getIterator(), frc);
+      put(key, layout);
+    }
+    return layout;
+  }
+
+  /**
+   * Returns the layout of a text which is broken into paragraphs at LF characters, and wrapped at
+   * the wrapping width.
+   *
+   * @param text The text.
+   * @param font The font.
+   * @param isUnderlined Whether the text is underlined.
+   * @param wrappingWidth The width at which lines are wrapped.
+   * @param tabStops The x coordinates of the tab stops in increasing order. The array must not be
+   *     modified after it has been passed to this method.
+   * @param frc The font render context.
+   */
+  public TextBlock getTextBlock(
+      String text,
+      Font font,
+      boolean isUnderlined,
+      float wrappingWidth,
+      float[] tabStops,
+      FontRenderContext frc) {
+    Key key = new Key(text, font, isUnderlined, wrappingWidth, tabStops, frc);
+    TextBlock block = (TextBlock) get(key);
+    if (block == null) {
+      block = layout(text, font, isUnderlined, wrappingWidth, tabStops, frc);
+      put(key, block);
+    }
+    return block;
+  }
+
+  private synchronized Object get(Key key) {
+    return layouts.get(key);
+  }
+
+  private synchronized void put(Key key, Object layout) {
+    layouts.put(key, layout);
+  }
+
+  /** Sets the bound of the number of layouts. */
+  public synchronized void setMaxSize(int newValue) {
+    maxSize = newValue;
+    while (layouts.size() > maxSize) {
+      layouts.remove(layouts.keySet().iterator().next());
+    }
+  }
+
+  public synchronized int getMaxSize() {
+    return maxSize;
+  }
+
+  /** Returns the number of layouts in the cache. */
+  public synchronized int size() {
+    return layouts.size();
+  }
+
+  /** Removes all layouts from the cache. */
+  public synchronized void clear() {
+    layouts.clear();
+  }
+
+  private static AttributedString createStyledText(String text, Font font, boolean isUnderlined) {
+    AttributedString as = new AttributedString(text);
+    as.addAttribute(TextAttribute.FONT, font);
+    if (isUnderlined) {
+      as.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
+    }
+    return as;
+  }
+
+  private static TextBlock layout(
+      String text,
+      Font font,
+      boolean isUnderlined,
+      float wrappingWidth,
+      float[] tabStops,
+      FontRenderContext frc) {
+    List<Line> lines = new ArrayList<>();
+    Rectangle2D.Double bounds = new Rectangle2D.Double();
+    float verticalPos = 0;
+    for (String paragraph : text.split("\n")) {
+      if (paragraph.length() == 0) {
+        paragraph = " ";
+      }
+      Rectangle2D.Double paragraphBounds =
+          layoutParagraph(
+              createStyledText(paragraph, font, isUnderlined).getIterator(),
+              verticalPos,
+              wrappingWidth,
+              tabStops,
+              frc,
+              lines);
+      verticalPos = (float) (paragraphBounds.y + paragraphBounds.height);
+      bounds.add(paragraphBounds);
+    }
+    return new TextBlock(lines.toArray(new Line[0]), bounds);
+  }
+
+  /**
+   * Lays out a paragraph of text at the specified y location, and returns the bounds of the
+   * paragraph.
+   */
+  private static Rectangle2D.Double layoutParagraph(
+      AttributedCharacterIterator styledText,
+      float verticalPos,
+      float rightMargin,
+      float[] tabStops,
+      FontRenderContext frc,
+      List<Line> lines) {
+    // This method is based on the code sample given
+    // in the class comment of java.awt.font.LineBreakMeasurer
+    Rectangle2D.Double paragraphBounds = new Rectangle2D.Double(0, verticalPos, 0, 0);
+    int tabCount = 0;
+    for (char c = styledText.first();
+        c != AttributedCharacterIterator.DONE;
+        c = styledText.next()) {
+      if (c == '\t') {
+        tabCount++;
+      }
+    }
+    int[] tabLocations = new int[tabCount + 1];
+    int i = 0;
+    for (char c = styledText.first();
+        c != AttributedCharacterIterator.DONE;
+        c = styledText.next()) {
+      if (c == '\t') {
+        tabLocations[i++] = styledText.getIndex();
+      }
+    }
+    tabLocations[tabCount] = styledText.getEndIndex() - 1;
+    // Now tabLocations has an entry for every tab's offset in
+    // the text. For convenience, the last entry is tabLocations
+    // is the offset of the last character in the text.
+    LineBreakMeasurer measurer = new LineBreakMeasurer(styledText, frc);
+    int currentTab = 0;
+    List<TextLayout> layouts = new ArrayList<>();
+    float[] penPositions = new float[tabCount + 1];
+    while (measurer.getPosition() < styledText.getEndIndex()) {
+      // All segments on a line must be computed before the line can
+      // be placed, since we must know the largest ascent on the line.
+      // lineContainsText is true after first segment is laid out
+      boolean lineContainsText = false;
+      boolean lineComplete = false;
+      float maxAscent = 0, maxDescent = 0;
+      float horizontalPos = 0;
+      layouts.clear();
+      while (!lineComplete) {
+        float wrappingWidth = rightMargin - horizontalPos;
+        TextLayout layout =
+            measurer.nextLayout(wrappingWidth, tabLocations[currentTab] + 1, lineContainsText);
+        // layout can be null if lineContainsText is true
+        if (layout != null) {
+          if (layouts.size() == penPositions.length) {
+            penPositions = Arrays.copyOf(penPositions, penPositions.length * 2);
+          }
+          penPositions[layouts.size()] = horizontalPos;
+          layouts.add(layout);
+          horizontalPos += layout.getAdvance();
+          maxAscent = Math.max(maxAscent, layout.getAscent());
+          maxDescent = Math.max(maxDescent, layout.getDescent() + layout.getLeading());
+        } else {
+          lineComplete = true;
+        }
+        lineContainsText = true;
+        if (measurer.getPosition() == tabLocations[currentTab] + 1) {
+          currentTab++;
+        }
+        if (measurer.getPosition() == styledText.getEndIndex()) {
+          lineComplete = true;
+        } else if (tabStops.length == 0 || horizontalPos >= tabStops[tabStops.length - 1]) {
+          lineComplete = true;
+        }
+        if (!lineComplete) {
+          // move to next tab stop
+          int j;
+          for (j = 0; horizontalPos >= tabStops[j]; j++) {}
+          horizontalPos = tabStops[j];
+        }
+      }
+      float top = verticalPos;
+      verticalPos += maxAscent;
+      for (int k = 0; k < layouts.size(); k++) {
+        Rectangle2D layoutBounds = layouts.get(k).getBounds();
+        paragraphBounds.add(
+            new Rectangle2D.Double(
+                layoutBounds.getX() + penPositions[k],
+                layoutBounds.getY() + verticalPos,
+                layoutBounds.getWidth(),
+                layoutBounds.getHeight()));
+      }
+      lines.add(
+          new Line(
+              layouts.toArray(new TextLayout[0]),
+              Arrays.copyOf(penPositions, layouts.size()),
+              top,
+              verticalPos));
+      verticalPos += maxDescent;
+    }
+    return paragraphBounds;
+  }
+
+  /**
+   * Returns true, if text with the specified font size is greeked, when it is drawn with the
+   * specified graphics.
+   */
+  public static boolean isGreeked(Graphics2D g, double fontSize) {
+    Object threshold = g.getRenderingHint(KEY_GREEKING_THRESHOLD);
+    if (!(threshold instanceof Number)) {
+      return false;
+    }
+    double scale = Math.sqrt(Math.abs(g.getTransform().getDeterminant()));
+    return fontSize * scale < ((Number) threshold).doubleValue();
+  }
+
+  /**
+   * Draws a bar instead of the glyphs of a layout with the current paint of the graphics.
+   *
+   * @param g The graphics.
+   * @param layout The layout.
+   * @param x The x coordinate of the origin of the layout.
+   * @param y The y coordinate of the baseline of the layout.
+   */
+  public static void drawGreeked(Graphics2D g, TextLayout layout, float x, float y) {
+    float advance = layout.getVisibleAdvance();
+    if (advance > 0) {
+      float ascent = layout.getAscent();
+      g.fill(new Rectangle2D.Float(x, y - ascent * 0.6f, advance, ascent * 0.5f));
+    }
+  }
+}
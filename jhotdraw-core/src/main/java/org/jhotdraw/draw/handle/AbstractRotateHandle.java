@@ -155,7 +155,7 @@ public abstract class AbstractRotateHandle extends AbstractHandle {
       f.willChange();
       f.transform(tx);
       f.changed();
-      fireUndoableEditHappened(new TransformEdit(f, tx));
+      fireUndoableEditHappened(new TransformEdit(getView().getDrawing(), f, tx));
     }
   }
 }
@@ -0,0 +1,160 @@
+/*
+ * @(#)BulkSelectionHandle.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.draw.handle;
+
+import java.awt.*;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.event.FigureListener;
+import org.jhotdraw.draw.event.FigureListenerAdapter;
+import org.jhotdraw.draw.figure.Figure;
+
+/**
+ * A non-interactive {@link Handle} which draws the bounds of many selected figures at once.
+ *
+ * <p>A drawing view uses this handle instead of the handles of the individual figures, when so many
+ * figures are selected that creating their handles would be too expensive. The handle only covers
+ * the figures which are visible in the view.
+ *
+ * <p>The union of the bounds of the figures is computed once and then cached. When a covered figure
+ * changes, the cached union is only extended, so that changing a figure does not cost time
+ * proportional to the number of selected figures. The union is recomputed, when the view transform
+ * changes.
+ */
+public class BulkSelectionHandle extends AbstractHandle {
+
+  private final List<Figure> figures;
+
+  /** The union of the bounds of the figures in view coordinates, null if not computed yet. */
+  private Rectangle union;
+
+  private final FigureListener figureHandler =
+      new FigureListenerAdapter() {
+        @Override
+        public void areaInvalidated(FigureEvent evt) {
+          updateUnion(evt);
+        }
+
+        @Override
+        public void figureChanged(FigureEvent evt) {
+          updateUnion(evt);
+        }
+      };
+
+  /**
+   * Creates a new instance.
+   *
+   * @param figures the selected figures which are visible. Must not be empty.
+   */
+  public BulkSelectionHandle(Collection<Figure> figures) {
+    super(figures.iterator().next());
+    this.figures = new ArrayList<>(figures);
+    getOwner().removeFigureListener(FIGURE_LISTENER);
+    for (Figure f : this.figures) {
+      f.addFigureListener(figureHandler);
+    }
+  }
+
+  /** Returns the figures which are covered by this handle. */
+  public List<Figure> getFigures() {
+    return figures;
+  }
+
+  @Override
+  protected Rectangle basicGetBounds() {
+    if (union == null) {
+      for (Figure f : figures) {
+        Rectangle fr = view.drawingToView(f.getBounds(view.getScaleFactor()));
+        if (union == null) {
+          union = fr;
+        } else {
+          union.add(fr);
+        }
+      }
+    }
+    Rectangle r = new Rectangle(union);
+    r.grow(2, 2);
+    return r;
+  }
+
+  /**
+   * Extends the cached union by the new bounds of the changed figure, and repaints the area of the
+   * figure.
+   */
+  private void updateUnion(FigureEvent evt) {
+    if (view == null) {
+      return;
+    }
+    if (union != null) {
+      Rectangle fr = view.drawingToView(evt.getFigure().getBounds(view.getScaleFactor()));
+      if (!union.contains(fr)) {
+        union.add(fr);
+        super.invalidate();
+      }
+    }
+    if (evt.getInvalidatedArea() != null) {
+      Rectangle r = view.drawingToView(evt.getInvalidatedArea());
+      r.grow(2, 2);
+      fireAreaInvalidated(r);
+    }
+  }
+
+  @Override
+  public void invalidate() {
+    super.invalidate();
+    union = null;
+  }
+
+  @Override
+  public void dispose() {
+    for (Figure f : figures) {
+      f.removeFigureListener(figureHandler);
+    }
+    super.dispose();
+  }
+
+  @Override
+  public boolean contains(Point p) {
+    return false;
+  }
+
+  @Override
+  public boolean isCombinableWith(Handle handle) {
+    return false;
+  }
+
+  @Override
+  public void draw(Graphics2D g) {
+    Stroke stroke;
+    Color color;
+    if (getEditor().getTool().supportsHandleInteraction()) {
+      stroke = getEditor().getHandleAttribute(HandleAttributeKeys.RESIZE_BOUNDS_STROKE_1);
+      color = getEditor().getHandleAttribute(HandleAttributeKeys.RESIZE_BOUNDS_COLOR_1);
+    } else {
+      stroke = getEditor().getHandleAttribute(HandleAttributeKeys.RESIZE_BOUNDS_STROKE_1_DISABLED);
+      color = getEditor().getHandleAttribute(HandleAttributeKeys.RESIZE_BOUNDS_COLOR_1_DISABLED);
+    }
+    if (stroke == null || color == null) {
+      return;
+    }
+    g.setStroke(stroke);
+    g.setColor(color);
+    Rectangle clip = g.getClipBounds();
+    double scale = view.getScaleFactor();
+    for (Figure f : figures) {
+      Rectangle2D.Double b = f.getBounds(scale);
+      Rectangle r = view.drawingToView(b);
+      if (clip == null || clip.intersects(r.x - 2, r.y - 2, r.width + 4, r.height + 4)) {
+        g.drawRect(r.x, r.y, r.width, r.height);
+      }
+    }
+  }
+}
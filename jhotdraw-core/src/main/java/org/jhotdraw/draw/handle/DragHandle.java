@@ -83,10 +83,10 @@ public class DragHandle extends AbstractHandle {
           f.changed();
         }
       } else {
-        fireUndoableEditHappened(new TransformEdit(getOwner(), tx));
+        fireUndoableEditHappened(new TransformEdit(getView().getDrawing(), getOwner(), tx));
       }
     } else {
-      fireUndoableEditHappened(new TransformEdit(getOwner(), tx));
+      fireUndoableEditHappened(new TransformEdit(getView().getDrawing(), getOwner(), tx));
     }
   }
 
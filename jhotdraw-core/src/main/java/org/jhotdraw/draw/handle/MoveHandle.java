@@ -97,7 +97,7 @@ public class MoveHandle extends LocatorHandle {
     if (getOwner().isTransformable()) {
       AffineTransform tx = new AffineTransform();
       tx.translate(lead.x - anchor.x, lead.y - anchor.y);
-      fireUndoableEditHappened(new TransformEdit(getOwner(), tx));
+      fireUndoableEditHappened(new TransformEdit(getView().getDrawing(), getOwner(), tx));
     }
   }
 
@@ -127,7 +127,7 @@ public class MoveHandle extends LocatorHandle {
       f.willChange();
       f.transform(tx);
       f.changed();
-      fireUndoableEditHappened(new TransformEdit(f, tx));
+      fireUndoableEditHappened(new TransformEdit(getView().getDrawing(), f, tx));
     }
   }
 
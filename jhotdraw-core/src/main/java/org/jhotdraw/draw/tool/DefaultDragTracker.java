@@ -133,10 +133,15 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
       }
       AffineTransform tx = new AffineTransform();
       tx.translate(constrainedRect.x - previousOrigin.x, constrainedRect.y - previousOrigin.y);
-      for (Figure f : transformedFigures) {
-        f.willChange();
-        f.transform(tx);
-        f.changed();
+      getDrawing().beginChanges();
+      try {
+        for (Figure f : transformedFigures) {
+          f.willChange();
+          f.transform(tx);
+          f.changed();
+        }
+      } finally {
+        getDrawing().commitChanges();
       }
       previousPoint = currentPoint;
       previousOrigin = new Point2D.Double(constrainedRect.x, constrainedRect.y);
@@ -159,10 +164,15 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
         if (snapBack) {
           AffineTransform tx = new AffineTransform();
           tx.translate(anchorOrigin.x - previousOrigin.x, anchorOrigin.y - previousOrigin.y);
-          for (Figure f : transformedFigures) {
-            f.willChange();
-            f.transform(tx);
-            f.changed();
+          getDrawing().beginChanges();
+          try {
+            for (Figure f : transformedFigures) {
+              f.willChange();
+              f.transform(tx);
+              f.changed();
+            }
+          } finally {
+            getDrawing().commitChanges();
           }
           Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
           r.add(evt.getX(), evt.getY());
@@ -174,7 +184,8 @@ public class DefaultDragTracker extends AbstractTool implements DragTracker {
       AffineTransform tx = new AffineTransform();
       tx.translate(-anchorOrigin.x + previousOrigin.x, -anchorOrigin.y + previousOrigin.y);
       if (!tx.isIdentity()) {
-        getDrawing().fireUndoableEditHappened(new TransformEdit(transformedFigures, tx));
+        getDrawing()
+            .fireUndoableEditHappened(new TransformEdit(getDrawing(), transformedFigures, tx));
       }
     }
     Rectangle r = new Rectangle(anchor.x, anchor.y, 0, 0);
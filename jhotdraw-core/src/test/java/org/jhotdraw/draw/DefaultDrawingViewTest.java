@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.Point2D;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import javax.swing.JViewport;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.handle.BulkSelectionHandle;
+import org.jhotdraw.draw.handle.Handle;
+import org.junit.jupiter.api.Test;
+
+public class DefaultDrawingViewTest {
+
+  private static void onEventDispatchThread(Runnable test) throws Throwable {
+    try {
+      SwingUtilities.invokeAndWait(test);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Returns an editor which does nothing. The view only creates handles if it has an editor. */
+  private static DrawingEditor createEditor() {
+    return (DrawingEditor)
+        Proxy.newProxyInstance(
+            DrawingEditor.class.getClassLoader(),
+            new Class<?>[] {DrawingEditor.class},
+            (proxy, method, args) -> {
+              Class<?> type = method.getReturnType();
+              if (type == boolean.class) {
+                return false;
+              } else if (type == int.class) {
+                return 0;
+              } else if (method.getName().equals("getHandleAttribute")) {
+                return ((AttributeKey<?>) args[0]).getDefaultValue();
+              } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+              } else if (method.getName().equals("equals")) {
+                return proxy == args[0];
+              }
+              return null;
+            });
+  }
+
+  /** Creates a view which shows a 200 x 200 pixel area of a large drawing, without a frame. */
+  private static DefaultDrawingView createView(Drawing drawing) {
+    DefaultDrawingView view = new DefaultDrawingView();
+    view.setDrawing(drawing);
+    view.addNotify(createEditor());
+    JViewport viewport = new JViewport();
+    viewport.setSize(200, 200);
+    viewport.setView(view);
+    view.setSize(10_000, 10_000);
+    return view;
+  }
+
+  private static Set<Figure> getHandleOwners(DefaultDrawingView view) {
+    Set<Figure> owners = new HashSet<>();
+    for (Handle h : view.getSelectionHandles()) {
+      owners.add(h.getOwner());
+    }
+    return owners;
+  }
+
+  @Test
+  public void testHandlesAreCreatedForTheVisibleArea() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          Drawing drawing = new QuadTreeDrawing();
+          Figure near = new RectangleFigure(50, 50, 50, 50);
+          Figure far = new RectangleFigure(5000, 5000, 50, 50);
+          drawing.add(near);
+          drawing.add(far);
+          DefaultDrawingView view = createView(drawing);
+          view.addToSelection(near);
+          view.addToSelection(far);
+
+          assertThat(getHandleOwners(view)).containsExactly(near);
+
+          Point p = view.drawingToView(new Point2D.Double(4950, 4950));
+          ((JViewport) view.getParent()).setViewPosition(p);
+          assertThat(getHandleOwners(view)).containsExactly(far);
+        });
+  }
+
+  @Test
+  public void testHandlesAreKeptWhenTheViewHasNoVisibleArea() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          Drawing drawing = new QuadTreeDrawing();
+          Figure figure = new RectangleFigure(50, 50, 50, 50);
+          drawing.add(figure);
+          DefaultDrawingView view = createView(drawing);
+          view.addToSelection(figure);
+          assertThat(getHandleOwners(view)).containsExactly(figure);
+
+          view.getParent().setSize(0, 0);
+          assertThat(getHandleOwners(view)).containsExactly(figure);
+        });
+  }
+
+  @Test
+  public void testBulkSelectionHandleIsUsedAboveThreshold() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          Drawing drawing = new QuadTreeDrawing();
+          for (int i = 0; i < 5; i++) {
+            drawing.add(new RectangleFigure(10 + i * 20, 10, 10, 10));
+          }
+          DefaultDrawingView view = createView(drawing);
+          view.setBulkSelectionThreshold(3);
+          view.addToSelection(drawing.getChildren());
+
+          List<Handle> handles = view.getSelectionHandles();
+          assertThat(handles).hasSize(1);
+          assertThat(handles.get(0)).isInstanceOf(BulkSelectionHandle.class);
+
+          view.removeFromSelection(drawing.getChild(0));
+          view.removeFromSelection(drawing.getChild(1));
+          assertThat(view.getSelectionHandles())
+              .isNotEmpty()
+              .noneMatch(h -> h instanceof BulkSelectionHandle);
+          assertThat(getHandleOwners(view)).hasSize(3);
+
+          view.setBulkSelectionThreshold(2);
+          assertThat(view.getSelectionHandles())
+              .singleElement()
+              .isInstanceOf(BulkSelectionHandle.class);
+        });
+  }
+
+  @Test
+  public void testBulkSelectionHandleBoundsFollowChangedFigures() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          Drawing drawing = new QuadTreeDrawing();
+          for (int i = 0; i < 5; i++) {
+            drawing.add(new RectangleFigure(10 + i * 20, 10, 10, 10));
+          }
+          DefaultDrawingView view = createView(drawing);
+          view.setBulkSelectionThreshold(3);
+          view.addToSelection(drawing.getChildren());
+          Handle handle = view.getSelectionHandles().get(0);
+          Rectangle before = handle.getBounds();
+
+          Figure moved = drawing.getChild(4);
+          moved.willChange();
+          moved.setBounds(new Point2D.Double(150, 150), new Point2D.Double(160, 160));
+          moved.changed();
+
+          Rectangle after = handle.getBounds();
+          assertThat(after.contains(before)).isTrue();
+          assertThat(after.contains(view.drawingToView(moved.getBounds()))).isTrue();
+        });
+  }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import org.jhotdraw.draw.event.DrawingEvent;
+import org.jhotdraw.draw.event.DrawingListenerAdapter;
+import org.jhotdraw.draw.event.TransformEdit;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class DrawingTransactionTest {
+
+  private final List<DrawingEvent> events = new ArrayList<>();
+  private QuadTreeDrawing drawing;
+
+  @BeforeEach
+  public void setUp() {
+    drawing = new QuadTreeDrawing();
+    for (int i = 0; i < 10; i++) {
+      drawing.add(new RectangleFigure(i * 20, 0, 10, 10));
+    }
+    drawing.addDrawingListener(
+        new DrawingListenerAdapter() {
+          @Override
+          public void drawingChanged(DrawingEvent e) {
+            events.add(e);
+          }
+        });
+  }
+
+  private static void move(Figure f, double dx, double dy) {
+    f.willChange();
+    f.transform(AffineTransform.getTranslateInstance(dx, dy));
+    f.changed();
+  }
+
+  @Test
+  public void testCommitFiresOneConsolidatedEvent() {
+    drawing.beginChanges();
+    try {
+      for (Figure f : drawing.getChildren()) {
+        move(f, 0, 100);
+      }
+      assertThat(events).isEmpty();
+    } finally {
+      drawing.commitChanges();
+    }
+    assertThat(events).hasSize(1);
+    DrawingEvent e = events.get(0);
+    assertThat(e.getChangedFigures()).containsExactlyInAnyOrderElementsOf(drawing.getChildren());
+    // The area covers the old and the new location of all figures
+    assertThat(e.getInvalidatedArea().contains(new Rectangle2D.Double(0, 0, 190, 110))).isTrue();
+    assertThat(drawing.findFigure(new Point2D.Double(5, 105))).isSameAs(drawing.getChild(0));
+
+    // Outside of a transaction, the invalidation and the change of each figure are fired
+    events.clear();
+    move(drawing.getChild(0), 0, 10);
+    move(drawing.getChild(1), 0, 10);
+    assertThat(events).hasSize(4);
+    assertThat(events.get(0).getChangedFigures()).isEmpty();
+  }
+
+  @Test
+  public void testTransactionsAreNestable() {
+    drawing.beginChanges();
+    drawing.beginChanges();
+    move(drawing.getChild(0), 5, 0);
+    drawing.commitChanges();
+    assertThat(events).isEmpty();
+    move(drawing.getChild(1), 5, 0);
+    drawing.commitChanges();
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).getChangedFigures())
+        .containsExactlyInAnyOrder(drawing.getChild(0), drawing.getChild(1));
+
+    assertThatThrownBy(drawing::commitChanges).isInstanceOf(IllegalStateException.class);
+  }
+
+  @Test
+  public void testEmptyTransactionFiresNoEvent() {
+    drawing.beginChanges();
+    drawing.commitChanges();
+    assertThat(events).isEmpty();
+  }
+
+  @Test
+  public void testTransformEditUndoesInATransactionOfItsDrawing() {
+    List<Figure> figures = new ArrayList<>(drawing.getChildren());
+    AffineTransform tx = AffineTransform.getTranslateInstance(0, 100);
+    for (Figure f : figures) {
+      move(f, 0, 100);
+    }
+    TransformEdit edit = new TransformEdit(drawing, figures, tx);
+    events.clear();
+
+    edit.undo();
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).getChangedFigures()).containsExactlyInAnyOrderElementsOf(figures);
+    assertThat(drawing.findFigure(new Point2D.Double(5, 5))).isSameAs(figures.get(0));
+  }
+
+  @Test
+  public void testConnectionsAreUpdatedWithinTheTransaction() {
+    Figure start = drawing.getChild(0);
+    Figure end = drawing.getChild(5);
+    LineConnectionFigure c = new LineConnectionFigure();
+    c.setStartPoint(new Point2D.Double(5, 5));
+    c.setEndPoint(new Point2D.Double(105, 5));
+    c.setStartConnector(start.findConnector(new Point2D.Double(5, 5), c));
+    c.setEndConnector(end.findConnector(new Point2D.Double(105, 5), c));
+    drawing.add(c);
+    events.clear();
+
+    drawing.beginChanges();
+    move(start, 0, 100);
+    move(end, 0, 100);
+    drawing.commitChanges();
+    assertThat(events).hasSize(1);
+    assertThat(events.get(0).getChangedFigures()).contains(start, end, c);
+    assertThat(c.getStartPoint().y).isGreaterThan(100);
+  }
+}
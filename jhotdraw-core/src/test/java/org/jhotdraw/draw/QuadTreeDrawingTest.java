@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.junit.jupiter.api.Test;
+
+public class QuadTreeDrawingTest {
+
+  private static RectangleFigure createFigure(double x) {
+    return new RectangleFigure(x, 0, 100, 100);
+  }
+
+  @Test
+  public void testFindFiguresFollowsZOrder() {
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    List<Figure> figures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Figure f = createFigure(i % 10);
+      drawing.add(f);
+      figures.add(f);
+    }
+    drawing.add(0, createFigure(3));
+    drawing.bringToFront(figures.get(3));
+    drawing.sendToBack(figures.get(7));
+    drawing.add(100, createFigure(5));
+
+    List<Figure> frontToBack = drawing.findFigures(new Rectangle2D.Double(50, 50, 1, 1));
+    assertThat(frontToBack).containsExactlyElementsOf(drawing.getFiguresFrontToBack());
+    assertThat(drawing.findFigure(new Point2D.Double(50, 50))).isSameAs(figures.get(3));
+    List<Figure> expected = new ArrayList<>(drawing.getChildren());
+    expected.retainAll(figures);
+    assertThat(drawing.sort(figures)).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void testRenumbersWhenOrderKeysAreExhausted() {
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    drawing.add(createFigure(0));
+    drawing.add(createFigure(0));
+    Figure last = null;
+    for (int i = 0; i < 100; i++) {
+      last = createFigure(0);
+      drawing.add(1, last);
+    }
+    assertThat(drawing.findFigures(new Rectangle2D.Double(50, 50, 1, 1)))
+        .containsExactlyElementsOf(drawing.getFiguresFrontToBack());
+    assertThat(drawing.indexOf(last)).isEqualTo(1);
+  }
+
+  @Test
+  public void testLayerChangeMovesChild() {
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    List<LayeredFigure> figures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      LayeredFigure f = new LayeredFigure(i % 3);
+      drawing.add(f);
+      figures.add(f);
+    }
+    int[][] changes = {{0, 2}, {19, 0}, {10, 1}, {5, 0}, {7, 2}, {0, 0}};
+    for (int[] change : changes) {
+      List<Figure> expected = new ArrayList<>(drawing.getChildren());
+      figures.get(change[0]).changeLayer(change[1]);
+      expected.sort(Comparator.comparing(Figure::getLayer));
+
+      assertThat(drawing.getChildren()).containsExactlyElementsOf(expected);
+      assertThat(drawing.findFigures(new Rectangle2D.Double(50, 50, 1, 1)))
+          .containsExactlyElementsOf(drawing.getFiguresFrontToBack());
+      assertThat(drawing.findFigure(new Point2D.Double(50, 50)))
+          .isSameAs(expected.get(expected.size() - 1));
+    }
+  }
+
+  /** A figure whose layer can be changed. */
+  private static class LayeredFigure extends RectangleFigure {
+
+    private static final long serialVersionUID = 1L;
+    private int layer;
+
+    LayeredFigure(int layer) {
+      super(0, 0, 100, 100);
+      this.layer = layer;
+    }
+
+    void changeLayer(int newValue) {
+      willChange();
+      layer = newValue;
+      changed();
+    }
+
+    @Override
+    public int getLayer() {
+      return layer;
+    }
+  }
+}
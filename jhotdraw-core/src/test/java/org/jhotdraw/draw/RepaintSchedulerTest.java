@@ -0,0 +1,117 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Rectangle;
+import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
+import org.junit.jupiter.api.Test;
+
+public class RepaintSchedulerTest {
+
+  /**
+   * Runs a test on the event dispatch thread, so that the flush timer of the scheduler can not fire
+   * while the test is adding regions.
+   */
+  private static void onEventDispatchThread(Runnable test) throws Throwable {
+    try {
+      SwingUtilities.invokeAndWait(test);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** A showing panel which records the rectangles that are painted, instead of painting them. */
+  private static class PaintRecordingPanel extends JPanel {
+    private static final long serialVersionUID = 1L;
+    private final List<Rectangle> painted = new ArrayList<>();
+
+    @Override
+    public boolean isShowing() {
+      return true;
+    }
+
+    @Override
+    public void paintImmediately(Rectangle r) {
+      painted.add(new Rectangle(r));
+    }
+  }
+
+  private PaintRecordingPanel panel;
+
+  private RepaintScheduler createScheduler() {
+    panel = new PaintRecordingPanel();
+    panel.setSize(1000, 1000);
+    return new RepaintScheduler(panel);
+  }
+
+  @Test
+  public void testAdjacentRegionsAreCoalesced() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          RepaintScheduler scheduler = createScheduler();
+          for (int x = 0; x < 500; x += 5) {
+            scheduler.addDirtyRegion(new Rectangle(x, 100, 5, 5));
+          }
+          scheduler.flush();
+          assertThat(scheduler.getFlushCount()).isEqualTo(1);
+          assertThat(scheduler.getRepaintedPixelCount()).isEqualTo(500 * 5);
+          assertThat(panel.painted).containsExactly(new Rectangle(0, 100, 500, 5));
+        });
+  }
+
+  @Test
+  public void testDistantRegionsAreNotMerged() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          RepaintScheduler scheduler = createScheduler();
+          scheduler.addDirtyRegion(new Rectangle(0, 0, 10, 10));
+          scheduler.addDirtyRegion(new Rectangle(900, 900, 10, 10));
+          scheduler.flush();
+          assertThat(scheduler.getRepaintedPixelCount()).isEqualTo(200);
+          assertThat(panel.painted)
+              .containsExactlyInAnyOrder(
+                  new Rectangle(0, 0, 10, 10), new Rectangle(900, 900, 10, 10));
+        });
+  }
+
+  @Test
+  public void testRectangleCountIsCapped() throws Throwable {
+    onEventDispatchThread(
+        () -> {
+          RepaintScheduler scheduler = createScheduler();
+          scheduler.setMaxRectangleCount(4);
+          for (int i = 0; i < 10; i++) {
+            scheduler.addDirtyRegion(new Rectangle(i * 100, i * 100, 10, 10));
+          }
+          scheduler.flush();
+          assertThat(scheduler.getRepaintedPixelCount())
+              .isGreaterThan(1000)
+              .isLessThan(1000 * 1000);
+          assertThat(panel.painted).hasSize(4);
+          scheduler.flush();
+          assertThat(scheduler.getFlushCount()).isEqualTo(1);
+        });
+  }
+}
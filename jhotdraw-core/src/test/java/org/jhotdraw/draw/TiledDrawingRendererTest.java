@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.fail;
+import static org.jhotdraw.draw.AttributeKeys.FILL_COLOR;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.lang.reflect.InvocationTargetException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import javax.swing.SwingUtilities;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.junit.jupiter.api.Test;
+
+public class TiledDrawingRendererTest {
+
+  private static final int TILE_SIZE = TiledDrawingRenderer.TILE_SIZE;
+
+  private static void onEventDispatchThread(Runnable test) throws Throwable {
+    try {
+      SwingUtilities.invokeAndWait(test);
+    } catch (InvocationTargetException e) {
+      throw e.getCause();
+    }
+  }
+
+  /** Waits until the condition, which is evaluated on the event dispatch thread, is met. */
+  private static void waitFor(BooleanSupplier condition) throws Throwable {
+    long deadline = System.currentTimeMillis() + 10_000;
+    boolean[] isMet = new boolean[1];
+    while (true) {
+      onEventDispatchThread(() -> isMet[0] = condition.getAsBoolean());
+      if (isMet[0]) {
+        return;
+      }
+      if (System.currentTimeMillis() > deadline) {
+        fail("The condition has not been met in time");
+      }
+      Thread.sleep(10);
+    }
+  }
+
+  private static DefaultDrawingView createView(Drawing drawing) {
+    DefaultDrawingView view = new DefaultDrawingView();
+    view.setSize(4 * TILE_SIZE, 4 * TILE_SIZE);
+    view.setDrawing(drawing);
+    return view;
+  }
+
+  /** Paints the specified tile of the renderer at scale factor 1. */
+  private static void paintTile(TiledDrawingRenderer renderer, int tx, int ty) {
+    BufferedImage canvas =
+        new BufferedImage(4 * TILE_SIZE, 4 * TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = canvas.createGraphics();
+    try {
+      g.setClip(tx * TILE_SIZE, ty * TILE_SIZE, TILE_SIZE, TILE_SIZE);
+      renderer.paint(g, new Point(0, 0), 1.0);
+    } finally {
+      g.dispose();
+    }
+  }
+
+  private static boolean isRendered(TiledDrawingRenderer renderer, int tx, int ty) {
+    BufferedImage image = renderer.getTileImage(1.0, tx, ty);
+    return image != null && image.getWidth() == TILE_SIZE;
+  }
+
+  private static int rgbAt(TiledDrawingRenderer renderer, int x, int y) {
+    return renderer.getTileImage(1.0, 0, 0).getRGB(x, y);
+  }
+
+  @Test
+  public void testInvalidatedTileKeepsItsImageUntilItIsRenderedAgain() throws Throwable {
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    RectangleFigure figure = new RectangleFigure(10, 10, 50, 50);
+    figure.attr().set(FILL_COLOR, Color.RED);
+    drawing.add(figure);
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(drawing));
+
+    onEventDispatchThread(() -> paintTile(renderer, 0, 0));
+    waitFor(() -> isRendered(renderer, 0, 0));
+    onEventDispatchThread(
+        () -> {
+          assertThat(rgbAt(renderer, 30, 30)).isEqualTo(Color.RED.getRGB());
+          figure.willChange();
+          figure.attr().set(FILL_COLOR, Color.BLUE);
+          figure.changed();
+          renderer.invalidate(figure.getDrawingArea());
+          assertThat(rgbAt(renderer, 30, 30)).isEqualTo(Color.RED.getRGB());
+          paintTile(renderer, 0, 0);
+        });
+    waitFor(() -> rgbAt(renderer, 30, 30) == Color.BLUE.getRGB());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedTileIsEvicted() throws Throwable {
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(new QuadTreeDrawing()));
+    renderer.setMaxTileCount(2);
+
+    onEventDispatchThread(() -> paintTile(renderer, 0, 0));
+    waitFor(() -> isRendered(renderer, 0, 0));
+    onEventDispatchThread(() -> paintTile(renderer, 1, 0));
+    waitFor(() -> isRendered(renderer, 1, 0));
+    onEventDispatchThread(
+        () -> {
+          paintTile(renderer, 0, 0);
+          paintTile(renderer, 2, 0);
+        });
+    waitFor(() -> isRendered(renderer, 2, 0));
+    onEventDispatchThread(
+        () -> {
+          assertThat(renderer.getTileImage(1.0, 0, 0)).isNotNull();
+          assertThat(renderer.getTileImage(1.0, 1, 0)).isNull();
+        });
+  }
+
+  @Test
+  public void testPreviewIsReplacedByFullResolutionImage() throws Throwable {
+    CountDownLatch fullResolution = new CountDownLatch(1);
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    drawing.add(
+        new RectangleFigure(10, 10, 50, 50) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public void draw(Graphics2D g) {
+            if (AttributeKeys.getScaleFactorFromGraphics(g) >= 1) {
+              try {
+                fullResolution.await();
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+            }
+            super.draw(g);
+          }
+        });
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(drawing));
+
+    onEventDispatchThread(() -> paintTile(renderer, 0, 0));
+    waitFor(() -> renderer.getTileImage(1.0, 0, 0) != null);
+    onEventDispatchThread(
+        () -> assertThat(renderer.getTileImage(1.0, 0, 0).getWidth()).isLessThan(TILE_SIZE));
+    fullResolution.countDown();
+    waitFor(() -> isRendered(renderer, 0, 0));
+  }
+
+  @Test
+  public void testPausedWorkersDoNotRender() throws Throwable {
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    drawing.add(new RectangleFigure(10, 10, 50, 50));
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(drawing));
+
+    onEventDispatchThread(
+        () -> {
+          renderer.pause();
+          paintTile(renderer, 0, 0);
+        });
+    Thread.sleep(200);
+    onEventDispatchThread(
+        () -> {
+          assertThat(renderer.getTileImage(1.0, 0, 0)).isNull();
+          renderer.resume();
+        });
+    waitFor(() -> isRendered(renderer, 0, 0));
+  }
+
+  @Test
+  public void testWorkersOnlyVisitTheFiguresOfTheirTile() throws Throwable {
+    AtomicBoolean isVisitedByWorker = new AtomicBoolean();
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    drawing.add(new RectangleFigure(10, 10, 50, 50));
+    drawing.add(
+        new RectangleFigure(3 * TILE_SIZE + 10, 3 * TILE_SIZE + 10, 50, 50) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public Rectangle2D.Double getDrawingArea(double factor) {
+            if (Thread.currentThread().getName().startsWith("TiledDrawingRenderer")) {
+              isVisitedByWorker.set(true);
+            }
+            return super.getDrawingArea(factor);
+          }
+
+          @Override
+          public void draw(Graphics2D g) {
+            isVisitedByWorker.set(true);
+            super.draw(g);
+          }
+        });
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(drawing));
+
+    onEventDispatchThread(() -> paintTile(renderer, 0, 0));
+    waitFor(() -> isRendered(renderer, 0, 0));
+    assertThat(isVisitedByWorker).isFalse();
+  }
+
+  @Test
+  public void testFigureIsNotDrawnByTwoWorkersAtOnce() throws Throwable {
+    AtomicInteger drawCount = new AtomicInteger();
+    AtomicInteger maxDrawing = new AtomicInteger();
+    QuadTreeDrawing drawing = new QuadTreeDrawing();
+    drawing.add(
+        new RectangleFigure(10, 10, 2 * TILE_SIZE - 20, 2 * TILE_SIZE - 20) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          public void draw(Graphics2D g) {
+            maxDrawing.accumulateAndGet(drawCount.incrementAndGet(), Math::max);
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+            super.draw(g);
+            drawCount.decrementAndGet();
+          }
+        });
+    TiledDrawingRenderer renderer = new TiledDrawingRenderer(createView(drawing));
+
+    onEventDispatchThread(
+        () -> {
+          for (int ty = 0; ty < 2; ty++) {
+            for (int tx = 0; tx < 2; tx++) {
+              paintTile(renderer, tx, ty);
+            }
+          }
+        });
+    waitFor(
+        () ->
+            isRendered(renderer, 0, 0)
+                && isRendered(renderer, 1, 0)
+                && isRendered(renderer, 0, 1)
+                && isRendered(renderer, 1, 1));
+    assertThat(maxDrawing).hasValue(1);
+  }
+}
@@ -22,6 +22,13 @@ package org.jhotdraw.draw.figure;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import org.jhotdraw.draw.AttributeKey;
 import org.jhotdraw.draw.AttributeKeys;
 import org.junit.jupiter.api.Test;
 
@@ -47,4 +54,115 @@ public class AttributesTest {
         attr.get(AttributeKeys.STROKE_WIDTH).doubleValue(),
         attrRestored.get(AttributeKeys.STROKE_WIDTH).doubleValue());
   }
+
+  @Test
+  public void testStrokeIsCachedUntilAttributesChange() {
+    RectangleFigure f = new RectangleFigure();
+    f.attr().set(AttributeKeys.STROKE_WIDTH, 2.0);
+    long revision = f.attr().getRevision();
+
+    BasicStroke stroke = (BasicStroke) AttributeKeys.getStroke(f, 1.0);
+    assertThat(AttributeKeys.getStroke(f, 2.0)).isSameAs(stroke);
+    assertThat(AttributeKeys.getStrokeTotalWidth(f, 1.0)).isEqualTo(2.0);
+
+    f.attr().set(AttributeKeys.STROKE_WIDTH, 3.0);
+    assertThat(f.attr().getRevision()).isGreaterThan(revision);
+    BasicStroke changed = (BasicStroke) AttributeKeys.getStroke(f, 1.0);
+    assertThat(changed).isNotSameAs(stroke);
+    assertThat(changed.getLineWidth()).isEqualTo(3f);
+    assertThat(AttributeKeys.getStrokeTotalWidth(f, 1.0)).isEqualTo(3.0);
+  }
+
+  @Test
+  public void testSetGetRemoveMatchesMap() {
+    AttributeKey<?>[] keys = AttributeKeys.SUPPORTED_ATTRIBUTES.toArray(new AttributeKey<?>[0]);
+    Attributes attr = new Attributes();
+    Map<AttributeKey<?>, Object> expected = new HashMap<>();
+    Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      @SuppressWarnings("unchecked")
+      AttributeKey<Object> key = (AttributeKey<Object>) keys[random.nextInt(keys.length)];
+      if (random.nextInt(3) == 0) {
+        attr.removeAttribute(key);
+        expected.remove(key);
+      } else if (key.getDefaultValue() != null || key.isNullValueAllowed()) {
+        attr.set(key, key.getDefaultValue());
+        expected.put(key, key.getDefaultValue());
+      }
+      assertThat(attr.getAttributes()).isEqualTo(expected);
+    }
+    for (AttributeKey<?> key : keys) {
+      assertThat(attr.hasAttribute(key)).isEqualTo(expected.containsKey(key));
+    }
+  }
+
+  @Test
+  public void testAttributeKeysWithTheSameNameAreEqual() {
+    AttributeKey<Double> first = new AttributeKey<>("AttributesTest.sameName", Double.class, 1d);
+    AttributeKey<Double> second = new AttributeKey<>("AttributesTest.sameName", Double.class, 5d);
+    assertThat(second).isEqualTo(first);
+    assertThat(second.getOrdinal()).isEqualTo(first.getOrdinal());
+    assertThat(AttributeKey.getAttributeKey(second.getOrdinal())).isSameAs(first);
+
+    Attributes attr = new Attributes();
+    attr.set(first, 2d);
+    assertThat(attr.get(second)).isEqualTo(2d);
+  }
+
+  @Test
+  public void testStandardKeysAreTheCanonicalKeysForTheirNames() {
+    assertThat(AttributeKey.getAttributeKey(AttributeKeys.STROKE_WIDTH.getOrdinal()))
+        .isSameAs(AttributeKeys.STROKE_WIDTH);
+  }
+
+  @Test
+  public void testCopiedAttributesAreCopiedOnWrite() {
+    Attributes prototype = new Attributes();
+    prototype.set(AttributeKeys.STROKE_WIDTH, 2d);
+    prototype.set(AttributeKeys.FILL_COLOR, Color.red);
+
+    Attributes copy = Attributes.from(prototype);
+    copy.set(AttributeKeys.STROKE_WIDTH, 3d);
+    prototype.set(AttributeKeys.FILL_COLOR, Color.blue);
+
+    assertThat(prototype.get(AttributeKeys.STROKE_WIDTH)).isEqualTo(2d);
+    assertThat(prototype.get(AttributeKeys.FILL_COLOR)).isEqualTo(Color.blue);
+    assertThat(copy.get(AttributeKeys.STROKE_WIDTH)).isEqualTo(3d);
+    assertThat(copy.get(AttributeKeys.FILL_COLOR)).isEqualTo(Color.red);
+  }
+
+  @Test
+  public void testStyleTableSharesEqualStyles() {
+    AttributeStyleTable table = new AttributeStyleTable();
+    Attributes[] attrs = new Attributes[10];
+    for (int i = 0; i < attrs.length; i++) {
+      attrs[i] = new Attributes();
+      attrs[i].set(AttributeKeys.STROKE_WIDTH, i < 8 ? 1d : 2d);
+      attrs[i].set(AttributeKeys.FILL_COLOR, new Color(10, 20, 30));
+      table.intern(attrs[i]);
+    }
+    assertThat(table.getInternCount()).isEqualTo(10);
+    assertThat(table.getStyleCount()).isEqualTo(2);
+    assertThat(table.getDeduplicationRatio()).isEqualTo(5d);
+
+    attrs[0].set(AttributeKeys.STROKE_WIDTH, 4d);
+    assertThat(attrs[0].get(AttributeKeys.STROKE_WIDTH)).isEqualTo(4d);
+    assertThat(attrs[1].get(AttributeKeys.STROKE_WIDTH)).isEqualTo(1d);
+  }
+
+  @Test
+  public void testStyleTableDoesNotShareMutableValues() {
+    AttributeStyleTable table = new AttributeStyleTable();
+    Attributes a = new Attributes();
+    Attributes b = new Attributes();
+    a.set(AttributeKeys.TRANSFORM, AffineTransform.getTranslateInstance(1, 2));
+    b.set(AttributeKeys.TRANSFORM, AffineTransform.getTranslateInstance(1, 2));
+    table.intern(a);
+    table.intern(b);
+    assertThat(table.getStyleCount()).isZero();
+
+    a.get(AttributeKeys.TRANSFORM).scale(2, 2);
+    assertThat(b.get(AttributeKeys.TRANSFORM))
+        .isEqualTo(AffineTransform.getTranslateInstance(1, 2));
+  }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Point2D;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.event.FigureListenerAdapter;
+import org.junit.jupiter.api.Test;
+
+public class ConnectionUpdateSchedulerTest {
+
+  private static LineConnectionFigure connect(Figure start, Figure end) {
+    LineConnectionFigure c = new LineConnectionFigure();
+    Point2D.Double p1 = new Point2D.Double(start.getBounds().getCenterX(), 5);
+    Point2D.Double p2 = new Point2D.Double(end.getBounds().getCenterX(), 5);
+    c.setStartPoint(p1);
+    c.setEndPoint(p2);
+    c.setStartConnector(start.findConnector(p1, c));
+    c.setEndConnector(end.findConnector(p2, c));
+    c.updateConnection();
+    return c;
+  }
+
+  private static void move(Figure f, double dx) {
+    f.willChange();
+    f.transform(AffineTransform.getTranslateInstance(dx, 0));
+    f.changed();
+  }
+
+  private static AtomicInteger countChanges(Figure f) {
+    AtomicInteger count = new AtomicInteger();
+    f.addFigureListener(
+        new FigureListenerAdapter() {
+          @Override
+          public void figureChanged(FigureEvent e) {
+            count.incrementAndGet();
+          }
+        });
+    return count;
+  }
+
+  @Test
+  public void testConnectionIsUpdatedOnceAtTheEndOfTheBatch() {
+    RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+    RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+    LineConnectionFigure c = connect(a, b);
+    AtomicInteger changes = countChanges(c);
+
+    ConnectionUpdateScheduler.begin();
+    try {
+      move(a, 50);
+      move(b, 50);
+      assertThat(changes.get()).isZero();
+      assertThat(c.getStartPoint().x).isLessThan(40);
+    } finally {
+      ConnectionUpdateScheduler.end();
+    }
+    assertThat(changes.get()).isEqualTo(1);
+    assertThat(c.getStartPoint().x).isGreaterThan(40);
+    assertThat(c.getEndPoint().x).isGreaterThan(140);
+
+    // Outside of a batch, each end figure updates the connection
+    move(a, 10);
+    move(b, 10);
+    assertThat(changes.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void testBatchesAreNestable() {
+    RectangleFigure a = new RectangleFigure(0, 0, 10, 10);
+    RectangleFigure b = new RectangleFigure(100, 0, 10, 10);
+    LineConnectionFigure c = connect(a, b);
+    AtomicInteger changes = countChanges(c);
+
+    ConnectionUpdateScheduler.begin();
+    ConnectionUpdateScheduler.begin();
+    move(a, 50);
+    ConnectionUpdateScheduler.end();
+    assertThat(ConnectionUpdateScheduler.isBatching()).isTrue();
+    assertThat(changes.get()).isZero();
+    ConnectionUpdateScheduler.end();
+    assertThat(ConnectionUpdateScheduler.isBatching()).isFalse();
+    assertThat(changes.get()).isEqualTo(1);
+
+    assertThatThrownBy(ConnectionUpdateScheduler::end).isInstanceOf(IllegalStateException.class);
+  }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.List;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.event.FigureListener;
+import org.jhotdraw.draw.event.FigureListenerAdapter;
+import org.junit.jupiter.api.Test;
+
+public class FigureListenerListTest {
+
+  @Test
+  public void testListenersAreAddedOnce() {
+    FigureListenerList list = new FigureListenerList();
+    List<FigureListener> listeners = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      FigureListener l = new FigureListenerAdapter() {};
+      listeners.add(l);
+      assertThat(list.add(l)).isTrue();
+      assertThat(list.add(l)).isFalse();
+    }
+    assertThat(list.getListeners()).containsExactlyElementsOf(listeners);
+
+    for (int i = 0; i < 20; i += 2) {
+      assertThat(list.remove(listeners.get(i))).isTrue();
+      assertThat(list.remove(listeners.get(i))).isFalse();
+    }
+    assertThat(list.size()).isEqualTo(10);
+    for (int i = 0; i < 20; i++) {
+      assertThat(list.contains(listeners.get(i))).isEqualTo(i % 2 == 1);
+    }
+    assertThat(list.add(listeners.get(1))).isFalse();
+    assertThat(list.add(listeners.get(0))).isTrue();
+    assertThat(list.getListeners()).hasSize(11).endsWith(listeners.get(0));
+  }
+
+  @Test
+  public void testSnapshotIsReusedUntilTheListChanges() {
+    FigureListenerList list = new FigureListenerList();
+    FigureListener l1 = new FigureListenerAdapter() {};
+    FigureListener l2 = new FigureListenerAdapter() {};
+    list.add(l1);
+    FigureListener[] snapshot = list.getListeners();
+    assertThat(list.getListeners()).isSameAs(snapshot);
+
+    list.add(l2);
+    assertThat(snapshot).containsExactly(l1);
+    assertThat(list.getListeners()).containsExactly(l1, l2);
+    list.remove(l1);
+    assertThat(list.getListeners()).containsExactly(l2);
+  }
+
+  @Test
+  public void testNestedEventsDoNotShareTheReusedEvent() {
+    RectangleFigure f = new RectangleFigure(0, 0, 10, 10);
+    Rectangle2D.Double nestedArea = new Rectangle2D.Double(100, 0, 1, 1);
+    List<Rectangle2D.Double> areas = new ArrayList<>();
+    f.addFigureListener(
+        new FigureListenerAdapter() {
+          @Override
+          public void figureChanged(FigureEvent e) {
+            Rectangle2D.Double area = e.getInvalidatedArea();
+            f.fireAreaInvalidated(nestedArea);
+            assertThat(e.getInvalidatedArea()).isSameAs(area);
+            areas.add(area);
+          }
+
+          @Override
+          public void areaInvalidated(FigureEvent e) {
+            areas.add(e.getInvalidatedArea());
+          }
+        });
+    f.willChange();
+    f.transform(AffineTransform.getTranslateInstance(0, 100));
+    f.changed();
+
+    assertThat(areas).hasSize(3);
+    assertThat(areas.get(1)).isSameAs(nestedArea);
+    assertThat(areas.get(2).y).isGreaterThan(90);
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.imageio.ImageIO;
+import org.junit.jupiter.api.Test;
+
+public class ImageCacheTest {
+
+  private static byte[] createPNG(int width, int height) throws IOException {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D g = image.createGraphics();
+    g.setColor(Color.RED);
+    g.fillRect(0, 0, width, height);
+    g.dispose();
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "PNG", out);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testLevelIsTheSmallestLevelWhichCoversTheArea() {
+    assertThat(ImageCache.getLevel(800, 400, 800, 400)).isZero();
+    assertThat(ImageCache.getLevel(800, 400, 1600, 800)).isZero();
+    assertThat(ImageCache.getLevel(800, 400, 400, 200)).isEqualTo(1);
+    assertThat(ImageCache.getLevel(800, 400, 399, 100)).isEqualTo(1);
+    assertThat(ImageCache.getLevel(800, 400, 100, 50)).isEqualTo(3);
+    assertThat(ImageCache.getLevel(800, 400, 0, 0)).isEqualTo(8);
+  }
+
+  @Test
+  public void testImagesAreDecodedInTheBackground() throws IOException {
+    ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_PIXELS, tasks::add);
+    byte[] data = createPNG(800, 400);
+    AtomicInteger ready = new AtomicInteger();
+
+    assertThat(cache.getImage(data, 100, 50, ready::incrementAndGet)).isNull();
+    assertThat(cache.getImage(data, 100, 50, ready::incrementAndGet)).isNull();
+    assertThat(tasks).hasSize(1);
+    tasks.poll().run();
+    assertThat(ready.get()).isEqualTo(2);
+
+    BufferedImage image = cache.getImage(data, 100, 50, null);
+    assertThat(image.getWidth()).isEqualTo(100);
+    assertThat(image.getHeight()).isEqualTo(50);
+    assertThat(image.getRGB(50, 25)).isEqualTo(Color.RED.getRGB());
+    assertThat(cache.getImage(data, 90, 40, null)).isSameAs(image);
+    assertThat(cache.getPixelCount()).isEqualTo(100 * 50);
+
+    // A finer level is decoded, the coarser level is used in the meantime
+    assertThat(cache.getImage(data, 400, 200, null)).isSameAs(image);
+    assertThat(tasks).hasSize(1);
+    tasks.poll().run();
+    assertThat(cache.getImage(data, 400, 200, null).getWidth()).isEqualTo(400);
+  }
+
+  @Test
+  public void testLeastRecentlyUsedRenditionsAreEvicted() throws IOException {
+    ImageCache cache = new ImageCache(25_000, Runnable::run);
+    byte[] a = createPNG(400, 200);
+    byte[] b = createPNG(400, 200);
+    cache.getImage(a, 100, 50, null);
+    cache.getImage(b, 100, 50, null);
+    BufferedImage a100 = cache.getImage(a, 100, 50, null);
+    BufferedImage b100 = cache.getImage(b, 100, 50, null);
+    assertThat(cache.getPixelCount()).isEqualTo(10_000);
+
+    cache.getImage(a, 100, 50, null);
+    cache.getImage(a, 200, 100, null);
+    assertThat(cache.getImage(a, 200, 100, null).getWidth()).isEqualTo(200);
+    assertThat(cache.getPixelCount()).isEqualTo(25_000);
+    assertThat(cache.getImage(a, 100, 50, null)).isSameAs(a100);
+    assertThat(cache.getImage(b, 100, 50, null)).isNotSameAs(b100);
+
+    cache.clear();
+    assertThat(cache.getPixelCount()).isZero();
+  }
+
+  @Test
+  public void testBufferedImagesAreAvailableImmediately() {
+    ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_PIXELS, tasks::add);
+    BufferedImage source = new BufferedImage(400, 200, BufferedImage.TYPE_INT_ARGB);
+
+    assertThat(cache.getImage(source, 400, 200, null)).isSameAs(source);
+    assertThat(cache.getImage(source, 100, 50, null)).isSameAs(source);
+    tasks.poll().run();
+    assertThat(cache.getImage(source, 100, 50, null).getWidth()).isEqualTo(100);
+    assertThat(tasks).isEmpty();
+  }
+
+  @Test
+  public void testBrokenImageIsReported() {
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_PIXELS, Runnable::run);
+    AtomicInteger ready = new AtomicInteger();
+    byte[] data = {1, 2, 3};
+
+    assertThat(cache.getImage(data, 10, 10, ready::incrementAndGet)).isNull();
+    assertThat(ready.get()).isEqualTo(1);
+    assertThat(cache.getImage(data, 10, 10, ready::incrementAndGet)).isNull();
+    assertThat(ready.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void testTransformedRenditionIsReused() throws IOException {
+    ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_PIXELS, Runnable::run);
+    byte[] data = createPNG(200, 200);
+    Rectangle2D.Double r = new Rectangle2D.Double(20, 20, 50, 50);
+    AffineTransform rotation = AffineTransform.getRotateInstance(Math.PI / 6, 45, 45);
+    BufferedImage target = new BufferedImage(100, 100, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = target.createGraphics();
+
+    assertThat(cache.drawImage(g, data, r, rotation, null)).isFalse();
+    assertThat(cache.drawImage(g, data, r, rotation, null)).isTrue();
+    long pixels = cache.getPixelCount();
+    assertThat(pixels).isGreaterThan(50 * 50);
+    assertThat(target.getRGB(45, 45)).isEqualTo(Color.RED.getRGB());
+    assertThat(target.getRGB(1, 1)).isZero();
+
+    // Translated by whole pixels, as when the view is scrolled
+    g.translate(3, 4);
+    assertThat(cache.drawImage(g, data, r, rotation, null)).isTrue();
+    assertThat(cache.getPixelCount()).isEqualTo(pixels);
+    assertThat(target.getRGB(48, 49)).isEqualTo(Color.RED.getRGB());
+    g.dispose();
+  }
+}
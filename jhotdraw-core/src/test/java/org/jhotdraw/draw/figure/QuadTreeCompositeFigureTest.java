@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class QuadTreeCompositeFigureTest {
+
+  private static QuadTreeCompositeFigure createComposite() {
+    return new QuadTreeCompositeFigure() {
+      private static final long serialVersionUID = 1L;
+    };
+  }
+
+  private static RectangleFigure createFigure(double x) {
+    return new RectangleFigure(x, 0, 100, 100);
+  }
+
+  @Test
+  public void testQueriesFollowZOrder() {
+    QuadTreeCompositeFigure composite = createComposite();
+    List<Figure> figures = new ArrayList<>();
+    for (int i = 0; i < 200; i++) {
+      Figure f = createFigure(i % 10);
+      composite.add(f);
+      figures.add(f);
+    }
+    composite.add(0, createFigure(3));
+    composite.bringToFront(figures.get(3));
+    composite.sendToBack(figures.get(7));
+    composite.add(100, createFigure(5));
+
+    List<Figure> backToFront = composite.findFigures(new Rectangle2D.Double(50, 50, 1, 1));
+    assertThat(backToFront).containsExactlyElementsOf(composite.getChildren());
+    assertThat(composite.findFigure(new Point2D.Double(50, 50))).isSameAs(figures.get(3));
+    assertThat(composite.findFigureExcept(new Point2D.Double(50, 50), figures.get(3)))
+        .isSameAs(composite.getChild(composite.getChildCount() - 2));
+    assertThat(composite.findFigureExcept(new Point2D.Double(50, 50), List.of(figures.get(3))))
+        .isSameAs(composite.getChild(composite.getChildCount() - 2));
+    List<Figure> expected = new ArrayList<>(composite.getChildren());
+    expected.retainAll(figures);
+    assertThat(composite.sort(figures)).containsExactlyElementsOf(expected);
+  }
+
+  @Test
+  public void testLayerChangeMovesChild() {
+    QuadTreeCompositeFigure composite = createComposite();
+    List<LayeredFigure> figures = new ArrayList<>();
+    for (int i = 0; i < 20; i++) {
+      LayeredFigure f = new LayeredFigure(i % 3);
+      composite.add(f);
+      figures.add(f);
+    }
+    int[][] changes = {{0, 2}, {19, 0}, {10, 1}, {5, 0}, {7, 2}, {0, 0}};
+    for (int[] change : changes) {
+      List<Figure> expected = new ArrayList<>(composite.getChildren());
+      figures.get(change[0]).changeLayer(change[1]);
+      expected.sort(Comparator.comparing(Figure::getLayer));
+
+      assertThat(composite.getChildren()).containsExactlyElementsOf(expected);
+      assertThat(composite.findFigures(new Rectangle2D.Double(50, 50, 1, 1)))
+          .containsExactlyElementsOf(expected);
+      assertThat(composite.findFigure(new Point2D.Double(50, 50)))
+          .isSameAs(expected.get(expected.size() - 1));
+    }
+  }
+
+  /** A figure whose layer can be changed. */
+  private static class LayeredFigure extends RectangleFigure {
+
+    private static final long serialVersionUID = 1L;
+    private int layer;
+
+    LayeredFigure(int layer) {
+      super(0, 0, 100, 100);
+      this.layer = layer;
+    }
+
+    void changeLayer(int newValue) {
+      willChange();
+      layer = newValue;
+      changed();
+    }
+
+    @Override
+    public int getLayer() {
+      return layer;
+    }
+  }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.draw.figure;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+
+public class TextLayoutCacheTest {
+
+  private final Font font = new Font("Dialog", Font.PLAIN, 12);
+  private final FontRenderContext frc = new FontRenderContext(new AffineTransform(), true, true);
+  private final float[] noTabStops = new float[0];
+
+  @Test
+  public void testLayoutsAreSharedByEqualKeys() {
+    TextLayoutCache cache = new TextLayoutCache(10);
+    String text = "Hello world";
+    TextLayoutCache.TextBlock block = cache.getTextBlock(text, font, false, 200, noTabStops, frc);
+    assertThat(cache.getTextBlock(new String(text), font, false, 200, new float[0], frc))
+        .isSameAs(block);
+    assertThat(cache.getTextBlock(text, font, true, 200, noTabStops, frc)).isNotSameAs(block);
+    assertThat(cache.getTextBlock(text, font, false, 100, noTabStops, frc)).isNotSameAs(block);
+    assertThat(cache.getTextLayout(text, font, false, frc))
+        .isSameAs(cache.getTextLayout(text, font, false, frc));
+    assertThat(cache.size()).isEqualTo(4);
+
+    cache.setMaxSize(2);
+    assertThat(cache.size()).isEqualTo(2);
+    assertThat(cache.getTextBlock(text, font, false, 200, noTabStops, frc)).isNotSameAs(block);
+  }
+
+  @Test
+  public void testTextIsWrappedIntoParagraphs() {
+    TextLayoutCache cache = new TextLayoutCache(10);
+    TextLayoutCache.TextBlock single =
+        cache.getTextBlock("lorem ipsum dolor", font, false, 1000, noTabStops, frc);
+    assertThat(single.getLineCount()).isEqualTo(1);
+    TextLayoutCache.TextBlock wrapped =
+        cache.getTextBlock("lorem ipsum dolor\n\nsit", font, false, 60, noTabStops, frc);
+    assertThat(wrapped.getLineCount()).isGreaterThanOrEqualTo(4);
+    float top = -1;
+    for (int i = 0; i < wrapped.getLineCount(); i++) {
+      TextLayoutCache.Line line = wrapped.getLine(i);
+      assertThat(line.getTop()).isGreaterThan(top);
+      assertThat(line.getBaseline()).isGreaterThan(line.getTop());
+      assertThat(line.getPenPosition(0)).isZero();
+      top = line.getTop();
+    }
+    assertThat(wrapped.getBounds().width).isLessThanOrEqualTo(60);
+    assertThat(wrapped.getBounds().height).isGreaterThan(single.getBounds().height * 3);
+  }
+
+  @Test
+  public void testTabsMoveToTabStops() {
+    TextLayoutCache cache = new TextLayoutCache(10);
+    TextLayoutCache.TextBlock block =
+        cache.getTextBlock("a\tb\t\tc", font, false, 400, new float[] {50, 100, 150, 200}, frc);
+    assertThat(block.getLineCount()).isEqualTo(1);
+    TextLayoutCache.Line line = block.getLine(0);
+    assertThat(line.getLayoutCount()).isEqualTo(4);
+    assertThat(line.getPenPosition(1)).isEqualTo(50);
+    assertThat(line.getPenPosition(2)).isEqualTo(100);
+    assertThat(line.getPenPosition(3)).isEqualTo(150);
+  }
+
+  @Test
+  public void testSmallTextIsGreekedWithTheRenderingHint() {
+    Graphics2D g = new BufferedImage(10, 10, BufferedImage.TYPE_INT_ARGB).createGraphics();
+    g.scale(0.25, 0.25);
+    assertThat(TextLayoutCache.isGreeked(g, 12)).isFalse();
+    g.setRenderingHint(
+        TextLayoutCache.KEY_GREEKING_THRESHOLD, TextLayoutCache.DEFAULT_GREEKING_THRESHOLD);
+    assertThat(TextLayoutCache.isGreeked(g, 12)).isTrue();
+    assertThat(TextLayoutCache.isGreeked(g, 24)).isFalse();
+    g.dispose();
+  }
+}
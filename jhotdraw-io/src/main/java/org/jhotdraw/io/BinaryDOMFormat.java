@@ -0,0 +1,128 @@
+/*
+ * @(#)BinaryDOMFormat.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+/**
+ * Constants of the binary encoding written by {@link BinaryDOMOutput} and read by {@link
+ * BinaryDOMInput}.
+ *
+ * <p>A document starts with the magic bytes {@code JHDB} and a version byte. It is followed by a
+ * sequence of chunks. A chunk consists of a type byte, the length of its payload as a varint, and
+ * the payload. The document ends with an {@link #END} byte.
+ *
+ * <ul>
+ *   <li>{@link #STRINGS}: a varint count followed by UTF-8 strings, each prefixed with its length.
+ *       The strings are appended to the string table. Element names, attribute names, string
+ *       values and short texts are encoded as indices into this table.
+ *   <li>{@link #STYLE}: an interned element. The element is appended to the style table, and is
+ *       referenced by {@link #STYLE_REF} tokens.
+ *   <li>{@link #OBJECT}: a top-level object, that is a figure of the drawing.
+ * </ul>
+ *
+ * The chunks which define the strings and styles used by an object are written before the object.
+ * Therefore, an object chunk can be decoded without decoding the preceding object chunks.
+ *
+ * <p>The payload of the style and object chunks is a sequence of tokens. Each token starts with an
+ * opcode byte. Numbers are encoded as varints, signed numbers are zig-zag encoded. Doubles, which
+ * can be represented as a fixed point number with {@link #FIXED_SCALE}, are encoded as the
+ * difference to the previous fixed point attribute with the same name in the same object chunk.
+ * Inside interned elements, they are encoded as absolute values.
+ */
+final class BinaryDOMFormat {
+
+  static final byte[] MAGIC = {'J', 'H', 'D', 'B'};
+  static final int VERSION = 1;
+
+  // Chunk types
+  static final int END = 0;
+  static final int STRINGS = 1;
+  static final int STYLE = 2;
+  static final int OBJECT = 3;
+
+  // Token opcodes
+  /** Closes the current element. */
+  static final int CLOSE = 0;
+
+  /** Opens an element: name. */
+  static final int OPEN = 1;
+
+  /** Opens an element which holds an object: name, id. The id is 0 inside interned elements. */
+  static final int OPEN_OBJECT = 2;
+
+  /** An element which references an object: name, id. Not followed by {@link #CLOSE}. */
+  static final int REF = 3;
+
+  /** An interned element: style index. Not followed by {@link #CLOSE}. */
+  static final int STYLE_REF = 4;
+
+  /** Attribute with a string value: name, string index. */
+  static final int ATTR_STRING = 5;
+
+  /** Attribute with an int value: name, zig-zag varint. */
+  static final int ATTR_INT = 6;
+
+  static final int ATTR_TRUE = 7;
+  static final int ATTR_FALSE = 8;
+
+  /** Attribute with a float value: name, 4 bytes. */
+  static final int ATTR_FLOAT = 9;
+
+  /** Attribute with a double value: name, 8 bytes. */
+  static final int ATTR_DOUBLE = 10;
+
+  /** Attribute with a double value, which is exactly representable as a float: name, 4 bytes. */
+  static final int ATTR_DOUBLE32 = 11;
+
+  /** Attribute with a fixed point double value: name, zig-zag varint delta. */
+  static final int ATTR_FIXED = 12;
+
+  /** Text: string index. */
+  static final int TEXT_REF = 13;
+
+  /** Text: UTF-8 length, UTF-8 bytes. */
+  static final int TEXT = 14;
+
+  /** The scale of fixed point doubles. Doubles with up to 3 fraction digits are fixed point. */
+  static final double FIXED_SCALE = 1000;
+
+  /** Texts up to this length are put into the string table. */
+  static final int MAX_INTERNED_TEXT_LENGTH = 64;
+
+  private BinaryDOMFormat() {}
+
+  /**
+   * Returns the fixed point representation of the specified value, or {@link Long#MIN_VALUE} if
+   * the value can not be represented exactly.
+   */
+  static long toFixed(double value) {
+    double scaled = value * FIXED_SCALE;
+    if (!(Math.abs(scaled) < 1L << 52)) {
+      return Long.MIN_VALUE;
+    }
+    long fixed = Math.round(scaled);
+    return Double.doubleToRawLongBits(fromFixed(fixed)) == Double.doubleToRawLongBits(value)
+        ? fixed
+        : Long.MIN_VALUE;
+  }
+
+  static double fromFixed(long fixed) {
+    return fixed / FIXED_SCALE;
+  }
+
+  /** Returns the text representation of a float as used by the XML DOM output. */
+  static String toString(float value) {
+    String str = Float.toString(value);
+    return str.endsWith(".0") ? str.substring(0, str.length() - 2) : str;
+  }
+
+  /** Returns the text representation of a double as used by the XML DOM output. */
+  static String toString(double value) {
+    String str = Double.toString(value);
+    return str.endsWith(".0") ? str.substring(0, str.length() - 2) : str;
+  }
+}
@@ -0,0 +1,718 @@
+/*
+ * @(#)BinaryDOMInput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import static org.jhotdraw.io.BinaryDOMFormat.*;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Array;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import org.jhotdraw.util.Methods;
+import org.jhotdraw.xml.DOMFactory;
+import org.jhotdraw.xml.DOMInput;
+
+/**
+ * A {@link DOMInput} which reads the binary encoding written by {@link BinaryDOMOutput}.
+ *
+ * <p>The top-level objects are read one by one with {@link #nextObject} and {@link #readObject()}.
+ * Only the elements of the current top-level object are held in memory. The input can be read from
+ * a stream, or from a byte buffer, for example a memory-mapped file.
+ *
+ * <p>The objects inside of interned elements are read only once. Immutable objects are shared by
+ * all elements which reference the interned element. Arrays and cloneable objects are copied for
+ * each further reference, so that changing the value of one figure does not change the others.
+ */
+public class BinaryDOMInput implements DOMInput {
+
+  private static final int STRING = 0;
+  private static final int INT = 1;
+  private static final int BOOLEAN = 2;
+  private static final int FLOAT = 3;
+  private static final int DOUBLE = 4;
+
+  /** The factory used to create objects from element names. */
+  private final DOMFactory factory;
+
+  /** The input stream, or null if the input is read from {@link #source}. */
+  private final InputStream in;
+
+  /** The byte buffer, or null if the input is read from {@link #in}. */
+  private final ByteBuffer source;
+
+  /** The buffer for chunks which are read from the input stream. */
+  private byte[] chunk = new byte[256];
+
+  private final ArrayList<String> strings = new ArrayList<>();
+  private final ArrayList<Node> styles = new ArrayList<>();
+
+  /** This map is used to unmarshall references to objects. */
+  private final HashMap<Integer, Object> idobjects = new HashMap<>();
+
+  /** The previous fixed point value of each attribute name, indexed by string index. */
+  private long[] previousFixed = new long[64];
+
+  /** The open elements. The element at index 0 holds the current top-level object. */
+  private Node[] elements = new Node[16];
+
+  /** The position of the child which has been opened last by name, for each open element. */
+  private int[] lastPosition = new int[16];
+
+  /** The index of the child which has been opened last by name, for each open element. */
+  private int[] lastIndex = new int[16];
+
+  private int depth;
+
+  private boolean isFinished;
+
+  /** Creates a new instance which reads from the specified stream. Does not close the stream. */
+  public BinaryDOMInput(DOMFactory factory, InputStream in) throws IOException {
+    this.factory = factory;
+    this.in = in;
+    this.source = null;
+    byte[] header = in.readNBytes(MAGIC.length + 1);
+    readHeader(ByteBuffer.wrap(header));
+  }
+
+  /**
+   * Creates a new instance which reads from the remaining bytes of the specified buffer. The
+   * position of the buffer is not changed.
+   */
+  public BinaryDOMInput(DOMFactory factory, ByteBuffer source) throws IOException {
+    this.factory = factory;
+    this.in = null;
+    this.source = source.slice();
+    readHeader(this.source);
+  }
+
+  private static void readHeader(ByteBuffer header) throws IOException {
+    for (byte b : MAGIC) {
+      if (!header.hasRemaining() || header.get() != b) {
+        throw new IOException("Not a binary drawing.");
+      }
+    }
+    if (!header.hasRemaining()) {
+      throw new IOException("Not a binary drawing.");
+    }
+    int version = header.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary drawing version: " + version);
+    }
+  }
+
+  /**
+   * Reads the next top-level object from the input. If there is one, it can be read with {@link
+   * #readObject()}.
+   *
+   * @return false, if the end of the input has been reached
+   */
+  public boolean nextObject() throws IOException {
+    if (isFinished) {
+      return false;
+    }
+    try {
+      while (true) {
+        int type = source != null ? source.get() : in.read();
+        if (type < 0) {
+          throw new EOFException("Unexpected end of binary drawing.");
+        }
+        if (type == END) {
+          isFinished = true;
+          elements[0] = null;
+          return false;
+        }
+        ByteBuffer payload = readChunk();
+        switch (type) {
+          case STRINGS:
+            readStrings(payload);
+            break;
+          case STYLE:
+            styles.add(readElements(payload, true).children[0]);
+            break;
+          case OBJECT:
+            Arrays.fill(previousFixed, 0L);
+            depth = 0;
+            elements[0] = readElements(payload, false);
+            lastIndex[0] = -1;
+            return true;
+          default:
+            throw new IOException("Illegal chunk type: " + type);
+        }
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Malformed binary drawing.", e);
+    }
+  }
+
+  /**
+   * Reads the top-level object, whose chunk starts at the specified position of the buffer. The
+   * string and style chunks, which it uses, must have been read before.
+   */
+  boolean nextObjectAt(int position) throws IOException {
+    if (source == null) {
+      throw new IllegalStateException("Not reading from a buffer.");
+    }
+    try {
+      source.position(position);
+      isFinished = false;
+      return nextObject();
+    } catch (IllegalArgumentException e) {
+      throw new IOException("Malformed binary drawing.", e);
+    }
+  }
+
+  /** Reads the string or style chunk, which starts at the specified position of the buffer. */
+  void readDictionaryAt(int position) throws IOException {
+    if (source == null) {
+      throw new IllegalStateException("Not reading from a buffer.");
+    }
+    try {
+      source.position(position);
+      int type = source.get();
+      if (type == STRINGS) {
+        readStrings(readChunk());
+      } else if (type == STYLE) {
+        styles.add(readElements(readChunk(), true).children[0]);
+      } else {
+        throw new IOException("Illegal chunk type: " + type);
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+      throw new IOException("Malformed binary drawing.", e);
+    }
+  }
+
+  /**
+   * Forgets the objects which have been read so far. Objects which are read later, can not
+   * reference them.
+   */
+  void clearObjects() {
+    idobjects.clear();
+  }
+
+  private ByteBuffer readChunk() throws IOException {
+    if (source != null) {
+      int length = (int) readVarint(source);
+      ByteBuffer payload = source.slice(source.position(), length);
+      source.position(source.position() + length);
+      return payload;
+    }
+    int length = 0;
+    for (int shift = 0; ; shift += 7) {
+      int b = in.read();
+      if (b < 0) {
+        throw new EOFException("Unexpected end of binary drawing.");
+      }
+      length |= (b & 0x7f) << shift;
+      if (b < 0x80) {
+        break;
+      }
+    }
+    if (length > chunk.length) {
+      chunk = new byte[Math.max(length, chunk.length * 2)];
+    }
+    if (in.readNBytes(chunk, 0, length) != length) {
+      throw new EOFException("Unexpected end of binary drawing.");
+    }
+    return ByteBuffer.wrap(chunk, 0, length).slice();
+  }
+
+  private void readStrings(ByteBuffer p) throws IOException {
+    for (int i = 0, n = (int) readVarint(p); i < n; i++) {
+      int length = (int) readVarint(p);
+      if (p.hasArray()) {
+        strings.add(
+            new String(p.array(), p.arrayOffset() + p.position(), length, StandardCharsets.UTF_8));
+        p.position(p.position() + length);
+      } else {
+        byte[] bytes = new byte[length];
+        p.get(bytes);
+        strings.add(new String(bytes, StandardCharsets.UTF_8));
+      }
+    }
+  }
+
+  /** Decodes the tokens of a chunk into a tree of elements. */
+  private Node readElements(ByteBuffer p, boolean isStyle) throws IOException {
+    Node root = new Node(null, false);
+    ArrayList<Node> path = new ArrayList<>();
+    Node current = root;
+    Node node;
+    while (p.hasRemaining()) {
+      int opcode = p.get();
+      switch (opcode) {
+        case CLOSE:
+          if (path.isEmpty()) {
+            throw new IOException("Illegal close token.");
+          }
+          current = path.remove(path.size() - 1);
+          break;
+        case OPEN:
+        case OPEN_OBJECT:
+          node = new Node(readString(p), isStyle);
+          if (opcode == OPEN_OBJECT) {
+            node.id = (int) readVarint(p);
+          }
+          current.addChild(node);
+          path.add(current);
+          current = node;
+          break;
+        case REF:
+          node = new Node(readString(p), isStyle);
+          node.ref = (int) readVarint(p);
+          current.addChild(node);
+          break;
+        case STYLE_REF:
+          current.addChild(readStyle(p));
+          break;
+        case ATTR_STRING:
+          current.addAttribute(readString(p), STRING, 0, readString(p));
+          break;
+        case ATTR_INT:
+          current.addAttribute(readString(p), INT, readSignedVarint(p), null);
+          break;
+        case ATTR_TRUE:
+        case ATTR_FALSE:
+          current.addAttribute(readString(p), BOOLEAN, opcode == ATTR_TRUE ? 1 : 0, null);
+          break;
+        case ATTR_FLOAT:
+          current.addAttribute(readString(p), FLOAT, p.getInt(), null);
+          break;
+        case ATTR_DOUBLE:
+          current.addAttribute(readString(p), DOUBLE, p.getLong(), null);
+          break;
+        case ATTR_DOUBLE32:
+          current.addAttribute(
+              readString(p),
+              DOUBLE,
+              Double.doubleToRawLongBits(Float.intBitsToFloat(p.getInt())),
+              null);
+          break;
+        case ATTR_FIXED:
+          readFixed(p, current, isStyle);
+          break;
+        case TEXT_REF:
+          current.addText(readString(p));
+          break;
+        case TEXT:
+          byte[] bytes = new byte[(int) readVarint(p)];
+          p.get(bytes);
+          current.addText(new String(bytes, StandardCharsets.UTF_8));
+          break;
+        default:
+          throw new IOException("Illegal token: " + opcode);
+      }
+    }
+    if (!path.isEmpty() || root.childCount != 1) {
+      throw new IOException("Malformed binary drawing chunk.");
+    }
+    return root;
+  }
+
+  private Node readStyle(ByteBuffer p) throws IOException {
+    int index = (int) readVarint(p);
+    if (index < 0 || index >= styles.size()) {
+      throw new IOException("Illegal style index: " + index);
+    }
+    return styles.get(index);
+  }
+
+  /**
+   * Reads a fixed point attribute. Outside of interned elements, the value is the difference to the
+   * previous value of the attribute.
+   */
+  private void readFixed(ByteBuffer p, Node node, boolean isStyle) throws IOException {
+    int nameIndex = (int) readVarint(p);
+    String name = string(nameIndex);
+    long fixed = readSignedVarint(p);
+    if (!isStyle) {
+      if (nameIndex >= previousFixed.length) {
+        previousFixed = Arrays.copyOf(previousFixed, Math.max(nameIndex + 1, nameIndex * 2));
+      }
+      fixed += previousFixed[nameIndex];
+      previousFixed[nameIndex] = fixed;
+    }
+    node.addAttribute(name, DOUBLE, Double.doubleToRawLongBits(fromFixed(fixed)), null);
+  }
+
+  private String readString(ByteBuffer p) throws IOException {
+    return string((int) readVarint(p));
+  }
+
+  private String string(int index) throws IOException {
+    if (index < 0 || index >= strings.size()) {
+      throw new IOException("Illegal string index: " + index);
+    }
+    return strings.get(index);
+  }
+
+  private static long readVarint(ByteBuffer p) throws IOException {
+    long value = 0;
+    for (int shift = 0; shift < 64; shift += 7) {
+      byte b = p.get();
+      value |= (long) (b & 0x7f) << shift;
+      if (b >= 0) {
+        return value;
+      }
+    }
+    throw new IOException("Malformed varint.");
+  }
+
+  private static long readSignedVarint(ByteBuffer p) throws IOException {
+    long v = readVarint(p);
+    return (v >>> 1) ^ -(v & 1);
+  }
+
+  private Node current() {
+    if (elements[depth] == null) {
+      throw new IllegalStateException("No current element.");
+    }
+    return elements[depth];
+  }
+
+  /** Returns the tag name of the current element. */
+  @Override
+  public String getTagName() {
+    return current().tagName;
+  }
+
+  @Override
+  public String getAttribute(String name, String defaultValue) {
+    Node node = current();
+    int i = node.indexOfAttribute(name);
+    if (i < 0) {
+      return defaultValue;
+    }
+    String value = node.toString(i);
+    return value.isEmpty() ? defaultValue : value;
+  }
+
+  @Override
+  public String getText() {
+    return getText(null);
+  }
+
+  @Override
+  public String getText(String defaultValue) {
+    Node node = current();
+    if (node.text == null && node.childCount == 0) {
+      return defaultValue;
+    }
+    StringBuilder buf = new StringBuilder();
+    node.getText(buf);
+    return buf.toString();
+  }
+
+  @Override
+  public List<String> getInheritedAttribute(String name) {
+    List<String> values = new ArrayList<>();
+    for (int i = 1; i <= depth; i++) {
+      Node node = elements[i];
+      int index = node.indexOfAttribute(name);
+      values.add(index < 0 ? "" : node.toString(index));
+    }
+    return values;
+  }
+
+  @Override
+  public int getAttribute(String name, int defaultValue) {
+    Node node = current();
+    int i = node.indexOfAttribute(name);
+    if (i < 0) {
+      return defaultValue;
+    }
+    if (node.kinds[i] == INT) {
+      return (int) node.values[i];
+    }
+    String value = node.toString(i);
+    return value.isEmpty() ? defaultValue : Long.decode(value).intValue();
+  }
+
+  @Override
+  public double getAttribute(String name, double defaultValue) {
+    Node node = current();
+    int i = node.indexOfAttribute(name);
+    if (i < 0) {
+      return defaultValue;
+    }
+    switch (node.kinds[i]) {
+      case DOUBLE:
+        return Double.longBitsToDouble(node.values[i]);
+      case INT:
+        return node.values[i];
+      default:
+        String value = node.toString(i);
+        return value.isEmpty() ? defaultValue : Double.parseDouble(value);
+    }
+  }
+
+  @Override
+  public boolean getAttribute(String name, boolean defaultValue) {
+    Node node = current();
+    int i = node.indexOfAttribute(name);
+    if (i < 0) {
+      return defaultValue;
+    }
+    if (node.kinds[i] == BOOLEAN) {
+      return node.values[i] != 0;
+    }
+    String value = node.toString(i);
+    return value.isEmpty() ? defaultValue : Boolean.parseBoolean(value);
+  }
+
+  @Override
+  public int getElementCount() {
+    return current().childCount;
+  }
+
+  @Override
+  public int getElementCount(String tagName) {
+    Node node = current();
+    int count = 0;
+    for (int i = 0; i < node.childCount; i++) {
+      if (node.children[i].tagName.equalsIgnoreCase(tagName)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public void openElement(int index) {
+    Node node = current();
+    if (index < 0 || index >= node.childCount) {
+      throw new IllegalArgumentException("no such child [" + index + "]");
+    }
+    push(node.children[index]);
+  }
+
+  /** Opens the first element with the specified name and makes it the current node. */
+  @Override
+  public void openElement(String tagName) {
+    Node node = current();
+    for (int i = 0; i < node.childCount; i++) {
+      if (node.children[i].tagName.equalsIgnoreCase(tagName)) {
+        push(node.children[i]);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("element not found:" + tagName);
+  }
+
+  @Override
+  public void openElement(String tagName, int index) {
+    Node node = current();
+    // Elements are usually opened in ascending order: continue after the previous one
+    int start = 0;
+    int count = 0;
+    int previous = lastIndex[depth];
+    if (previous >= 0
+        && previous < index
+        && node.children[lastPosition[depth]].tagName.equalsIgnoreCase(tagName)) {
+      start = lastPosition[depth] + 1;
+      count = previous + 1;
+    }
+    for (int i = start; i < node.childCount; i++) {
+      if (node.children[i].tagName.equalsIgnoreCase(tagName) && count++ == index) {
+        lastIndex[depth] = index;
+        lastPosition[depth] = i;
+        push(node.children[i]);
+        return;
+      }
+    }
+    throw new IllegalArgumentException("no such child " + tagName + "[" + index + "]");
+  }
+
+  private void push(Node node) {
+    if (++depth == elements.length) {
+      elements = Arrays.copyOf(elements, depth * 2);
+      lastPosition = Arrays.copyOf(lastPosition, depth * 2);
+      lastIndex = Arrays.copyOf(lastIndex, depth * 2);
+    }
+    elements[depth] = node;
+    lastIndex[depth] = -1;
+  }
+
+  @Override
+  public void closeElement() {
+    if (depth == 0) {
+      throw new IllegalStateException("No open element.");
+    }
+    elements[depth--] = null;
+  }
+
+  /** Reads an object from the current element. */
+  @Override
+  public Object readObject() throws IOException {
+    return readObject(0);
+  }
+
+  /** Reads an object from the current element. */
+  @Override
+  public Object readObject(int index) throws IOException {
+    openElement(index);
+    Node node = elements[depth];
+    Object o;
+    if (node.ref != 0) {
+      if (!idobjects.containsKey(node.ref)) {
+        throw new IOException("Illegal reference: <" + node.tagName + " ref=" + node.ref + ">");
+      }
+      o = idobjects.get(node.ref);
+    } else if (node.isRead) {
+      o = copyOf(node.object);
+    } else {
+      if (node.id != 0 && idobjects.containsKey(node.id)) {
+        throw new IOException("Duplicate id: <" + node.tagName + " id=" + node.id + ">");
+      }
+      o = factory.read(this);
+      if (node.id != 0) {
+        idobjects.put(node.id, o);
+      }
+      if (node.isShared) {
+        node.object = o;
+        node.isRead = true;
+      }
+    }
+    closeElement();
+    return o;
+  }
+
+  /** Returns a copy of a shared object, or the object itself if it is immutable. */
+  private static Object copyOf(Object o) throws IOException {
+    if (o == null
+        || o instanceof String
+        || o instanceof Number
+        || o instanceof Boolean
+        || o instanceof Enum
+        || o instanceof Color
+        || o instanceof Font) {
+      return o;
+    }
+    if (o.getClass().isArray()) {
+      int length = Array.getLength(o);
+      Object copy = Array.newInstance(o.getClass().getComponentType(), length);
+      System.arraycopy(o, 0, copy, 0, length);
+      return copy;
+    }
+    if (o instanceof Cloneable) {
+      try {
+        return Methods.invoke(o, "clone");
+      } catch (NoSuchMethodException e) {
+        throw new IOException("Can not copy shared object " + o, e);
+      }
+    }
+    return o;
+  }
+
+  /** An element. */
+  private static class Node {
+
+    private static final Node[] NO_CHILDREN = new Node[0];
+    private static final String[] NO_NAMES = new String[0];
+
+    private final String tagName;
+
+    /** Whether this node is part of an interned element. */
+    private final boolean isShared;
+
+    private int id;
+    private int ref;
+
+    private Node[] children = NO_CHILDREN;
+    private int childCount;
+
+    private String[] names = NO_NAMES;
+    private byte[] kinds;
+    private long[] values;
+    private String[] strings;
+    private int attributeCount;
+
+    private String text;
+
+    /** The object which has been read from a shared element. */
+    private Object object;
+
+    private boolean isRead;
+
+    Node(String tagName, boolean isShared) {
+      this.tagName = tagName;
+      this.isShared = isShared;
+    }
+
+    void addChild(Node child) {
+      if (childCount == children.length) {
+        children = Arrays.copyOf(children, Math.max(4, childCount * 2));
+      }
+      children[childCount++] = child;
+    }
+
+    void addAttribute(String name, int kind, long value, String string) {
+      int i = indexOfAttribute(name);
+      if (i < 0) {
+        if (attributeCount == names.length) {
+          int n = Math.max(4, attributeCount * 2);
+          names = Arrays.copyOf(names, n);
+          kinds = kinds == null ? new byte[n] : Arrays.copyOf(kinds, n);
+          values = values == null ? new long[n] : Arrays.copyOf(values, n);
+          strings = strings == null ? new String[n] : Arrays.copyOf(strings, n);
+        }
+        i = attributeCount++;
+        names[i] = name;
+      }
+      kinds[i] = (byte) kind;
+      values[i] = value;
+      strings[i] = string;
+    }
+
+    int indexOfAttribute(String name) {
+      for (int i = 0; i < attributeCount; i++) {
+        if (names[i].equals(name)) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    /** Returns the value of an attribute in the representation of the XML DOM output. */
+    String toString(int i) {
+      switch (kinds[i]) {
+        case INT:
+          return Integer.toString((int) values[i]);
+        case BOOLEAN:
+          return Boolean.toString(values[i] != 0);
+        case FLOAT:
+          return BinaryDOMFormat.toString(Float.intBitsToFloat((int) values[i]));
+        case DOUBLE:
+          return BinaryDOMFormat.toString(Double.longBitsToDouble(values[i]));
+        default:
+          return strings[i];
+      }
+    }
+
+    void addText(String s) {
+      text = text == null ? s : text + s;
+    }
+
+    void getText(StringBuilder buf) {
+      if (text != null) {
+        buf.append(text);
+      }
+      for (int i = 0; i < childCount; i++) {
+        children[i].getText(buf);
+      }
+    }
+  }
+}
@@ -0,0 +1,539 @@
+/*
+ * @(#)BinaryDOMOutput.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import static org.jhotdraw.io.BinaryDOMFormat.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import org.jhotdraw.xml.DOMFactory;
+import org.jhotdraw.xml.DOMOutput;
+
+/**
+ * A {@link DOMOutput} which writes a compact binary encoding instead of XML.
+ *
+ * <p>Objects which are written at the top level, that is, outside of any element, are streamed to
+ * the output stream one by one. Their elements are not kept in memory. Objects which are written
+ * more than once are written as references, like with {@link org.jhotdraw.xml.JavaxDOMOutput}.
+ *
+ * <p>Elements with one of the interned element names are written only once. Further occurrences of
+ * an equal element are written as a reference to the first one. Interned elements must only contain
+ * immutable values, arrays or cloneable values, because the objects inside of them are read only
+ * once, and {@link BinaryDOMInput} only copies arrays and cloneable values for each reference. The
+ * attribute element "a" of {@link DOMDefaultDrawFigureFactory} is such an element.
+ *
+ * <p>The encoding is described in {@link BinaryDOMFormat}. Comments and the doctype are not
+ * written.
+ */
+public class BinaryDOMOutput implements DOMOutput {
+
+  /** The factory used to write objects. */
+  private final DOMFactory factory;
+
+  /** The names of the elements which are interned. */
+  private final Set<String> internedElements;
+
+  private final OutputStream out;
+
+  /** Maps strings to their index in the string table. */
+  private final HashMap<String, Integer> strings = new HashMap<>();
+
+  /** Strings which have been added to the string table since the last chunk was written. */
+  private final ArrayList<String> pendingStrings = new ArrayList<>();
+
+  /** Maps the encoding of interned elements to their index in the style table. */
+  private final HashMap<Key, Integer> styles = new HashMap<>();
+
+  /** Styles which have been added to the style table since the last chunk was written. */
+  private final ArrayList<byte[]> pendingStyles = new ArrayList<>();
+
+  /** This map is used to marshall references to objects. */
+  private final HashMap<Object, Integer> objectids = new HashMap<>();
+
+  /** This map is used to cache prototype objects. */
+  private HashMap<String, Object> prototypes;
+
+  /** The encoding of the current top-level object. */
+  private final Buffer objectBuffer = new Buffer();
+
+  /** The encoding of the current interned element. */
+  private final Buffer styleBuffer = new Buffer();
+
+  private final Buffer chunkBuffer = new Buffer();
+
+  /** The buffer to which tokens are written. */
+  private Buffer buffer;
+
+  /** The previous fixed point value of each attribute name, indexed by string index. */
+  private long[] previousFixed = new long[64];
+
+  /** The names of the open elements. */
+  private String[] elements = new String[16];
+
+  private int depth;
+
+  /** The depth of the interned element which is being written, or -1. */
+  private int styleDepth = -1;
+
+  private boolean isFinished;
+
+  /** The number of bytes which have been written to the stream. */
+  private long position;
+
+  /** The position of the chunk of the top-level object which has been written last. */
+  private long objectPosition = -1;
+
+  /** The first id of the top-level object which is being written. */
+  private int firstObjectId;
+
+  /** Ids of objects outside of the current top-level object, which it references. */
+  private int[] externalRefs = new int[4];
+
+  private int externalRefCount;
+
+  /** If not null, the positions of the string and style chunks are added to this list. */
+  private List<Long> dictionaryPositions;
+
+  /**
+   * Creates a new instance which interns the attribute elements of {@link
+   * DOMDefaultDrawFigureFactory}, and writes the header of the encoding to the specified stream.
+   */
+  public BinaryDOMOutput(DOMFactory factory, OutputStream out) throws IOException {
+    this(factory, out, Set.of("a"));
+  }
+
+  /**
+   * Creates a new instance and writes the header of the encoding to the specified stream.
+   *
+   * @param factory The factory for writing objects.
+   * @param out The output stream.
+   * @param internedElements The names of the elements which are interned.
+   */
+  public BinaryDOMOutput(DOMFactory factory, OutputStream out, Set<String> internedElements)
+      throws IOException {
+    this.factory = factory;
+    this.out = out;
+    this.internedElements = internedElements;
+    out.write(MAGIC);
+    out.write(VERSION);
+    position = MAGIC.length + 1;
+  }
+
+  /** Writes the end of the encoding and flushes the output stream. Does not close the stream. */
+  public void finish() throws IOException {
+    if (depth != 0) {
+      throw new IllegalStateException("Element not closed: " + elements[depth - 1]);
+    }
+    if (!isFinished) {
+      isFinished = true;
+      out.write(END);
+      position++;
+    }
+    out.flush();
+  }
+
+  @Override
+  public void setDoctype(String doctype) {
+    // the binary encoding has no doctype
+  }
+
+  @Override
+  public void openElement(String tagName) {
+    if (depth == 0) {
+      throw new IllegalStateException("Elements can only be opened inside of an object.");
+    }
+    if (styleDepth < 0 && internedElements.contains(tagName)) {
+      styleDepth = depth;
+      styleBuffer.reset();
+      buffer = styleBuffer;
+    }
+    buffer.write(OPEN);
+    buffer.writeVarint(indexOf(tagName));
+    push(tagName);
+  }
+
+  @Override
+  public void closeElement() {
+    if (depth == 0) {
+      throw new IllegalStateException("No open element.");
+    }
+    buffer.write(CLOSE);
+    depth--;
+    elements[depth] = null;
+    if (depth == styleDepth) {
+      styleDepth = -1;
+      Key key = new Key(styleBuffer.toByteArray());
+      Integer index = styles.get(key);
+      if (index == null) {
+        index = styles.size();
+        styles.put(key, index);
+        pendingStyles.add(key.bytes);
+      }
+      buffer = objectBuffer;
+      buffer.write(STYLE_REF);
+      buffer.writeVarint(index);
+    }
+  }
+
+  private void push(String tagName) {
+    if (depth == elements.length) {
+      elements = Arrays.copyOf(elements, depth * 2);
+    }
+    elements[depth++] = tagName;
+  }
+
+  @Override
+  public void addComment(String comment) {
+    // the binary encoding has no comments
+  }
+
+  @Override
+  public void addText(String text) {
+    if (text.length() <= MAX_INTERNED_TEXT_LENGTH) {
+      buffer.write(TEXT_REF);
+      buffer.writeVarint(indexOf(text));
+    } else {
+      byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+      buffer.write(TEXT);
+      buffer.writeVarint(bytes.length);
+      buffer.write(bytes, 0, bytes.length);
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, String value) {
+    if (value != null) {
+      buffer.write(ATTR_STRING);
+      buffer.writeVarint(indexOf(name));
+      buffer.writeVarint(indexOf(value));
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, String value, String defaultValue) {
+    if (!value.equals(defaultValue)) {
+      addAttribute(name, value);
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, int value) {
+    buffer.write(ATTR_INT);
+    buffer.writeVarint(indexOf(name));
+    buffer.writeSignedVarint(value);
+  }
+
+  @Override
+  public void addAttribute(String name, int value, int defaultValue) {
+    if (value != defaultValue) {
+      addAttribute(name, value);
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, boolean value) {
+    buffer.write(value ? ATTR_TRUE : ATTR_FALSE);
+    buffer.writeVarint(indexOf(name));
+  }
+
+  @Override
+  public void addAttribute(String name, boolean value, boolean defaultValue) {
+    if (value != defaultValue) {
+      addAttribute(name, value);
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, float value) {
+    buffer.write(ATTR_FLOAT);
+    buffer.writeVarint(indexOf(name));
+    buffer.writeInt(Float.floatToRawIntBits(value));
+  }
+
+  @Override
+  public void addAttribute(String name, float value, float defaultValue) {
+    if (value != defaultValue) {
+      addAttribute(name, value);
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, double value) {
+    int nameIndex = indexOf(name);
+    long fixed = toFixed(value);
+    if (fixed != Long.MIN_VALUE) {
+      buffer.write(ATTR_FIXED);
+      buffer.writeVarint(nameIndex);
+      if (styleDepth < 0) {
+        if (nameIndex >= previousFixed.length) {
+          previousFixed = Arrays.copyOf(previousFixed, Math.max(nameIndex + 1, nameIndex * 2));
+        }
+        buffer.writeSignedVarint(fixed - previousFixed[nameIndex]);
+        previousFixed[nameIndex] = fixed;
+      } else {
+        buffer.writeSignedVarint(fixed);
+      }
+    } else if (Double.doubleToRawLongBits((float) value) == Double.doubleToRawLongBits(value)) {
+      buffer.write(ATTR_DOUBLE32);
+      buffer.writeVarint(nameIndex);
+      buffer.writeInt(Float.floatToRawIntBits((float) value));
+    } else {
+      buffer.write(ATTR_DOUBLE);
+      buffer.writeVarint(nameIndex);
+      buffer.writeLong(Double.doubleToRawLongBits(value));
+    }
+  }
+
+  @Override
+  public void addAttribute(String name, double value, double defaultValue) {
+    if (value != defaultValue) {
+      addAttribute(name, value);
+    }
+  }
+
+  /**
+   * Writes an object. If no element is open, the object is written as a top-level object, and is
+   * streamed to the output stream.
+   */
+  @Override
+  public void writeObject(Object o) throws IOException {
+    String tagName = factory.getName(o);
+    if (tagName == null) {
+      throw new IllegalArgumentException("no tag name for:" + o);
+    }
+    if (depth == 0) {
+      if (isFinished) {
+        throw new IllegalStateException("Output is finished.");
+      }
+      objectBuffer.reset();
+      buffer = objectBuffer;
+      Arrays.fill(previousFixed, 0L);
+      firstObjectId = objectids.size() + 1;
+      externalRefCount = 0;
+      writeObject(tagName, o);
+      writeChunks();
+    } else {
+      writeObject(tagName, o);
+    }
+  }
+
+  private void writeObject(String tagName, Object o) throws IOException {
+    int tagIndex = indexOf(tagName);
+    if (styleDepth >= 0) {
+      buffer.write(OPEN_OBJECT);
+      buffer.writeVarint(tagIndex);
+      buffer.writeVarint(0);
+    } else {
+      Integer id = objectids.get(o);
+      if (id != null) {
+        buffer.write(REF);
+        buffer.writeVarint(tagIndex);
+        buffer.writeVarint(id);
+        if (id < firstObjectId) {
+          if (externalRefCount == externalRefs.length) {
+            externalRefs = Arrays.copyOf(externalRefs, externalRefCount * 2);
+          }
+          externalRefs[externalRefCount++] = id;
+        }
+        return;
+      }
+      id = objectids.size() + 1;
+      objectids.put(o, id);
+      buffer.write(OPEN_OBJECT);
+      buffer.writeVarint(tagIndex);
+      buffer.writeVarint(id);
+    }
+    push(tagName);
+    factory.write(this, o);
+    closeElement();
+  }
+
+  /** Writes the pending strings, the pending styles and the current object to the stream. */
+  private void writeChunks() throws IOException {
+    if (!pendingStrings.isEmpty()) {
+      chunkBuffer.reset();
+      chunkBuffer.writeVarint(pendingStrings.size());
+      for (String s : pendingStrings) {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        chunkBuffer.writeVarint(bytes.length);
+        chunkBuffer.write(bytes, 0, bytes.length);
+      }
+      pendingStrings.clear();
+      addDictionaryPosition();
+      writeChunk(STRINGS, chunkBuffer.bytes, chunkBuffer.length);
+    }
+    for (byte[] style : pendingStyles) {
+      addDictionaryPosition();
+      writeChunk(STYLE, style, style.length);
+    }
+    pendingStyles.clear();
+    objectPosition = position;
+    writeChunk(OBJECT, objectBuffer.bytes, objectBuffer.length);
+  }
+
+  private void addDictionaryPosition() {
+    if (dictionaryPositions != null) {
+      dictionaryPositions.add(position);
+    }
+  }
+
+  private void writeChunk(int type, byte[] payload, int length) throws IOException {
+    byte[] header = new byte[6];
+    header[0] = (byte) type;
+    int n = 1;
+    int v = length;
+    while ((v & ~0x7f) != 0) {
+      header[n++] = (byte) ((v & 0x7f) | 0x80);
+      v >>>= 7;
+    }
+    header[n++] = (byte) v;
+    out.write(header, 0, n);
+    out.write(payload, 0, length);
+    position += n + length;
+  }
+
+  /** Returns the index of the specified string in the string table. Adds it if necessary. */
+  private int indexOf(String s) {
+    Integer index = strings.get(s);
+    if (index == null) {
+      index = strings.size();
+      strings.put(s, index);
+      pendingStrings.add(s);
+    }
+    return index;
+  }
+
+  /** Returns the number of bytes which have been written to the stream. */
+  long getPosition() {
+    return position;
+  }
+
+  /** Returns the position of the chunk of the top-level object which has been written last. */
+  long getObjectPosition() {
+    return objectPosition;
+  }
+
+  /** Returns the number of objects which have been assigned an id. Ids start at 1. */
+  int getObjectCount() {
+    return objectids.size();
+  }
+
+  /**
+   * Returns the ids of the objects which have been written before the top-level object which has
+   * been written last, and which are referenced by it.
+   */
+  int[] getExternalReferences() {
+    return Arrays.copyOf(externalRefs, externalRefCount);
+  }
+
+  /** Returns the objects which have been assigned an id. */
+  Set<Object> getWrittenObjects() {
+    return objectids.keySet();
+  }
+
+  /**
+   * Adds the positions of all string and style chunks, which are written from now on, to the list.
+   */
+  void setDictionaryPositions(List<Long> positions) {
+    this.dictionaryPositions = positions;
+  }
+
+  @Override
+  public Object getPrototype() {
+    if (prototypes == null) {
+      prototypes = new HashMap<>();
+    }
+    return prototypes.computeIfAbsent(elements[depth - 1], factory::createPrototype);
+  }
+
+  /** A growable byte array. */
+  private static class Buffer {
+
+    private byte[] bytes = new byte[256];
+    private int length;
+
+    void reset() {
+      length = 0;
+    }
+
+    private void ensureCapacity(int n) {
+      if (length + n > bytes.length) {
+        bytes = Arrays.copyOf(bytes, Math.max(length + n, bytes.length * 2));
+      }
+    }
+
+    void write(int b) {
+      ensureCapacity(1);
+      bytes[length++] = (byte) b;
+    }
+
+    void write(byte[] b, int off, int len) {
+      ensureCapacity(len);
+      System.arraycopy(b, off, bytes, length, len);
+      length += len;
+    }
+
+    void writeVarint(long v) {
+      ensureCapacity(10);
+      while ((v & ~0x7fL) != 0) {
+        bytes[length++] = (byte) ((v & 0x7f) | 0x80);
+        v >>>= 7;
+      }
+      bytes[length++] = (byte) v;
+    }
+
+    void writeSignedVarint(long v) {
+      writeVarint((v << 1) ^ (v >> 63));
+    }
+
+    void writeInt(int v) {
+      ensureCapacity(4);
+      bytes[length++] = (byte) (v >>> 24);
+      bytes[length++] = (byte) (v >>> 16);
+      bytes[length++] = (byte) (v >>> 8);
+      bytes[length++] = (byte) v;
+    }
+
+    void writeLong(long v) {
+      writeInt((int) (v >>> 32));
+      writeInt((int) v);
+    }
+
+    byte[] toByteArray() {
+      return Arrays.copyOf(bytes, length);
+    }
+  }
+
+  /** A byte array with value semantics. */
+  private static class Key {
+
+    private final byte[] bytes;
+    private final int hash;
+
+    Key(byte[] bytes) {
+      this.bytes = bytes;
+      this.hash = Arrays.hashCode(bytes);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      return obj instanceof Key && Arrays.equals(bytes, ((Key) obj).bytes);
+    }
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * @(#)BinaryDrawingInputFormat.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.awt.datatransfer.UnsupportedFlavorException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.AttributeStyleTable;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.io.InputFormat;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * An InputFormat that reads Drawings with DOMStorable Figure's from the binary encoding of {@link
+ * BinaryDOMOutput}.
+ *
+ * <p>Files are memory-mapped. The figures are decoded one by one, without building a tree of the
+ * whole document.
+ */
+public class BinaryDrawingInputFormat implements InputFormat {
+
+  private DOMFactory factory;
+
+  /** Format description used for the file filter. */
+  private String description;
+
+  /** File name extension used for the file filter. */
+  private String fileExtension;
+
+  /** The mime type is used for clipboard access. */
+  private String mimeType;
+
+  /** The data flavor constructed from the mime type. */
+  private DataFlavor dataFlavor;
+
+  /** The attribute styles of the figures which have been read last. */
+  private AttributeStyleTable attributeStyles = new AttributeStyleTable();
+
+  /**
+   * Creates a new instance with format name "Binary Drawing", file extension "jhdb" and mime type
+   * "application/x-jhotdraw-binary".
+   */
+  public BinaryDrawingInputFormat(DOMFactory factory) {
+    this(factory, "Binary Drawing", "jhdb", "application/x-jhotdraw-binary");
+  }
+
+  /**
+   * Creates a new instance using the specified parameters.
+   *
+   * @param factory The factory for creating Figures.
+   * @param description The format description to be used for the file filter.
+   * @param fileExtension The file extension to be used for file filter.
+   * @param mimeType The Mime Type is used for clipboard access.
+   */
+  public BinaryDrawingInputFormat(
+      DOMFactory factory, String description, String fileExtension, String mimeType) {
+    this.factory = factory;
+    this.description = description;
+    this.fileExtension = fileExtension;
+    this.mimeType = mimeType;
+    try {
+      this.dataFlavor = new DataFlavor(mimeType);
+    } catch (ClassNotFoundException ex) {
+      throw new InternalError("Unable to create data flavor for mime type:" + mimeType, ex);
+    }
+  }
+
+  @Override
+  public javax.swing.filechooser.FileFilter getFileFilter() {
+    return new FileNameExtensionFilter(description, fileExtension);
+  }
+
+  @Override
+  public boolean isDataFlavorSupported(DataFlavor flavor) {
+    return flavor.equals(dataFlavor);
+  }
+
+  @Override
+  public void read(URI uri, Drawing drawing, boolean replace) throws IOException {
+    if ("file".equals(uri.getScheme())) {
+      read(new File(uri), drawing, replace);
+    } else {
+      InputFormat.super.read(uri, drawing, replace);
+    }
+  }
+
+  /** Reads the figures from a memory-mapped file. */
+  @Override
+  public void read(File file, Drawing drawing, boolean replace) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        InputFormat.super.read(file, drawing, replace);
+      } else {
+        read(
+            new BinaryDOMInput(factory, channel.map(FileChannel.MapMode.READ_ONLY, 0, size)),
+            drawing,
+            replace);
+      }
+    }
+  }
+
+  @Override
+  public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
+    read(new BinaryDOMInput(factory, in), drawing, replace);
+  }
+
+  @Override
+  public void read(Transferable t, Drawing drawing, boolean replace)
+      throws UnsupportedFlavorException, IOException {
+    try (InputStream in = (InputStream) t.getTransferData(dataFlavor)) {
+      read(in, drawing, replace);
+    }
+  }
+
+  private void read(BinaryDOMInput domi, Drawing drawing, boolean replace) throws IOException {
+    List<Figure> figures = new ArrayList<>();
+    AttributeStyleTable styles = new AttributeStyleTable();
+    while (domi.nextObject()) {
+      Figure f = (Figure) domi.readObject();
+      styles.intern(f);
+      figures.add(f);
+    }
+    attributeStyles = styles;
+    if (replace) {
+      drawing.removeAllChildren();
+    }
+    drawing.addAll(figures);
+  }
+
+  /**
+   * Returns the attribute styles of the figures which have been read last. The figures share the
+   * storage of equal attribute values; the table reports the deduplication ratio.
+   */
+  public AttributeStyleTable getAttributeStyles() {
+    return attributeStyles;
+  }
+}
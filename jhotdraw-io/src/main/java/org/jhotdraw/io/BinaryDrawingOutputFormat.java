@@ -0,0 +1,116 @@
+/*
+ * @(#)BinaryDrawingOutputFormat.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.awt.datatransfer.DataFlavor;
+import java.awt.datatransfer.Transferable;
+import java.io.*;
+import java.net.URI;
+import java.util.List;
+import javax.swing.filechooser.FileNameExtensionFilter;
+import org.jhotdraw.datatransfer.InputStreamTransferable;
+import org.jhotdraw.draw.*;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.io.OutputFormat;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * An OutputFormat that writes Drawings with DOMStorable Figure's in the binary encoding of {@link
+ * BinaryDOMOutput}.
+ *
+ * <p>The format uses the same {@link DOMFactory} as {@link DOMStorableOutputFormat}, but is much
+ * smaller and faster. It is intended for autosave and snapshots rather than for interchange.
+ */
+public class BinaryDrawingOutputFormat implements OutputFormat {
+
+  private DOMFactory factory;
+
+  /** Format description used for the file filter. */
+  private String description;
+
+  /** File name extension used for the file filter. */
+  private String fileExtension;
+
+  /** The mime type is used for clipboard access. */
+  private String mimeType;
+
+  /** The data flavor constructed from the mime type. */
+  private DataFlavor dataFlavor;
+
+  /**
+   * Creates a new instance with format name "Binary Drawing", file extension "jhdb" and mime type
+   * "application/x-jhotdraw-binary".
+   */
+  public BinaryDrawingOutputFormat(DOMFactory factory) {
+    this(factory, "Binary Drawing", "jhdb", "application/x-jhotdraw-binary");
+  }
+
+  /**
+   * Creates a new instance using the specified parameters.
+   *
+   * @param factory The factory for writing Figures.
+   * @param description The format description to be used for the file filter.
+   * @param fileExtension The file extension to be used for file filter.
+   * @param mimeType The Mime Type is used for clipboard access.
+   */
+  public BinaryDrawingOutputFormat(
+      DOMFactory factory, String description, String fileExtension, String mimeType) {
+    this.factory = factory;
+    this.description = description;
+    this.fileExtension = fileExtension;
+    this.mimeType = mimeType;
+    try {
+      this.dataFlavor = new DataFlavor(mimeType);
+    } catch (ClassNotFoundException ex) {
+      throw new InternalError("Unable to create data flavor for mime type:" + mimeType, ex);
+    }
+  }
+
+  @Override
+  public javax.swing.filechooser.FileFilter getFileFilter() {
+    return new FileNameExtensionFilter(description, fileExtension);
+  }
+
+  @Override
+  public String getFileExtension() {
+    return fileExtension;
+  }
+
+  @Override
+  public void write(URI uri, Drawing drawing) throws IOException {
+    write(new File(uri), drawing);
+  }
+
+  public void write(File file, Drawing drawing) throws IOException {
+    try (BufferedOutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+      write(out, drawing);
+    }
+  }
+
+  @Override
+  public void write(OutputStream out, Drawing drawing) throws IOException {
+    write(out, drawing.getChildren());
+  }
+
+  /** Writes the specified figures to the stream. */
+  public void write(OutputStream out, List<Figure> figures) throws IOException {
+    BinaryDOMOutput domo = new BinaryDOMOutput(factory, out);
+    for (Figure f : figures) {
+      domo.writeObject(f);
+    }
+    domo.finish();
+  }
+
+  @Override
+  public Transferable createTransferable(Drawing drawing, List<Figure> figures, double scaleFactor)
+      throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    write(buf, figures);
+    return new InputStreamTransferable(dataFlavor, buf.toByteArray());
+  }
+}
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.TreeMap;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.connector.AbstractConnector;
 import org.jhotdraw.draw.connector.ChopBezierConnector;
@@ -490,10 +491,20 @@ public class DOMDefaultDrawFigureFactory extends DefaultDOMFactory {
     writeAttributes(figure, domOutput);
   }
 
+  /**
+   * Writes the attributes of the figure which differ from the prototype.
+   *
+   * <p>The attributes are written in the order of their names, so that the output does not depend
+   * on the order in which the attributes have been set.
+   */
   public static void writeAttributes(Figure figure, DOMOutput domOutput) throws IOException {
     Figure prototype = (Figure) domOutput.getPrototype();
     boolean isElementOpen = false;
+    TreeMap<String, Map.Entry<AttributeKey<?>, Object>> sortedByName = new TreeMap<>();
     for (Map.Entry<AttributeKey<?>, Object> entry : figure.attr().getAttributes().entrySet()) {
+      sortedByName.put(entry.getKey().getKey(), entry);
+    }
+    for (Map.Entry<AttributeKey<?>, Object> entry : sortedByName.values()) {
       AttributeKey<?> key = entry.getKey();
       if (figure.attr().isAttributeEnabled(key)) {
         Object prototypeValue = prototype.attr().get(key);
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.List;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.AttributeStyleTable;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.xml.DOMFactory;
@@ -41,6 +42,9 @@ public class DOMStorableInputFormat implements InputFormat {
   /** The data flavor constructed from the mime type. */
   private DataFlavor dataFlavor;
 
+  /** The attribute styles of the figures which have been read last. */
+  private AttributeStyleTable attributeStyles = new AttributeStyleTable();
+
   /**
    * Creates a new instance with format name "Drawing", file extension "xml" and mime type
    * "image/x-jhotdraw".
@@ -88,9 +92,13 @@ public class DOMStorableInputFormat implements InputFormat {
     if (replace) {
       drawing.removeAllChildren();
     }
+    AttributeStyleTable styles = new AttributeStyleTable();
     for (int i = 0; i < domi.getElementCount(); i++) {
-      drawing.add((Figure) domi.readObject(i));
+      Figure f = (Figure) domi.readObject(i);
+      styles.intern(f);
+      drawing.add(f);
     }
+    attributeStyles = styles;
     domi.closeElement();
     domi.closeElement();
   }
@@ -102,13 +110,25 @@ public class DOMStorableInputFormat implements InputFormat {
     InputStream in = (InputStream) t.getTransferData(new DataFlavor(mimeType, description));
     JavaxDOMInput domi = new JavaxDOMInput(factory, in);
     domi.openElement("Drawing-Clip");
+    AttributeStyleTable styles = new AttributeStyleTable();
     for (int i = 0, n = domi.getElementCount(); i < n; i++) {
-      figures.add((Figure) domi.readObject(i));
+      Figure f = (Figure) domi.readObject(i);
+      styles.intern(f);
+      figures.add(f);
     }
+    attributeStyles = styles;
     domi.closeElement();
     if (replace) {
       drawing.removeAllChildren();
     }
     drawing.addAll(figures);
   }
+
+  /**
+   * Returns the attribute styles of the figures which have been read last. The figures share the
+   * storage of equal attribute values; the table reports the deduplication ratio.
+   */
+  public AttributeStyleTable getAttributeStyles() {
+    return attributeStyles;
+  }
 }
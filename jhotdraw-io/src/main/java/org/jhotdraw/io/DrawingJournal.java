@@ -0,0 +1,692 @@
+/*
+ * @(#)DrawingJournal.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.event.DrawingEvent;
+import org.jhotdraw.draw.event.DrawingListenerAdapter;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.event.FigureListenerAdapter;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * An autosave file of a drawing: a snapshot of its figures, and a journal with the changes which
+ * have been made since the snapshot was written.
+ *
+ * <p>The changes are recorded by a {@link Recorder}, which observes the drawing and encodes only
+ * the figures which have been changed or added. The encoded changes are appended with {@link
+ * #append}. The cost of recording a change is therefore proportional to the change, and not to the
+ * size of the drawing. {@link #compact} replays the journal onto the snapshot, and writes a new
+ * snapshot. {@link #read} replays the journal onto the snapshot, for example to recover a drawing
+ * after a crash. These methods do not touch the figures of the drawing, and can be invoked on a
+ * background thread while the drawing is being edited.
+ *
+ * <p>The snapshot consists of a magic number, a version, a generation, the number of figures and
+ * the id of each figure, followed by the figures as a binary drawing. The journal consists of a
+ * magic number, a version and the generation of its snapshot, followed by entries like the journal
+ * of a {@link MappedDrawing}: a type, an id, the length and the CRC-32 of the payload, and the
+ * payload. Figures which reference each other, for example connections and the figures which they
+ * connect, are always written together into one {@link #CHANGE} entry, so that they keep their
+ * identity when the journal is replayed.
+ *
+ * <p>Each snapshot has a new generation. A journal which does not have the generation of the
+ * snapshot is obsolete, because its changes are already contained in the snapshot. Thus a crash
+ * while a snapshot is written does not lose changes, and does not replay them twice. An incomplete
+ * entry at the end of the journal is discarded.
+ */
+public class DrawingJournal implements Closeable {
+
+  /** The magic number of the snapshot: "JHDS". */
+  private static final int SNAPSHOT_MAGIC = 0x4a484453;
+
+  /** The magic number of the journal: "JHDJ". */
+  private static final int JOURNAL_MAGIC = 0x4a48444a;
+
+  private static final int VERSION = 1;
+
+  /** Magic number, version, generation. */
+  private static final int HEADER_SIZE = 16;
+
+  private static final int ENTRY_HEADER_SIZE = 16;
+
+  // Journal entry types
+  /** Changed or added figures: the entry id is their count; ids, binary drawing. */
+  static final int CHANGE = 1;
+
+  /** Removal of a figure from the z-order. */
+  static final int REMOVE = 2;
+
+  /** Insertion of a figure into the z-order: index. */
+  static final int INSERT = 3;
+
+  private final File file;
+  private final File journalFile;
+  private final DOMFactory factory;
+  private FileChannel journal;
+  private long journalLength;
+
+  /**
+   * Creates a journal for the specified autosave file. The journal is stored in a file with the
+   * suffix ".journal" next to it. The files are not accessed until a snapshot is written or read.
+   *
+   * @param file The snapshot file.
+   * @param factory The factory for reading and writing the figures.
+   */
+  public DrawingJournal(File file, DOMFactory factory) {
+    this.file = file;
+    this.journalFile = new File(file.getPath() + ".journal");
+    this.factory = factory;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /** Returns true, if a snapshot has been written to the autosave file. */
+  public boolean exists() {
+    return file.isFile();
+  }
+
+  /**
+   * Writes a new snapshot, and clears the journal.
+   *
+   * @param snapshot A snapshot which has been encoded by {@link Recorder#start}.
+   */
+  public synchronized void writeSnapshot(byte[] snapshot) throws IOException {
+    long generation = readGeneration() + 1;
+    File tmp = new File(file.getPath() + ".tmp");
+    try (FileChannel out =
+        FileChannel.open(
+            tmp.toPath(),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.TRUNCATE_EXISTING,
+            StandardOpenOption.WRITE)) {
+      writeFully(out, header(SNAPSHOT_MAGIC, generation), ByteBuffer.wrap(snapshot));
+      out.force(true);
+    }
+    Files.move(
+        tmp.toPath(),
+        file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+    if (journal == null) {
+      journal =
+          FileChannel.open(
+              journalFile.toPath(),
+              StandardOpenOption.CREATE,
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE);
+    }
+    journal.truncate(0);
+    journal.position(0);
+    writeFully(journal, header(JOURNAL_MAGIC, generation));
+    journal.force(false);
+    journalLength = HEADER_SIZE;
+  }
+
+  /**
+   * Appends changes to the journal, and writes them to the storage device.
+   *
+   * @param entries Changes which have been encoded by {@link Recorder#flush}.
+   */
+  public synchronized void append(byte[] entries) throws IOException {
+    if (journal == null) {
+      throw new IllegalStateException("No snapshot has been written.");
+    }
+    journal.position(journalLength);
+    writeFully(journal, ByteBuffer.wrap(entries));
+    journal.force(false);
+    journalLength += entries.length;
+  }
+
+  /** Returns the number of bytes of changes, which have been appended since the last snapshot. */
+  public synchronized long getJournalLength() {
+    return journal == null ? 0 : journalLength - HEADER_SIZE;
+  }
+
+  /** Replays the journal onto the snapshot, and writes the result into a new snapshot. */
+  public synchronized void compact() throws IOException {
+    Replay replay = replay();
+    List<Figure> figures = new ArrayList<>(replay.order.size());
+    int[] ids = new int[replay.order.size()];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = replay.order.get(i);
+      figures.add(replay.figures.get(ids[i]));
+    }
+    writeSnapshot(encodeSnapshot(figures, ids, factory, null));
+  }
+
+  /**
+   * Replays the journal onto the snapshot, and returns the figures.
+   *
+   * @return The figures in z-order.
+   * @throws IOException if the snapshot is missing or malformed.
+   */
+  public synchronized List<Figure> read() throws IOException {
+    Replay replay = replay();
+    List<Figure> figures = new ArrayList<>(replay.order.size());
+    for (int id : replay.order) {
+      figures.add(replay.figures.get(id));
+    }
+    return figures;
+  }
+
+  /** The state of the drawing, which results from replaying the journal onto the snapshot. */
+  private static class Replay {
+
+    /** The ids in z-order. */
+    private final List<Integer> order = new ArrayList<>();
+
+    private final HashMap<Integer, Figure> figures = new HashMap<>();
+  }
+
+  private Replay replay() throws IOException {
+    Replay replay = new Replay();
+    ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+    long generation;
+    try {
+      generation = readHeader(data, SNAPSHOT_MAGIC);
+      int n = data.getInt();
+      for (int i = 0; i < n; i++) {
+        replay.order.add(data.getInt());
+      }
+      BinaryDOMInput domi = new BinaryDOMInput(factory, data.slice());
+      for (int id : replay.order) {
+        if (!domi.nextObject()) {
+          throw new IOException("Malformed autosave file.");
+        }
+        replay.figures.put(id, (Figure) domi.readObject());
+      }
+    } catch (BufferUnderflowException | IndexOutOfBoundsException | ClassCastException e) {
+      throw new IOException("Malformed autosave file.", e);
+    }
+    if (!journalFile.isFile()) {
+      return replay;
+    }
+    ByteBuffer entries = ByteBuffer.wrap(Files.readAllBytes(journalFile.toPath()));
+    if (entries.remaining() < HEADER_SIZE
+        || entries.getInt(0) != JOURNAL_MAGIC
+        || entries.getLong(8) != generation) {
+      // The journal is obsolete
+      return replay;
+    }
+    readHeader(entries, JOURNAL_MAGIC);
+    while (entries.remaining() >= ENTRY_HEADER_SIZE) {
+      int type = entries.getInt();
+      int id = entries.getInt();
+      int length = entries.getInt();
+      int checksum = entries.getInt();
+      if (length < 0 || length > entries.remaining()) {
+        break;
+      }
+      ByteBuffer payload = entries.slice(entries.position(), length);
+      entries.position(entries.position() + length);
+      CRC32 crc = new CRC32();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != checksum) {
+        break;
+      }
+      try {
+        switch (type) {
+          case CHANGE:
+            int[] ids = new int[id];
+            for (int i = 0; i < id; i++) {
+              ids[i] = payload.getInt();
+            }
+            BinaryDOMInput domi = new BinaryDOMInput(factory, payload.slice());
+            for (int changedId : ids) {
+              if (!domi.nextObject()) {
+                throw new IOException("Malformed journal entry.");
+              }
+              replay.figures.put(changedId, (Figure) domi.readObject());
+            }
+            break;
+          case REMOVE:
+            // The figure is kept, because it is inserted again, if it has been reordered
+            replay.order.remove(Integer.valueOf(id));
+            break;
+          case INSERT:
+            replay.order.add(Math.min(payload.getInt(), replay.order.size()), id);
+            break;
+          default:
+            throw new IOException("Illegal journal entry: " + type);
+        }
+      } catch (BufferUnderflowException
+          | IndexOutOfBoundsException
+          | NegativeArraySizeException
+          | ClassCastException e) {
+        throw new IOException("Malformed journal entry.", e);
+      }
+    }
+    replay.order.removeIf(i -> !replay.figures.containsKey(i));
+    return replay;
+  }
+
+  /** Returns the generation of the snapshot, or 0 if there is no valid snapshot. */
+  private long readGeneration() throws IOException {
+    if (!file.isFile()) {
+      return 0;
+    }
+    try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+      while (header.hasRemaining() && in.read(header) >= 0) {}
+      return header.hasRemaining() || header.getInt(0) != SNAPSHOT_MAGIC ? 0 : header.getLong(8);
+    }
+  }
+
+  private static long readHeader(ByteBuffer data, int magic) throws IOException {
+    if (data.getInt() != magic) {
+      throw new IOException("Not an autosave file.");
+    }
+    int version = data.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported autosave file version: " + version);
+    }
+    return data.getLong();
+  }
+
+  private static ByteBuffer header(int magic, long generation) {
+    return ByteBuffer.allocate(HEADER_SIZE)
+        .putInt(magic)
+        .putInt(VERSION)
+        .putLong(generation)
+        .flip();
+  }
+
+  private static void writeFully(FileChannel out, ByteBuffer... buffers) throws IOException {
+    while (buffers[buffers.length - 1].hasRemaining()) {
+      out.write(buffers);
+    }
+  }
+
+  /** Deletes the snapshot and the journal. */
+  public synchronized void delete() throws IOException {
+    close();
+    Files.deleteIfExists(journalFile.toPath());
+    Files.deleteIfExists(file.toPath());
+  }
+
+  /** Closes the journal. */
+  @Override
+  public synchronized void close() throws IOException {
+    if (journal != null) {
+      journal.close();
+      journal = null;
+    }
+  }
+
+  /**
+   * Encodes a snapshot.
+   *
+   * @param figures The figures in z-order.
+   * @param ids The ids of the figures.
+   * @param linked If not null, the indices of the figures, which reference or are referenced by
+   *     other figures, are set in this bit set.
+   */
+  private static byte[] encodeSnapshot(
+      List<? extends Figure> figures, int[] ids, DOMFactory factory, BitSet linked)
+      throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(buf);
+    out.writeInt(ids.length);
+    for (int id : ids) {
+      out.writeInt(id);
+    }
+    int[] firstIds = new int[figures.size()];
+    BinaryDOMOutput domo = new BinaryDOMOutput(factory, out);
+    for (int i = 0; i < firstIds.length; i++) {
+      firstIds[i] = domo.getObjectCount() + 1;
+      domo.writeObject(figures.get(i));
+      if (linked != null) {
+        for (int id : domo.getExternalReferences()) {
+          linked.set(i);
+          linked.set(MappedFigureStore.slotOfId(firstIds, i, id));
+        }
+      }
+    }
+    domo.finish();
+    return buf.toByteArray();
+  }
+
+  /**
+   * Records the changes of a drawing, and encodes them for {@link #append}.
+   *
+   * <p>The recorder observes the children of the drawing, and the z-order. Changes of the z-order,
+   * which are not reported as added or removed figures, are detected when the drawing reports that
+   * it has changed, as {@link Drawing#bringToFront} and {@link Drawing#sendToBack} do.
+   *
+   * <p>A recorder must only be used on the thread which changes the drawing, usually the event
+   * dispatch thread.
+   */
+  public static class Recorder {
+
+    private final Drawing drawing;
+    private final DOMFactory factory;
+
+    /** The ids of the children. */
+    private final IdentityHashMap<Figure, Integer> ids = new IdentityHashMap<>();
+
+    /** The ids of the children in z-order, as they have been recorded. */
+    private int[] order = new int[16];
+
+    private int size;
+    private int nextId;
+
+    /** The children, which reference or are referenced by other children. */
+    private final HashMap<Integer, Figure> linked = new HashMap<>();
+
+    private boolean isLinkedDirty;
+
+    /** The children, which have been changed or added since the last flush. */
+    private final Set<Figure> dirty = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /** The encoded entries since the last flush. */
+    private final ByteArrayOutputStream entries = new ByteArrayOutputStream();
+
+    private boolean isRecording;
+
+    private final FigureListenerAdapter figureHandler =
+        new FigureListenerAdapter() {
+          @Override
+          public void figureChanged(FigureEvent e) {
+            dirty.add(e.getFigure());
+          }
+
+          @Override
+          public void attributeChanged(FigureEvent e) {
+            dirty.add(e.getFigure());
+          }
+        };
+
+    private final DrawingListenerAdapter drawingHandler =
+        new DrawingListenerAdapter() {
+          @Override
+          public void figureAdded(DrawingEvent e) {
+            added(e.getFigure(), e.getFigureIndex());
+          }
+
+          @Override
+          public void figureRemoved(DrawingEvent e) {
+            removed(e.getFigure(), e.getFigureIndex());
+          }
+
+          @Override
+          public void drawingChanged(DrawingEvent e) {
+            reordered();
+          }
+        };
+
+    public Recorder(Drawing drawing, DOMFactory factory) {
+      this.drawing = drawing;
+      this.factory = factory;
+    }
+
+    /**
+     * Starts recording the changes of the drawing.
+     *
+     * @return A snapshot of the drawing for {@link DrawingJournal#writeSnapshot}.
+     */
+    public byte[] start() throws IOException {
+      stop();
+      ids.clear();
+      linked.clear();
+      dirty.clear();
+      entries.reset();
+      List<Figure> children = drawing.getChildren();
+      size = children.size();
+      order = new int[Math.max(16, size)];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+        ids.put(children.get(i), i);
+      }
+      nextId = size;
+      BitSet linkedIndices = new BitSet();
+      byte[] snapshot =
+          encodeSnapshot(children, Arrays.copyOf(order, size), factory, linkedIndices);
+      linkedIndices.stream().forEach(i -> linked.put(i, children.get(i)));
+      for (Figure f : children) {
+        f.addFigureListener(figureHandler);
+      }
+      drawing.addDrawingListener(drawingHandler);
+      isRecording = true;
+      return snapshot;
+    }
+
+    /** Stops recording. */
+    public void stop() {
+      if (isRecording) {
+        isRecording = false;
+        drawing.removeDrawingListener(drawingHandler);
+        for (Figure f : ids.keySet()) {
+          f.removeFigureListener(figureHandler);
+        }
+      }
+    }
+
+    private void added(Figure f, int index) {
+      if (ids.containsKey(f)) {
+        return;
+      }
+      // The index of the event is not reliable, if several figures are added at once
+      int count = drawing.getChildCount();
+      if (count == size + 1 && drawing.getChild(size) == f) {
+        index = size;
+      } else if (index < 0 || index >= count || drawing.getChild(index) != f) {
+        index =
+            index > 0 && index <= count && drawing.getChild(index - 1) == f
+                ? index - 1
+                : drawing.indexOf(f);
+      }
+      int id = nextId++;
+      ids.put(f, id);
+      insert(index, id);
+      dirty.add(f);
+      f.addFigureListener(figureHandler);
+    }
+
+    private void removed(Figure f, int index) {
+      Integer id = ids.remove(f);
+      if (id == null) {
+        return;
+      }
+      f.removeFigureListener(figureHandler);
+      dirty.remove(f);
+      linked.remove(id);
+      if (index < 0 || index >= size || order[index] != id) {
+        index = indexOf(id);
+      }
+      System.arraycopy(order, index + 1, order, index, size - index - 1);
+      size--;
+      appendEntry(REMOVE, id, new byte[0]);
+    }
+
+    /** Records a figure, which has been moved to the front or to the back. */
+    private void reordered() {
+      if (size < 2 || drawing.getChildCount() != size) {
+        return;
+      }
+      Integer first = ids.get(drawing.getChild(0));
+      Integer last = ids.get(drawing.getChild(size - 1));
+      if (first == null || last == null) {
+        return;
+      }
+      boolean isFirstMoved = first != order[0];
+      boolean isLastMoved = last != order[size - 1];
+      // If both ends have changed, either the first figure has been moved to the front, or the
+      // last figure has been moved to the back
+      if (isLastMoved && (!isFirstMoved || order[0] == last)) {
+        move(last, size - 1);
+      } else if (isFirstMoved) {
+        move(first, 0);
+      }
+    }
+
+    private void move(int id, int index) {
+      int oldIndex = indexOf(id);
+      System.arraycopy(order, oldIndex + 1, order, oldIndex, size - oldIndex - 1);
+      size--;
+      appendEntry(REMOVE, id, new byte[0]);
+      insert(index, id);
+    }
+
+    private void insert(int index, int id) {
+      if (size == order.length) {
+        order = Arrays.copyOf(order, size * 2);
+      }
+      System.arraycopy(order, index, order, index + 1, size - index);
+      order[index] = id;
+      size++;
+      appendEntry(INSERT, id, ByteBuffer.allocate(4).putInt(index).array());
+    }
+
+    private int indexOf(int id) {
+      for (int i = 0; i < size; i++) {
+        if (order[i] == id) {
+          return i;
+        }
+      }
+      throw new IllegalStateException("Figure is not recorded: " + id);
+    }
+
+    /**
+     * Encodes the changes since the last flush.
+     *
+     * @return The entries for {@link DrawingJournal#append}, or null if nothing has changed.
+     */
+    public byte[] flush() throws IOException {
+      List<Object> written = new ArrayList<>();
+      for (Figure f : dirty) {
+        Integer id = ids.get(f);
+        if (id == null) {
+          continue;
+        }
+        if (linked.containsKey(id)) {
+          isLinkedDirty = true;
+          continue;
+        }
+        written.clear();
+        byte[] encoded = encode(List.of(f), written);
+        if (link(f, written)) {
+          linked.put(id, f);
+          isLinkedDirty = true;
+        } else {
+          appendChange(new int[] {id}, encoded);
+        }
+      }
+      dirty.clear();
+      if (isLinkedDirty) {
+        writeLinked();
+        isLinkedDirty = false;
+      }
+      if (entries.size() == 0) {
+        return null;
+      }
+      byte[] result = entries.toByteArray();
+      entries.reset();
+      return result;
+    }
+
+    /**
+     * Adds the children, which have been written together with a figure, to the linked children.
+     *
+     * @return true if other children have been written
+     */
+    private boolean link(Figure f, Collection<Object> written) {
+      boolean isLinked = false;
+      for (Object o : written) {
+        Integer id = o == f ? null : ids.get(o);
+        if (id != null) {
+          isLinked = true;
+          linked.put(id, (Figure) o);
+        }
+      }
+      return isLinked;
+    }
+
+    /** Writes all linked children into one entry. */
+    private void writeLinked() throws IOException {
+      List<Object> written = new ArrayList<>();
+      while (true) {
+        int[] linkedIds = linked.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        List<Figure> figures = new ArrayList<>(linkedIds.length);
+        for (int id : linkedIds) {
+          figures.add(linked.get(id));
+        }
+        written.clear();
+        byte[] encoded = encode(figures, written);
+        int linkedCount = linked.size();
+        for (Object o : written) {
+          Integer id = ids.get(o);
+          if (id != null) {
+            linked.put(id, (Figure) o);
+          }
+        }
+        if (linked.size() == linkedCount) {
+          appendChange(linkedIds, encoded);
+          return;
+        }
+      }
+    }
+
+    private byte[] encode(List<Figure> figures, Collection<Object> writtenObjects)
+        throws IOException {
+      ByteArrayOutputStream buf = new ByteArrayOutputStream();
+      BinaryDOMOutput domo = new BinaryDOMOutput(factory, buf);
+      for (Figure f : figures) {
+        domo.writeObject(f);
+      }
+      domo.finish();
+      writtenObjects.addAll(domo.getWrittenObjects());
+      return buf.toByteArray();
+    }
+
+    private void appendChange(int[] changedIds, byte[] encoded) {
+      ByteBuffer payload = ByteBuffer.allocate(changedIds.length * 4 + encoded.length);
+      for (int id : changedIds) {
+        payload.putInt(id);
+      }
+      payload.put(encoded);
+      appendEntry(CHANGE, changedIds.length, payload.array());
+    }
+
+    private void appendEntry(int type, int id, byte[] payload) {
+      CRC32 crc = new CRC32();
+      crc.update(payload);
+      entries.writeBytes(
+          ByteBuffer.allocate(ENTRY_HEADER_SIZE)
+              .putInt(type)
+              .putInt(id)
+              .putInt(payload.length)
+              .putInt((int) crc.getValue())
+              .array());
+      entries.writeBytes(payload);
+    }
+  }
+}
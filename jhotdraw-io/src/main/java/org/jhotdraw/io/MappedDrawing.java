@@ -0,0 +1,1112 @@
+/*
+ * @(#)MappedDrawing.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import static org.jhotdraw.draw.AttributeKeys.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.WeakHashMap;
+import java.util.function.IntConsumer;
+import org.jhotdraw.draw.AbstractDrawing;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.QuadTreeDrawing;
+import org.jhotdraw.draw.event.FigureEvent;
+import org.jhotdraw.draw.figure.AttributeStyleTable;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.geom.Geom;
+import org.jhotdraw.geom.IncrementalBounds;
+import org.jhotdraw.geom.LooseQuadTree;
+import org.jhotdraw.geom.PackedRTree;
+import org.jhotdraw.util.ReversedList;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * A {@link org.jhotdraw.draw.Drawing} which keeps its figures in a memory-mapped store file, and
+ * materializes them on demand. It is intended for drawings which have too many figures to hold them
+ * all in memory.
+ *
+ * <p>A store file is written with {@link #write}. The z-order of the figures and a {@link
+ * PackedRTree} with their drawing areas are read from the mapped file. A figure is decoded when it
+ * is touched by {@link #draw}, {@link #findFigure}, {@link #getChildren(Rectangle2D.Double)} or one
+ * of the other methods which return figures. The most recently used figures are kept in a cache of
+ * {@link #setCacheCapacity limited size}, the least recently used ones are evicted from it. A
+ * figure which is still referenced elsewhere, for example by the selection of a view, keeps its
+ * identity until it becomes unreachable.
+ *
+ * <p>Changes are written to a journal file next to the store file. Changed and added figures stay
+ * in memory until they are written with {@link #flush}, or until there are more of them than the
+ * auto-flush threshold. The drawing areas of changed and added figures are kept in a {@link
+ * LooseQuadTree} on top of the index of the store file. When the drawing is opened again, the
+ * journal is replayed. To compact the journal, write the children into a new store file.
+ *
+ * <p>Figures which reference each other, for example connections and the figures which they
+ * connect, are decoded together when the drawing is opened, and are kept in memory.
+ *
+ * <p>Implementation note: {@link #getDrawingArea(double)} returns the bounds of the index of the
+ * store file and of the changed figures, for all scale factors. It does not shrink when figures are
+ * removed. The store file must not be larger than 2 GB.
+ */
+public class MappedDrawing extends AbstractDrawing implements Closeable {
+
+  private static final long serialVersionUID = 1L;
+
+  /** The default number of figures which are kept in the cache. */
+  public static final int DEFAULT_CACHE_CAPACITY = 10000;
+
+  /** The default number of changed figures, which causes them to be written to the journal. */
+  public static final int DEFAULT_AUTO_FLUSH_THRESHOLD = 1000;
+
+  private final transient MappedFigureStore store;
+
+  /** Guards the state of the drawing, which is also accessed by background renderers. */
+  private final transient Object lock = new Object();
+
+  /** The slots in z-order. */
+  private int[] order;
+
+  private int size;
+
+  /** The index of each slot in {@link #order}, or -1 if the slot is not a child. */
+  private int[] indices;
+
+  private int slotCount;
+
+  /** Number of slots in the store file. */
+  private final int baseSlotCount;
+
+  /** Slots of the store file, whose drawing area is held by {@link #overlay}. */
+  private final BitSet moved = new BitSet();
+
+  /** Spatial index of the slots, which have been changed or added after the store was written. */
+  private final LooseQuadTree<Slot> overlay = new LooseQuadTree<>();
+
+  private final transient IncrementalBounds<Slot> overlayAreas = new IncrementalBounds<>();
+  private final HashMap<Integer, Slot> overlaySlots = new HashMap<>();
+
+  /** Position of the journal entry of each slot, which has been written to the journal. */
+  private final HashMap<Integer, Long> journalPositions = new HashMap<>();
+
+  /** The linked slots. */
+  private final BitSet linked = new BitSet();
+
+  /** Position of the journal entry with the linked figures, or -1 if they are in the store file. */
+  private long linkedPosition = -1;
+
+  /** The slots of the journal entry with the linked figures. */
+  private int[] linkedEntrySlots;
+
+  private boolean isLinkedDirty;
+
+  /** Weak references to the materialized figures. */
+  private final transient HashMap<Integer, SlotReference> references = new HashMap<>();
+
+  private final transient ReferenceQueue<Figure> referenceQueue = new ReferenceQueue<>();
+  private final transient WeakHashMap<Figure, Integer> figureSlots = new WeakHashMap<>();
+
+  /** The most recently used figures. */
+  private final transient LinkedHashMap<Integer, Figure> cache;
+
+  private int cacheCapacity = DEFAULT_CACHE_CAPACITY;
+
+  /** Figures which are not evicted: changed, added and linked figures. */
+  private final transient HashMap<Integer, Figure> pinned = new HashMap<>();
+
+  /** Slots which have been changed or added after the last flush. */
+  private final LinkedHashSet<Integer> dirty = new LinkedHashSet<>();
+
+  private int autoFlushThreshold = DEFAULT_AUTO_FLUSH_THRESHOLD;
+
+  /** Changes of the z-order after the last flush: slot and index, index -1 for a removal. */
+  private int[] pendingOrder = new int[16];
+
+  private int pendingOrderCount;
+
+  /** Suppresses change tracking while a figure is attached to the drawing. */
+  private boolean isMaterializing;
+
+  private final transient AttributeStyleTable attributeStyles = new AttributeStyleTable();
+
+  /**
+   * Opens a store file, and replays the journal file next to it. The journal file has the name of
+   * the store file with the extension ".journal" appended.
+   */
+  public MappedDrawing(File file, DOMFactory factory) throws IOException {
+    this(file, new File(file.getPath() + ".journal"), factory);
+  }
+
+  /** Opens a store file, and replays the specified journal file. */
+  public MappedDrawing(File file, File journalFile, DOMFactory factory) throws IOException {
+    cache =
+        new LinkedHashMap<>(16, 0.75f, true) {
+          private static final long serialVersionUID = 1L;
+
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, Figure> eldest) {
+            return size() > cacheCapacity;
+          }
+        };
+    store = new MappedFigureStore(file, journalFile, factory);
+    try {
+      baseSlotCount = store.getSlotCount();
+      slotCount = baseSlotCount;
+      size = baseSlotCount;
+      order = new int[Math.max(16, size)];
+      indices = new int[Math.max(16, size)];
+      for (int i = 0; i < size; i++) {
+        order[i] = i;
+        indices[i] = i;
+        if (store.isLinked(i)) {
+          linked.set(i);
+        }
+      }
+      store.replay(new Replay());
+      // Remove the added slots, which have not been written completely
+      for (int i = size - 1; i >= 0; i--) {
+        int slot = order[i];
+        if (slot >= baseSlotCount && !journalPositions.containsKey(slot) && !linked.get(slot)) {
+          removeAt(i);
+        }
+      }
+      materializeLinked();
+    } catch (IOException | RuntimeException e) {
+      store.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the specified figures into a new store file, which can be opened with {@link
+   * #MappedDrawing(File, DOMFactory)}. The store file is also a binary drawing, which can be read
+   * with {@link BinaryDrawingInputFormat}.
+   *
+   * @param file The store file.
+   * @param factory The factory for writing the figures.
+   * @param figures The figures in z-order.
+   */
+  public static void write(File file, DOMFactory factory, List<? extends Figure> figures)
+      throws IOException {
+    MappedFigureStore.write(file, factory, figures);
+  }
+
+  /** Applies the entries of the journal. */
+  private class Replay implements MappedFigureStore.JournalVisitor {
+
+    @Override
+    public void put(int slot, Rectangle2D.Double drawingArea, long position) throws IOException {
+      ensureSlot(slot);
+      journalPositions.put(slot, position);
+      setOverlay(slot, drawingArea);
+    }
+
+    @Override
+    public void remove(int slot) throws IOException {
+      ensureSlot(slot);
+      if (indices[slot] >= 0) {
+        removeAt(indices[slot]);
+      }
+    }
+
+    @Override
+    public void insert(int slot, int index) throws IOException {
+      ensureSlot(slot);
+      if (indices[slot] >= 0) {
+        removeAt(indices[slot]);
+      }
+      insertAt(Math.max(0, Math.min(size, index)), slot);
+    }
+
+    @Override
+    public void linked(int[] slots, Rectangle2D.Double[] drawingAreas, long position)
+        throws IOException {
+      linked.clear();
+      for (int i = 0; i < slots.length; i++) {
+        ensureSlot(slots[i]);
+        linked.set(slots[i]);
+        setOverlay(slots[i], drawingAreas[i]);
+      }
+      linkedEntrySlots = slots;
+      linkedPosition = position;
+    }
+  }
+
+  /** Decodes the linked figures, and pins them. */
+  private void materializeLinked() throws IOException {
+    int[] slots;
+    Figure[] figures;
+    if (linkedPosition >= 0) {
+      slots = linkedEntrySlots;
+      figures = store.readLinked(linkedPosition);
+    } else {
+      slots = linked.stream().toArray();
+      figures = store.readLinked(slots);
+    }
+    for (int i = 0; i < slots.length; i++) {
+      if (indices[slots[i]] >= 0) {
+        attach(slots[i], figures[i], true);
+        pinned.put(slots[i], figures[i]);
+      } else {
+        linked.clear(slots[i]);
+      }
+    }
+  }
+
+  // Slots and z-order
+
+  private void ensureSlot(int slot) throws IOException {
+    if (slot < 0 || slot > slotCount + (1 << 24)) {
+      throw new IOException("Illegal slot: " + slot);
+    }
+    if (slot >= slotCount) {
+      if (slot >= indices.length) {
+        indices = Arrays.copyOf(indices, Math.max(slot + 1, indices.length * 2));
+      }
+      Arrays.fill(indices, slotCount, slot + 1, -1);
+      slotCount = slot + 1;
+    }
+  }
+
+  private void insertAt(int index, int slot) {
+    if (size == order.length) {
+      order = Arrays.copyOf(order, size * 2);
+    }
+    System.arraycopy(order, index, order, index + 1, size - index);
+    order[index] = slot;
+    size++;
+    for (int i = index; i < size; i++) {
+      indices[order[i]] = i;
+    }
+  }
+
+  private void removeAt(int index) {
+    indices[order[index]] = -1;
+    System.arraycopy(order, index + 1, order, index, size - index - 1);
+    size--;
+    for (int i = index; i < size; i++) {
+      indices[order[i]] = i;
+    }
+  }
+
+  /** Records a change of the z-order, which is written to the journal by the next flush. */
+  private void recordOrder(int slot, int index) {
+    if (pendingOrderCount + 2 > pendingOrder.length) {
+      pendingOrder = Arrays.copyOf(pendingOrder, pendingOrder.length * 2);
+    }
+    pendingOrder[pendingOrderCount++] = slot;
+    pendingOrder[pendingOrderCount++] = index;
+  }
+
+  private void setOverlay(int slot, Rectangle2D.Double drawingArea) {
+    Slot s = overlaySlots.computeIfAbsent(slot, Slot::new);
+    overlay.add(s, drawingArea);
+    overlayAreas.put(s, drawingArea);
+    if (slot < baseSlotCount) {
+      moved.set(slot);
+    }
+  }
+
+  private void removeOverlay(int slot) {
+    Slot s = overlaySlots.remove(slot);
+    if (s != null) {
+      overlay.remove(s);
+      overlayAreas.remove(s);
+    }
+  }
+
+  /**
+   * Returns the indices of the children, whose drawing area intersects the specified region, in
+   * ascending order. May include children which lie very close to the region.
+   */
+  private int[] query(double minX, double minY, double maxX, double maxY) {
+    IndexList hits = new IndexList();
+    store
+        .getIndex()
+        .find(
+            minX,
+            minY,
+            maxX,
+            maxY,
+            slot -> {
+              if (!moved.get(slot) && indices[slot] >= 0) {
+                hits.accept(indices[slot]);
+              }
+            });
+    for (Slot s :
+        overlay.findIntersects(new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY))) {
+      if (indices[s.slot] >= 0) {
+        hits.accept(indices[s.slot]);
+      }
+    }
+    int[] result = Arrays.copyOf(hits.values, hits.size);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /** Returns the children, whose drawing area intersects the region, from back to front. */
+  private List<Figure> findCandidates(double minX, double minY, double maxX, double maxY) {
+    synchronized (lock) {
+      int[] hits = query(minX, minY, maxX, maxY);
+      List<Figure> figures = new ArrayList<>(hits.length);
+      for (int index : hits) {
+        figures.add(materialize(order[index]));
+      }
+      return figures;
+    }
+  }
+
+  private List<Figure> findCandidates(Point2D.Double p) {
+    return findCandidates(p.x, p.y, p.x, p.y);
+  }
+
+  private List<Figure> findCandidates(Rectangle2D r) {
+    return findCandidates(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+  }
+
+  // Materialization
+
+  /** Returns the figure of a slot, and decodes it if necessary. */
+  private Figure materialize(int slot) {
+    Figure f = pinned.get(slot);
+    if (f == null) {
+      f = cache.get(slot);
+    }
+    if (f != null) {
+      return f;
+    }
+    expungeStaleReferences();
+    SlotReference ref = references.get(slot);
+    f = ref == null ? null : ref.get();
+    if (f == null) {
+      try {
+        Long position = journalPositions.get(slot);
+        f = position != null ? store.readPut(position) : store.read(slot);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      attributeStyles.intern(f);
+      attach(slot, f, true);
+    }
+    cache.put(slot, f);
+    return f;
+  }
+
+  /** Associates a figure with a slot, and registers the drawing as its listener. */
+  private void attach(int slot, Figure f, boolean notify) {
+    references.put(slot, new SlotReference(slot, f, referenceQueue));
+    figureSlots.put(f, slot);
+    isMaterializing = true;
+    try {
+      f.addFigureListener(eventHandler);
+      if (notify) {
+        f.addNotify(this);
+      }
+    } finally {
+      isMaterializing = false;
+    }
+  }
+
+  private void expungeStaleReferences() {
+    for (SlotReference ref; (ref = (SlotReference) referenceQueue.poll()) != null; ) {
+      if (references.get(ref.slot) == ref) {
+        references.remove(ref.slot);
+      }
+    }
+  }
+
+  /** Returns the slot of a child, or -1 if the figure is not a child. */
+  private int slotOf(Figure f) {
+    Integer slot = figureSlots.get(f);
+    return slot == null || indices[slot] < 0 ? -1 : slot;
+  }
+
+  /** Pins a changed figure, and updates its drawing area. */
+  private void markChanged(Figure f) {
+    boolean isFlushNeeded;
+    synchronized (lock) {
+      int slot = slotOf(f);
+      if (isMaterializing || slot < 0) {
+        return;
+      }
+      pinned.put(slot, f);
+      dirty.add(slot);
+      setOverlay(slot, f.getDrawingArea());
+      if (linked.get(slot)) {
+        isLinkedDirty = true;
+      }
+      isFlushNeeded = dirty.size() >= autoFlushThreshold;
+    }
+    if (isFlushNeeded) {
+      try {
+        flush();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    }
+  }
+
+  /**
+   * Writes the changed and added figures and the changes of the z-order to the journal. Afterwards,
+   * the figures can be evicted from the cache.
+   */
+  public void flush() throws IOException {
+    synchronized (lock) {
+      List<Object> written = new ArrayList<>();
+      for (Integer slot : dirty) {
+        if (indices[slot] < 0) {
+          continue;
+        }
+        if (linked.get(slot)) {
+          isLinkedDirty = true;
+          continue;
+        }
+        Figure f = pinned.get(slot);
+        written.clear();
+        byte[] encoded = store.encode(List.of(f), written);
+        if (link(f, written)) {
+          linked.set(slot);
+          isLinkedDirty = true;
+        } else {
+          journalPositions.put(slot, store.appendPut(slot, f.getDrawingArea(), encoded));
+        }
+      }
+      if (isLinkedDirty) {
+        writeLinked();
+      }
+      for (int i = 0; i < pendingOrderCount; i += 2) {
+        if (pendingOrder[i + 1] < 0) {
+          store.appendRemove(pendingOrder[i]);
+        } else {
+          store.appendInsert(pendingOrder[i], pendingOrder[i + 1]);
+        }
+      }
+      store.force();
+      dirty.clear();
+      pendingOrderCount = 0;
+      isLinkedDirty = false;
+      for (Iterator<Map.Entry<Integer, Figure>> i = pinned.entrySet().iterator(); i.hasNext(); ) {
+        Map.Entry<Integer, Figure> entry = i.next();
+        if (!linked.get(entry.getKey())) {
+          i.remove();
+          cache.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+  }
+
+  /**
+   * Links and pins the children, which have been written together with a figure.
+   *
+   * @return true if other children have been written
+   */
+  private boolean link(Figure f, Collection<Object> written) {
+    boolean isLinked = false;
+    for (Object o : written) {
+      if (o != f && o instanceof Figure) {
+        int slot = slotOf((Figure) o);
+        if (slot >= 0) {
+          isLinked = true;
+          if (!linked.get(slot)) {
+            linked.set(slot);
+            pinned.put(slot, (Figure) o);
+          }
+        }
+      }
+    }
+    return isLinked;
+  }
+
+  /** Writes all linked figures into one journal entry. */
+  private void writeLinked() throws IOException {
+    List<Object> written = new ArrayList<>();
+    while (true) {
+      int[] slots = linked.stream().filter(slot -> indices[slot] >= 0).toArray();
+      List<Figure> figures = new ArrayList<>(slots.length);
+      Rectangle2D.Double[] areas = new Rectangle2D.Double[slots.length];
+      for (int i = 0; i < slots.length; i++) {
+        Figure f = materialize(slots[i]);
+        pinned.put(slots[i], f);
+        figures.add(f);
+        areas[i] = f.getDrawingArea();
+      }
+      written.clear();
+      byte[] encoded = store.encode(figures, written);
+      boolean isGrown = false;
+      for (Object o : written) {
+        if (o instanceof Figure) {
+          int slot = slotOf((Figure) o);
+          if (slot >= 0 && !linked.get(slot)) {
+            linked.set(slot);
+            isGrown = true;
+          }
+        }
+      }
+      if (!isGrown) {
+        linkedPosition = store.appendLinked(slots, areas, encoded);
+        linkedEntrySlots = slots;
+        return;
+      }
+    }
+  }
+
+  /** Flushes the drawing, and closes the store file and the journal. */
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      store.close();
+    }
+  }
+
+  /** Sets the number of figures, which are kept in the cache. */
+  public void setCacheCapacity(int capacity) {
+    synchronized (lock) {
+      cacheCapacity = capacity;
+      Iterator<Integer> i = cache.keySet().iterator();
+      for (int n = cache.size(); n > capacity; n--) {
+        i.next();
+        i.remove();
+      }
+    }
+  }
+
+  public int getCacheCapacity() {
+    return cacheCapacity;
+  }
+
+  /** Sets the number of changed figures, which causes them to be written to the journal. */
+  public void setAutoFlushThreshold(int threshold) {
+    autoFlushThreshold = threshold;
+  }
+
+  public int getAutoFlushThreshold() {
+    return autoFlushThreshold;
+  }
+
+  /** Returns the number of figures, which are kept in memory by the cache or are pinned. */
+  public int getCachedFigureCount() {
+    synchronized (lock) {
+      int count = pinned.size();
+      for (Integer slot : cache.keySet()) {
+        if (!pinned.containsKey(slot)) {
+          count++;
+        }
+      }
+      return count;
+    }
+  }
+
+  /** Returns the attribute styles of the figures, which have been decoded. */
+  public AttributeStyleTable getAttributeStyles() {
+    return attributeStyles;
+  }
+
+  // Drawing
+
+  @Override
+  public Figure getChild(int index) {
+    synchronized (lock) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return materialize(order[index]);
+    }
+  }
+
+  @Override
+  public int getChildCount() {
+    return size;
+  }
+
+  /** Returns a view of the children. Iterating over it decodes the children one by one. */
+  @Override
+  public List<Figure> getChildren() {
+    return new ChildList();
+  }
+
+  @Override
+  public int indexOf(Figure figure) {
+    synchronized (lock) {
+      int slot = slotOf(figure);
+      return slot < 0 ? -1 : indices[slot];
+    }
+  }
+
+  /**
+   * Implementation note: The children are kept sorted by layer. If the figure does not belong to
+   * the layer at the specified index, it is added at the nearest index which belongs to its layer.
+   */
+  @Override
+  public void basicAdd(int index, Figure figure) {
+    synchronized (lock) {
+      index = layerIndex(index, figure.getLayer());
+      int slot = slotCount;
+      try {
+        ensureSlot(slot);
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+      insertAt(index, slot);
+      attach(slot, figure, false);
+      pinned.put(slot, figure);
+      dirty.add(slot);
+      setOverlay(slot, figure.getDrawingArea());
+      recordOrder(slot, index);
+    }
+    invalidate();
+  }
+
+  @Override
+  public boolean remove(Figure figure) {
+    int index = indexOf(figure);
+    if (index == -1) {
+      return false;
+    }
+    basicRemoveChild(index);
+    figure.removeNotify(this);
+    fireFigureRemoved(figure, index);
+    return true;
+  }
+
+  @Override
+  protected int basicRemove(Figure child) {
+    int index = indexOf(child);
+    if (index != -1) {
+      basicRemoveChild(index);
+    }
+    return index;
+  }
+
+  @Override
+  protected Figure basicRemoveChild(int index) {
+    Figure figure = getChild(index);
+    synchronized (lock) {
+      detach(index);
+    }
+    figure.removeFigureListener(eventHandler);
+    invalidate();
+    return figure;
+  }
+
+  /** Removes the child at the specified index. Does not decode it. */
+  private void detach(int index) {
+    int slot = order[index];
+    removeAt(index);
+    removeOverlay(slot);
+    dirty.remove(slot);
+    pinned.remove(slot);
+    cache.remove(slot);
+    SlotReference ref = references.remove(slot);
+    Figure f = ref == null ? null : ref.get();
+    if (f != null) {
+      figureSlots.remove(f);
+      f.removeFigureListener(eventHandler);
+    }
+    if (linked.get(slot)) {
+      linked.clear(slot);
+      isLinkedDirty = true;
+    }
+    recordOrder(slot, -1);
+  }
+
+  @Override
+  public void removeAllChildren() {
+    synchronized (lock) {
+      while (size > 0) {
+        detach(size - 1);
+      }
+    }
+    invalidate();
+  }
+
+  @Override
+  public void basicRemoveAll(Collection<? extends Figure> figures) {
+    for (Figure f : new ArrayList<>(figures)) {
+      basicRemove(f);
+    }
+  }
+
+  @Override
+  public void bringToFront(Figure figure) {
+    moveTo(figure, true);
+  }
+
+  @Override
+  public void sendToBack(Figure figure) {
+    moveTo(figure, false);
+  }
+
+  private void moveTo(Figure figure, boolean isFront) {
+    synchronized (lock) {
+      int slot = slotOf(figure);
+      if (slot < 0) {
+        return;
+      }
+      removeAt(indices[slot]);
+      recordOrder(slot, -1);
+      int index = layerIndex(isFront ? size : 0, figure.getLayer());
+      insertAt(index, slot);
+      recordOrder(slot, index);
+    }
+    fireDrawingChanged(figure.getDrawingArea());
+  }
+
+  /**
+   * Returns the index nearest to the specified index at which the children stay sorted by layer.
+   */
+  private int layerIndex(int index, int layer) {
+    while (index > 0 && getChild(index - 1).getLayer() > layer) {
+      index--;
+    }
+    while (index < size && getChild(index).getLayer() < layer) {
+      index++;
+    }
+    return index;
+  }
+
+  /** Implementation note: Orphaned figures are sorted to the end of the list. */
+  @Override
+  public List<Figure> sort(Collection<? extends Figure> c) {
+    IdentityHashMap<Figure, Integer> positions = new IdentityHashMap<>();
+    for (Figure f : c) {
+      int index = indexOf(f);
+      positions.put(f, index < 0 ? Integer.MAX_VALUE : index);
+    }
+    List<Figure> sorted = new ArrayList<>(c);
+    sorted.sort(Comparator.comparingInt(positions::get));
+    return sorted;
+  }
+
+  /**
+   * Returns the union of the drawing areas of the index of the store file and of the changed
+   * figures. The factor is ignored.
+   */
+  @Override
+  public Rectangle2D.Double getDrawingArea(double factor) {
+    synchronized (lock) {
+      Rectangle2D.Double area = null;
+      if (baseSlotCount > moved.cardinality()) {
+        area = store.getIndex().getBounds();
+      }
+      if (!overlayAreas.isEmpty()) {
+        if (area == null) {
+          area = overlayAreas.getBounds();
+        } else {
+          area.add(overlayAreas.getBounds());
+        }
+      }
+      return area == null ? new Rectangle2D.Double() : area;
+    }
+  }
+
+  @Override
+  public void draw(Graphics2D g) {
+    Rectangle2D clipBounds = g.getClipBounds();
+    for (Figure f : clipBounds != null ? findCandidates(clipBounds) : getChildren()) {
+      if (f.isVisible()) {
+        f.draw(g);
+      }
+    }
+  }
+
+  @Override
+  public void drawCanvas(Graphics2D g) {
+    if (attr().get(CANVAS_WIDTH) != null && attr().get(CANVAS_HEIGHT) != null) {
+      // Determine canvas color and opacity
+      Color canvasColor = attr().get(CANVAS_FILL_COLOR);
+      Double fillOpacity = attr().get(CANVAS_FILL_OPACITY);
+      if (canvasColor != null && fillOpacity > 0) {
+        canvasColor =
+            new Color((canvasColor.getRGB() & 0xffffff) | ((int) (fillOpacity * 255) << 24), true);
+        // Fill the canvas
+        Rectangle2D.Double r =
+            new Rectangle2D.Double(0, 0, attr().get(CANVAS_WIDTH), attr().get(CANVAS_HEIGHT));
+        g.setColor(canvasColor);
+        g.fill(r);
+      }
+    }
+  }
+
+  /** Returns the children, whose drawing area lies inside of the specified bounds. */
+  public List<Figure> getChildren(Rectangle2D.Double bounds) {
+    List<Figure> inside = new ArrayList<>();
+    for (Figure f : findCandidates(bounds)) {
+      if (Geom.contains(bounds, f.getDrawingArea())) {
+        inside.add(f);
+      }
+    }
+    return inside;
+  }
+
+  @Override
+  public List<Figure> findFigures(Rectangle2D.Double r) {
+    List<Figure> candidates = findCandidates(r);
+    List<Figure> c = new ArrayList<>(candidates.size());
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure f = candidates.get(i);
+      Rectangle2D.Double area = f.getDrawingArea();
+      if (area.x <= r.getMaxX()
+          && area.y <= r.getMaxY()
+          && area.getMaxX() >= r.x
+          && area.getMaxY() >= r.y) {
+        c.add(f);
+      }
+    }
+    return c;
+  }
+
+  @Override
+  public List<Figure> findFiguresWithin(Rectangle2D.Double bounds) {
+    List<Figure> contained = new ArrayList<>();
+    double scale = AttributeKeys.scaleFromContext(this);
+    for (Figure f : findCandidates(bounds)) {
+      Rectangle2D.Double r = f.getBounds(scale);
+      if (f.attr().get(TRANSFORM) != null) {
+        Rectangle2D rt = f.attr().get(TRANSFORM).createTransformedShape(r).getBounds2D();
+        r =
+            (rt instanceof Rectangle2D.Double)
+                ? (Rectangle2D.Double) rt
+                : new Rectangle2D.Double(rt.getX(), rt.getY(), rt.getWidth(), rt.getHeight());
+      }
+      if (f.isVisible() && Geom.contains(bounds, r)) {
+        contained.add(f);
+      }
+    }
+    return contained;
+  }
+
+  @Override
+  public Figure findFigure(Point2D.Double p) {
+    return findFigureExcept(p, (Figure) null);
+  }
+
+  @Override
+  public Figure findFigureExcept(Point2D.Double p, Figure ignore) {
+    List<Figure> candidates = findCandidates(p);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure f = candidates.get(i);
+      if (f != ignore && f.contains(p)) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Figure findFigureExcept(Point2D.Double p, Collection<? extends Figure> ignore) {
+    List<Figure> candidates = findCandidates(p);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure f = candidates.get(i);
+      if (!ignore.contains(f) && f.contains(p)) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Figure findFigure(Point2D.Double p, double scaleDenominator) {
+    double tolerance = 10 / 2 / scaleDenominator;
+    List<Figure> candidates =
+        findCandidates(p.x - tolerance, p.y - tolerance, p.x + tolerance, p.y + tolerance);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure figure = candidates.get(i);
+      if (figure.isVisible() && figure.contains(p, scaleDenominator)) {
+        return figure;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Figure findFigureBehind(Point2D.Double p, double scaleDenominator, Figure behindFigure) {
+    double tolerance = 10 / 2 / scaleDenominator;
+    List<Figure> candidates =
+        findCandidates(p.x - tolerance, p.y - tolerance, p.x + tolerance, p.y + tolerance);
+    boolean check = false;
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure figure = candidates.get(i);
+      if (check && figure.isVisible() && figure.contains(p, scaleDenominator)) {
+        return figure;
+      } else if (figure == behindFigure) {
+        check = true;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Figure findFigureBehind(Point2D.Double p, Figure figure) {
+    return findVisibleBehind(p, indexOf(figure));
+  }
+
+  @Override
+  public Figure findFigureBehind(Point2D.Double p, Collection<? extends Figure> children) {
+    int behind = size;
+    for (Figure f : children) {
+      int index = indexOf(f);
+      if (index < 0) {
+        return null;
+      }
+      behind = Math.min(behind, index);
+    }
+    return findVisibleBehind(p, behind);
+  }
+
+  /** Returns the frontmost visible child, which contains the point and lies behind the index. */
+  private Figure findVisibleBehind(Point2D.Double p, int index) {
+    List<Figure> candidates = findCandidates(p);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure f = candidates.get(i);
+      if (indexOf(f) < index && f.isVisible() && f.contains(p)) {
+        return f;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public Figure findFigureInside(Point2D.Double p) {
+    List<Figure> candidates = findCandidates(p);
+    for (int i = candidates.size() - 1; i >= 0; i--) {
+      Figure f = candidates.get(i);
+      if (f.contains(p)) {
+        return f.findFigureInside(p);
+      }
+    }
+    return null;
+  }
+
+  /** Returns an iterator to iterate in Z-order front to back over the children. */
+  @Override
+  public List<Figure> getFiguresFrontToBack() {
+    return new ReversedList<>(getChildren());
+  }
+
+  /**
+   * Returns a {@link QuadTreeDrawing} with clones of the children, the attributes and the formats
+   * of this drawing. Since a mapped drawing is backed by a file, its clone is not mapped: all
+   * figures are materialized, and the clone holds them in memory. Connections are remapped to the
+   * clones of the figures which they connect.
+   */
+  @Override
+  public AbstractDrawing clone() {
+    QuadTreeDrawing that = new QuadTreeDrawing();
+    that.attr().setAttributes(attr().getAttributes());
+    that.setInputFormats(getInputFormats());
+    that.setOutputFormats(getOutputFormats());
+    List<Figure> children = getChildren();
+    HashMap<Figure, Figure> originalToClone = new HashMap<>(children.size());
+    ArrayList<Figure> clones = new ArrayList<>(children.size());
+    for (Figure f : children) {
+      Figure clone = f.clone();
+      originalToClone.put(f, clone);
+      clones.add(clone);
+    }
+    for (Figure clone : clones) {
+      clone.remap(originalToClone, false);
+    }
+    that.addAll(clones);
+    return that;
+  }
+
+  @Override
+  protected EventHandler createEventHandler() {
+    return new MappedEventHandler();
+  }
+
+  /** Handles all figure events fired by Figures contained in the Drawing. */
+  protected class MappedEventHandler extends AbstractDrawing.EventHandler {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void figureChanged(FigureEvent e) {
+      markChanged(e.getFigure());
+      super.figureChanged(e);
+    }
+
+    @Override
+    public void attributeChanged(FigureEvent e) {
+      markChanged(e.getFigure());
+      super.attributeChanged(e);
+    }
+  }
+
+  /** A view of the children, which decodes them on demand. */
+  private class ChildList extends AbstractList<Figure> implements RandomAccess {
+
+    @Override
+    public Figure get(int index) {
+      return getChild(index);
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+  }
+
+  /** A slot in the overlay index. */
+  private static final class Slot {
+
+    private final int slot;
+
+    Slot(int slot) {
+      this.slot = slot;
+    }
+  }
+
+  /** A weak reference to a materialized figure. */
+  private static final class SlotReference extends WeakReference<Figure> {
+
+    private final int slot;
+
+    SlotReference(int slot, Figure figure, ReferenceQueue<Figure> queue) {
+      super(figure, queue);
+      this.slot = slot;
+    }
+  }
+
+  /** A growable list of indices. */
+  private static final class IndexList implements IntConsumer {
+
+    private int[] values = new int[16];
+    private int size;
+
+    @Override
+    public void accept(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
@@ -0,0 +1,460 @@
+/*
+ * @(#)MappedFigureStore.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.io;
+
+import java.awt.geom.Rectangle2D;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.zip.CRC32;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.geom.PackedRTree;
+import org.jhotdraw.xml.DOMFactory;
+
+/**
+ * The on-disk storage of a {@link MappedDrawing}: a memory-mapped store file, and a journal file
+ * with the changes which have been made since the store file was written.
+ *
+ * <p>The store file is a binary drawing as written by {@link BinaryDrawingOutputFormat}, followed
+ * by an index and a trailer. It can therefore also be read by {@link BinaryDrawingInputFormat}. The
+ * index holds the position of the string and style chunks, and for each figure, which is called a
+ * slot, the position of its object chunk and whether it is linked. It is followed by a {@link
+ * PackedRTree} with the drawing areas of the slots. The trailer holds the position of the index.
+ *
+ * <p>Figures which reference each other, for example connections and the figures which they
+ * connect, are called linked. They can not be decoded one by one, because their references are
+ * resolved through the ids of the objects. They are decoded together instead.
+ *
+ * <p>The journal is a sequence of entries. Each entry consists of a type, a slot, the length and
+ * the CRC-32 of its payload, and the payload. A figure which has been changed or added is written
+ * as a self-contained binary drawing into a {@link #PUT} entry, the linked figures are written
+ * together into a {@link #LINKED} entry. Changes of the z-order are written as {@link #INSERT} and
+ * {@link #REMOVE} entries. An incomplete entry at the end of the journal, for example after a
+ * crash, is discarded.
+ */
+final class MappedFigureStore implements Closeable {
+
+  /** The magic number of the index: "JHDX". */
+  private static final int INDEX_MAGIC = 0x4a484458;
+
+  private static final int INDEX_VERSION = 1;
+
+  /** Position of the object chunk, id of the first object, flags. */
+  private static final int SLOT_SIZE = 16;
+
+  /** Position of the index, magic number, version. */
+  private static final int TRAILER_SIZE = 16;
+
+  /** Slot flag: the figure references or is referenced by other figures. */
+  static final int FLAG_LINKED = 1;
+
+  // Journal entry types
+  /** A changed or added figure: drawing area, binary drawing. */
+  static final int PUT = 1;
+
+  /** Removal of a slot from the z-order. */
+  static final int REMOVE = 2;
+
+  /** Insertion of a slot into the z-order: index. */
+  static final int INSERT = 3;
+
+  /** All linked figures: the entry slot is their count; slots, drawing areas, binary drawing. */
+  static final int LINKED = 4;
+
+  private static final int ENTRY_HEADER_SIZE = 16;
+
+  private final DOMFactory factory;
+  private final FileChannel channel;
+  private final ByteBuffer slots;
+  private final int slotCount;
+  private final PackedRTree index;
+
+  /** Decodes the figures from the mapped store file. Shares the strings and styles between them. */
+  private final BinaryDOMInput input;
+
+  private final FileChannel journal;
+  private long journalLength;
+
+  /**
+   * Opens a store file and its journal. The journal is created if it does not exist.
+   *
+   * @throws IOException if the file is not a valid store file
+   */
+  MappedFigureStore(File file, File journalFile, DOMFactory factory) throws IOException {
+    this.factory = factory;
+    channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    try {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Drawing store is too large: " + file);
+      }
+      MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      input = new BinaryDOMInput(factory, data);
+      try {
+        int trailer = (int) size - TRAILER_SIZE;
+        long indexPosition = data.getLong(trailer);
+        if (data.getInt(trailer + 8) != INDEX_MAGIC) {
+          throw new IOException("Not a drawing store: " + file);
+        }
+        if (data.getInt(trailer + 12) != INDEX_VERSION) {
+          throw new IOException("Unsupported drawing store version: " + data.getInt(trailer + 12));
+        }
+        ByteBuffer buf = data.slice((int) indexPosition, trailer - (int) indexPosition);
+        if (buf.getInt() != INDEX_MAGIC) {
+          throw new IOException("Malformed drawing store index.");
+        }
+        slotCount = buf.getInt();
+        for (int i = 0, n = buf.getInt(); i < n; i++) {
+          input.readDictionaryAt((int) buf.getLong());
+        }
+        slots = buf.slice(buf.position(), slotCount * SLOT_SIZE);
+        buf.position(buf.position() + slotCount * SLOT_SIZE);
+        index = PackedRTree.read(buf);
+        if (index.size() != slotCount) {
+          throw new IOException("Malformed drawing store index.");
+        }
+      } catch (IndexOutOfBoundsException | BufferUnderflowException | IllegalArgumentException e) {
+        throw new IOException("Malformed drawing store.", e);
+      }
+      journal =
+          FileChannel.open(
+              journalFile.toPath(),
+              StandardOpenOption.READ,
+              StandardOpenOption.WRITE,
+              StandardOpenOption.CREATE);
+    } catch (IOException | RuntimeException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Writes the specified figures into a new store file.
+   *
+   * @param file The store file.
+   * @param factory The factory for writing the figures.
+   * @param figures The figures in z-order.
+   */
+  static void write(File file, DOMFactory factory, List<? extends Figure> figures)
+      throws IOException {
+    int n = figures.size();
+    long[] positions = new long[n];
+    int[] firstIds = new int[n];
+    int[] flags = new int[n];
+    List<Long> dictionaries = new ArrayList<>();
+    PackedRTree.Builder tree = new PackedRTree.Builder(n);
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16))) {
+      BinaryDOMOutput domo = new BinaryDOMOutput(factory, out);
+      domo.setDictionaryPositions(dictionaries);
+      for (int i = 0; i < n; i++) {
+        Figure f = figures.get(i);
+        firstIds[i] = domo.getObjectCount() + 1;
+        domo.writeObject(f);
+        positions[i] = domo.getObjectPosition();
+        for (int id : domo.getExternalReferences()) {
+          flags[i] |= FLAG_LINKED;
+          flags[slotOfId(firstIds, i, id)] |= FLAG_LINKED;
+        }
+        tree.add(f.getDrawingArea());
+      }
+      domo.finish();
+      if (domo.getPosition() > Integer.MAX_VALUE) {
+        throw new IOException("Drawing store is too large: " + file);
+      }
+      long indexPosition = domo.getPosition();
+      // Align the index, so that the tree can be read efficiently from a mapped buffer
+      for (; indexPosition % 8 != 0; indexPosition++) {
+        out.write(0);
+      }
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(n);
+      out.writeInt(dictionaries.size());
+      for (long position : dictionaries) {
+        out.writeLong(position);
+      }
+      for (int i = 0; i < n; i++) {
+        out.writeLong(positions[i]);
+        out.writeInt(firstIds[i]);
+        out.writeInt(flags[i]);
+      }
+      tree.build().write(out);
+      out.writeLong(indexPosition);
+      out.writeInt(INDEX_MAGIC);
+      out.writeInt(INDEX_VERSION);
+    }
+  }
+
+  /** Returns the slot before the specified slot, which has written the object with the id. */
+  static int slotOfId(int[] firstIds, int slot, int id) {
+    int i = Arrays.binarySearch(firstIds, 0, slot, id);
+    if (i < 0) {
+      i = -i - 2;
+    }
+    // Slots which only hold a reference have the same first id as the slot after them
+    while (i + 1 < slot && firstIds[i + 1] == firstIds[i]) {
+      i++;
+    }
+    return i;
+  }
+
+  /** Returns the number of slots in the store file. */
+  int getSlotCount() {
+    return slotCount;
+  }
+
+  /** Returns the spatial index of the slots in the store file. */
+  PackedRTree getIndex() {
+    return index;
+  }
+
+  boolean isLinked(int slot) {
+    return (slots.getInt(slot * SLOT_SIZE + 12) & FLAG_LINKED) != 0;
+  }
+
+  /** Decodes the figure of a slot of the store file. The slot must not be linked. */
+  synchronized Figure read(int slot) throws IOException {
+    input.clearObjects();
+    input.nextObjectAt((int) slots.getLong(slot * SLOT_SIZE));
+    return (Figure) input.readObject();
+  }
+
+  /**
+   * Decodes the figures of linked slots of the store file. The slots must be given in ascending
+   * order, and must include all slots which they reference.
+   */
+  synchronized Figure[] readLinked(int[] linkedSlots) throws IOException {
+    input.clearObjects();
+    Figure[] figures = new Figure[linkedSlots.length];
+    for (int i = 0; i < linkedSlots.length; i++) {
+      input.nextObjectAt((int) slots.getLong(linkedSlots[i] * SLOT_SIZE));
+      figures[i] = (Figure) input.readObject();
+    }
+    input.clearObjects();
+    return figures;
+  }
+
+  /** Receives the entries of the journal. */
+  interface JournalVisitor {
+
+    void put(int slot, Rectangle2D.Double drawingArea, long position) throws IOException;
+
+    void remove(int slot) throws IOException;
+
+    void insert(int slot, int index) throws IOException;
+
+    void linked(int[] slots, Rectangle2D.Double[] drawingAreas, long position) throws IOException;
+  }
+
+  /**
+   * Passes the entries of the journal to the visitor, and truncates the journal after the last
+   * complete entry.
+   */
+  void replay(JournalVisitor visitor) throws IOException {
+    long length = journal.size();
+    long position = 0;
+    ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+    while (position + ENTRY_HEADER_SIZE <= length) {
+      header.clear();
+      journal.read(header, position);
+      int type = header.getInt(0);
+      int slot = header.getInt(4);
+      int payloadLength = header.getInt(8);
+      if (payloadLength < 0 || position + ENTRY_HEADER_SIZE + payloadLength > length) {
+        break;
+      }
+      ByteBuffer payload = readPayload(position, payloadLength);
+      CRC32 crc = new CRC32();
+      crc.update(payload.duplicate());
+      if ((int) crc.getValue() != header.getInt(12)) {
+        break;
+      }
+      try {
+        switch (type) {
+          case PUT:
+            visitor.put(slot, readArea(payload), position);
+            break;
+          case REMOVE:
+            visitor.remove(slot);
+            break;
+          case INSERT:
+            visitor.insert(slot, payload.getInt());
+            break;
+          case LINKED:
+            int[] linkedSlots = new int[slot];
+            Rectangle2D.Double[] areas = new Rectangle2D.Double[slot];
+            for (int i = 0; i < slot; i++) {
+              linkedSlots[i] = payload.getInt();
+            }
+            for (int i = 0; i < slot; i++) {
+              areas[i] = readArea(payload);
+            }
+            visitor.linked(linkedSlots, areas, position);
+            break;
+          default:
+            throw new IOException("Illegal journal entry: " + type);
+        }
+      } catch (BufferUnderflowException
+          | IndexOutOfBoundsException
+          | NegativeArraySizeException e) {
+        throw new IOException("Malformed journal entry.", e);
+      }
+      position += ENTRY_HEADER_SIZE + payloadLength;
+    }
+    if (position < length) {
+      journal.truncate(position);
+    }
+    journalLength = position;
+  }
+
+  private ByteBuffer readPayload(long position, int length) throws IOException {
+    ByteBuffer payload = ByteBuffer.allocate(length);
+    while (payload.hasRemaining()) {
+      if (journal.read(payload, position + ENTRY_HEADER_SIZE + payload.position()) < 0) {
+        throw new IOException("Unexpected end of journal.");
+      }
+    }
+    return payload.flip();
+  }
+
+  private static Rectangle2D.Double readArea(ByteBuffer p) {
+    return new Rectangle2D.Double(p.getDouble(), p.getDouble(), p.getDouble(), p.getDouble());
+  }
+
+  private static void writeArea(DataOutputStream out, Rectangle2D.Double r) throws IOException {
+    out.writeDouble(r.x);
+    out.writeDouble(r.y);
+    out.writeDouble(r.width);
+    out.writeDouble(r.height);
+  }
+
+  /** Decodes the figure of a {@link #PUT} entry at the specified position of the journal. */
+  Figure readPut(long position) throws IOException {
+    return readEntry(position, PUT)[0];
+  }
+
+  /** Decodes the figures of a {@link #LINKED} entry at the specified position of the journal. */
+  Figure[] readLinked(long position) throws IOException {
+    return readEntry(position, LINKED);
+  }
+
+  private Figure[] readEntry(long position, int type) throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+    journal.read(header, position);
+    if (header.getInt(0) != type) {
+      throw new IOException("Malformed journal entry.");
+    }
+    int count = type == LINKED ? header.getInt(4) : 1;
+    ByteBuffer payload = readPayload(position, header.getInt(8));
+    payload.position(type == LINKED ? count * 36 : 32);
+    BinaryDOMInput domi = new BinaryDOMInput(factory, payload);
+    Figure[] figures = new Figure[count];
+    for (int i = 0; i < count; i++) {
+      if (!domi.nextObject()) {
+        throw new IOException("Malformed journal entry.");
+      }
+      figures[i] = (Figure) domi.readObject();
+    }
+    return figures;
+  }
+
+  /**
+   * Encodes figures into a self-contained binary drawing.
+   *
+   * @param figures The figures.
+   * @param writtenObjects The objects which have been written, including the figures and the
+   *     objects which they reference, are added to this collection.
+   */
+  byte[] encode(List<? extends Figure> figures, Collection<Object> writtenObjects)
+      throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    BinaryDOMOutput domo = new BinaryDOMOutput(factory, buf);
+    for (Figure f : figures) {
+      domo.writeObject(f);
+    }
+    domo.finish();
+    writtenObjects.addAll(domo.getWrittenObjects());
+    return buf.toByteArray();
+  }
+
+  /** Appends a {@link #PUT} entry with an encoded figure, and returns its position. */
+  long appendPut(int slot, Rectangle2D.Double drawingArea, byte[] encoded) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(32 + encoded.length);
+    DataOutputStream out = new DataOutputStream(buf);
+    writeArea(out, drawingArea);
+    out.write(encoded);
+    return append(PUT, slot, buf.toByteArray());
+  }
+
+  /** Appends a {@link #LINKED} entry with the encoded linked figures, and returns its position. */
+  long appendLinked(int[] linkedSlots, Rectangle2D.Double[] drawingAreas, byte[] encoded)
+      throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream(linkedSlots.length * 36 + encoded.length);
+    DataOutputStream out = new DataOutputStream(buf);
+    for (int slot : linkedSlots) {
+      out.writeInt(slot);
+    }
+    for (Rectangle2D.Double area : drawingAreas) {
+      writeArea(out, area);
+    }
+    out.write(encoded);
+    return append(LINKED, linkedSlots.length, buf.toByteArray());
+  }
+
+  void appendRemove(int slot) throws IOException {
+    append(REMOVE, slot, new byte[0]);
+  }
+
+  void appendInsert(int slot, int index) throws IOException {
+    append(INSERT, slot, ByteBuffer.allocate(4).putInt(index).array());
+  }
+
+  /** Writes the appended journal entries to the storage device. */
+  void force() throws IOException {
+    journal.force(false);
+  }
+
+  /** Appends a journal entry and returns its position. */
+  private long append(int type, int slot, byte[] payload) throws IOException {
+    CRC32 crc = new CRC32();
+    crc.update(payload);
+    ByteBuffer header = ByteBuffer.allocate(ENTRY_HEADER_SIZE);
+    header.putInt(type).putInt(slot).putInt(payload.length).putInt((int) crc.getValue()).flip();
+    ByteBuffer[] buffers = {header, ByteBuffer.wrap(payload)};
+    long position = journalLength;
+    journal.position(position);
+    while (buffers[0].hasRemaining() || buffers[1].hasRemaining()) {
+      journal.write(buffers);
+    }
+    journalLength = position + ENTRY_HEADER_SIZE + payload.length;
+    return position;
+  }
+
+  /** Closes the store file and the journal. */
+  @Override
+  public void close() throws IOException {
+    try {
+      journal.close();
+    } finally {
+      channel.close();
+    }
+  }
+}
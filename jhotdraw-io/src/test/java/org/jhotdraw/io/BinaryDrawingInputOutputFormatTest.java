@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.jhotdraw.draw.io.InputFormat;
+import org.jhotdraw.geom.path.BezierPath;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.xmlunit.assertj.XmlAssert;
+
+public class BinaryDrawingInputOutputFormatTest {
+
+  private static Drawing readXML(String filename) throws IOException {
+    InputFormat format = new DOMStorableInputFormat(new DOMDefaultDrawFigureFactory());
+    Drawing drawing = new DefaultDrawing();
+    format.read(
+        BinaryDrawingInputOutputFormatTest.class.getResourceAsStream(filename + ".xml"),
+        drawing,
+        true);
+    return drawing;
+  }
+
+  private static byte[] writeBinary(Drawing drawing) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new BinaryDrawingOutputFormat(new DOMDefaultDrawFigureFactory()).write(out, drawing);
+    return out.toByteArray();
+  }
+
+  private static Drawing readBinary(byte[] data) throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    new BinaryDrawingInputFormat(new DOMDefaultDrawFigureFactory())
+        .read(new ByteArrayInputStream(data), drawing, true);
+    return drawing;
+  }
+
+  @ParameterizedTest(name = "{index} {0}")
+  @CsvSource({"figures", "arrowtip", "green_rectangle", "bezier", "group", "image"})
+  public void testXMLBinaryXMLRoundtrip(String filename) throws IOException {
+    byte[] binary = writeBinary(readXML(filename));
+    Drawing drawing = readBinary(binary);
+
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    new DOMStorableOutputFormat(new DOMDefaultDrawFigureFactory()).write(xml, drawing);
+
+    XmlAssert.assertThat(
+            BinaryDrawingInputOutputFormatTest.class.getResourceAsStream(filename + ".xml"))
+        .and(xml.toByteArray())
+        .ignoreWhitespace()
+        .areIdentical();
+  }
+
+  @Test
+  public void testBinaryIsSmallerThanXML() throws IOException {
+    Drawing drawing = readXML("figures");
+    ByteArrayOutputStream xml = new ByteArrayOutputStream();
+    new DOMStorableOutputFormat(new DOMDefaultDrawFigureFactory()).write(xml, drawing);
+
+    assertThat(writeBinary(drawing).length).isLessThan(xml.size() / 2);
+  }
+
+  @Test
+  public void testDoublesAreExact() throws IOException {
+    BezierFigure figure = new BezierFigure();
+    BezierPath path = new BezierPath();
+    double[] values = {0, -0.0, 1.5, 0.1, 1e-9, Math.PI, -1e300, 1e15 + 0.25, Double.NaN};
+    for (double v : values) {
+      path.add(new BezierPath.Node(v, -v));
+    }
+    figure.setBezierPath(path);
+    figure.attr().set(AttributeKeys.STROKE_WIDTH, 0.3f + 0d);
+    Drawing drawing = new DefaultDrawing();
+    drawing.add(figure);
+
+    BezierFigure read = (BezierFigure) readBinary(writeBinary(drawing)).getChild(0);
+
+    assertThat(read.getNodeCount()).isEqualTo(values.length);
+    for (int i = 0; i < values.length; i++) {
+      assertThat(Double.doubleToLongBits(read.getNode(i).x[0]))
+          .isEqualTo(Double.doubleToLongBits(values[i]));
+      assertThat(Double.doubleToLongBits(read.getNode(i).y[0]))
+          .isEqualTo(Double.doubleToLongBits(-values[i]));
+    }
+    assertThat(read.attr().get(AttributeKeys.STROKE_WIDTH)).isEqualTo(0.3f + 0d);
+  }
+
+  @Test
+  public void testInternedMutableValuesAreNotShared() throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    for (int i = 0; i < 2; i++) {
+      RectangleFigure figure = new RectangleFigure(i * 20, 0, 10, 10);
+      figure.attr().set(AttributeKeys.STROKE_DASHES, new double[] {4, 2});
+      drawing.add(figure);
+    }
+
+    Drawing read = readBinary(writeBinary(drawing));
+    double[] first = read.getChild(0).attr().get(AttributeKeys.STROKE_DASHES);
+    double[] second = read.getChild(1).attr().get(AttributeKeys.STROKE_DASHES);
+    assertThat(second).isNotSameAs(first);
+    first[0] = 8;
+
+    assertThat(read.getChild(1).attr().get(AttributeKeys.STROKE_DASHES)).containsExactly(4, 2);
+  }
+
+  @Test
+  public void testConnectionsReferenceTheirFigures(@TempDir File dir) throws IOException {
+    RectangleFigure start = new RectangleFigure(10, 10, 20, 20);
+    RectangleFigure end = new RectangleFigure(100, 100, 20, 30);
+    start.attr().set(AttributeKeys.FILL_COLOR, Color.RED);
+    end.attr().set(AttributeKeys.FILL_COLOR, Color.RED);
+    LineConnectionFigure connection = new LineConnectionFigure();
+    connection.setStartPoint(new Point2D.Double(20, 20));
+    connection.setEndPoint(new Point2D.Double(110, 110));
+    connection.setStartConnector(start.findConnector(new Point2D.Double(20, 20), connection));
+    connection.setEndConnector(end.findConnector(new Point2D.Double(110, 110), connection));
+    Drawing drawing = new DefaultDrawing();
+    // the connection is written before the end figure, which is written inside of the connection
+    drawing.addAll(Arrays.asList(start, connection, end));
+
+    File file = new File(dir, "drawing.jhdb");
+    new BinaryDrawingOutputFormat(new DOMDefaultDrawFigureFactory()).write(file, drawing);
+    BinaryDrawingInputFormat format =
+        new BinaryDrawingInputFormat(new DOMDefaultDrawFigureFactory());
+    Drawing read = new DefaultDrawing();
+    format.read(file, read, true);
+
+    assertThat(read.getChildren()).hasSize(3);
+    LineConnectionFigure readConnection = (LineConnectionFigure) read.getChild(1);
+    assertThat(readConnection.getStartFigure()).isSameAs(read.getChild(0));
+    assertThat(readConnection.getEndFigure()).isSameAs(read.getChild(2));
+    assertThat(read.getChild(2).getBounds()).isEqualTo(end.getBounds());
+    assertThat(read.getChild(0).attr().get(AttributeKeys.FILL_COLOR))
+        .isSameAs(read.getChild(2).attr().get(AttributeKeys.FILL_COLOR));
+    assertThat(format.getAttributeStyles().getInternCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testMalformedInput() throws IOException {
+    byte[] binary = writeBinary(readXML("figures"));
+
+    assertThatThrownBy(() -> readBinary(Arrays.copyOf(binary, binary.length / 2)))
+        .isInstanceOf(IOException.class);
+    byte[] wrongVersion = binary.clone();
+    wrongVersion[4] = 99;
+    assertThatThrownBy(() -> readBinary(wrongVersion))
+        .isInstanceOf(IOException.class)
+        .hasMessageContaining("version");
+    assertThatThrownBy(() -> readBinary(Files.readAllBytes(new File("pom.xml").toPath())))
+        .isInstanceOf(IOException.class);
+  }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.List;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class DrawingJournalTest {
+
+  @TempDir File dir;
+  private final DOMDefaultDrawFigureFactory factory = new DOMDefaultDrawFigureFactory();
+  private Drawing drawing;
+  private DrawingJournal journal;
+  private DrawingJournal.Recorder recorder;
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    drawing = new DefaultDrawing();
+    for (int i = 0; i < 10; i++) {
+      drawing.add(new RectangleFigure(i * 20, 0, 10, 10));
+    }
+    journal = new DrawingJournal(new File(dir, "drawing.autosave"), factory);
+    recorder = new DrawingJournal.Recorder(drawing, factory);
+    journal.writeSnapshot(recorder.start());
+  }
+
+  @AfterEach
+  public void tearDown() throws IOException {
+    recorder.stop();
+    journal.close();
+  }
+
+  private void flush() throws IOException {
+    byte[] entries = recorder.flush();
+    if (entries != null) {
+      journal.append(entries);
+    }
+  }
+
+  /** Asserts that the recovered figures have the bounds of the figures of the drawing. */
+  private void assertRecovered() throws IOException {
+    List<Figure> recovered = journal.read();
+    assertThat(recovered).hasSize(drawing.getChildCount());
+    for (int i = 0; i < recovered.size(); i++) {
+      assertThat(recovered.get(i).getBounds()).isEqualTo(drawing.getChild(i).getBounds());
+    }
+  }
+
+  @Test
+  public void testOnlyChangesAreJournaled() throws IOException {
+    assertRecovered();
+    assertThat(recorder.flush()).isNull();
+
+    Figure f = drawing.getChild(3);
+    f.willChange();
+    f.setBounds(new Point2D.Double(100, 100), new Point2D.Double(150, 120));
+    f.changed();
+    flush();
+    long length = journal.getJournalLength();
+    assertThat(length).isPositive();
+
+    f.willChange();
+    f.attr().set(AttributeKeys.FILL_COLOR, Color.RED);
+    f.changed();
+    flush();
+    assertThat(journal.getJournalLength()).isLessThan(3 * length);
+    assertRecovered();
+    assertThat(journal.read().get(3).attr().get(AttributeKeys.FILL_COLOR)).isEqualTo(Color.RED);
+  }
+
+  @Test
+  public void testStructuralChangesAreJournaled() throws IOException {
+    drawing.add(new RectangleFigure(500, 500, 5, 5));
+    drawing.add(2, new RectangleFigure(600, 600, 5, 5));
+    drawing.remove(drawing.getChild(5));
+    drawing.bringToFront(drawing.getChild(0));
+    drawing.sendToBack(drawing.getChild(4));
+    drawing.sendToBack(drawing.getChild(drawing.getChildCount() - 1));
+    drawing.addAll(List.of(new RectangleFigure(700, 0, 5, 5), new RectangleFigure(800, 0, 5, 5)));
+    flush();
+    assertRecovered();
+
+    journal.compact();
+    assertThat(journal.getJournalLength()).isZero();
+    assertRecovered();
+
+    Figure f = drawing.getChild(1);
+    f.willChange();
+    f.setBounds(new Point2D.Double(1, 1), new Point2D.Double(2, 2));
+    f.changed();
+    drawing.remove(drawing.getChild(0));
+    drawing.bringToFront(f);
+    flush();
+    assertRecovered();
+    assertThat(journal.read().get(drawing.getChildCount() - 1).getBounds())
+        .isEqualTo(new Rectangle2D.Double(1, 1, 1, 1));
+  }
+
+  @Test
+  public void testLinkedFiguresKeepTheirIdentity() throws IOException {
+    Figure start = drawing.getChild(1);
+    Figure end = drawing.getChild(5);
+    LineConnectionFigure connection = new LineConnectionFigure();
+    connection.setStartPoint(new Point2D.Double(25, 5));
+    connection.setEndPoint(new Point2D.Double(105, 5));
+    connection.setStartConnector(start.findConnector(new Point2D.Double(25, 5), connection));
+    connection.setEndConnector(end.findConnector(new Point2D.Double(105, 5), connection));
+    drawing.add(connection);
+    flush();
+
+    // Moving a connected figure writes all linked figures
+    start.willChange();
+    start.setBounds(new Point2D.Double(20, 50), new Point2D.Double(30, 60));
+    start.changed();
+    flush();
+    assertRecovered();
+    List<Figure> recovered = journal.read();
+    LineConnectionFigure c = (LineConnectionFigure) recovered.get(10);
+    assertThat(c.getStartFigure()).isSameAs(recovered.get(1));
+    assertThat(c.getEndFigure()).isSameAs(recovered.get(5));
+
+    journal.compact();
+    recovered = journal.read();
+    c = (LineConnectionFigure) recovered.get(10);
+    assertThat(c.getStartFigure()).isSameAs(recovered.get(1));
+    assertThat(c.getStartFigure().getBounds()).isEqualTo(new Rectangle2D.Double(20, 50, 10, 10));
+  }
+
+  @Test
+  public void testIncompleteEntryIsDiscarded() throws IOException {
+    drawing.add(new RectangleFigure(500, 500, 5, 5));
+    flush();
+    drawing.add(new RectangleFigure(600, 600, 5, 5));
+    flush();
+    journal.close();
+    File journalFile = new File(dir, "drawing.autosave.journal");
+    try (RandomAccessFile raf = new RandomAccessFile(journalFile, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    List<Figure> recovered = journal.read();
+    assertThat(recovered).hasSize(11);
+    assertThat(recovered.get(10).getBounds()).isEqualTo(new Rectangle2D.Double(500, 500, 5, 5));
+  }
+
+  @Test
+  public void testObsoleteJournalIsIgnored() throws IOException {
+    drawing.add(new RectangleFigure(500, 500, 5, 5));
+    flush();
+    File journalFile = new File(dir, "drawing.autosave.journal");
+    byte[] obsolete = Files.readAllBytes(journalFile.toPath());
+    journal.compact();
+    journal.close();
+    Files.write(journalFile.toPath(), obsolete);
+
+    assertThat(journal.read()).hasSize(11);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.Color;
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import org.jhotdraw.draw.AttributeKeys;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.draw.figure.LineConnectionFigure;
+import org.jhotdraw.draw.figure.RectangleFigure;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class MappedDrawingTest {
+
+  private static final int COLUMNS = 40;
+  private static final int ROWS = 25;
+
+  @TempDir File dir;
+  private File file;
+  private final DOMDefaultDrawFigureFactory factory = new DOMDefaultDrawFigureFactory();
+
+  /** A grid of 10 x 10 rectangles with a distance of 20. */
+  private static List<Figure> createGrid() {
+    List<Figure> figures = new ArrayList<>();
+    for (int y = 0; y < ROWS; y++) {
+      for (int x = 0; x < COLUMNS; x++) {
+        RectangleFigure f = new RectangleFigure(x * 20, y * 20, 10, 10);
+        f.attr().set(AttributeKeys.FILL_COLOR, x % 2 == 0 ? Color.RED : Color.BLUE);
+        figures.add(f);
+      }
+    }
+    return figures;
+  }
+
+  @BeforeEach
+  public void setUp() throws IOException {
+    file = new File(dir, "drawing.jhdb");
+    MappedDrawing.write(file, factory, createGrid());
+  }
+
+  @Test
+  public void testFiguresAreMaterializedOnDemand() throws IOException {
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      drawing.setCacheCapacity(50);
+
+      assertThat(drawing.getChildCount()).isEqualTo(ROWS * COLUMNS);
+      assertThat(drawing.getCachedFigureCount()).isZero();
+      Figure f = drawing.findFigure(new Point2D.Double(45, 65));
+      assertThat(f.getBounds()).isEqualTo(new Rectangle2D.Double(40, 60, 10, 10));
+      assertThat(drawing.findFigure(new Point2D.Double(55, 65))).isNull();
+      assertThat(drawing.indexOf(f)).isEqualTo(3 * COLUMNS + 2);
+      assertThat(drawing.getChild(3 * COLUMNS + 2)).isSameAs(f);
+
+      List<Figure> inside = drawing.getChildren(new Rectangle2D.Double(-5, -5, 80, 40));
+      assertThat(inside).hasSize(8);
+      assertThat(drawing.findFigures(new Rectangle2D.Double(-5, -5, 80, 40))).hasSize(8);
+      assertThat(drawing.getCachedFigureCount()).isLessThanOrEqualTo(50);
+
+      // Touching all figures keeps the cache bounded, the figure which is referenced stays the same
+      int count = 0;
+      for (Figure child : drawing.getChildren()) {
+        count += child.getBounds().width == 10 ? 1 : 0;
+      }
+      assertThat(count).isEqualTo(ROWS * COLUMNS);
+      assertThat(drawing.getCachedFigureCount()).isLessThanOrEqualTo(50);
+      assertThat(drawing.findFigure(new Point2D.Double(45, 65))).isSameAs(f);
+      assertThat(drawing.getDrawingArea().contains(COLUMNS * 20 - 15, ROWS * 20 - 15)).isTrue();
+    }
+  }
+
+  @Test
+  public void testChangesAreJournaled() throws IOException {
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      Figure f = drawing.findFigure(new Point2D.Double(5, 5));
+      f.willChange();
+      f.setBounds(new Point2D.Double(1000, 1000), new Point2D.Double(1010, 1010));
+      f.changed();
+      assertThat(drawing.findFigure(new Point2D.Double(5, 5))).isNull();
+      assertThat(drawing.findFigure(new Point2D.Double(1005, 1005))).isSameAs(f);
+
+      drawing.remove(drawing.findFigure(new Point2D.Double(25, 5)));
+      drawing.add(new RectangleFigure(2000, 2000, 5, 5));
+      drawing.sendToBack(drawing.findFigure(new Point2D.Double(45, 5)));
+    }
+
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      assertThat(drawing.getChildCount()).isEqualTo(ROWS * COLUMNS);
+      assertThat(drawing.findFigure(new Point2D.Double(5, 5))).isNull();
+      assertThat(drawing.findFigure(new Point2D.Double(25, 5))).isNull();
+      Figure moved = drawing.findFigure(new Point2D.Double(1005, 1005));
+      assertThat(moved.getBounds()).isEqualTo(new Rectangle2D.Double(1000, 1000, 10, 10));
+      assertThat(moved.attr().get(AttributeKeys.FILL_COLOR)).isEqualTo(Color.RED);
+      assertThat(drawing.getChild(drawing.getChildCount() - 1).getBounds())
+          .isEqualTo(new Rectangle2D.Double(2000, 2000, 5, 5));
+      assertThat(drawing.getChild(0).getBounds()).isEqualTo(new Rectangle2D.Double(40, 0, 10, 10));
+      assertThat(drawing.getDrawingArea().contains(2004, 2004)).isTrue();
+    }
+  }
+
+  @Test
+  public void testIncompleteJournalEntryIsDiscarded() throws IOException {
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      drawing.add(new RectangleFigure(2000, 2000, 5, 5));
+      drawing.flush();
+      drawing.add(new RectangleFigure(3000, 3000, 5, 5));
+    }
+    File journal = new File(file.getPath() + ".journal");
+    try (RandomAccessFile raf = new RandomAccessFile(journal, "rw")) {
+      raf.setLength(raf.length() - 3);
+    }
+
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      assertThat(drawing.getChildCount()).isEqualTo(ROWS * COLUMNS + 1);
+      assertThat(drawing.findFigure(new Point2D.Double(2001, 2001))).isNotNull();
+      assertThat(drawing.findFigure(new Point2D.Double(3001, 3001))).isNull();
+    }
+  }
+
+  @Test
+  public void testLinkedFiguresKeepTheirIdentity() throws IOException {
+    RectangleFigure start = new RectangleFigure(10, 10, 20, 20);
+    RectangleFigure end = new RectangleFigure(100, 100, 20, 30);
+    LineConnectionFigure connection = new LineConnectionFigure();
+    connection.setStartPoint(new Point2D.Double(20, 20));
+    connection.setEndPoint(new Point2D.Double(110, 110));
+    connection.setStartConnector(start.findConnector(new Point2D.Double(20, 20), connection));
+    connection.setEndConnector(end.findConnector(new Point2D.Double(110, 110), connection));
+    List<Figure> figures = List.of(new RectangleFigure(500, 500, 5, 5), start, connection, end);
+    MappedDrawing.write(file, factory, figures);
+
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      LineConnectionFigure read = (LineConnectionFigure) drawing.getChild(2);
+      assertThat(read.getStartFigure()).isSameAs(drawing.getChild(1));
+      assertThat(read.getEndFigure()).isSameAs(drawing.getChild(3));
+
+      // A new connection links a figure which has not been linked before
+      Figure other = drawing.getChild(0);
+      LineConnectionFigure added = new LineConnectionFigure();
+      added.setStartPoint(new Point2D.Double(502, 502));
+      added.setEndPoint(new Point2D.Double(20, 20));
+      added.setStartConnector(other.findConnector(new Point2D.Double(502, 502), added));
+      added.setEndConnector(drawing.getChild(1).findConnector(new Point2D.Double(20, 20), added));
+      drawing.add(added);
+    }
+
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      assertThat(drawing.getChildCount()).isEqualTo(5);
+      LineConnectionFigure added = (LineConnectionFigure) drawing.getChild(4);
+      assertThat(added.getStartFigure()).isSameAs(drawing.getChild(0));
+      assertThat(added.getEndFigure()).isSameAs(drawing.getChild(1));
+      LineConnectionFigure read = (LineConnectionFigure) drawing.getChild(2);
+      assertThat(read.getStartFigure()).isSameAs(drawing.getChild(1));
+    }
+  }
+
+  @Test
+  public void testCloneMaterializesTheFigures() throws IOException {
+    RectangleFigure start = new RectangleFigure(10, 10, 20, 20);
+    RectangleFigure end = new RectangleFigure(100, 100, 20, 30);
+    LineConnectionFigure connection = new LineConnectionFigure();
+    connection.setStartPoint(new Point2D.Double(20, 20));
+    connection.setEndPoint(new Point2D.Double(110, 110));
+    connection.setStartConnector(start.findConnector(new Point2D.Double(20, 20), connection));
+    connection.setEndConnector(end.findConnector(new Point2D.Double(110, 110), connection));
+    List<Figure> figures = new ArrayList<>(createGrid());
+    figures.addAll(List.of(start, connection, end));
+    MappedDrawing.write(file, factory, figures);
+
+    Drawing clone;
+    try (MappedDrawing drawing = new MappedDrawing(file, factory)) {
+      drawing.setCacheCapacity(50);
+      drawing.attr().set(AttributeKeys.CANVAS_FILL_COLOR, Color.YELLOW);
+      clone = drawing.clone();
+
+      assertThat(clone).isNotInstanceOf(MappedDrawing.class);
+      assertThat(clone.getChild(0)).isNotSameAs(drawing.getChild(0));
+    }
+    int n = ROWS * COLUMNS;
+    assertThat(clone.getChildCount()).isEqualTo(n + 3);
+    assertThat(clone.attr().get(AttributeKeys.CANVAS_FILL_COLOR)).isEqualTo(Color.YELLOW);
+    assertThat(clone.getChild(COLUMNS + 1).getBounds())
+        .isEqualTo(new Rectangle2D.Double(20, 20, 10, 10));
+    assertThat(clone.getChild(COLUMNS + 1).attr().get(AttributeKeys.FILL_COLOR))
+        .isEqualTo(Color.BLUE);
+    LineConnectionFigure cloned = (LineConnectionFigure) clone.getChild(n + 1);
+    assertThat(cloned.getStartFigure()).isSameAs(clone.getChild(n));
+    assertThat(cloned.getEndFigure()).isSameAs(clone.getChild(n + 2));
+    assertThat(clone.findFigure(new Point2D.Double(45, 65)))
+        .isSameAs(clone.getChild(3 * COLUMNS + 2));
+  }
+
+  @Test
+  public void testStoreIsABinaryDrawing() throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    new BinaryDrawingInputFormat(factory).read(file, drawing, true);
+
+    assertThat(drawing.getChildCount()).isEqualTo(ROWS * COLUMNS);
+    assertThat(drawing.getChild(COLUMNS + 1).getBounds())
+        .isEqualTo(new Rectangle2D.Double(20, 20, 10, 10));
+  }
+
+  @Test
+  public void testMalformedStore() throws IOException {
+    File binary = new File(dir, "plain.jhdb");
+    new BinaryDrawingOutputFormat(factory).write(binary, new DefaultDrawing());
+
+    assertThatThrownBy(() -> new MappedDrawing(binary, factory)).isInstanceOf(IOException.class);
+    Files.write(binary.toPath(), new byte[0]);
+    assertThatThrownBy(() -> new MappedDrawing(binary, factory)).isInstanceOf(IOException.class);
+  }
+}
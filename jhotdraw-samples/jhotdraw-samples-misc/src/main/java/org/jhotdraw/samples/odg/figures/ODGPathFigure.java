@@ -30,9 +30,8 @@ import org.jhotdraw.draw.figure.ConnectionFigure;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.handle.TransformHandleKit;
+import org.jhotdraw.geom.FlattenedPath;
 import org.jhotdraw.geom.Geom;
-import org.jhotdraw.geom.GrowStroke;
-import org.jhotdraw.geom.Shapes;
 import org.jhotdraw.geom.path.BezierPath;
 import org.jhotdraw.samples.odg.Gradient;
 import org.jhotdraw.samples.odg.ODGAttributeKeys;
@@ -47,6 +46,9 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
   /** This cachedPath is used for drawing. */
   private transient Path2D.Double cachedPath;
 
+  /** This is used to perform faster hit testing on the outline. */
+  private transient FlattenedPath cachedHitPath;
+
   public ODGPathFigure() {
     add(new ODGBezierFigure());
     ODGAttributeKeys.setDefaults(this);
@@ -137,6 +139,7 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
     super.invalidate();
     cachedPath = null;
     cachedDrawingArea = null;
+    cachedHitPath = null;
   }
 
   protected Path2D.Double getPath() {
@@ -154,6 +157,19 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
     return cachedPath;
   }
 
+  /**
+   * Returns the flattened path, which is used for hit tests. The path is flattened with the
+   * tolerance of the hit test.
+   */
+  protected FlattenedPath getHitPath(double tolerance) {
+    FlattenedPath hp = cachedHitPath;
+    if (hp == null || hp.getFlatness() != tolerance) {
+      hp = new FlattenedPath(getPath(), tolerance);
+      cachedHitPath = hp;
+    }
+    return hp;
+  }
+
   @Override
   public Rectangle2D.Double getDrawingArea(double scale) {
     if (cachedDrawingArea == null) {
@@ -202,11 +218,7 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
         return true;
       }
       double grow = AttributeKeys.getPerpendicularHitGrowth(this, 1.0) * 2d;
-      GrowStroke gs =
-          new GrowStroke(
-              grow,
-              (AttributeKeys.getStrokeTotalWidth(this, 1.0) * attr().get(STROKE_MITER_LIMIT)));
-      if (gs.createStrokedShape(getPath()).contains(p)) {
+      if (getHitPath(tolerance).outlineContains(p.x, p.y, grow)) {
         return true;
       } else {
         if (isClosed) {
@@ -215,7 +227,7 @@ public class ODGPathFigure extends AbstractAttributedCompositeFigure implements
       }
     }
     if (!isClosed) {
-      if (Shapes.outlineContains(getPath(), p, tolerance)) {
+      if (getHitPath(tolerance).outlineContains(p.x, p.y, tolerance)) {
         return true;
       }
     }
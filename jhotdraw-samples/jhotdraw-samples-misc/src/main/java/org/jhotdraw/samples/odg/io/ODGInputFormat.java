@@ -14,12 +14,15 @@ import java.awt.datatransfer.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 import java.util.zip.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.figure.CompositeFigure;
 import org.jhotdraw.draw.figure.Figure;
@@ -33,11 +36,11 @@ import org.jhotdraw.samples.odg.figures.ODGGroupFigure;
 import org.jhotdraw.samples.odg.figures.ODGPathFigure;
 import org.jhotdraw.samples.odg.figures.ODGRectFigure;
 import org.jhotdraw.samples.odg.geom.EnhancedPath;
+import org.jhotdraw.xml.XMLPool;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  * ODGInputFormat. This format is aimed to comply to the Open Document Version 1.1 Drawing format.
@@ -46,15 +49,37 @@ import org.xml.sax.SAXException;
 public class ODGInputFormat implements InputFormat {
 
   /** Holds the figures that are currently being read. */
-  private LinkedList<Figure> figures;
-
-  /** Holds the document that is currently being read. */
-  private Document document;
+  private ArrayList<Figure> figures;
 
   private ODGStylesReader styles;
 
+  /** Whether the figures are constructed in parallel. */
+  private boolean isParallel;
+
+  /** The maximal number of sibling elements which are read by a single task in parallel mode. */
+  private static final int ELEMENTS_PER_TASK = 64;
+
+  /**
+   * The maximal number of shape elements of a "draw:page" element which are held in memory at once.
+   */
+  private static final int ELEMENTS_PER_BATCH = 1024;
+
   public ODGInputFormat() {}
 
+  /**
+   * Sets whether the figures are constructed in parallel on the common ForkJoin pool. The children
+   * of "draw:page" and "draw:g" elements are split into ranges of sibling elements which are read
+   * by separate tasks, and the figures are added to the drawing in document order. The default
+   * value is false.
+   */
+  public void setParallel(boolean newValue) {
+    isParallel = newValue;
+  }
+
+  public boolean isParallel() {
+    return isParallel;
+  }
+
   @Override
   public javax.swing.filechooser.FileFilter getFileFilter() {
     return new FileNameExtensionFilter("Open Document Drawing (ODG)", "odg");
@@ -80,121 +105,155 @@ public class ODGInputFormat implements InputFormat {
     }
   }
 
-  /** Reads all bytes from the InputStreams until EOF is reached. */
-  private byte[] readAllBytes(InputStream in) throws IOException {
-    ByteArrayOutputStream tmp = new ByteArrayOutputStream();
-    byte[] buf = new byte[512];
-    for (int len; -1 != (len = in.read(buf)); ) {
-      tmp.write(buf, 0, len);
+  /**
+   * Reads an ODG file. The "styles.xml" and the "content.xml" entries are looked up in the central
+   * directory of the archive, and are streamed from the file one after the other, so that the
+   * styles are known before the figures are read. A file which is not an archive is read as a
+   * "content.xml" file.
+   */
+  @Override
+  public void read(File file, Drawing drawing, boolean replace) throws IOException {
+    styles = new ODGStylesReader();
+    ZipFile zip;
+    try {
+      zip = new ZipFile(file);
+    } catch (ZipException e) {
+      try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+        readFiguresFromDocumentContent(in, drawing, replace);
+      }
+      return;
+    }
+    try (zip) {
+      ZipEntry contentEntry = zip.getEntry("content.xml");
+      if (contentEntry == null) {
+        throw new IOException("'content.xml' expected: " + file);
+      }
+      ZipEntry stylesEntry = zip.getEntry("styles.xml");
+      if (stylesEntry != null) {
+        try (InputStream in = zip.getInputStream(stylesEntry)) {
+          styles.read(in);
+        }
+      }
+      try (InputStream in = zip.getInputStream(contentEntry)) {
+        readFiguresFromDocumentContent(in, drawing, replace);
+      }
     }
-    tmp.close();
-    return tmp.toByteArray();
   }
 
+  /**
+   * Reads an ODG archive or a "content.xml" file from a stream.
+   *
+   * <p>The entries of an archive are streamed. Only if the "content.xml" entry precedes the
+   * "styles.xml" entry, the content is buffered until the styles have been read. Use {@link
+   * #read(File, Drawing, boolean)} to avoid this.
+   */
   @Override
   public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
-    // Read the file into a byte array.
-    byte[] tmp = readAllBytes(in);
-
-    // Input stream of the content.xml file
-    InputStream contentIn = null;
-
-    // Input stream of the styles.xml file
-    InputStream stylesIn = null;
-
-    // Try to read "tmp" as a ZIP-File.
-    boolean isZipped = true;
-    try {
-      ZipInputStream zin = new ZipInputStream(new ByteArrayInputStream(tmp));
-      for (ZipEntry entry; null != (entry = zin.getNextEntry()); ) {
-        if ("content.xml".equals(entry.getName())) {
-          contentIn = new ByteArrayInputStream(readAllBytes(zin));
-        } else if ("styles.xml".equals(entry.getName())) {
-          stylesIn = new ByteArrayInputStream(readAllBytes(zin));
+    styles = new ODGStylesReader();
+    BufferedInputStream bin = new BufferedInputStream(in);
+    bin.mark(4);
+    byte[] signature = bin.readNBytes(4);
+    bin.reset();
+    if (signature.length < 4
+        || signature[0] != 'P'
+        || signature[1] != 'K'
+        || signature[2] != 3
+        || signature[3] != 4) {
+      // A "content.xml" file contains its automatic styles.
+      readFiguresFromDocumentContent(bin, drawing, replace);
+      return;
+    }
+    ZipInputStream zin = new ZipInputStream(bin);
+    boolean hasStyles = false;
+    byte[] content = null;
+    for (ZipEntry entry; null != (entry = zin.getNextEntry()); ) {
+      if ("styles.xml".equals(entry.getName())) {
+        styles.read(zin);
+        hasStyles = true;
+        if (content != null) {
+          break;
         }
+      } else if ("content.xml".equals(entry.getName())) {
+        if (hasStyles) {
+          readFiguresFromDocumentContent(zin, drawing, replace);
+          return;
+        }
+        content = zin.readAllBytes();
       }
-
-    } catch (ZipException e) {
-      isZipped = false;
     }
-    if (contentIn == null) {
-      contentIn = new ByteArrayInputStream(tmp);
+    if (content == null) {
+      throw new IOException("'content.xml' expected");
     }
-    if (stylesIn == null) {
-      stylesIn = new ByteArrayInputStream(tmp);
-    }
-
-    styles = new ODGStylesReader();
-    styles.read(stylesIn);
-
-    readFiguresFromDocumentContent(contentIn, drawing, replace);
+    readFiguresFromDocumentContent(new ByteArrayInputStream(content), drawing, replace);
   }
 
-  /** Reads figures from the content.xml file of an ODG open document drawing document. */
-  @SuppressWarnings("unchecked")
+  /**
+   * Reads figures from the content.xml file of an ODG open document drawing document.
+   *
+   * <p>The file is read with a streaming parser. The styles of the file are added to the style
+   * table. The shapes of the drawing pages are read in batches of DOM subtrees, which are discarded
+   * as soon as their figures have been created.
+   */
   public void readFiguresFromDocumentContent(InputStream in, Drawing drawing, boolean replace)
       throws IOException {
-    this.figures = new LinkedList<Figure>();
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-
-    try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(in);
-    } catch (ParserConfigurationException | SAXException ex) {
-      IOException e = new IOException(ex.getMessage());
-      e.initCause(ex);
-      throw e;
-    }
-
+    this.figures = new ArrayList<Figure>();
     if (styles == null) {
       styles = new ODGStylesReader();
     }
-
-    styles.read(document.getDocumentElement());
-
-    // Search for the first 'office:drawing' element in the XML document
-    // in preorder sequence
-    Element drawingElem = document.getDocumentElement();
-    Stack<Node> stack = new Stack<Node>();
-    // LinkedList<Element> ll = new LinkedList<Element>();
-    // ll.add(document.getDocumentElement());
-    stack.push(document.getDocumentElement().getFirstChild());
-    while (!stack.empty() && stack.peek().getNextSibling() != null) {
-      Node iter = stack.peek();
-      Node node = iter.getNextSibling();
-      if (node.getNextSibling() == null) {
-        stack.pop();
-      } else {
-        stack.set(stack.indexOf(iter), node);
+    XMLStreamReader reader = XMLPool.createXMLStreamReader(in);
+    try {
+      if (!ODGStylesReader.nextChildElement(reader)) {
+        throw new IOException("'office:document-content' element expected");
       }
-      Node children = node.getFirstChild();
-      if (children.getNextSibling() != null) {
-        stack.push(children);
+      String rootName = reader.getLocalName();
+      boolean isContent =
+          "document-content".equals(rootName)
+              && ODGStylesReader.isNamespace(reader.getNamespaceURI(), OFFICE_NAMESPACE);
+      Document doc = XMLPool.newDocument();
+      boolean hasDrawing = false;
+      while (ODGStylesReader.nextChildElement(reader)) {
+        if (styles.readStylesElement(reader, doc, isContent)) {
+          continue;
+        }
+        if ("body".equals(reader.getLocalName())
+            && ODGStylesReader.isNamespace(reader.getNamespaceURI(), OFFICE_NAMESPACE)) {
+          // Read the first 'office:drawing' element of the body
+          while (ODGStylesReader.nextChildElement(reader)) {
+            if (!hasDrawing
+                && "drawing".equals(reader.getLocalName())
+                && ODGStylesReader.isNamespace(reader.getNamespaceURI(), OFFICE_NAMESPACE)) {
+              readDrawingElement(reader, doc);
+              hasDrawing = true;
+            } else {
+              XMLPool.skipElement(reader);
+            }
+          }
+        } else {
+          XMLPool.skipElement(reader);
+        }
       }
-      if (node.getLocalName() != null
-          && node.getLocalName().equals("drawing")
-          && (node.getPrefix() == null || node.getPrefix().equals(OFFICE_NAMESPACE))) {
-        drawingElem = (Element) node;
-        break;
+      if (!hasDrawing) {
+        throw new IOException("'office:drawing' element expected: " + rootName);
+      }
+    } finally {
+      try {
+        reader.close();
+      } catch (XMLStreamException ex) {
+        LOG.fine("ODGInputFormat could not close reader " + ex);
       }
     }
 
-    if (drawingElem.getLocalName() == null
-        || !drawingElem.getLocalName().equals("drawing")
-        || (drawingElem.getPrefix() != null && !drawingElem.getPrefix().equals(OFFICE_NAMESPACE))) {
-      throw new IOException("'office:drawing' element expected: " + drawingElem.getLocalName());
-    }
-
-    readDrawingElement(drawingElem);
-
     if (replace) {
       drawing.removeAllChildren();
     }
     drawing.addAll(figures);
   }
 
-  /** Reads an ODG "office:drawing" element. */
-  private void readDrawingElement(Element elem) throws IOException {
+  /**
+   * Reads an ODG "office:drawing" element from a streaming parser, which is positioned on the start
+   * of the element.
+   */
+  private void readDrawingElement(XMLStreamReader reader, Document doc) throws IOException {
     /*
     2.3.2Drawing Documents
     The content of drawing document consists of a sequence of draw pages.
@@ -233,20 +292,21 @@ public class ODGInputFormat implements InputFormat {
     </define>
      */
 
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      if (child.getPrefix() == null || child.getPrefix().equals(DRAWING_NAMESPACE)) {
-        String name = child.getLocalName();
-        if ("page".equals(name)) {
-          readPageElement(child);
-        }
+    while (ODGStylesReader.nextChildElement(reader)) {
+      if ("page".equals(reader.getLocalName())
+          && ODGStylesReader.isNamespace(reader.getNamespaceURI(), DRAWING_NAMESPACE)) {
+        readPageElement(reader, doc);
+      } else {
+        XMLPool.skipElement(reader);
       }
     }
   }
 
-  /** Reads an ODG "draw:page" element. */
-  private void readPageElement(Element elem) throws IOException {
+  /**
+   * Reads an ODG "draw:page" element from a streaming parser, which is positioned on the start of
+   * the element. The shape elements are read in batches of {@link #ELEMENTS_PER_BATCH} elements.
+   */
+  private void readPageElement(XMLStreamReader reader, Document doc) throws IOException {
     /* 9.1.4Drawing Pages
      *
     The element <draw:page> is a container for content in a drawing or presentation document.
@@ -297,12 +357,96 @@ public class ODGInputFormat implements InputFormat {
     • Animations
     • Presentation notes
      */
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      ODGFigure figure = readElement(child);
-      if (figure != null) {
-        figures.add(figure);
+
+    ArrayList<Element> batch = new ArrayList<Element>();
+    while (ODGStylesReader.nextChildElement(reader)) {
+      batch.add(XMLPool.readElement(reader, doc));
+      if (batch.size() == ELEMENTS_PER_BATCH) {
+        readElements(batch, figures::add);
+        batch.clear();
+      }
+    }
+    readElements(batch, figures::add);
+  }
+
+  /**
+   * Reads the child elements of a "draw:page" or a "draw:g" element, and passes their figures in
+   * document order to the specified consumer.
+   */
+  private void readChildElements(Element elem, Consumer<Figure> consumer) throws IOException {
+    ArrayList<Element> children = new ArrayList<Element>();
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        children.add((Element) node);
+      }
+    }
+    readElements(children, consumer);
+  }
+
+  /** Reads sibling elements, and passes their figures in document order to the consumer. */
+  private void readElements(List<Element> children, Consumer<Figure> consumer) throws IOException {
+    if (isParallel && children.size() > ELEMENTS_PER_TASK) {
+      ODGFigure[] results = new ODGFigure[children.size()];
+      ReadElementsTask task = new ReadElementsTask(children, results, 0, results.length);
+      try {
+        if (ForkJoinTask.inForkJoinPool()) {
+          task.invoke();
+        } else {
+          ForkJoinPool.commonPool().invoke(task);
+        }
+      } catch (UncheckedIOException ex) {
+        throw ex.getCause();
+      }
+      for (ODGFigure figure : results) {
+        if (figure != null) {
+          consumer.accept(figure);
+        }
+      }
+    } else {
+      for (Element child : children) {
+        ODGFigure figure = readElement(child);
+        if (figure != null) {
+          consumer.accept(figure);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reads a range of sibling elements. Ranges with more than {@link #ELEMENTS_PER_TASK} elements
+   * are split into two subtasks. Reading an element only reads the shared styles, so that all tasks
+   * can use this input format.
+   */
+  private class ReadElementsTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private final transient List<Element> elements;
+    private final ODGFigure[] results;
+    private final int from;
+    private final int to;
+
+    ReadElementsTask(List<Element> elements, ODGFigure[] results, int from, int to) {
+      this.elements = elements;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > ELEMENTS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(
+            new ReadElementsTask(elements, results, from, mid),
+            new ReadElementsTask(elements, results, mid, to));
+        return;
+      }
+      try {
+        for (int i = from; i < to; i++) {
+          results[i] = readElement(elements.get(i));
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
       }
     }
   }
@@ -335,7 +479,7 @@ public class ODGInputFormat implements InputFormat {
     </define>
      */
     ODGFigure f = null;
-    if (elem.getPrefix() == null || elem.getPrefix().equals(DRAWING_NAMESPACE)) {
+    if (elem.getNamespaceURI() == null || elem.getNamespaceURI().equals(DRAWING_NAMESPACE)) {
       String name = elem.getLocalName();
       if ("caption".equals(name)) {
         f = readCaptionElement(elem);
@@ -451,8 +595,9 @@ public class ODGInputFormat implements InputFormat {
      */
     String[] viewBoxValues =
         toWSOrCommaSeparatedArray(
-            Optional.ofNullable(elem.getAttributeNS(DRAWING_NAMESPACE, "viewBox"))
-                .orElse("0 0 100 100"));
+            elem.hasAttributeNS(SVG_NAMESPACE, "viewBox")
+                ? elem.getAttributeNS(SVG_NAMESPACE, "viewBox")
+                : "0 0 100 100");
     Rectangle2D.Double viewBox =
         new Rectangle2D.Double(
             toNumber(viewBoxValues[0]),
@@ -603,15 +748,7 @@ public class ODGInputFormat implements InputFormat {
 
   private ODGFigure readGElement(Element elem) throws IOException {
     CompositeFigure g = createGroupFigure();
-
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      Figure childFigure = readElement(child);
-      if (childFigure != null) {
-        g.basicAdd(childFigure);
-      }
-    }
+    readChildElements(elem, g::basicAdd);
     /*
     readTransformAttribute(elem, a);
     if (TRANSFORM.get(a) != null) {
@@ -14,14 +14,15 @@ import java.awt.Color;
 import java.io.*;
 import java.util.*;
 import java.util.logging.Logger;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.xml.XMLPool;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  * ODGStylesReader reads an ODG &lt;document-styles&gt; element, and creates a map of AttributeKey's
@@ -111,22 +112,104 @@ public class ODGStylesReader {
   /**
    * Reads a &lt;document-styles&gt; element from the specified input stream.
    *
+   * <p>The stream is read with a streaming parser. Only the style element which is currently read
+   * is held in memory, the document content is skipped.
+   *
    * @param in A input stream with a &lt;document&gt; root element or with a &lt;document-styles&gt;
    *     root element.
    */
   public void read(InputStream in) throws IOException {
-    Element document;
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
+    XMLStreamReader reader = XMLPool.createXMLStreamReader(in);
+    try {
+      if (!nextChildElement(reader)) {
+        throw new IOException("Root element expected.");
+      }
+      String name = reader.getLocalName();
+      String ns = reader.getNamespaceURI();
+      boolean isContent = "document-content".equals(name) && isNamespace(ns, OFFICE_NAMESPACE);
+      if (!isContent && !("document-styles".equals(name) && isNamespace(ns, OFFICE_NAMESPACE))) {
+        LOG.warning("ODGStylesReader unsupported root element " + name);
+        return;
+      }
+      Document doc = XMLPool.newDocument();
+      while (nextChildElement(reader)) {
+        if (!readStylesElement(reader, doc, isContent)) {
+          if (!isContent) {
+            LOG.warning("ODGStylesReader unsupported <" + name + "> child " + reader.getName());
+          }
+          XMLPool.skipElement(reader);
+        }
+      }
+    } finally {
+      try {
+        reader.close();
+      } catch (XMLStreamException ex) {
+        LOG.fine("ODGStylesReader could not close reader " + ex);
+      }
+    }
+  }
+
+  /**
+   * Reads a &lt;styles&gt;, &lt;automatic-styles&gt; or &lt;master-styles&gt; element from a
+   * streaming parser. The parser must be positioned on the start of a child element of a
+   * &lt;document-content&gt; or a &lt;document-styles&gt; element. Each style is read into a DOM
+   * subtree of the specified document, and is discarded when it has been read.
+   *
+   * @param reader The streaming parser.
+   * @param doc The document for the subtrees.
+   * @param isContent Whether the parent element is a &lt;document-content&gt; element.
+   * @return True, if the element has been read. In this case, the parser is positioned on the end
+   *     of the element. False, if the element is not a styles element.
+   */
+  boolean readStylesElement(XMLStreamReader reader, Document doc, boolean isContent)
+      throws IOException {
+    if (!isNamespace(reader.getNamespaceURI(), OFFICE_NAMESPACE)) {
+      return false;
+    }
+    String name = reader.getLocalName();
+    HashMap<String, Style> styles;
+    if ("styles".equals(name)) {
+      styles = commonStyles;
+    } else if ("automatic-styles".equals(name)) {
+      styles = automaticStyles;
+    } else if ("master-styles".equals(name)) {
+      styles = isContent ? commonStyles : masterStyles;
+    } else {
+      return false;
+    }
+    while (nextChildElement(reader)) {
+      readStylesChild(XMLPool.readElement(reader, doc), styles, name);
+    }
+    return true;
+  }
+
+  /**
+   * Advances a streaming parser to the start of the next child element, or to the end of the
+   * current element.
+   *
+   * @return True, if the parser is positioned on the start of a child element.
+   */
+  static boolean nextChildElement(XMLStreamReader reader) throws IOException {
     try {
-      DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-      Document doc = dBuilder.parse(in);
-      document = doc.getDocumentElement();
-    } catch (ParserConfigurationException | SAXException ex) {
-      IOException e = new IOException(ex.getMessage());
-      e.initCause(ex);
-      throw e;
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            return true;
+          case XMLStreamConstants.END_ELEMENT:
+            return false;
+          default:
+            break;
+        }
+      }
+      return false;
+    } catch (XMLStreamException ex) {
+      throw new IOException(ex.getMessage(), ex);
     }
-    read(document);
+  }
+
+  /** Returns true, if the namespace is the expected namespace, or if there is no namespace. */
+  static boolean isNamespace(String ns, String expected) {
+    return ns == null || ns.isEmpty() || ns.equals(expected);
   }
 
   private void reset() {
@@ -142,7 +225,7 @@ public class ODGStylesReader {
    */
   public void read(Element root) throws IOException {
     String name = root.getLocalName();
-    String ns = root.getPrefix();
+    String ns = root.getNamespaceURI();
     if ("document-content".equals(name) && (ns == null || ns.equals(OFFICE_NAMESPACE))) {
       readDocumentContentElement(root);
     } else if ("document-styles".equals(name) && (ns == null || ns.equals(OFFICE_NAMESPACE))) {
@@ -184,8 +267,12 @@ public class ODGStylesReader {
       }
       NodeList list = elem.getChildNodes();
       for (int i = 0; i < list.getLength(); i++) {
-        Element child = (Element) list.item(i);
-        String ns = child.getPrefix();
+        Node node = list.item(i);
+        if (!(node instanceof Element)) {
+          continue;
+        }
+        Element child = (Element) node;
+        String ns = child.getNamespaceURI();
         String name = child.getLocalName();
         if ("drawing-page-properties".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
           readDrawingPagePropertiesElement(child, a);
@@ -212,8 +299,12 @@ public class ODGStylesReader {
   private void readDocumentContentElement(Element elem) throws IOException {
     NodeList list = elem.getChildNodes();
     for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      String ns = child.getPrefix();
+      Node node = list.item(i);
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
+      String ns = child.getNamespaceURI();
       String name = child.getLocalName();
       if ("automatic-styles".equals(name) && (ns == null || ns.equals(OFFICE_NAMESPACE))) {
         readAutomaticStylesElement(child);
@@ -236,8 +327,12 @@ public class ODGStylesReader {
   private void readDocumentStylesElement(Element elem) throws IOException {
     NodeList list = elem.getChildNodes();
     for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      String ns = child.getPrefix();
+      Node node = list.item(i);
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
+      String ns = child.getNamespaceURI();
       String name = child.getLocalName();
       if ("styles".equals(name) && (ns == null || ns.equals(OFFICE_NAMESPACE))) {
         readStylesElement(child);
@@ -321,8 +416,12 @@ public class ODGStylesReader {
     // draw:shadow-color
     NodeList list = elem.getChildNodes();
     for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      String ns = child.getPrefix();
+      Node node = list.item(i);
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
+      String ns = child.getNamespaceURI();
       String name = child.getLocalName();
       // if (DEBUG) System.out.println("ODGStylesReader unsupported <"+elem.getName()+"> child
       // <"+child.getName()+" ...>...</>");
@@ -363,8 +462,12 @@ public class ODGStylesReader {
       }
       NodeList list = elem.getChildNodes();
       for (int i = 0; i < list.getLength(); i++) {
-        Element child = (Element) list.item(i);
-        String ns = child.getPrefix();
+        Node node = list.item(i);
+        if (!(node instanceof Element)) {
+          continue;
+        }
+        Element child = (Element) node;
+        String ns = child.getNamespaceURI();
         String name = child.getLocalName();
         if ("drawing-page-properties".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
           readDrawingPagePropertiesElement(child, a);
@@ -404,35 +507,46 @@ public class ODGStylesReader {
   private void readStylesChildren(Element elem, HashMap<String, Style> styles) throws IOException {
     NodeList list = elem.getChildNodes();
     for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      String ns = child.getPrefix();
-      String name = child.getLocalName();
-      if ("default-style".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
-        readDefaultStyleElement(child, styles);
-      } else if ("layer-set".equals(name) && (ns == null || ns.equals(DRAWING_NAMESPACE))) {
-        readLayerSetElement(child, styles);
-      } else if ("list-style".equals(name) && (ns == null || ns.equals(TEXT_NAMESPACE))) {
-        readListStyleElement(child, styles);
-      } else if ("marker".equals(name) && (ns == null || ns.equals(DRAWING_NAMESPACE))) {
-        readMarkerElement(child, styles);
-      } else if ("master-page".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
-        readMasterPageElement(child, styles);
-      } else if ("page-layout".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
-        readPageLayoutElement(child, styles);
-        // } else if ("paragraph-properties".equals(name) && (ns == null ||
-        // ns.equals(STYLE_NAMESPACE))) {
-        //    readParagraphPropertiesElement(child, styles);
-      } else if ("style".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
-        readStyleElement(child, styles);
-        // } else if ("text-properties".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE)))
-        // {
-        //    readTextPropertiesElement(child, styles);
-      } else {
-        LOG.warning("ODGStylesReader unsupported <" + elem.getLocalName() + "> child: " + child);
+      Node node = list.item(i);
+      if (node instanceof Element) {
+        readStylesChild((Element) node, styles, elem.getLocalName());
       }
     }
   }
 
+  /**
+   * Reads a child element of a &lt;styles&gt;, &lt;automatic-styles&gt; or &lt;master-styles&gt;
+   * element.
+   */
+  private void readStylesChild(Element child, HashMap<String, Style> styles, String parentName)
+      throws IOException {
+    String ns = child.getNamespaceURI();
+    String name = child.getLocalName();
+    if ("default-style".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
+      readDefaultStyleElement(child, styles);
+    } else if ("layer-set".equals(name) && (ns == null || ns.equals(DRAWING_NAMESPACE))) {
+      readLayerSetElement(child, styles);
+    } else if ("list-style".equals(name) && (ns == null || ns.equals(TEXT_NAMESPACE))) {
+      readListStyleElement(child, styles);
+    } else if ("marker".equals(name) && (ns == null || ns.equals(DRAWING_NAMESPACE))) {
+      readMarkerElement(child, styles);
+    } else if ("master-page".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
+      readMasterPageElement(child, styles);
+    } else if ("page-layout".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
+      readPageLayoutElement(child, styles);
+      // } else if ("paragraph-properties".equals(name) && (ns == null ||
+      // ns.equals(STYLE_NAMESPACE))) {
+      //    readParagraphPropertiesElement(child, styles);
+    } else if ("style".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE))) {
+      readStyleElement(child, styles);
+      // } else if ("text-properties".equals(name) && (ns == null || ns.equals(STYLE_NAMESPACE)))
+      // {
+      //    readTextPropertiesElement(child, styles);
+    } else {
+      LOG.warning("ODGStylesReader unsupported <" + parentName + "> child: " + child);
+    }
+  }
+
   /**
    * Reads a &lt;automatic-styles&gt; element from the specified XML element.
    *
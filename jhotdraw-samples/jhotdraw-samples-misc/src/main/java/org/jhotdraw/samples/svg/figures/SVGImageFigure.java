@@ -20,6 +20,7 @@ import javax.imageio.ImageIO;
 import javax.swing.*;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.event.TransformRestoreEdit;
+import org.jhotdraw.draw.figure.ImageCache;
 import org.jhotdraw.draw.figure.ImageHolderFigure;
 import org.jhotdraw.draw.handle.BoundsOutlineHandle;
 import org.jhotdraw.draw.handle.Handle;
@@ -49,6 +50,9 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
   /** The buffered image. This can be null, if we haven't yet parsed the imageData. */
   private BufferedImage bufferedImage;
 
+  /** The color of the placeholder which is drawn while the image is being decoded. */
+  private static final Color PLACEHOLDER_COLOR = new Color(0xe0e0e0);
+
   public SVGImageFigure() {
     this(0, 0, 0, 0);
   }
@@ -70,6 +74,23 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
       if (opacity != 1d) {
         g.setComposite(AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) opacity));
       }
+      if (ImageCache.isDeferredDecoding(g) && (bufferedImage != null || imageData != null)) {
+        // Draw a rendition from the cache, which is decoded in the background
+        if (!ImageCache.getDefault()
+            .drawImage(
+                g,
+                bufferedImage != null ? bufferedImage : imageData,
+                rectangle,
+                attr().get(TRANSFORM),
+                () -> SwingUtilities.invokeLater(this::fireAreaInvalidated))) {
+          g.setColor(PLACEHOLDER_COLOR);
+          g.fill(getTransformedShape());
+        }
+        if (opacity != 1d) {
+          g.setComposite(savedComposite);
+        }
+        return;
+      }
       BufferedImage image = getBufferedImage();
       if (image != null) {
         if (attr().get(TRANSFORM) != null) {
@@ -271,7 +292,7 @@ public class SVGImageFigure extends SVGAttributedFigure implements SVGFigure, Im
             }
           });
     }
-    if (bufferedImage != null) {
+    if (getBufferedImage() != null) {
       if (rectangle.width != bufferedImage.getWidth()
           || rectangle.height != bufferedImage.getHeight()) {
         actions.add(
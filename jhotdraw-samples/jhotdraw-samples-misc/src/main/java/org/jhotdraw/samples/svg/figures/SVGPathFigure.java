@@ -29,9 +29,8 @@ import org.jhotdraw.draw.figure.AbstractAttributedCompositeFigure;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.handle.Handle;
 import org.jhotdraw.draw.handle.TransformHandleKit;
+import org.jhotdraw.geom.FlattenedPath;
 import org.jhotdraw.geom.Geom;
-import org.jhotdraw.geom.GrowStroke;
-import org.jhotdraw.geom.Shapes;
 import org.jhotdraw.samples.svg.Gradient;
 import org.jhotdraw.samples.svg.SVGAttributeKeys;
 import org.jhotdraw.util.*;
@@ -48,6 +47,9 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
   /** This is used to perform faster hit testing. */
   private transient Shape cachedHitShape;
 
+  /** This is used to perform faster hit testing on the outline. */
+  private transient FlattenedPath cachedHitPath;
+
   public SVGPathFigure() {
     add(new SVGBezierFigure());
     SVGAttributeKeys.setDefaults(this);
@@ -145,6 +147,7 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
     cachedPath = null;
     cachedDrawingArea = null;
     cachedHitShape = null;
+    cachedHitPath = null;
   }
 
   protected Path2D.Double getPath() {
@@ -173,6 +176,19 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
     return cachedHitShape;
   }
 
+  /**
+   * Returns the flattened path, which is used for hit tests. The path is flattened with the
+   * tolerance of the hit test.
+   */
+  protected FlattenedPath getHitPath(double tolerance) {
+    FlattenedPath hp = cachedHitPath;
+    if (hp == null || hp.getFlatness() != tolerance) {
+      hp = new FlattenedPath(getPath(), tolerance);
+      cachedHitPath = hp;
+    }
+    return hp;
+  }
+
   // int count;
   @Override
   public Rectangle2D.Double getDrawingArea(double scale) {
@@ -229,11 +245,7 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
       double grow = AttributeKeys.getPerpendicularHitGrowth(this, 1.0)
           /** 2d */
           ;
-      GrowStroke gs =
-          new GrowStroke(
-              grow,
-              (AttributeKeys.getStrokeTotalWidth(this, 1.0) * attr().get(STROKE_MITER_LIMIT)));
-      if (gs.createStrokedShape(getPath()).contains(p)) {
+      if (getHitPath(tolerance).outlineContains(p.x, p.y, grow)) {
         return true;
       } else {
         if (isClosed) {
@@ -242,7 +254,7 @@ public class SVGPathFigure extends AbstractAttributedCompositeFigure implements
       }
     }
     if (!isClosed) {
-      if (Shapes.outlineContains(getPath(), p, tolerance)) {
+      if (getHitPath(tolerance).outlineContains(p.x, p.y, tolerance)) {
         return true;
       }
     }
@@ -19,10 +19,10 @@ import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
 import java.awt.*;
 import java.awt.font.*;
 import java.awt.geom.*;
-import java.text.*;
 import java.util.*;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.figure.TextHolderFigure;
+import org.jhotdraw.draw.figure.TextLayoutCache;
 import org.jhotdraw.draw.handle.BoundsOutlineHandle;
 import org.jhotdraw.draw.handle.FontSizeHandle;
 import org.jhotdraw.draw.handle.Handle;
@@ -46,6 +46,7 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
   private static final BasicStroke DASHES =
       new BasicStroke(
           1f, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL, 0f, new float[] {4f, 4f}, 0f);
+  private static final float[] NO_TAB_STOPS = new float[0];
 
   /** This is a cached value to improve the performance of method isTextOverflow(); */
   private Boolean isTextOverflow;
@@ -55,6 +56,9 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
 
   private transient Shape cachedTextShape;
 
+  private transient TextLayoutCache.TextBlock cachedTextBlock;
+  private transient float cachedTextBlockWidth;
+
   public SVGTextAreaFigure() {
     this("Text");
   }
@@ -71,12 +75,18 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
 
   @Override
   protected void drawFill(Graphics2D g) {
-    g.fill(getTextShape());
+    if (TextLayoutCache.isGreeked(g, attr().get(FONT_SIZE))) {
+      appendText(null, g);
+    } else {
+      g.fill(getTextShape());
+    }
   }
 
   @Override
   protected void drawStroke(Graphics2D g) {
-    g.draw(getTextShape());
+    if (!TextLayoutCache.isGreeked(g, attr().get(FONT_SIZE))) {
+      g.draw(getTextShape());
+    }
   }
 
   // SHAPE AND BOUNDS
@@ -119,172 +129,84 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
     if (cachedTextShape == null) {
       Path2D.Double shape;
       cachedTextShape = shape = new Path2D.Double();
-      if (getText() != null || isEditable()) {
-        Font font = getFont();
-        boolean isUnderlined = attr().get(FONT_UNDERLINE);
-        Insets2D.Double insets = getInsets();
-        Rectangle2D.Double textRect =
-            new Rectangle2D.Double(
-                bounds.x + insets.left,
-                bounds.y + insets.top,
-                bounds.width - insets.left - insets.right,
-                bounds.height - insets.top - insets.bottom);
-        float leftMargin = (float) textRect.x;
-        float rightMargin = (float) Math.max(leftMargin + 1, textRect.x + textRect.width);
-        float verticalPos = (float) textRect.y;
-        float maxVerticalPos = (float) (textRect.y + textRect.height);
-        if (leftMargin < rightMargin) {
-          float tabWidth =
-              (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
-          float[] tabStops = new float[(int) (textRect.width / tabWidth)];
-          for (int i = 0; i < tabStops.length; i++) {
-            tabStops[i] = (float) (textRect.x + (int) (tabWidth * (i + 1)));
+      appendText(shape, null);
+    }
+    return cachedTextShape;
+  }
+
+  /**
+   * Appends the glyphs of the visible lines of the text to a shape, or draws the lines greeked.
+   *
+   * @param shape Shape to which to add the glyphs. This parameter is null, if we want to draw the
+   *     text greeked.
+   * @param g Graphics object on which the greeked text is drawn.
+   */
+  private void appendText(Path2D.Double shape, Graphics2D g) {
+    if (getText() != null) {
+      Insets2D.Double insets = getInsets();
+      Rectangle2D.Double textRect =
+          new Rectangle2D.Double(
+              bounds.x + insets.left,
+              bounds.y + insets.top,
+              bounds.width - insets.left - insets.right,
+              bounds.height - insets.top - insets.bottom);
+      float leftMargin = (float) textRect.x;
+      float rightMargin = (float) Math.max(leftMargin + 1, textRect.x + textRect.width);
+      float verticalPos = (float) textRect.y;
+      float maxVerticalPos = (float) (textRect.y + textRect.height);
+      if (leftMargin < rightMargin) {
+        TextLayoutCache.TextBlock block = getTextBlock(rightMargin - leftMargin, textRect.width);
+        for (int i = 0, n = block.getLineCount(); i < n; i++) {
+          TextLayoutCache.Line line = block.getLine(i);
+          float baseline = verticalPos + line.getBaseline();
+          if (baseline > maxVerticalPos) {
+            break;
           }
-          if (getText() != null) {
-            String[] paragraphs = getText().split("\n"); // Strings.split(getText(), '\n');
-            for (int i = 0; i < paragraphs.length; i++) {
-              if (paragraphs[i].length() == 0) {
-                paragraphs[i] = " ";
-              }
-              AttributedString as = new AttributedString(paragraphs[i]);
-              as.addAttribute(TextAttribute.FONT, font);
-              if (isUnderlined) {
-                as.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
-              }
-              int tabCount = paragraphs[i].split("\t").length - 1;
-              Rectangle2D.Double paragraphBounds =
-                  appendParagraph(
-                      shape,
-                      as.getIterator(),
-                      verticalPos,
-                      maxVerticalPos,
-                      leftMargin,
-                      rightMargin,
-                      tabStops,
-                      tabCount);
-              verticalPos = (float) (paragraphBounds.y + paragraphBounds.height);
-              if (verticalPos > textRect.y + textRect.height) {
-                break;
-              }
+          for (int j = 0, m = line.getLayoutCount(); j < m; j++) {
+            TextLayout layout = line.getLayout(j);
+            float penPosition = leftMargin + line.getPenPosition(j);
+            if (shape != null) {
+              AffineTransform tx = new AffineTransform();
+              tx.translate(penPosition, baseline);
+              shape.append(layout.getOutline(tx), false);
+            } else {
+              TextLayoutCache.drawGreeked(g, layout, penPosition, baseline);
             }
           }
         }
       }
     }
-    return cachedTextShape;
   }
 
   /**
-   * Appends a paragraph of text at the specified y location and returns the bounds of the
-   * paragraph.
+   * Returns the layout of the text in the text rectangle.
    *
-   * @param shape Shape to which to add the glyphs of the paragraph. This parameter is null, if we
-   *     only want to measure the size of the paragraph.
-   * @param styledText the text of the paragraph.
-   * @param verticalPos the top bound of the paragraph
-   * @param maxVerticalPos the bottom bound of the paragraph
-   * @param leftMargin the left bound of the paragraph
-   * @param rightMargin the right bound of the paragraph
-   * @param tabStops an array with tab stops
-   * @param tabCount the number of entries in tabStops which contain actual values
-   * @return Returns the actual bounds of the paragraph.
+   * @param wrappingWidth The width at which the lines are wrapped.
+   * @param textWidth The width of the text rectangle, which holds the tab stops.
    */
-  private Rectangle2D.Double appendParagraph(
-      Path2D.Double shape,
-      AttributedCharacterIterator styledText,
-      float verticalPos,
-      float maxVerticalPos,
-      float leftMargin,
-      float rightMargin,
-      float[] tabStops,
-      int tabCount) {
-    // assume styledText is an AttributedCharacterIterator, and the number
-    // of tabs in styledText is tabCount
-    Rectangle2D.Double paragraphBounds = new Rectangle2D.Double(leftMargin, verticalPos, 0, 0);
-    int[] tabLocations = new int[tabCount + 1];
-    int i = 0;
-    for (char c = styledText.first(); c != CharacterIterator.DONE; c = styledText.next()) {
-      if (c == '\t') {
-        tabLocations[i++] = styledText.getIndex();
-      }
-    }
-    tabLocations[tabCount] = styledText.getEndIndex() - 1;
-    // Now tabLocations has an entry for every tab's offset in
-    // the text.  For convenience, the last entry is tabLocations
-    // is the offset of the last character in the text.
-    LineBreakMeasurer measurer = new LineBreakMeasurer(styledText, getFontRenderContext());
-    int currentTab = 0;
-    while (measurer.getPosition() < styledText.getEndIndex()) {
-      // Lay out and draw each line.  All segments on a line
-      // must be computed before any drawing can occur, since
-      // we must know the largest ascent on the line.
-      // TextLayouts are computed and stored in a List;
-      // their horizontal positions are stored in a parallel
-      // List.
-      // lineContainsText is true after first segment is drawn
-      boolean lineContainsText = false;
-      boolean lineComplete = false;
-      float maxAscent = 0, maxDescent = 0;
-      float horizontalPos = leftMargin;
-      LinkedList<TextLayout> layouts = new LinkedList<TextLayout>();
-      LinkedList<Float> penPositions = new LinkedList<Float>();
-      while (!lineComplete) {
-        float wrappingWidth = rightMargin - horizontalPos;
-        TextLayout layout = null;
-        layout = measurer.nextLayout(wrappingWidth, tabLocations[currentTab] + 1, lineContainsText);
-        // layout can be null if lineContainsText is true
-        if (layout != null) {
-          layouts.add(layout);
-          penPositions.add(horizontalPos);
-          horizontalPos += layout.getAdvance();
-          maxAscent = Math.max(maxAscent, layout.getAscent());
-          maxDescent = Math.max(maxDescent, layout.getDescent() + layout.getLeading());
-        } else {
-          lineComplete = true;
-        }
-        lineContainsText = true;
-        if (measurer.getPosition() == tabLocations[currentTab] + 1) {
-          currentTab++;
-        }
-        if (measurer.getPosition() == styledText.getEndIndex()) {
-          lineComplete = true;
-        } else if (tabStops.length == 0 || horizontalPos >= tabStops[tabStops.length - 1]) {
-          lineComplete = true;
-        }
-        if (!lineComplete) {
-          // move to next tab stop
-          int j;
-          for (j = 0; horizontalPos >= tabStops[j]; j++) {}
-          horizontalPos = tabStops[j];
-        }
-      }
-      verticalPos += maxAscent;
-      if (verticalPos > maxVerticalPos) {
-        break;
-      }
-      Iterator<TextLayout> layoutEnum = layouts.iterator();
-      Iterator<Float> positionEnum = penPositions.iterator();
-      // now iterate through layouts and draw them
-      while (layoutEnum.hasNext()) {
-        TextLayout nextLayout = layoutEnum.next();
-        float nextPosition = positionEnum.next();
-        AffineTransform tx = new AffineTransform();
-        tx.translate(nextPosition, verticalPos);
-        if (shape != null) {
-          Shape outline = nextLayout.getOutline(tx);
-          shape.append(outline, false);
-        }
-        Rectangle2D layoutBounds = nextLayout.getBounds();
-        paragraphBounds.add(
-            new Rectangle2D.Double(
-                layoutBounds.getX() + nextPosition,
-                layoutBounds.getY() + verticalPos,
-                layoutBounds.getWidth(),
-                layoutBounds.getHeight()));
+  private TextLayoutCache.TextBlock getTextBlock(float wrappingWidth, double textWidth) {
+    TextLayoutCache.TextBlock block = cachedTextBlock;
+    if (block == null || cachedTextBlockWidth != wrappingWidth) {
+      Font font = getFont();
+      float tabWidth =
+          (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
+      float[] tabStops = new float[(int) (textWidth / tabWidth)];
+      for (int i = 0; i < tabStops.length; i++) {
+        tabStops[i] = (int) (tabWidth * (i + 1));
       }
-      verticalPos += maxDescent;
+      block =
+          TextLayoutCache.getDefault()
+              .getTextBlock(
+                  getText(),
+                  font,
+                  attr().get(FONT_UNDERLINE),
+                  wrappingWidth,
+                  tabStops,
+                  getFontRenderContext());
+      cachedTextBlock = block;
+      cachedTextBlockWidth = wrappingWidth;
     }
-    return paragraphBounds;
+    return block;
   }
 
   @Override
@@ -526,6 +448,7 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
     super.invalidate();
     cachedDrawingArea = null;
     cachedTextShape = null;
+    cachedTextBlock = null;
     isTextOverflow = null;
   }
 
@@ -553,45 +476,19 @@ public class SVGTextAreaFigure extends SVGAttributedFigure implements SVGFigure,
   public Dimension2DDouble getPreferredTextSize(double maxWidth) {
     Rectangle2D.Double textRect = new Rectangle2D.Double();
     if (getText() != null) {
-      Font font = getFont();
-      boolean isUnderlined = attr().get(FONT_UNDERLINE);
       float leftMargin = 0;
       float rightMargin = (float) maxWidth - 1;
-      float verticalPos = 0;
-      float maxVerticalPos = Float.MAX_VALUE;
       if (leftMargin < rightMargin) {
-        float tabWidth =
-            (float) (getTabSize() * font.getStringBounds("m", getFontRenderContext()).getWidth());
-        float[] tabStops = new float[(int) (textRect.width / tabWidth)];
-        for (int i = 0; i < tabStops.length; i++) {
-          tabStops[i] = (float) (textRect.x + (int) (tabWidth * (i + 1)));
-        }
-        if (getText() != null) {
-          String[] paragraphs = getText().split("\n"); // Strings.split(getText(), '\n');
-          for (int i = 0; i < paragraphs.length; i++) {
-            if (paragraphs[i].length() == 0) {
-              paragraphs[i] = " ";
-            }
-            AttributedString as = new AttributedString(paragraphs[i]);
-            as.addAttribute(TextAttribute.FONT, font);
-            if (isUnderlined) {
-              as.addAttribute(TextAttribute.UNDERLINE, TextAttribute.UNDERLINE_LOW_ONE_PIXEL);
-            }
-            int tabCount = paragraphs[i].split("\t").length - 1;
-            Rectangle2D.Double paragraphBounds =
-                appendParagraph(
-                    null,
-                    as.getIterator(),
-                    verticalPos,
-                    maxVerticalPos,
-                    leftMargin,
+        textRect =
+            TextLayoutCache.getDefault()
+                .getTextBlock(
+                    getText(),
+                    getFont(),
+                    attr().get(FONT_UNDERLINE),
                     rightMargin,
-                    tabStops,
-                    tabCount);
-            verticalPos = (float) (paragraphBounds.y + paragraphBounds.height);
-            textRect.add(paragraphBounds);
-          }
-        }
+                    NO_TAB_STOPS,
+                    getFontRenderContext())
+                .getBounds();
       }
     }
     return new Dimension2DDouble(
@@ -18,8 +18,17 @@ import java.awt.geom.*;
 import java.awt.image.*;
 import java.io.*;
 import java.net.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.text.ParseException;
 import java.util.*;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.imageio.*;
@@ -27,26 +36,31 @@ import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import org.jhotdraw.draw.*;
+import org.jhotdraw.draw.figure.AttributeStyleTable;
 import org.jhotdraw.draw.figure.CompositeFigure;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.io.InputFormat;
 import org.jhotdraw.formatter.FontFormatter;
 import org.jhotdraw.geom.path.BezierPath;
 import org.jhotdraw.io.Base64;
-import org.jhotdraw.io.StreamPosTokenizer;
 import org.jhotdraw.samples.svg.Gradient;
 import org.jhotdraw.samples.svg.SVGAttributeKeys.TextAnchor;
 import org.jhotdraw.samples.svg.figures.SVGFigure;
+import org.jhotdraw.samples.svg.figures.SVGGroupFigure;
 import org.jhotdraw.util.LocaleUtil;
+import org.jhotdraw.xml.XMLPool;
 import org.jhotdraw.xml.css.CSSParser;
 import org.jhotdraw.xml.css.StyleManager;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
-import org.xml.sax.SAXException;
 
 /**
  * SVGInputFormat. This format is aimed to comply to the Scalable Vector Graphics (SVG) Tiny 1.2
@@ -74,10 +88,10 @@ public class SVGInputFormat implements InputFormat {
   private HashMap<String, Element> identifiedElements;
 
   /** Maps to all drawing objects from the XML elements they were created from. */
-  private HashMap<Element, Object> elementObjects;
+  private Map<Element, Object> elementObjects;
 
-  /** Tokenizer for parsing SVG path expressions. */
-  private StreamPosTokenizer toPathTokenizer;
+  /** Parser for SVG path data, transforms and points. */
+  private final SVGPathParser pathParser = new SVGPathParser();
 
   /** FontFormatter for parsing font family names. */
   private FontFormatter fontFormatter = new FontFormatter();
@@ -141,6 +155,24 @@ public class SVGInputFormat implements InputFormat {
   /** Holds the document that is currently being read. */
   private Element document;
 
+  /** The attribute styles of the figures which have been read last. */
+  private AttributeStyleTable attributeStyles = new AttributeStyleTable();
+
+  /** Whether the document is read with a streaming parser instead of into a DOM. */
+  private boolean isStreaming;
+
+  /** The number of figures which the streaming parser adds to the drawing at once. */
+  private int batchSize = 1024;
+
+  /** Whether the figures are constructed in parallel. */
+  private boolean isParallel;
+
+  /** The number of elements which the last streaming read has kept for references. */
+  private int keptElementCount;
+
+  /** The maximal number of sibling elements which are read by a single task in parallel mode. */
+  private static final int ELEMENTS_PER_TASK = 64;
+
   public SVGInputFormat() {
     this(new DefaultSVGFigureFactory());
   }
@@ -149,6 +181,43 @@ public class SVGInputFormat implements InputFormat {
     this.factory = factory;
   }
 
+  /**
+   * Sets whether the document is read with a streaming parser. The streaming parser does not hold
+   * the whole document in memory, and adds the figures to the drawing in batches of {@link
+   * #getBatchSize} figures while the document is being read. The default value is false.
+   */
+  public void setStreaming(boolean newValue) {
+    isStreaming = newValue;
+  }
+
+  public boolean isStreaming() {
+    return isStreaming;
+  }
+
+  /** Sets the number of figures which the streaming parser adds to the drawing at once. */
+  public void setBatchSize(int newValue) {
+    batchSize = Math.max(1, newValue);
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Sets whether the figures are constructed in parallel on the common ForkJoin pool. The children
+   * of "svg" and "g" elements are split into ranges of sibling elements which are read by separate
+   * tasks, and the figures are added to the drawing in document order.
+   *
+   * <p>This setting has no effect on the streaming parser. The default value is false.
+   */
+  public void setParallel(boolean newValue) {
+    isParallel = newValue;
+  }
+
+  public boolean isParallel() {
+    return isParallel;
+  }
+
   public void read(File file, Drawing drawing, boolean replace) throws IOException {
     this.url = file.toURI().toURL();
     BufferedInputStream in = new BufferedInputStream(new FileInputStream(file));
@@ -181,59 +250,46 @@ public class SVGInputFormat implements InputFormat {
    */
   @Override
   public void read(InputStream in, Drawing drawing, boolean replace) throws IOException {
-    long start;
-    this.figures = new LinkedList<Figure>();
-    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder builder;
-    try {
-      builder = factory.newDocumentBuilder();
-    } catch (ParserConfigurationException ex) {
-      Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
-      throw new IOException(ex);
-    }
-    try {
-      document = (Element) builder.parse(in);
-    } catch (SAXException ex) {
-      Logger.getLogger(SVGInputFormat.class.getName()).log(Level.SEVERE, null, ex);
-      throw new IOException(ex);
+    if (isStreaming) {
+      readStreaming(in, drawing, replace);
+      return;
     }
+    this.figures = new LinkedList<Figure>();
+    // The document is fully expanded, so that it can be read in parallel.
+    document = XMLPool.parse(in).getDocumentElement();
     // Search for the first 'svg' element in the XML document
     // in preorder sequence
     Element svg = document;
-    Stack<Element> stack = new Stack<Element>();
-    // LinkedList<Element> ll = new LinkedList<Element>();
-    // ll.add(document);
-    stack.push((Element) document.getFirstChild());
-    while (!stack.empty() && stack.peek().getNextSibling() != null) {
-      Element iter = stack.peek();
-      Element node = (Element) iter.getNextSibling();
-      stack.set(stack.indexOf(iter), node);
-      Element children = (Element) node.getFirstChild();
-      if (iter.getNextSibling() == null) {
-        stack.pop();
-      }
-      if (children != null && children.getNextSibling() != null) {
-        stack.push(children);
-      }
-      if (node.getLocalName() != null
-          && node.getLocalName().equals("svg")
-          && (node.getPrefix() == null || node.getPrefix().equals(SVG_NAMESPACE))) {
-        svg = node;
-        break;
+    if (!"svg".equals(svg.getLocalName())) {
+      NodeList list = document.getElementsByTagNameNS(SVG_NAMESPACE, "svg");
+      if (list.getLength() > 0) {
+        svg = (Element) list.item(0);
       }
     }
     if (svg.getLocalName() == null
         || !svg.getLocalName().equals("svg")
-        || (svg.getPrefix() != null && !svg.getPrefix().equals(SVG_NAMESPACE))) {
+        || (svg.getNamespaceURI() != null && !svg.getNamespaceURI().equals(SVG_NAMESPACE))) {
       throw new IOException("'svg' element expected: " + svg.getLocalName());
     }
     // long end1 = System.currentTimeMillis();
     // Flatten CSS Styles
-    initStorageContext(document);
+    initStorageContext();
+    if (isParallel) {
+      elementObjects = new ConcurrentHashMap<Element, Object>();
+    }
+    identifyElements(document);
     flattenStyles(svg);
     // long end2 = System.currentTimeMillis();
     readElement(svg);
 
+    AttributeStyleTable styles = new AttributeStyleTable();
+    for (Figure f : figures) {
+      styles.intern(f);
+    }
+    attributeStyles = styles;
+    if (LOG.isLoggable(Level.FINE)) {
+      LOG.fine("read " + styles);
+    }
     if (replace) {
       drawing.removeAllChildren();
     }
@@ -257,9 +313,708 @@ public class SVGInputFormat implements InputFormat {
     styleManager = null;
   }
 
-  private void initStorageContext(Element root) {
+  /**
+   * Reads the document with a streaming XML parser, and adds the figures to the drawing in batches.
+   *
+   * <p>The reader keeps only the ancestors of the current element, and the element which is
+   * currently converted into a figure. The ancestors form a style stack: inherited attributes and
+   * CSS rules are resolved from them, as if the whole document had been read.
+   *
+   * <p>The document is read twice. The first pass collects the ids which are referenced by links
+   * and by "url(#id)" values. The second pass keeps the elements with one of these ids, so that
+   * they can be referenced by later elements. Elements with an id which is not referenced are
+   * discarded like anonymous elements. If the document is not read from a file, it is copied into a
+   * temporary file for the two passes.
+   *
+   * <p>A figure which references an element that has not been read yet, is replaced by a
+   * placeholder until the element has been read. The batches are added to the drawing up to the
+   * first figure which contains a placeholder.
+   *
+   * <p>Unlike the DOM reader, CSS rules only apply to elements which follow their style element.
+   */
+  private void readStreaming(InputStream in, Drawing drawing, boolean replace)
+      throws IOException {
+    Document shadowDocument = XMLPool.newDocument();
+    XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+    xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // Do not fetch external DTD's, but resolve entities of the internal DTD subset.
+    xmlInputFactory.setXMLResolver(
+        (publicID, systemID, baseURI, namespace) -> new ByteArrayInputStream(new byte[0]));
+    Path file = null;
+    if (url != null && "file".equals(url.getProtocol())) {
+      try {
+        file = Path.of(url.toURI());
+      } catch (URISyntaxException | IllegalArgumentException ex) {
+        file = null;
+      }
+    }
+    Path spool = null;
+    InputStream secondPass = in;
+    if (file == null) {
+      spool = Files.createTempFile("jhotdraw", ".svg");
+      file = spool;
+    }
+    try {
+      if (spool != null) {
+        Files.copy(in, spool, StandardCopyOption.REPLACE_EXISTING);
+        secondPass = new BufferedInputStream(Files.newInputStream(spool));
+      }
+      Set<String> referencedIds;
+      try (InputStream firstPass = new BufferedInputStream(Files.newInputStream(file))) {
+        referencedIds = readReferencedIds(xmlInputFactory, firstPass);
+      }
+      initStorageContext();
+      attributeStyles = new AttributeStyleTable();
+      StreamReader streamReader = new StreamReader(shadowDocument, drawing, replace, referencedIds);
+      try {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(secondPass);
+        try {
+          streamReader.read(reader);
+        } finally {
+          reader.close();
+        }
+      } catch (XMLStreamException ex) {
+        throw new IOException(ex);
+      }
+    } finally {
+      if (spool != null) {
+        secondPass.close();
+        Files.deleteIfExists(spool);
+      }
+    }
+    keptElementCount = identifiedElements.size();
+    if (LOG.isLoggable(Level.FINE)) {
+      LOG.fine("read " + attributeStyles);
+    }
+    if (replace) {
+      Viewport viewport = viewportStack.firstElement();
+      drawing.attr().set(VIEWPORT_FILL, VIEWPORT_FILL.get(viewport.attributes));
+      drawing.attr().set(VIEWPORT_FILL_OPACITY, VIEWPORT_FILL_OPACITY.get(viewport.attributes));
+      drawing.attr().set(VIEWPORT_HEIGHT, VIEWPORT_HEIGHT.get(viewport.attributes));
+      drawing.attr().set(VIEWPORT_WIDTH, VIEWPORT_WIDTH.get(viewport.attributes));
+    }
+    identifiedElements = null;
+    elementObjects = null;
+    viewportStack = null;
+    styleManager = null;
+  }
+
+  /**
+   * Returns the ids which are referenced by the attributes and the style sheets of a document. This
+   * is the first pass of the streaming reader.
+   */
+  private static Set<String> readReferencedIds(XMLInputFactory xmlInputFactory, InputStream in)
+      throws IOException {
+    HashSet<String> ids = new HashSet<>();
+    try {
+      XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+      try {
+        int styleDepth = 0;
+        while (reader.hasNext()) {
+          switch (reader.next()) {
+            case XMLStreamConstants.START_ELEMENT:
+              for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+                addReferencedIds(reader.getAttributeLocalName(i), reader.getAttributeValue(i), ids);
+              }
+              if (styleDepth > 0 || "style".equals(reader.getLocalName())) {
+                styleDepth++;
+              }
+              break;
+            case XMLStreamConstants.CHARACTERS:
+            case XMLStreamConstants.CDATA:
+              if (styleDepth > 0) {
+                addReferencedIds("", reader.getText(), ids);
+              }
+              break;
+            case XMLStreamConstants.END_ELEMENT:
+              if (styleDepth > 0) {
+                styleDepth--;
+              }
+              break;
+            default:
+              break;
+          }
+        }
+      } finally {
+        reader.close();
+      }
+    } catch (XMLStreamException ex) {
+      throw new IOException(ex);
+    }
+    return ids;
+  }
+
+  /**
+   * Adds the ids which are referenced by an attribute value with "url(#id)", or with "#id" if the
+   * attribute is a link.
+   */
+  private static void addReferencedIds(String attributeName, String value, Collection<String> ids) {
+    for (int p = value.indexOf("url(#"); p != -1; p = value.indexOf("url(#", p + 5)) {
+      int end = value.indexOf(')', p);
+      String id = value.substring(p + 5, end == -1 ? value.length() : end).trim();
+      if (!id.isEmpty()) {
+        ids.add(id);
+      }
+    }
+    if (value.startsWith("#") && value.length() > 1 && attributeName.endsWith("href")) {
+      ids.add(value.substring(1));
+    }
+  }
+
+  /**
+   * Returns the number of elements which the last streaming read has kept, because they are
+   * referenced by other elements. For testing.
+   */
+  int getKeptElementCount() {
+    return keptElementCount;
+  }
+
+  /** Kinds of elements which the streaming reader does not read into a DOM subtree. */
+  private enum FrameKind {
+    SVG,
+    G,
+    A,
+    OTHER
+  }
+
+  /** An element on the style stack of the streaming reader. */
+  private static class StreamFrame {
+
+    private final Element elem;
+    private final FrameKind kind;
+
+    /** The group of a "g" or "a" element. */
+    private CompositeFigure group;
+
+    /** The viewbox transform of an "svg" element. */
+    private AffineTransform viewBoxTransform;
+
+    /** The link of an "a" element. */
+    private String href;
+
+    private String target;
+
+    StreamFrame(Element elem, FrameKind kind) {
+      this.elem = elem;
+      this.kind = kind;
+    }
+  }
+
+  /**
+   * Stands in for a figure whose element references an element that has not been read yet. The
+   * placeholder records the transforms which are applied to it by its ancestors.
+   */
+  private static class Placeholder extends SVGGroupFigure {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The element, with copies of its ancestors. */
+    private final Element element;
+
+    /** The ids which have not been read yet. */
+    private final Set<String> missingIds;
+
+    private final AffineTransform transform = new AffineTransform();
+
+    /** The group which contains the placeholder, or null for the top level. */
+    private CompositeFigure container;
+
+    Placeholder(Element element, Set<String> missingIds) {
+      this.element = element;
+      this.missingIds = missingIds;
+    }
+
+    @Override
+    public void transform(AffineTransform tx) {
+      transform.preConcatenate(tx);
+    }
+  }
+
+  /** Reads a document from a stream of XML events. */
+  private class StreamReader {
+
+    private final Document shadowDocument;
+    private final Drawing drawing;
+    private boolean replace;
+
+    /** The ids which are referenced somewhere in the document. */
+    private final Set<String> referencedIds;
+
+    private final ArrayDeque<StreamFrame> frames = new ArrayDeque<>();
+
+    /** The top level figures which have not been added to the drawing yet. */
+    private final ArrayList<Figure> output = new ArrayList<>();
+
+    /** The placeholders which have not been resolved yet, by the ids they are waiting for. */
+    private final HashMap<String, List<Placeholder>> waiting = new HashMap<>();
+
+    private final LinkedHashSet<Placeholder> unresolved = new LinkedHashSet<>();
+
+    private boolean hasSVGElement;
+
+    /** The root of the element subtree which is currently read into the DOM. */
+    private Element subtree;
+
+    /** The element of the subtree which is currently read. */
+    private Element current;
+
+    StreamReader(
+        Document shadowDocument, Drawing drawing, boolean replace, Set<String> referencedIds) {
+      this.shadowDocument = shadowDocument;
+      this.drawing = drawing;
+      this.replace = replace;
+      this.referencedIds = referencedIds;
+    }
+
+    void read(XMLStreamReader reader) throws XMLStreamException, IOException {
+      while (reader.hasNext()) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            startElement(createElement(reader));
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            if (current != null) {
+              current.appendChild(shadowDocument.createTextNode(reader.getText()));
+            }
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            if (current == subtree && subtree != null) {
+              endSubtree(subtree);
+              subtree = null;
+              current = null;
+            } else if (current != null) {
+              current = (Element) current.getParentNode();
+            } else {
+              endFrame(frames.pop());
+            }
+            break;
+          default:
+            break;
+        }
+      }
+      if (!hasSVGElement) {
+        throw new IOException("'svg' element expected");
+      }
+      // Resolve the remaining placeholders. Their references can not be resolved anymore.
+      for (Placeholder p : new ArrayList<>(unresolved)) {
+        resolve(p);
+      }
+      flush(true);
+      if (replace) {
+        drawing.removeAllChildren();
+      }
+    }
+
+    private void startElement(Element elem) throws IOException {
+      if (subtree != null) {
+        current.appendChild(elem);
+        current = elem;
+      } else {
+        if (frames.isEmpty()) {
+          shadowDocument.appendChild(elem);
+        } else {
+          frames.peek().elem.appendChild(elem);
+        }
+        FrameKind kind = getFrameKind(elem);
+        if (kind != null) {
+          startFrame(elem, kind);
+        } else {
+          subtree = elem;
+          current = elem;
+        }
+      }
+    }
+
+    private Element createElement(XMLStreamReader reader) {
+      Element elem =
+          shadowDocument.createElementNS(
+              emptyToNull(reader.getNamespaceURI()),
+              qualifiedName(reader.getPrefix(), reader.getLocalName()));
+      for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+        elem.setAttributeNS(
+            emptyToNull(reader.getAttributeNamespace(i)),
+            qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+            reader.getAttributeValue(i));
+      }
+      return elem;
+    }
+
+    /**
+     * Returns the kind of a streamed element, or null if the element must be read into a DOM
+     * subtree. Containers which are referenced are read into a subtree, so that they can be kept.
+     */
+    private FrameKind getFrameKind(Element elem) {
+      if (frames.isEmpty()) {
+        // The root element is always streamed.
+        return ("svg".equals(elem.getLocalName()) && isSVGElement(elem))
+            ? FrameKind.SVG
+            : FrameKind.OTHER;
+      }
+      if (!isSVGElement(elem) || isReferenced(elem)) {
+        return null;
+      }
+      switch (elem.getLocalName()) {
+        case "svg":
+          return FrameKind.SVG;
+        case "g":
+          return FrameKind.G;
+        case "a":
+          return FrameKind.A;
+        default:
+          return null;
+      }
+    }
+
+    private void startFrame(Element elem, FrameKind kind) throws IOException {
+      flattenStyles(elem);
+      StreamFrame frame = new StreamFrame(elem, kind);
+      HashMap<AttributeKey<?>, Object> a = new HashMap<AttributeKey<?>, Object>();
+      switch (kind) {
+        case SVG:
+          frame.viewBoxTransform = readViewport(elem);
+          hasSVGElement = true;
+          break;
+        case G:
+          readCoreAttributes(elem, a);
+          readOpacityAttribute(elem, a);
+          frame.group = factory.createG(a);
+          break;
+        case A:
+          readCoreAttributes(elem, a);
+          frame.group = factory.createG(a);
+          frame.href = readAttribute(elem, "xlink:href", null);
+          if (frame.href == null) {
+            frame.href = readAttribute(elem, "href", null);
+          }
+          frame.target = readAttribute(elem, "target", null);
+          break;
+        default:
+          break;
+      }
+      frames.push(frame);
+    }
+
+    private void endFrame(StreamFrame frame) throws IOException {
+      Figure f = null;
+      switch (frame.kind) {
+        case SVG:
+          viewportStack.pop();
+          break;
+        case G:
+          HashMap<AttributeKey<?>, Object> a = new HashMap<AttributeKey<?>, Object>();
+          readTransformAttribute(frame.elem, a);
+          if (TRANSFORM.get(a) != null) {
+            frame.group.transform(TRANSFORM.get(a));
+          }
+          f = frame.group;
+          break;
+        case A:
+          f = (frame.group.getChildCount() == 1) ? frame.group.getChild(0) : frame.group;
+          break;
+        default:
+          break;
+      }
+      if (f != null
+          && !(f instanceof Placeholder)
+          && f instanceof SVGFigure
+          && ((SVGFigure) f).isEmpty()) {
+        f = null;
+      }
+      if (f != null && !frames.isEmpty() && isVisible(frame.elem)) {
+        deliver(f);
+      }
+      detach(frame.elem);
+    }
+
+    /**
+     * Reads a figure, or a definition, from an element subtree. Subtrees with referenced elements
+     * are kept, all other subtrees are discarded.
+     */
+    private void endSubtree(Element elem) throws IOException {
+      flattenStyles(elem);
+      ArrayList<String> ids = new ArrayList<>();
+      identify(elem, ids);
+      if (!(isSVGElement(elem) && "style".equals(elem.getLocalName()))) {
+        Set<String> missingIds = isDefinition(elem) ? Collections.emptySet() : findMissingIds(elem);
+        Figure f;
+        if (missingIds.isEmpty()) {
+          f = readElement(elem);
+          forgetFigures(elem);
+          if (f != null && !isVisible(elem)) {
+            f = null;
+          }
+        } else {
+          f = defer(elem, missingIds);
+        }
+        if (f != null) {
+          deliver(f);
+        }
+      }
+      if (ids.isEmpty()) {
+        detach(elem);
+      } else {
+        moveToAncestorCopies(elem);
+        resolveWaiting(ids);
+      }
+    }
+
+    /** Adds a figure to the current container. */
+    private void deliver(Figure f) {
+      StreamFrame frame = frames.peek();
+      CompositeFigure container = null;
+      switch (frame.kind) {
+        case SVG:
+          f.transform(frame.viewBoxTransform);
+          output.add(f);
+          break;
+        case G:
+          frame.group.basicAdd(f);
+          container = frame.group;
+          break;
+        case A:
+          frame.group.basicAdd(f);
+          f.attr().set(LINK, frame.href);
+          f.attr().set(LINK_TARGET, frame.target);
+          container = frame.group;
+          break;
+        default:
+          return;
+      }
+      if (f instanceof Placeholder) {
+        ((Placeholder) f).container = container;
+      }
+      if (frame.kind == FrameKind.SVG && output.size() >= batchSize) {
+        flush(false);
+      }
+    }
+
+    /**
+     * Adds the top level figures to the drawing, up to the first figure which contains a
+     * placeholder.
+     */
+    private void flush(boolean force) {
+      int n = 0;
+      while (n < output.size() && (unresolved.isEmpty() || !containsPlaceholder(output.get(n)))) {
+        n++;
+      }
+      if (n == 0 || (!force && n < batchSize)) {
+        return;
+      }
+      List<Figure> batch = output.subList(0, n);
+      for (Figure f : batch) {
+        attributeStyles.intern(f);
+      }
+      if (replace) {
+        drawing.removeAllChildren();
+        replace = false;
+      }
+      drawing.addAll(new ArrayList<>(batch));
+      batch.clear();
+    }
+
+    private boolean containsPlaceholder(Figure f) {
+      if (f instanceof Placeholder) {
+        return true;
+      }
+      if (f instanceof CompositeFigure) {
+        for (Figure child : ((CompositeFigure) f).getChildren()) {
+          if (containsPlaceholder(child)) {
+            return true;
+          }
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Creates a placeholder for an element which references elements that have not been read yet.
+     * The element is kept with shallow copies of its ancestors, so that inherited attributes can
+     * be resolved later.
+     */
+    private Placeholder defer(Element elem, Set<String> missingIds) {
+      Element copy = (Element) elem.cloneNode(true);
+      elem.getParentNode().appendChild(copy);
+      moveToAncestorCopies(copy);
+      Placeholder placeholder = new Placeholder(copy, missingIds);
+      for (String id : missingIds) {
+        waiting.computeIfAbsent(id, k -> new ArrayList<>()).add(placeholder);
+      }
+      unresolved.add(placeholder);
+      return placeholder;
+    }
+
+    /** Replaces a placeholder by the figure of its element. */
+    private void resolve(Placeholder p) throws IOException {
+      unresolved.remove(p);
+      Figure f = readElement(p.element);
+      forgetFigures(p.element);
+      if (f != null && isVisible(p.element)) {
+        f.transform(p.transform);
+        if (p.attr().get(LINK) != null) {
+          f.attr().set(LINK, p.attr().get(LINK));
+          f.attr().set(LINK_TARGET, p.attr().get(LINK_TARGET));
+        }
+      } else {
+        f = null;
+      }
+      if (p.container == null) {
+        int index = output.indexOf(p);
+        if (f == null) {
+          output.remove(index);
+        } else {
+          output.set(index, f);
+        }
+      } else {
+        int index = p.container.getChildren().indexOf(p);
+        p.container.basicRemoveChild(index);
+        if (f != null) {
+          p.container.basicAdd(index, f);
+        }
+        // Update the cached bounds of the container and of its ancestors.
+        p.container.willChange();
+        p.container.changed();
+      }
+    }
+
+    /** Puts the referenced elements of a subtree into {@code identifiedElements}. */
+    private void identify(Element elem, List<String> ids) {
+      for (String name : new String[] {"id", "xml:id"}) {
+        String id = elem.getAttribute(name);
+        if (!id.isEmpty() && referencedIds.contains(id)) {
+          identifiedElements.put(id, elem);
+          ids.add(id);
+        }
+      }
+      for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof Element) {
+          identify((Element) node, ids);
+        }
+      }
+    }
+
+    /** Resolves the placeholders which have been waiting for the specified ids. */
+    private void resolveWaiting(List<String> ids) throws IOException {
+      for (String id : ids) {
+        List<Placeholder> placeholders = waiting.remove(id);
+        if (placeholders != null) {
+          for (Placeholder p : placeholders) {
+            p.missingIds.remove(id);
+            if (p.missingIds.isEmpty() && unresolved.contains(p)) {
+              resolve(p);
+            }
+          }
+        }
+      }
+    }
+
+    /**
+     * Moves an element from the style stack to shallow copies of its ancestors, so that it keeps
+     * its inherited attributes when the style stack changes.
+     */
+    private void moveToAncestorCopies(Element elem) {
+      Node parent = elem.getParentNode();
+      parent.removeChild(elem);
+      Element top = elem;
+      for (Node p = parent; p instanceof Element; p = p.getParentNode()) {
+        Element copy = (Element) p.cloneNode(false);
+        copy.appendChild(top);
+        top = copy;
+      }
+    }
+
+    /** Returns the ids of the elements which are referenced by a subtree, but not known yet. */
+    private Set<String> findMissingIds(Element elem) {
+      Set<String> missingIds = null;
+      NamedNodeMap attributes = elem.getAttributes();
+      ArrayList<String> ids = new ArrayList<>();
+      for (int i = 0, n = attributes.getLength(); i < n; i++) {
+        addReferencedIds(attributes.item(i).getNodeName(), attributes.item(i).getNodeValue(), ids);
+      }
+      for (String id : ids) {
+        if (!identifiedElements.containsKey(id)) {
+          if (missingIds == null) {
+            missingIds = new HashSet<>();
+          }
+          missingIds.add(id);
+        }
+      }
+      for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof Element) {
+          Set<String> childIds = findMissingIds((Element) node);
+          if (!childIds.isEmpty()) {
+            if (missingIds == null) {
+              missingIds = new HashSet<>();
+            }
+            missingIds.addAll(childIds);
+          }
+        }
+      }
+      return missingIds == null ? Collections.emptySet() : missingIds;
+    }
+
+    /** Returns true for elements which define objects instead of figures. */
+    private boolean isDefinition(Element elem) {
+      switch (elem.getLocalName()) {
+        case "defs":
+        case "linearGradient":
+        case "radialGradient":
+        case "solidColor":
+        case "title":
+        case "desc":
+        case "metadata":
+          return true;
+        default:
+          return false;
+      }
+    }
+
+    /**
+     * Removes the figures of a subtree from {@code elementObjects}. Keeps the paint servers which
+     * are referenced.
+     */
+    private void forgetFigures(Element elem) {
+      if (!isDefinition(elem) || !isReferenced(elem)) {
+        elementObjects.remove(elem);
+      }
+      for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+        if (node instanceof Element) {
+          forgetFigures((Element) node);
+        }
+      }
+    }
+
+    /** Returns true if the id of the element is referenced somewhere in the document. */
+    private boolean isReferenced(Element elem) {
+      return referencedIds.contains(elem.getAttribute("id"))
+          || referencedIds.contains(elem.getAttribute("xml:id"));
+    }
+
+    private void detach(Element elem) {
+      Node parent = elem.getParentNode();
+      if (parent != null) {
+        parent.removeChild(elem);
+      }
+    }
+
+    private boolean isSVGElement(Element elem) {
+      return elem.getNamespaceURI() == null || elem.getNamespaceURI().equals(SVG_NAMESPACE);
+    }
+
+    private String emptyToNull(String str) {
+      return (str == null || str.isEmpty()) ? null : str;
+    }
+
+    private String qualifiedName(String prefix, String localName) {
+      return (prefix == null || prefix.isEmpty()) ? localName : prefix + ":" + localName;
+    }
+  }
+
+  private void initStorageContext() {
     identifiedElements = new HashMap<String, Element>();
-    identifyElements(root);
     elementObjects = new HashMap<Element, Object>();
     viewportStack = new Stack<Viewport>();
     viewportStack.push(new Viewport());
@@ -278,7 +1033,7 @@ public class SVGInputFormat implements InputFormat {
       CSSParser cssParser = new CSSParser();
       cssParser.parse(elem.getTextContent(), styleManager);
     } else {
-      if (elem.getPrefix() == null || elem.getPrefix().equals(SVG_NAMESPACE)) {
+      if (elem.getNamespaceURI() == null || elem.getNamespaceURI().equals(SVG_NAMESPACE)) {
         String style = readAttribute(elem, "style", null);
         if (style != null) {
           for (String styleProperty : style.split(";")) {
@@ -294,7 +1049,11 @@ public class SVGInputFormat implements InputFormat {
         styleManager.applyStylesTo(elem);
         NodeList list = elem.getChildNodes();
         for (int i = 0; i < list.getLength(); i++) {
-          Element child = (Element) list.item(i);
+          Node node = list.item(i);
+          if (!(node instanceof Element)) {
+            continue;
+          }
+          Element child = (Element) node;
           flattenStyles(child);
         }
       }
@@ -309,7 +1068,7 @@ public class SVGInputFormat implements InputFormat {
    */
   private Figure readElement(Element elem) throws IOException {
     Figure f = null;
-    if (elem.getPrefix() == null || elem.getPrefix().equals(SVG_NAMESPACE)) {
+    if (elem.getNamespaceURI() == null || elem.getNamespaceURI().equals(SVG_NAMESPACE)) {
       String name = elem.getLocalName();
       if (name == null) {
         LOG.warning("SVGInputFormat warning: skipping nameless element");
@@ -329,7 +1088,9 @@ public class SVGInputFormat implements InputFormat {
       } else if ("line".equals(name)) {
         f = readLineElement(elem);
       } else if ("linearGradient".equals(name)) {
-        readLinearGradientElement(elem);
+        if (!elementObjects.containsKey(elem)) {
+          readLinearGradientElement(elem);
+        }
         f = null;
       } else if ("path".equals(name)) {
         f = readPathElement(elem);
@@ -338,12 +1099,16 @@ public class SVGInputFormat implements InputFormat {
       } else if ("polyline".equals(name)) {
         f = readPolylineElement(elem);
       } else if ("radialGradient".equals(name)) {
-        readRadialGradientElement(elem);
+        if (!elementObjects.containsKey(elem)) {
+          readRadialGradientElement(elem);
+        }
         f = null;
       } else if ("rect".equals(name)) {
         f = readRectElement(elem);
       } else if ("solidColor".equals(name)) {
-        readSolidColorElement(elem);
+        if (!elementObjects.containsKey(elem)) {
+          readSolidColorElement(elem);
+        }
         f = null;
       } else if ("svg".equals(name)) {
         f = readSVGElement(elem);
@@ -381,10 +1146,10 @@ public class SVGInputFormat implements InputFormat {
 
   /** Reads an SVG "defs" element. */
   private void readDefsElement(Element elem) throws IOException {
-    Element child = (Element) elem.getFirstChild();
-    while (child != null) {
-      Figure childFigure = readElement(child);
-      child = (Element) child.getNextSibling();
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        readElement((Element) node);
+      }
     }
   }
 
@@ -394,18 +1159,7 @@ public class SVGInputFormat implements InputFormat {
     readCoreAttributes(elem, a);
     readOpacityAttribute(elem, a);
     CompositeFigure g = factory.createG(a);
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      Figure childFigure = readElement(child);
-      // skip invisible elements
-      if (readAttribute(child, "visibility", "visible").equals("visible")
-          && !readAttribute(child, "display", "inline").equals("none")) {
-        if (childFigure != null) {
-          g.basicAdd(childFigure);
-        }
-      }
-    }
+    readChildElements(elem, null, g::basicAdd);
     readTransformAttribute(elem, a);
     if (TRANSFORM.get(a) != null) {
       g.transform(TRANSFORM.get(a));
@@ -423,13 +1177,14 @@ public class SVGInputFormat implements InputFormat {
       href = readAttribute(elem, "href", null);
     }
     String target = readAttribute(elem, "target", null);
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
       Figure childFigure = readElement(child);
       // skip invisible elements
-      if (readAttribute(child, "visibility", "visible").equals("visible")
-          && !readAttribute(child, "display", "inline").equals("none")) {
+      if (isVisible(child)) {
         if (childFigure != null) {
           g.basicAdd(childFigure);
         }
@@ -446,7 +1201,207 @@ public class SVGInputFormat implements InputFormat {
 
   /** Reads an SVG "svg" element. */
   private Figure readSVGElement(Element elem) throws IOException {
-    // Establish a new viewport
+    AffineTransform viewBoxTransform = readViewport(elem);
+    if (!isStreaming && viewportStack.size() == 2) {
+      // Read all gradients and solid colors before the figures, so that a figure can reference
+      // them regardless of their position in the document, like in the streaming parser.
+      readPaintServers(elem);
+    }
+    // Read the figures
+    readChildElements(elem, viewBoxTransform, figures::add);
+    viewportStack.pop();
+    return null;
+  }
+
+  /**
+   * Reads the child elements of an "svg" or a "g" element, and passes their visible figures in
+   * document order to the specified consumer.
+   *
+   * @param transform The transform which is applied to the figures, or null.
+   */
+  private void readChildElements(Element elem, AffineTransform transform, Consumer<Figure> consumer)
+      throws IOException {
+    ArrayList<Element> children = new ArrayList<Element>();
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        children.add((Element) node);
+      }
+    }
+    if (isParallel && !isStreaming && children.size() > ELEMENTS_PER_TASK) {
+      readChildElementsInParallel(children, transform, consumer);
+      return;
+    }
+    for (Element child : children) {
+      Figure childFigure = readElement(child);
+      // skip invisible elements
+      if (childFigure != null && isVisible(child)) {
+        if (transform != null) {
+          childFigure.transform(transform);
+        }
+        consumer.accept(childFigure);
+      }
+    }
+  }
+
+  /**
+   * Reads sibling elements with {@link ReadElementsTask}s, and merges their figures in document
+   * order.
+   */
+  private void readChildElementsInParallel(
+      List<Element> children, AffineTransform transform, Consumer<Figure> consumer)
+      throws IOException {
+    ChildFigures[] results = new ChildFigures[children.size()];
+    ReadElementsTask task =
+        new ReadElementsTask(this, children, transform, results, 0, results.length);
+    try {
+      if (ForkJoinTask.inForkJoinPool()) {
+        task.invoke();
+      } else {
+        ForkJoinPool.commonPool().invoke(task);
+      }
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+    for (ChildFigures result : results) {
+      if (result.nestedFigures != null) {
+        figures.addAll(result.nestedFigures);
+      }
+      if (result.figure != null) {
+        consumer.accept(result.figure);
+      }
+    }
+  }
+
+  /** Reads a child element on a worker thread. */
+  private ChildFigures readChildElement(Element child, AffineTransform transform)
+      throws IOException {
+    ChildFigures result = new ChildFigures();
+    Figure childFigure = readElement(child);
+    if (childFigure != null && isVisible(child)) {
+      if (transform != null) {
+        childFigure.transform(transform);
+      }
+      result.figure = childFigure;
+    }
+    if (!figures.isEmpty()) {
+      result.nestedFigures = figures;
+      figures = new LinkedList<Figure>();
+    }
+    return result;
+  }
+
+  /**
+   * Creates a reader which shares the elements and the paint servers of this reader, and which has
+   * its own parsers and viewport stack. The reader is used by a single {@link ReadElementsTask}.
+   */
+  private SVGInputFormat createWorker() {
+    SVGInputFormat worker = new SVGInputFormat(factory);
+    worker.url = url;
+    worker.isParallel = true;
+    worker.identifiedElements = identifiedElements;
+    worker.elementObjects = elementObjects;
+    worker.figures = new LinkedList<Figure>();
+    worker.viewportStack = new Stack<Viewport>();
+    // Nested "svg" elements put their viewport attributes into the first viewport. The workers
+    // must not write into the viewport of this reader.
+    worker.viewportStack.push(new Viewport());
+    for (int i = 1; i < viewportStack.size(); i++) {
+      worker.viewportStack.push(viewportStack.get(i));
+    }
+    return worker;
+  }
+
+  /** Reads all gradients and solid colors in the subtree of an element. */
+  private void readPaintServers(Element elem) throws IOException {
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (node instanceof Element) {
+        Element child = (Element) node;
+        String name = child.getLocalName();
+        if (child.getNamespaceURI() != null && !child.getNamespaceURI().equals(SVG_NAMESPACE)) {
+          continue;
+        }
+        if ("linearGradient".equals(name)
+            || "radialGradient".equals(name)
+            || "solidColor".equals(name)) {
+          readElement(child);
+        } else {
+          readPaintServers(child);
+        }
+      }
+    }
+  }
+
+  /** The figures which have been read from an element by a {@link ReadElementsTask}. */
+  private static class ChildFigures {
+
+    /** The visible figure of the element, or null. */
+    private Figure figure;
+
+    /** The figures of nested "svg" elements, or null. They precede the figure of the element. */
+    private List<Figure> nestedFigures;
+  }
+
+  /**
+   * Reads a range of sibling elements with a worker reader. Ranges with more than {@link
+   * #ELEMENTS_PER_TASK} elements are split into two subtasks.
+   */
+  private static class ReadElementsTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+    private final transient SVGInputFormat format;
+    private final transient List<Element> elements;
+    private final AffineTransform transform;
+    private final ChildFigures[] results;
+    private final int from;
+    private final int to;
+
+    ReadElementsTask(
+        SVGInputFormat format,
+        List<Element> elements,
+        AffineTransform transform,
+        ChildFigures[] results,
+        int from,
+        int to) {
+      this.format = format;
+      this.elements = elements;
+      this.transform = transform;
+      this.results = results;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > ELEMENTS_PER_TASK) {
+        int mid = (from + to) >>> 1;
+        invokeAll(
+            new ReadElementsTask(format, elements, transform, results, from, mid),
+            new ReadElementsTask(format, elements, transform, results, mid, to));
+        return;
+      }
+      SVGInputFormat worker = format.createWorker();
+      try {
+        for (int i = from; i < to; i++) {
+          results[i] = worker.readChildElement(elements.get(i), transform);
+        }
+      } catch (IOException ex) {
+        throw new UncheckedIOException(ex);
+      }
+    }
+  }
+
+  /** Returns true if the "visibility" and "display" attributes of an element are not hidden. */
+  private boolean isVisible(Element elem) {
+    return readAttribute(elem, "visibility", "visible").equals("visible")
+        && !readAttribute(elem, "display", "inline").equals("none");
+  }
+
+  /**
+   * Establishes the viewport of an SVG "svg" element, and pushes it on the viewport stack.
+   *
+   * @return the transform from the viewBox into the viewport
+   */
+  private AffineTransform readViewport(Element elem) throws IOException {
     Viewport viewport = new Viewport();
     String widthValue = readAttribute(elem, "width", "100%");
     String heightValue = readAttribute(elem, "height", "100%");
@@ -497,22 +1452,7 @@ public class SVGInputFormat implements InputFormat {
     }
     viewportStack.push(viewport);
     readViewportAttributes(elem, viewportStack.firstElement().attributes);
-    // Read the figures
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
-      Figure childFigure = readElement(child);
-      // skip invisible elements
-      if (readAttribute(child, "visibility", "visible").equals("visible")
-          && !readAttribute(child, "display", "inline").equals("none")) {
-        if (childFigure != null) {
-          childFigure.transform(viewBoxTransform);
-          figures.add(childFigure);
-        }
-      }
-    }
-    viewportStack.pop();
-    return null;
+    return viewBoxTransform;
   }
 
   /** Reads an SVG "rect" element. */
@@ -896,9 +1836,11 @@ public class SVGInputFormat implements InputFormat {
 
   /** Evaluates an SVG "switch" element. */
   private Figure readSwitchElement(Element elem) throws IOException {
-    NodeList list = elem.getChildNodes();
-    for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
+    for (Node node = elem.getFirstChild(); node != null; node = node.getNextSibling()) {
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
       String[] requiredFeatures =
           toWSOrCommaSeparatedArray(readAttribute(child, "requiredFeatures", ""));
       String[] requiredExtensions =
@@ -935,8 +1877,7 @@ public class SVGInputFormat implements InputFormat {
       }
       if (isMatch) {
         Figure figure = readElement(child);
-        if (readAttribute(child, "visibility", "visible").equals("visible")
-            && !readAttribute(child, "display", "inline").equals("none")) {
+        if (isVisible(child)) {
           return figure;
         } else {
           return null;
@@ -997,9 +1938,9 @@ public class SVGInputFormat implements InputFormat {
       } else {
         return value;
       }
-    } else if (elem.getParentNode() != null
-        && (elem.getParentNode().getPrefix() == null
-            || elem.getParentNode().getPrefix().equals(SVG_NAMESPACE))) {
+    } else if (elem.getParentNode() instanceof Element
+        && (elem.getParentNode().getNamespaceURI() == null
+            || elem.getParentNode().getNamespaceURI().equals(SVG_NAMESPACE))) {
       return readInheritAttribute((Element) elem.getParentNode(), attributeName, defaultValue);
     } else {
       return defaultValue;
@@ -1025,9 +1966,9 @@ public class SVGInputFormat implements InputFormat {
         return readInheritColorAttribute(
             (Element) elem.getParentNode(), attributeName, defaultValue);
       }
-    } else if (elem.getParentNode() != null
-        && (elem.getParentNode().getPrefix() == null
-            || elem.getParentNode().getPrefix().equals(SVG_NAMESPACE))) {
+    } else if (elem.getParentNode() instanceof Element
+        && (elem.getParentNode().getNamespaceURI() == null
+            || elem.getParentNode().getNamespaceURI().equals(SVG_NAMESPACE))) {
       value =
           readInheritColorAttribute((Element) elem.getParentNode(), attributeName, defaultValue);
     } else {
@@ -1054,9 +1995,9 @@ public class SVGInputFormat implements InputFormat {
       value = elem.getAttributeNS(SVG_NAMESPACE, attributeName);
     } else if (elem.hasAttribute(attributeName)) {
       value = elem.getAttribute(attributeName);
-    } else if (elem.getParentNode() != null
-        && (elem.getParentNode().getPrefix() == null
-            || elem.getParentNode().getPrefix().equals(SVG_NAMESPACE))) {
+    } else if (elem.getParentNode() instanceof Element
+        && (elem.getParentNode().getNamespaceURI() == null
+            || elem.getParentNode().getNamespaceURI().equals(SVG_NAMESPACE))) {
       return readInheritFontSizeAttribute(
           (Element) elem.getParentNode(), attributeName, defaultValue);
     } else {
@@ -1207,11 +2148,10 @@ public class SVGInputFormat implements InputFormat {
    * http://www.w3.org/TR/SVGMobile12/shapes.html#PointsBNF
    */
   private Point2D.Double[] toPoints(Element elem, String str) throws IOException {
-    StringTokenizer tt = new StringTokenizer(str, " ,");
-    Point2D.Double[] points = new Point2D.Double[tt.countTokens() / 2];
+    double[] values = pathParser.parseNumbers(str);
+    Point2D.Double[] points = new Point2D.Double[values.length / 2];
     for (int i = 0; i < points.length; i++) {
-      points[i] =
-          new Point2D.Double(toNumber(elem, tt.nextToken()), toNumber(elem, tt.nextToken()));
+      points[i] = new Point2D.Double(values[i * 2], values[i * 2 + 1]);
     }
     return points;
   }
@@ -1224,592 +2164,7 @@ public class SVGInputFormat implements InputFormat {
    * http://www.w3.org/TR/SVG/paths.html#PathDataEllipticalArcCommands
    */
   private BezierPath[] toPath(Element elem, String str) throws IOException {
-    LinkedList<BezierPath> paths = new LinkedList<BezierPath>();
-    BezierPath path = null;
-    Point2D.Double p = new Point2D.Double();
-    Point2D.Double c1 = new Point2D.Double();
-    Point2D.Double c2 = new Point2D.Double();
-    StreamPosTokenizer tt;
-    if (toPathTokenizer == null) {
-      tt = new StreamPosTokenizer(new StringReader(str));
-      tt.resetSyntax();
-      tt.parseNumbers();
-      tt.parseExponents();
-      tt.parsePlusAsNumber();
-      tt.whitespaceChars(0, ' ');
-      tt.whitespaceChars(',', ',');
-      toPathTokenizer = tt;
-    } else {
-      tt = toPathTokenizer;
-      tt.setReader(new StringReader(str));
-    }
-    char nextCommand = 'M';
-    char command = 'M';
-    Commands:
-    while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-      if (tt.ttype > 0) {
-        command = (char) tt.ttype;
-      } else {
-        command = nextCommand;
-        tt.pushBack();
-      }
-      BezierPath.Node node;
-      switch (command) {
-        case 'M':
-          // absolute-moveto x y
-          if (path != null) {
-            paths.add(path);
-          }
-          path = new BezierPath();
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'M' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.moveTo(p.x, p.y);
-          nextCommand = 'L';
-          break;
-        case 'm':
-          // relative-moveto dx dy
-          if (path != null) {
-            paths.add(path);
-          }
-          path = new BezierPath();
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 'm' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 'm' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.moveTo(p.x, p.y);
-          nextCommand = 'l';
-          break;
-        case 'Z':
-        case 'z':
-          // close path
-          p.x = path.nodes().get(0).x[0];
-          p.y = path.nodes().get(0).y[0];
-          // If the last point and the first point are the same, we
-          // can merge them
-          if (path.size() > 1) {
-            BezierPath.Node first = path.nodes().get(0);
-            BezierPath.Node last = path.nodes().get(path.size() - 1);
-            if (first.x[0] == last.x[0] && first.y[0] == last.y[0]) {
-              if ((last.mask & BezierPath.C1_MASK) != 0) {
-                first.mask |= BezierPath.C1_MASK;
-                first.x[1] = last.x[1];
-                first.y[1] = last.y[1];
-              }
-              path.remove(path.size() - 1);
-            }
-          }
-          path.setClosed(true);
-          break;
-        case 'L':
-          // absolute-lineto x y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'L' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'L';
-          break;
-        case 'l':
-          // relative-lineto dx dy
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 'l' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 'l' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'l';
-          break;
-        case 'H':
-          // absolute-horizontal-lineto x
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'H' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'H';
-          break;
-        case 'h':
-          // relative-horizontal-lineto dx
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 'h' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'h';
-          break;
-        case 'V':
-          // absolute-vertical-lineto y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'V' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'V';
-          break;
-        case 'v':
-          // relative-vertical-lineto dy
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 'v' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.lineTo(p.x, p.y);
-          nextCommand = 'v';
-          break;
-        case 'C':
-          // absolute-curveto x1 y1 x2 y2 x y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x1 coordinate missing for 'C' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y1 coordinate missing for 'C' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.y = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x2 coordinate missing for 'C' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y2 coordinate missing for 'C' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.y = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'C' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-          nextCommand = 'C';
-          break;
-        case 'c':
-          // relative-curveto dx1 dy1 dx2 dy2 dx dy
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx1 coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.x = p.x + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy1 coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.y = p.y + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx2 coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.x = p.x + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy2 coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.y = p.y + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 'c' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-          nextCommand = 'c';
-          break;
-        case 'S':
-          // absolute-shorthand-curveto x2 y2 x y
-          node = path.nodes().get(path.size() - 1);
-          c1.x = node.x[0] * 2d - node.x[1];
-          c1.y = node.y[0] * 2d - node.y[1];
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x2 coordinate missing for 'S' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y2 coordinate missing for 'S' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.y = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'S' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-          nextCommand = 'S';
-          break;
-        case 's':
-          // relative-shorthand-curveto dx2 dy2 dx dy
-          node = path.nodes().get(path.size() - 1);
-          c1.x = node.x[0] * 2d - node.x[1];
-          c1.y = node.y[0] * 2d - node.y[1];
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx2 coordinate missing for 's' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.x = p.x + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy2 coordinate missing for 's' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c2.y = p.y + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 's' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 's' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.curveTo(c1.x, c1.y, c2.x, c2.y, p.x, p.y);
-          nextCommand = 's';
-          break;
-        case 'Q':
-          // absolute-quadto x1 y1 x y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x1 coordinate missing for 'Q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y1 coordinate missing for 'Q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.y = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'Q' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.quadTo(c1.x, c1.y, p.x, p.y);
-          nextCommand = 'Q';
-          break;
-        case 'q':
-          // relative-quadto dx1 dy1 dx dy
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx1 coordinate missing for 'q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.x = p.x + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy1 coordinate missing for 'q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          c1.y = p.y + tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 'q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 'q' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.quadTo(c1.x, c1.y, p.x, p.y);
-          nextCommand = 'q';
-          break;
-        case 'T':
-          // absolute-shorthand-quadto x y
-          node = path.nodes().get(path.size() - 1);
-          c1.x = node.x[0] * 2d - node.x[1];
-          c1.y = node.y[0] * 2d - node.y[1];
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'T' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.quadTo(c1.x, c1.y, p.x, p.y);
-          nextCommand = 'T';
-          break;
-        case 't':
-          // relative-shorthand-quadto dx dy
-          node = path.nodes().get(path.size() - 1);
-          c1.x = node.x[0] * 2d - node.x[1];
-          c1.y = node.y[0] * 2d - node.y[1];
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dx coordinate missing for 't' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "dy coordinate missing for 't' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          p.y += tt.nval;
-          path.quadTo(c1.x, c1.y, p.x, p.y);
-          nextCommand = 's';
-          break;
-        case 'A':
-          // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "rx coordinate missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          // If rX or rY have negative signs, these are dropped;
-          // the absolute value is used instead.
-          double rx = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "ry coordinate missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          double ry = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x-axis-rotation missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          double xAxisRotation = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "large-arc-flag missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          boolean largeArcFlag = tt.nval != 0;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          boolean sweepFlag = tt.nval != 0;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y = tt.nval;
-          path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
-          nextCommand = 'A';
-          break;
-
-        case 'a':
-          // absolute-elliptical-arc rx ry x-axis-rotation large-arc-flag sweep-flag x y
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "rx coordinate missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          // If rX or rY have negative signs, these are dropped;
-          // the absolute value is used instead.
-          rx = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "ry coordinate missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          ry = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x-axis-rotation missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          xAxisRotation = tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "large-arc-flag missing for 'A' at position "
-                    + tt.getStartPosition()
-                    + " in "
-                    + str);
-          }
-          largeArcFlag = tt.nval != 0;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "sweep-flag missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          sweepFlag = tt.nval != 0;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "x coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.x += tt.nval;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException(
-                "y coordinate missing for 'A' at position " + tt.getStartPosition() + " in " + str);
-          }
-          p.y += tt.nval;
-          path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, p.x, p.y);
-          nextCommand = 'a';
-          break;
-
-        default:
-          LOG.fine(
-              "SVGInputFormat.toPath aborting after illegal path command: "
-                  + command
-                  + " found in path "
-                  + str);
-          break Commands;
-          // throw new IOException("Illegal command: "+command);
-      }
-    }
-    if (path != null) {
-      paths.add(path);
-    }
-    return paths.toArray(new BezierPath[paths.size()]);
+    return pathParser.parsePath(str);
   }
 
   /* Reads core attributes as listed in
@@ -1836,7 +2191,11 @@ public class SVGInputFormat implements InputFormat {
     identifiedElements.put(elem.getAttribute("xml:id"), elem);
     NodeList list = elem.getChildNodes();
     for (int i = 0; i < list.getLength(); i++) {
-      Element child = (Element) list.item(i);
+      Node node = list.item(i);
+      if (!(node instanceof Element)) {
+        continue;
+      }
+      Element child = (Element) node;
       identifyElements(child);
     }
   }
@@ -1941,7 +2300,7 @@ public class SVGInputFormat implements InputFormat {
     String value;
     value = readAttribute(elem, "transform", "none");
     if (!value.equals("none")) {
-      TRANSFORM.put(a, toTransform(elem, value));
+      TRANSFORM.put(a, pathParser.parseTransform(value));
     }
   }
 
@@ -1973,7 +2332,9 @@ public class SVGInputFormat implements InputFormat {
     if (opacity != 1) {
       color = new Color(((int) (255 * opacity) << 24) | (0xffffff & color.getRGB()), true);
     }
-    elementObjects.put(elem, color);
+    if (color != null) {
+      elementObjects.put(elem, color);
+    }
   }
 
   /** Reads shape attributes. */
@@ -2741,7 +3102,7 @@ public class SVGInputFormat implements InputFormat {
       // Computed value:    Specified value, except inherit
       stopOpacities[i] = toDouble(stopElem, readAttribute(stopElem, "stop-opacity", "1"), 1, 0, 1);
     }
-    AffineTransform tx = toTransform(elem, readAttribute(elem, "gradientTransform", "none"));
+    AffineTransform tx = pathParser.parseTransform(readAttribute(elem, "gradientTransform", "none"));
     Gradient gradient =
         factory.createLinearGradient(
             x1, y1, x2, y2, stopOffsets, stopColors, stopOpacities, isRelativeToFigureBounds, tx);
@@ -2813,7 +3174,7 @@ public class SVGInputFormat implements InputFormat {
       // Computed value:    Specified value, except inherit
       stopOpacities[i] = toDouble(stopElem, readAttribute(stopElem, "stop-opacity", "1"), 1, 0, 1);
     }
-    AffineTransform tx = toTransform(elem, readAttribute(elem, "gradientTransform", "none"));
+    AffineTransform tx = pathParser.parseTransform(readAttribute(elem, "gradientTransform", "none"));
     Gradient gradient =
         factory.createRadialGradient(
             cx,
@@ -3116,115 +3477,7 @@ public class SVGInputFormat implements InputFormat {
    * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute
    */
   public static AffineTransform toTransform(Element elem, String str) throws IOException {
-    AffineTransform t = new AffineTransform();
-    if (str != null && !str.equals("none")) {
-      StreamPosTokenizer tt = new StreamPosTokenizer(new StringReader(str));
-      tt.resetSyntax();
-      tt.wordChars('a', 'z');
-      tt.wordChars('A', 'Z');
-      tt.wordChars(128 + 32, 255);
-      tt.whitespaceChars(0, ' ');
-      tt.whitespaceChars(',', ',');
-      tt.parseNumbers();
-      tt.parseExponents();
-      while (tt.nextToken() != StreamPosTokenizer.TT_EOF) {
-        if (tt.ttype != StreamPosTokenizer.TT_WORD) {
-          throw new IOException("Illegal transform " + str);
-        }
-        String type = tt.sval;
-        if (tt.nextToken() != '(') {
-          throw new IOException("'(' not found in transform " + str);
-        }
-        if ("matrix".equals(type)) {
-          double[] m = new double[6];
-          for (int i = 0; i < 6; i++) {
-            if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-              throw new IOException(
-                  "Matrix value "
-                      + i
-                      + " not found in transform "
-                      + str
-                      + " token:"
-                      + tt.ttype
-                      + " "
-                      + tt.sval);
-            }
-            m[i] = tt.nval;
-          }
-          t.concatenate(new AffineTransform(m));
-        } else if ("translate".equals(type)) {
-          double tx, ty;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException("X-translation value not found in transform " + str);
-          }
-          tx = tt.nval;
-          if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-            ty = tt.nval;
-          } else {
-            tt.pushBack();
-            ty = 0;
-          }
-          t.translate(tx, ty);
-        } else if ("scale".equals(type)) {
-          double sx, sy;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException("X-scale value not found in transform " + str);
-          }
-          sx = tt.nval;
-          if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-            sy = tt.nval;
-          } else {
-            tt.pushBack();
-            sy = sx;
-          }
-          t.scale(sx, sy);
-        } else if ("rotate".equals(type)) {
-          double angle, cx, cy;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException("Angle value not found in transform " + str);
-          }
-          angle = tt.nval;
-          if (tt.nextToken() == StreamPosTokenizer.TT_NUMBER) {
-            cx = tt.nval;
-            if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-              throw new IOException("Y-center value not found in transform " + str);
-            }
-            cy = tt.nval;
-          } else {
-            tt.pushBack();
-            cx = cy = 0;
-          }
-          t.rotate(angle * Math.PI / 180d, cx, cy);
-        } else if ("skewX".equals(type)) {
-          double angle;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException("Skew angle not found in transform " + str);
-          }
-          angle = tt.nval;
-          t.concatenate(new AffineTransform(1, 0, Math.tan(angle * Math.PI / 180), 1, 0, 0));
-        } else if ("skewY".equals(type)) {
-          double angle;
-          if (tt.nextToken() != StreamPosTokenizer.TT_NUMBER) {
-            throw new IOException("Skew angle not found in transform " + str);
-          }
-          angle = tt.nval;
-          t.concatenate(new AffineTransform(1, Math.tan(angle * Math.PI / 180), 0, 1, 0, 0));
-        } else if ("ref".equals(type)) {
-          System.err.println(
-              "SVGInputFormat warning: ignored ref(...) transform attribute in element " + elem);
-          while (tt.nextToken() != ')' && tt.ttype != StreamPosTokenizer.TT_EOF) {
-            // ignore tokens between brackets
-          }
-          tt.pushBack();
-        } else {
-          throw new IOException("Unknown transform " + type + " in " + str + " in element " + elem);
-        }
-        if (tt.nextToken() != ')') {
-          throw new IOException("')' not found in transform " + str);
-        }
-      }
-    }
-    return t;
+    return new SVGPathParser().parseTransform(str);
   }
 
   @Override
@@ -3232,6 +3485,14 @@ public class SVGInputFormat implements InputFormat {
     return new FileNameExtensionFilter("Scalable Vector Graphics (SVG)", "svg");
   }
 
+  /**
+   * Returns the attribute styles of the figures which have been read last. The figures share the
+   * storage of equal attribute values; the table reports the deduplication ratio.
+   */
+  public AttributeStyleTable getAttributeStyles() {
+    return attributeStyles;
+  }
+
   @Override
   public boolean isDataFlavorSupported(DataFlavor flavor) {
     return flavor.getPrimaryType().equals("image") && flavor.getSubType().equals("svg+xml");
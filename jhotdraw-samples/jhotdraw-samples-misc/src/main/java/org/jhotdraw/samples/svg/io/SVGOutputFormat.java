@@ -15,27 +15,18 @@ import java.awt.datatransfer.*;
 import java.awt.geom.*;
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.logging.Level;
-import java.util.logging.Logger;
 import javax.swing.*;
 import javax.swing.filechooser.FileNameExtensionFilter;
 import javax.swing.text.BadLocationException;
 import javax.swing.text.DefaultStyledDocument;
 import javax.swing.text.StyledDocument;
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 import org.jhotdraw.datatransfer.InputStreamTransferable;
 import org.jhotdraw.draw.*;
 import org.jhotdraw.draw.AttributeKeys.WindingRule;
 import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.CompositeFigure;
 import org.jhotdraw.draw.figure.Figure;
 import org.jhotdraw.draw.io.OutputFormat;
 import org.jhotdraw.geom.path.BezierPath;
@@ -50,10 +41,20 @@ import org.jhotdraw.samples.svg.figures.SVGPathFigure;
 import org.jhotdraw.samples.svg.figures.SVGRectFigure;
 import org.jhotdraw.samples.svg.figures.SVGTextAreaFigure;
 import org.jhotdraw.samples.svg.figures.SVGTextFigure;
+import org.jhotdraw.xml.XMLPool;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
-/** An output format for storing drawings as Scalable Vector Graphics SVG Tiny 1.2. */
+/**
+ * An output format for storing drawings as Scalable Vector Graphics SVG Tiny 1.2.
+ *
+ * <p>The document is streamed: each top level figure is converted into a small DOM fragment, which
+ * is written out and discarded before the next figure is converted. The gradients of all figures
+ * are collected in a first pass over the figures, so that the definitions precede the figures
+ * which reference them.
+ */
 public class SVGOutputFormat implements OutputFormat {
 
   /** This is a counter used to create the next unique identification. */
@@ -74,6 +75,9 @@ public class SVGOutputFormat implements OutputFormat {
   /** Set this to true for pretty printing. */
   private boolean isPrettyPrint;
 
+  /** Reusable buffer for path data. */
+  private final StringBuilder pathBuffer = new StringBuilder();
+
   private static final HashMap<Integer, String> STROKE_LINEJOIN;
 
   static {
@@ -361,7 +365,8 @@ public class SVGOutputFormat implements OutputFormat {
     writeShapeAttributes(elem, attributes);
     writeOpacityAttribute(elem, attributes);
     writeTransformAttribute(elem, attributes);
-    writeAttribute(elem, "d", toPath(beziers), null);
+    pathBuffer.setLength(0);
+    writeAttribute(elem, "d", appendPath(pathBuffer, beziers).toString(), null);
     return elem;
   }
 
@@ -509,8 +514,8 @@ public class SVGOutputFormat implements OutputFormat {
         bufX.append(',');
         bufY.append(',');
       }
-      bufX.append(toNumber(coordinates[i].getX()));
-      bufY.append(toNumber(coordinates[i].getY()));
+      appendNumber(bufX, coordinates[i].getX());
+      appendNumber(bufY, coordinates[i].getY());
     }
     StringBuilder bufR = new StringBuilder();
     if (rotate != null) {
@@ -518,7 +523,7 @@ public class SVGOutputFormat implements OutputFormat {
         if (i != 0) {
           bufR.append(',');
         }
-        bufR.append(toNumber(rotate[i]));
+        appendNumber(bufR, rotate[i]);
       }
     }
     writeAttribute(elem, "x", bufX.toString(), "0");
@@ -640,46 +645,7 @@ public class SVGOutputFormat implements OutputFormat {
     // Computed value:    "none", system paint, specified <color> value or absolute IRI
     Gradient gradient = FILL_GRADIENT.get(m);
     if (gradient != null) {
-      String id;
-      if (gradientToIDMap.containsKey(gradient)) {
-        id = gradientToIDMap.get(gradient);
-      } else {
-        Element gradientElem;
-        if (gradient instanceof LinearGradient) {
-          LinearGradient lg = (LinearGradient) gradient;
-          gradientElem =
-              createLinearGradient(
-                  document,
-                  lg.getX1(),
-                  lg.getY1(),
-                  lg.getX2(),
-                  lg.getY2(),
-                  lg.getStopOffsets(),
-                  lg.getStopColors(),
-                  lg.getStopOpacities(),
-                  lg.isRelativeToFigureBounds(),
-                  lg.getTransform());
-        } else /*if (gradient instanceof RadialGradient)*/ {
-          RadialGradient rg = (RadialGradient) gradient;
-          gradientElem =
-              createRadialGradient(
-                  document,
-                  rg.getCX(),
-                  rg.getCY(),
-                  rg.getFX(),
-                  rg.getFY(),
-                  rg.getR(),
-                  rg.getStopOffsets(),
-                  rg.getStopColors(),
-                  rg.getStopOpacities(),
-                  rg.isRelativeToFigureBounds(),
-                  rg.getTransform());
-        }
-        id = getId(gradientElem);
-        gradientElem.setAttributeNS("xml", "id", id);
-        defs.appendChild(gradientElem);
-        gradientToIDMap.put(gradient, id);
-      }
+      String id = getGradientId(gradient);
       writeAttribute(elem, "fill", "url(#" + id + ")", "#000");
     } else {
       writeAttribute(elem, "fill", toColor(FILL_COLOR.get(m)), "#000");
@@ -718,46 +684,7 @@ public class SVGOutputFormat implements OutputFormat {
     // or absolute IRI
     gradient = STROKE_GRADIENT.get(m);
     if (gradient != null) {
-      String id;
-      if (gradientToIDMap.containsKey(gradient)) {
-        id = gradientToIDMap.get(gradient);
-      } else {
-        Element gradientElem;
-        if (gradient instanceof LinearGradient) {
-          LinearGradient lg = (LinearGradient) gradient;
-          gradientElem =
-              createLinearGradient(
-                  document,
-                  lg.getX1(),
-                  lg.getY1(),
-                  lg.getX2(),
-                  lg.getY2(),
-                  lg.getStopOffsets(),
-                  lg.getStopColors(),
-                  lg.getStopOpacities(),
-                  lg.isRelativeToFigureBounds(),
-                  lg.getTransform());
-        } else /*if (gradient instanceof RadialGradient)*/ {
-          RadialGradient rg = (RadialGradient) gradient;
-          gradientElem =
-              createRadialGradient(
-                  document,
-                  rg.getCX(),
-                  rg.getCY(),
-                  rg.getFX(),
-                  rg.getFY(),
-                  rg.getR(),
-                  rg.getStopOffsets(),
-                  rg.getStopColors(),
-                  rg.getStopOpacities(),
-                  rg.isRelativeToFigureBounds(),
-                  rg.getTransform());
-        }
-        id = getId(gradientElem);
-        gradientElem.setAttributeNS("xml", "id", id);
-        defs.appendChild(gradientElem);
-        gradientToIDMap.put(gradient, id);
-      }
+      String id = getGradientId(gradient);
       writeAttribute(elem, "stroke", "url(#" + id + ")", "none");
     } else {
       writeAttribute(elem, "stroke", toColor(STROKE_COLOR.get(m)), "none");
@@ -778,7 +705,7 @@ public class SVGOutputFormat implements OutputFormat {
         if (i != 0) {
           buf.append(',');
         }
-        buf.append(toNumber(dashes[i]));
+        appendNumber(buf, dashes[i]);
       }
       writeAttribute(elem, "stroke-dasharray", buf.toString(), null);
     }
@@ -844,6 +771,52 @@ public class SVGOutputFormat implements OutputFormat {
     writeAttribute(elem, "stroke-width", STROKE_WIDTH.get(m), 1d);
   }
 
+  /**
+   * Returns the id of a gradient. The gradient is added to the definitions when it is requested for
+   * the first time.
+   */
+  protected String getGradientId(Gradient gradient) throws IOException {
+    String id = gradientToIDMap.get(gradient);
+    if (id == null) {
+      Element gradientElem;
+      if (gradient instanceof LinearGradient) {
+        LinearGradient lg = (LinearGradient) gradient;
+        gradientElem =
+            createLinearGradient(
+                document,
+                lg.getX1(),
+                lg.getY1(),
+                lg.getX2(),
+                lg.getY2(),
+                lg.getStopOffsets(),
+                lg.getStopColors(),
+                lg.getStopOpacities(),
+                lg.isRelativeToFigureBounds(),
+                lg.getTransform());
+      } else /*if (gradient instanceof RadialGradient)*/ {
+        RadialGradient rg = (RadialGradient) gradient;
+        gradientElem =
+            createRadialGradient(
+                document,
+                rg.getCX(),
+                rg.getCY(),
+                rg.getFX(),
+                rg.getFY(),
+                rg.getR(),
+                rg.getStopOffsets(),
+                rg.getStopColors(),
+                rg.getStopOpacities(),
+                rg.isRelativeToFigureBounds(),
+                rg.getTransform());
+      }
+      id = getId(gradientElem);
+      gradientElem.setAttributeNS("xml", "id", id);
+      defs.appendChild(gradientElem);
+      gradientToIDMap.put(gradient, id);
+    }
+    return id;
+  }
+
   /* Writes the opacity attribute.
    */
   protected void writeOpacityAttribute(Element elem, Map<AttributeKey<?>, Object> m)
@@ -1014,7 +987,11 @@ public class SVGOutputFormat implements OutputFormat {
    * http://www.w3.org/TR/SVGMobile12/paths.html#PathDataBNF
    */
   public static String toPath(BezierPath[] paths) {
-    StringBuilder buf = new StringBuilder();
+    return appendPath(new StringBuilder(), paths).toString();
+  }
+
+  /** Appends a value in the format of {@link #toPath} to a buffer. */
+  public static StringBuilder appendPath(StringBuilder buf, BezierPath[] paths) {
     for (int j = 0; j < paths.length; j++) {
       BezierPath path = paths[j];
       if (path.size() == 0) {
@@ -1022,21 +999,21 @@ public class SVGOutputFormat implements OutputFormat {
       } else if (path.size() == 1) {
         BezierPath.Node current = path.nodes().get(0);
         buf.append("M ");
-        buf.append(toNumber(current.x[0]));
+        appendNumber(buf, current.x[0]);
         buf.append(' ');
-        buf.append(toNumber(current.y[0]));
+        appendNumber(buf, current.y[0]);
         // buf.append(" L ");
-        buf.append(toNumber(current.x[0]));
+        appendNumber(buf, current.x[0]);
         buf.append(' ');
-        buf.append(toNumber(current.y[0] + 1));
+        appendNumber(buf, current.y[0] + 1);
       } else {
         BezierPath.Node previous;
         BezierPath.Node current;
         previous = current = path.nodes().get(0);
         buf.append("M ");
-        buf.append(toNumber(current.x[0]));
+        appendNumber(buf, current.x[0]);
         buf.append(' ');
-        buf.append(toNumber(current.y[0]));
+        appendNumber(buf, current.y[0]);
         char nextCommand = 'L';
         for (int i = 1, n = path.size(); i < n; i++) {
           previous = current;
@@ -1049,9 +1026,9 @@ public class SVGOutputFormat implements OutputFormat {
               } else {
                 buf.append(' ');
               }
-              buf.append(toNumber(current.x[0]));
+              appendNumber(buf, current.x[0]);
               buf.append(' ');
-              buf.append(toNumber(current.y[0]));
+              appendNumber(buf, current.y[0]);
             } else {
               if (nextCommand != 'Q') {
                 buf.append(" Q ");
@@ -1059,13 +1036,13 @@ public class SVGOutputFormat implements OutputFormat {
               } else {
                 buf.append(' ');
               }
-              buf.append(toNumber(current.x[1]));
+              appendNumber(buf, current.x[1]);
               buf.append(' ');
-              buf.append(toNumber(current.y[1]));
+              appendNumber(buf, current.y[1]);
               buf.append(' ');
-              buf.append(toNumber(current.x[0]));
+              appendNumber(buf, current.x[0]);
               buf.append(' ');
-              buf.append(toNumber(current.y[0]));
+              appendNumber(buf, current.y[0]);
             }
           } else {
             if ((current.mask & BezierPath.C1_MASK) == 0) {
@@ -1075,13 +1052,13 @@ public class SVGOutputFormat implements OutputFormat {
               } else {
                 buf.append(' ');
               }
-              buf.append(toNumber(previous.x[2]));
+              appendNumber(buf, previous.x[2]);
               buf.append(' ');
-              buf.append(toNumber(previous.y[2]));
+              appendNumber(buf, previous.y[2]);
               buf.append(' ');
-              buf.append(toNumber(current.x[0]));
+              appendNumber(buf, current.x[0]);
               buf.append(' ');
-              buf.append(toNumber(current.y[0]));
+              appendNumber(buf, current.y[0]);
             } else {
               if (nextCommand != 'C') {
                 buf.append(" C ");
@@ -1089,17 +1066,17 @@ public class SVGOutputFormat implements OutputFormat {
               } else {
                 buf.append(' ');
               }
-              buf.append(toNumber(previous.x[2]));
+              appendNumber(buf, previous.x[2]);
               buf.append(' ');
-              buf.append(toNumber(previous.y[2]));
+              appendNumber(buf, previous.y[2]);
               buf.append(' ');
-              buf.append(toNumber(current.x[1]));
+              appendNumber(buf, current.x[1]);
               buf.append(' ');
-              buf.append(toNumber(current.y[1]));
+              appendNumber(buf, current.y[1]);
               buf.append(' ');
-              buf.append(toNumber(current.x[0]));
+              appendNumber(buf, current.x[0]);
               buf.append(' ');
-              buf.append(toNumber(current.y[0]));
+              appendNumber(buf, current.y[0]);
             }
           }
         }
@@ -1115,9 +1092,9 @@ public class SVGOutputFormat implements OutputFormat {
                 } else {
                   buf.append(' ');
                 }
-                buf.append(toNumber(current.x[0]));
+                appendNumber(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                appendNumber(buf, current.y[0]);
               } else {
                 if (nextCommand != 'Q') {
                   buf.append(" Q ");
@@ -1125,13 +1102,13 @@ public class SVGOutputFormat implements OutputFormat {
                 } else {
                   buf.append(' ');
                 }
-                buf.append(toNumber(current.x[1]));
+                appendNumber(buf, current.x[1]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[1]));
+                appendNumber(buf, current.y[1]);
                 buf.append(' ');
-                buf.append(toNumber(current.x[0]));
+                appendNumber(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                appendNumber(buf, current.y[0]);
               }
             } else {
               if ((current.mask & BezierPath.C1_MASK) == 0) {
@@ -1141,13 +1118,13 @@ public class SVGOutputFormat implements OutputFormat {
                 } else {
                   buf.append(' ');
                 }
-                buf.append(toNumber(previous.x[2]));
+                appendNumber(buf, previous.x[2]);
                 buf.append(' ');
-                buf.append(toNumber(previous.y[2]));
+                appendNumber(buf, previous.y[2]);
                 buf.append(' ');
-                buf.append(toNumber(current.x[0]));
+                appendNumber(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                appendNumber(buf, current.y[0]);
               } else {
                 if (nextCommand != 'C') {
                   buf.append(" C ");
@@ -1155,17 +1132,17 @@ public class SVGOutputFormat implements OutputFormat {
                 } else {
                   buf.append(' ');
                 }
-                buf.append(toNumber(previous.x[2]));
+                appendNumber(buf, previous.x[2]);
                 buf.append(' ');
-                buf.append(toNumber(previous.y[2]));
+                appendNumber(buf, previous.y[2]);
                 buf.append(' ');
-                buf.append(toNumber(current.x[1]));
+                appendNumber(buf, current.x[1]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[1]));
+                appendNumber(buf, current.y[1]);
                 buf.append(' ');
-                buf.append(toNumber(current.x[0]));
+                appendNumber(buf, current.x[0]);
                 buf.append(' ');
-                buf.append(toNumber(current.y[0]));
+                appendNumber(buf, current.y[0]);
               }
             }
           }
@@ -1174,16 +1151,27 @@ public class SVGOutputFormat implements OutputFormat {
         }
       }
     }
-    return buf.toString();
+    return buf;
   }
 
   /** Returns a double array as a number attribute value. */
   public static String toNumber(double number) {
-    String str = (IS_FLOAT_PRECISION) ? Float.toString((float) number) : Double.toString(number);
-    if (str.endsWith(".0")) {
-      str = str.substring(0, str.length() - 2);
+    return appendNumber(new StringBuilder(16), number).toString();
+  }
+
+  /** Appends a value in the format of {@link #toNumber} to a buffer without creating a string. */
+  public static StringBuilder appendNumber(StringBuilder buf, double number) {
+    int start = buf.length();
+    if (IS_FLOAT_PRECISION) {
+      buf.append((float) number);
+    } else {
+      buf.append(number);
     }
-    return str;
+    int end = buf.length();
+    if (end - start > 2 && buf.charAt(end - 2) == '.' && buf.charAt(end - 1) == '0') {
+      buf.setLength(end - 2);
+    }
+    return buf;
   }
 
   /**
@@ -1196,9 +1184,9 @@ public class SVGOutputFormat implements OutputFormat {
       if (i != 0) {
         buf.append(", ");
       }
-      buf.append(toNumber(points[i].x));
+      appendNumber(buf, points[i].x);
       buf.append(',');
-      buf.append(toNumber(points[i].y));
+      appendNumber(buf, points[i].y);
     }
     return buf.toString();
   }
@@ -1216,10 +1204,10 @@ public class SVGOutputFormat implements OutputFormat {
         // translate(<tx> [<ty>]), specifies a translation by tx and ty.
         // If <ty> is not provided, it is assumed to be zero.
         buf.append("translate(");
-        buf.append(toNumber(t.getTranslateX()));
+        appendNumber(buf, t.getTranslateX());
         if (t.getTranslateY() != 0d) {
           buf.append(' ');
-          buf.append(toNumber(t.getTranslateY()));
+          appendNumber(buf, t.getTranslateY());
         }
         buf.append(')');
         break;
@@ -1239,7 +1227,7 @@ public class SVGOutputFormat implements OutputFormat {
         // translate(<cx>, <cy>) rotate(<rotate-angle>)
         // translate(-<cx>, -<cy>).
         buf.append("rotate(");
-        buf.append(toNumber(t.getScaleX()));
+        appendNumber(buf, t.getScaleX());
         buf.append(')');
         break;*/
       case AffineTransform.TYPE_UNIFORM_SCALE:
@@ -1247,7 +1235,7 @@ public class SVGOutputFormat implements OutputFormat {
         // and sy. If <sy> is not provided, it is assumed to be equal
         // to <sx>.
         buf.append("scale(");
-        buf.append(toNumber(t.getScaleX()));
+        appendNumber(buf, t.getScaleX());
         buf.append(')');
         break;
       case AffineTransform.TYPE_GENERAL_SCALE:
@@ -1256,9 +1244,9 @@ public class SVGOutputFormat implements OutputFormat {
         // and sy. If <sy> is not provided, it is assumed to be equal
         // to <sx>.
         buf.append("scale(");
-        buf.append(toNumber(t.getScaleX()));
+        appendNumber(buf, t.getScaleX());
         buf.append(' ');
-        buf.append(toNumber(t.getScaleY()));
+        appendNumber(buf, t.getScaleY());
         buf.append(')');
         break;
       default:
@@ -1273,7 +1261,7 @@ public class SVGOutputFormat implements OutputFormat {
           if (i != 0) {
             buf.append(' ');
           }
-          buf.append(toNumber(matrix[i]));
+          appendNumber(buf, matrix[i]);
         }
         buf.append(')');
         break;
@@ -1323,42 +1311,170 @@ public class SVGOutputFormat implements OutputFormat {
   /** All other write methods delegate their work to here. */
   public void write(OutputStream out, Drawing drawing, java.util.List<Figure> figures)
       throws IOException {
-    DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-    DocumentBuilder dBuilder;
-    try {
-      dBuilder = dbFactory.newDocumentBuilder();
-    } catch (ParserConfigurationException ex) {
-      Logger.getLogger(ImageMapOutputFormat.class.getName()).log(Level.SEVERE, null, ex);
-      throw new IOException(ex);
-    }
-    Document doc = dBuilder.newDocument();
+    Document doc = XMLPool.newDocument();
     document = doc.createElementNS(SVG_NAMESPACE, "svg");
+    document.setAttribute("xmlns", SVG_NAMESPACE);
     document.setAttribute("xmlns:xlink", "http://www.w3.org/1999/xlink");
     document.setAttribute("version", "1.2");
     document.setAttribute("baseProfile", "tiny");
     writeViewportAttributes(document, drawing.attr().getAttributes());
     initStorageContext(document);
     defs = doc.createElement("defs");
-    document.appendChild(defs);
+    for (Figure f : figures) {
+      collectGradients(f);
+    }
+    Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    w.write("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>");
+    writeStartTag(w, document);
+    writeAndRemoveChildren(w, defs, 1);
     for (Figure f : figures) {
       writeElement(document, f);
+      writeAndRemoveChildren(w, document, 1);
     }
-    // Write XML prolog
-    PrintWriter writer = new PrintWriter(new OutputStreamWriter(out, "UTF-8"));
-    writer.println("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
-    // Write XML content
-    Transformer t;
-    try {
-      t = TransformerFactory.newInstance().newTransformer();
-      if (isPrettyPrint) {
-        t.setOutputProperty(OutputKeys.INDENT, "yes");
+    // Gradients which were not found by collectGradients, are written after the figures.
+    if (defs.hasChildNodes()) {
+      writeAndRemoveChildren(w, defs, 1);
+    }
+    writeIndent(w, 0);
+    w.write("</svg>");
+    w.flush();
+  }
+
+  /** Puts the gradients of a figure and of its descendants into the definitions. */
+  private void collectGradients(Figure f) throws IOException {
+    if (f.attr().get(FILL_GRADIENT) != null) {
+      getGradientId(f.attr().get(FILL_GRADIENT));
+    }
+    if (f.attr().get(STROKE_GRADIENT) != null) {
+      getGradientId(f.attr().get(STROKE_GRADIENT));
+    }
+    if (f instanceof SVGGroupFigure) {
+      for (Figure child : ((CompositeFigure) f).getChildren()) {
+        collectGradients(child);
+      }
+    }
+  }
+
+  /** Writes the children of an element, and removes them from the element. */
+  private void writeAndRemoveChildren(Writer w, Element parent, int depth) throws IOException {
+    if (parent == defs) {
+      writeNode(w, defs, depth);
+    } else {
+      writeChildren(w, parent, depth);
+    }
+    for (Node child = parent.getFirstChild(); child != null; child = parent.getFirstChild()) {
+      parent.removeChild(child);
+      if (child instanceof Element) {
+        identifiedElements.remove(child);
+      }
+    }
+  }
+
+  private void writeChildren(Writer w, Element parent, int depth) throws IOException {
+    for (Node child = parent.getFirstChild(); child != null; child = child.getNextSibling()) {
+      writeNode(w, child, depth);
+    }
+  }
+
+  /** Writes a node with its descendants. */
+  private void writeNode(Writer w, Node node, int depth) throws IOException {
+    if (!(node instanceof Element)) {
+      if (node.getNodeType() == Node.TEXT_NODE) {
+        writeEscaped(w, node.getNodeValue(), false);
+      }
+      return;
+    }
+    Element elem = (Element) node;
+    writeIndent(w, depth);
+    if (!elem.hasChildNodes()) {
+      writeTag(w, elem);
+      w.write("/>");
+      return;
+    }
+    writeStartTag(w, elem);
+    boolean hasText = false;
+    for (Node child = elem.getFirstChild(); child != null; child = child.getNextSibling()) {
+      hasText |= child.getNodeType() == Node.TEXT_NODE;
+    }
+    // Elements with text content are written without indentation, because whitespace would
+    // change the text.
+    int childDepth = hasText ? -1 : depth + 1;
+    writeChildren(w, elem, childDepth);
+    if (!hasText) {
+      writeIndent(w, depth);
+    }
+    w.write("</");
+    w.write(elem.getTagName());
+    w.write('>');
+  }
+
+  private void writeStartTag(Writer w, Element elem) throws IOException {
+    writeTag(w, elem);
+    w.write('>');
+  }
+
+  private void writeTag(Writer w, Element elem) throws IOException {
+    w.write('<');
+    w.write(elem.getTagName());
+    NamedNodeMap attributes = elem.getAttributes();
+    for (int i = 0, n = attributes.getLength(); i < n; i++) {
+      Node attr = attributes.item(i);
+      w.write(' ');
+      w.write(attr.getNodeName());
+      w.write("=\"");
+      writeEscaped(w, attr.getNodeValue(), true);
+      w.write('"');
+    }
+  }
+
+  /** Writes a line break and indentation if pretty printing is enabled. */
+  private void writeIndent(Writer w, int depth) throws IOException {
+    if (isPrettyPrint && depth >= 0) {
+      w.write('\n');
+      for (int i = 0; i < depth; i++) {
+        w.write("  ");
+      }
+    }
+  }
+
+  private static void writeEscaped(Writer w, String str, boolean isAttribute) throws IOException {
+    int start = 0;
+    for (int i = 0, n = str.length(); i < n; i++) {
+      char c = str.charAt(i);
+      String entity;
+      switch (c) {
+        case '&':
+          entity = "&amp;";
+          break;
+        case '<':
+          entity = "&lt;";
+          break;
+        case '>':
+          entity = "&gt;";
+          break;
+        case '"':
+          entity = isAttribute ? "&quot;" : null;
+          break;
+        case '\n':
+          entity = isAttribute ? "&#10;" : null;
+          break;
+        case '\r':
+          entity = "&#13;";
+          break;
+        case '\t':
+          entity = isAttribute ? "&#9;" : null;
+          break;
+        default:
+          entity = null;
+          break;
+      }
+      if (entity != null) {
+        w.write(str, start, i - start);
+        w.write(entity);
+        start = i + 1;
       }
-      t.transform(new DOMSource(document), new StreamResult(out));
-    } catch (TransformerException ex) {
-      Logger.getLogger(SVGOutputFormat.class.getName()).log(Level.SEVERE, null, ex);
     }
-    // Flush writer
-    writer.flush();
+    w.write(str, start, str.length() - start);
   }
 
   private void initStorageContext(Element root) {
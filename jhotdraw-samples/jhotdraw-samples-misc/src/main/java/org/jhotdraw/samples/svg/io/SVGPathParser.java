@@ -0,0 +1,507 @@
+/*
+ * @(#)SVGPathParser.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.samples.svg.io;
+
+import java.awt.geom.AffineTransform;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Logger;
+import org.jhotdraw.geom.path.BezierPath;
+
+/**
+ * Parses SVG path data, transform lists and number lists.
+ *
+ * <p>The parser works on a reusable character array, and reads numbers without creating strings.
+ * Numbers with up to 15 significant digits and a decimal exponent of at most 22 are computed with a
+ * single floating point multiplication or division, which yields the same value as {@link
+ * Double#parseDouble}. All other numbers are passed to {@code Double.parseDouble}.
+ *
+ * <p>Path data is specified in http://www.w3.org/TR/SVGMobile12/paths.html#PathDataBNF, elliptical
+ * arcs in http://www.w3.org/TR/SVG/paths.html#PathDataEllipticalArcCommands, and transform lists in
+ * http://www.w3.org/TR/SVGMobile12/coords.html#TransformAttribute.
+ *
+ * <p>An instance must not be used by multiple threads at the same time.
+ */
+public final class SVGPathParser {
+
+  private static final Logger LOG = Logger.getLogger(SVGPathParser.class.getName());
+
+  /** Receives the segments of a path. All coordinates are absolute. */
+  public interface Handler {
+
+    void moveTo(double x, double y);
+
+    void lineTo(double x, double y);
+
+    void quadTo(double x1, double y1, double x, double y);
+
+    void curveTo(double x1, double y1, double x2, double y2, double x, double y);
+
+    void arcTo(
+        double rx,
+        double ry,
+        double xAxisRotation,
+        boolean largeArcFlag,
+        boolean sweepFlag,
+        double x,
+        double y);
+
+    void closePath();
+  }
+
+  /** Exact powers of ten which can be represented by a double. */
+  private static final double[] POWERS_OF_TEN = {
+    1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16,
+    1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+  };
+
+  private char[] chars = new char[256];
+  private int pos;
+  private int end;
+  private String str;
+  private double[] numbers = new double[32];
+
+  /** Parses path data, and returns its subpaths. */
+  public BezierPath[] parsePath(String str) throws IOException {
+    BezierPathHandler handler = new BezierPathHandler();
+    parsePath(str, handler);
+    return handler.getPaths();
+  }
+
+  /**
+   * Parses path data, and passes its segments to a handler. Parsing stops silently at an unknown
+   * command, like in the SVG error handling rules.
+   */
+  public void parsePath(String str, Handler handler) throws IOException {
+    reset(str);
+    double x = 0;
+    double y = 0;
+    double startX = 0;
+    double startY = 0;
+    // The second control point of the previous cubic or quadratic segment, for the shorthand
+    // commands.
+    double cx = 0;
+    double cy = 0;
+    char previous = ' ';
+    char command = 'M';
+    boolean hasMoveTo = false;
+    for (skipSeparators(); pos < end; skipSeparators()) {
+      char c = chars[pos];
+      if (isCommand(c)) {
+        command = c;
+        pos++;
+      } else if (!isNumberStart(c) || command == 'Z' || command == 'z') {
+        LOG.fine("SVGPathParser aborting after illegal path command: " + c + " found in " + str);
+        return;
+      }
+      if (!hasMoveTo && command != 'M' && command != 'm') {
+        throw new IOException("Path data must start with a moveto in " + str);
+      }
+      boolean relative = Character.isLowerCase(command);
+      double ox = relative ? x : 0;
+      double oy = relative ? y : 0;
+      double x1;
+      double y1;
+      boolean isSmooth;
+      switch (command) {
+        case 'M':
+        case 'm':
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.moveTo(x, y);
+          hasMoveTo = true;
+          startX = x;
+          startY = y;
+          // Subsequent pairs of coordinates are implicit lineto commands.
+          command = relative ? 'l' : 'L';
+          break;
+        case 'Z':
+        case 'z':
+          handler.closePath();
+          x = startX;
+          y = startY;
+          break;
+        case 'L':
+        case 'l':
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.lineTo(x, y);
+          break;
+        case 'H':
+        case 'h':
+          x = ox + nextNumber(command);
+          handler.lineTo(x, y);
+          break;
+        case 'V':
+        case 'v':
+          y = oy + nextNumber(command);
+          handler.lineTo(x, y);
+          break;
+        case 'C':
+        case 'c':
+          x1 = ox + nextNumber(command);
+          y1 = oy + nextNumber(command);
+          cx = ox + nextNumber(command);
+          cy = oy + nextNumber(command);
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.curveTo(x1, y1, cx, cy, x, y);
+          break;
+        case 'S':
+        case 's':
+          // The first control point is the reflection of the previous second control point.
+          isSmooth = "CcSs".indexOf(previous) != -1;
+          x1 = isSmooth ? 2 * x - cx : x;
+          y1 = isSmooth ? 2 * y - cy : y;
+          cx = ox + nextNumber(command);
+          cy = oy + nextNumber(command);
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.curveTo(x1, y1, cx, cy, x, y);
+          break;
+        case 'Q':
+        case 'q':
+          cx = ox + nextNumber(command);
+          cy = oy + nextNumber(command);
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.quadTo(cx, cy, x, y);
+          break;
+        case 'T':
+        case 't':
+          isSmooth = "QqTt".indexOf(previous) != -1;
+          cx = isSmooth ? 2 * x - cx : x;
+          cy = isSmooth ? 2 * y - cy : y;
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.quadTo(cx, cy, x, y);
+          break;
+        case 'A':
+        case 'a':
+          // The radii and the rotation are not relative.
+          x1 = nextNumber(command);
+          y1 = nextNumber(command);
+          double xAxisRotation = nextNumber(command);
+          boolean largeArcFlag = nextFlag(command);
+          boolean sweepFlag = nextFlag(command);
+          x = ox + nextNumber(command);
+          y = oy + nextNumber(command);
+          handler.arcTo(x1, y1, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+          break;
+        default:
+          throw new InternalError("unexpected command " + command);
+      }
+      previous = command;
+    }
+  }
+
+  /** Parses a transform list. Returns the identity transform for null and "none". */
+  public AffineTransform parseTransform(String str) throws IOException {
+    AffineTransform t = new AffineTransform();
+    if (str == null || str.equals("none")) {
+      return t;
+    }
+    reset(str);
+    for (skipSeparators(); pos < end; skipSeparators()) {
+      int start = pos;
+      while (pos < end && Character.isLetter(chars[pos])) {
+        pos++;
+      }
+      if (start == pos) {
+        throw new IOException("Illegal transform " + str);
+      }
+      int length = pos - start;
+      skipWhitespace();
+      if (pos >= end || chars[pos] != '(') {
+        throw new IOException("'(' not found in transform " + str);
+      }
+      pos++;
+      if (isWord(start, length, "ref")) {
+        LOG.warning("SVGPathParser ignored ref(...) transform in " + str);
+        while (pos < end && chars[pos] != ')') {
+          pos++;
+        }
+      } else {
+        int count = readNumbers();
+        if (isWord(start, length, "matrix") && count == 6) {
+          t.concatenate(
+              new AffineTransform(
+                  numbers[0], numbers[1], numbers[2], numbers[3], numbers[4], numbers[5]));
+        } else if (isWord(start, length, "translate") && (count == 1 || count == 2)) {
+          t.translate(numbers[0], count == 2 ? numbers[1] : 0);
+        } else if (isWord(start, length, "scale") && (count == 1 || count == 2)) {
+          t.scale(numbers[0], count == 2 ? numbers[1] : numbers[0]);
+        } else if (isWord(start, length, "rotate") && (count == 1 || count == 3)) {
+          double cx = count == 3 ? numbers[1] : 0;
+          double cy = count == 3 ? numbers[2] : 0;
+          t.rotate(numbers[0] * Math.PI / 180d, cx, cy);
+        } else if (isWord(start, length, "skewX") && count == 1) {
+          t.concatenate(new AffineTransform(1, 0, Math.tan(numbers[0] * Math.PI / 180), 1, 0, 0));
+        } else if (isWord(start, length, "skewY") && count == 1) {
+          t.concatenate(new AffineTransform(1, Math.tan(numbers[0] * Math.PI / 180), 0, 1, 0, 0));
+        } else {
+          throw new IOException(
+              "Illegal transform "
+                  + new String(chars, start, length)
+                  + " with "
+                  + count
+                  + " values in "
+                  + str);
+        }
+      }
+      skipWhitespace();
+      if (pos >= end || chars[pos] != ')') {
+        throw new IOException("')' not found in transform " + str);
+      }
+      pos++;
+    }
+    return t;
+  }
+
+  /** Parses a list of numbers which are separated by whitespace and/or commas. */
+  public double[] parseNumbers(String str) throws IOException {
+    reset(str);
+    int count = readNumbers();
+    skipSeparators();
+    if (pos < end) {
+      throw new IOException("Illegal number at position " + pos + " in " + str);
+    }
+    return Arrays.copyOf(numbers, count);
+  }
+
+  private void reset(String str) {
+    this.str = str;
+    end = str.length();
+    if (chars.length < end) {
+      chars = new char[Math.max(end, chars.length * 2)];
+    }
+    str.getChars(0, end, chars, 0);
+    pos = 0;
+  }
+
+  /** Reads numbers into {@code numbers} up to the first character which is not a number. */
+  private int readNumbers() throws IOException {
+    int count = 0;
+    for (skipSeparators(); pos < end && isNumberStart(chars[pos]); skipSeparators()) {
+      if (count == numbers.length) {
+        numbers = Arrays.copyOf(numbers, count * 2);
+      }
+      numbers[count++] = readNumber();
+    }
+    return count;
+  }
+
+  private double nextNumber(char command) throws IOException {
+    skipSeparators();
+    if (pos >= end || !isNumberStart(chars[pos])) {
+      throw new IOException(
+          "Number missing for '" + command + "' at position " + pos + " in " + str);
+    }
+    return readNumber();
+  }
+
+  /** Reads an arc flag. Flags need not be separated from the following number. */
+  private boolean nextFlag(char command) throws IOException {
+    skipSeparators();
+    if (pos >= end || (chars[pos] != '0' && chars[pos] != '1')) {
+      throw new IOException("Flag missing for '" + command + "' at position " + pos + " in " + str);
+    }
+    return chars[pos++] == '1';
+  }
+
+  /** Reads a number. The current character must be a number start. */
+  private double readNumber() throws IOException {
+    int start = pos;
+    boolean isNegative = false;
+    char c = chars[pos];
+    if (c == '+' || c == '-') {
+      isNegative = c == '-';
+      pos++;
+    }
+    long mantissa = 0;
+    int digitCount = 0;
+    int exponent = 0;
+    boolean hasDigits = false;
+    for (; pos < end && (c = chars[pos]) >= '0' && c <= '9'; pos++) {
+      hasDigits = true;
+      if (mantissa != 0 || c != '0') {
+        if (++digitCount <= 18) {
+          mantissa = mantissa * 10 + (c - '0');
+        } else {
+          exponent++;
+        }
+      }
+    }
+    if (pos < end && chars[pos] == '.') {
+      for (pos++; pos < end && (c = chars[pos]) >= '0' && c <= '9'; pos++) {
+        hasDigits = true;
+        if (mantissa != 0 || c != '0') {
+          if (++digitCount <= 18) {
+            mantissa = mantissa * 10 + (c - '0');
+            exponent--;
+          }
+        } else {
+          exponent--;
+        }
+      }
+    }
+    if (!hasDigits) {
+      throw new IOException("Illegal number at position " + start + " in " + str);
+    }
+    if (pos < end && (chars[pos] == 'e' || chars[pos] == 'E')) {
+      int p = pos + 1;
+      boolean isNegativeExponent = false;
+      if (p < end && (chars[p] == '+' || chars[p] == '-')) {
+        isNegativeExponent = chars[p] == '-';
+        p++;
+      }
+      if (p < end && chars[p] >= '0' && chars[p] <= '9') {
+        int e = 0;
+        for (; p < end && (c = chars[p]) >= '0' && c <= '9'; p++) {
+          if (e < 10000) {
+            e = e * 10 + (c - '0');
+          }
+        }
+        exponent += isNegativeExponent ? -e : e;
+        pos = p;
+      }
+    }
+    double value;
+    if (mantissa == 0) {
+      value = 0d;
+    } else if (digitCount <= 15 && exponent >= -22 && exponent <= 22) {
+      value =
+          exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+    } else {
+      return Double.parseDouble(new String(chars, start, pos - start));
+    }
+    return isNegative ? -value : value;
+  }
+
+  private void skipSeparators() {
+    while (pos < end && (chars[pos] <= ' ' || chars[pos] == ',')) {
+      pos++;
+    }
+  }
+
+  private void skipWhitespace() {
+    while (pos < end && chars[pos] <= ' ') {
+      pos++;
+    }
+  }
+
+  private boolean isWord(int start, int length, String word) {
+    if (length != word.length()) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (chars[start + i] != word.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isNumberStart(char c) {
+    return (c >= '0' && c <= '9') || c == '.' || c == '-' || c == '+';
+  }
+
+  private static boolean isCommand(char c) {
+    switch (c) {
+      case 'M':
+      case 'm':
+      case 'Z':
+      case 'z':
+      case 'L':
+      case 'l':
+      case 'H':
+      case 'h':
+      case 'V':
+      case 'v':
+      case 'C':
+      case 'c':
+      case 'S':
+      case 's':
+      case 'Q':
+      case 'q':
+      case 'T':
+      case 't':
+      case 'A':
+      case 'a':
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Builds bezier paths. Each moveto starts a new path. On closepath, the last node is merged into
+   * the first node if they are at the same location.
+   */
+  private static final class BezierPathHandler implements Handler {
+
+    private final ArrayList<BezierPath> paths = new ArrayList<>();
+    private BezierPath path;
+
+    @Override
+    public void moveTo(double x, double y) {
+      path = new BezierPath();
+      paths.add(path);
+      path.moveTo(x, y);
+    }
+
+    @Override
+    public void lineTo(double x, double y) {
+      path.lineTo(x, y);
+    }
+
+    @Override
+    public void quadTo(double x1, double y1, double x, double y) {
+      path.quadTo(x1, y1, x, y);
+    }
+
+    @Override
+    public void curveTo(double x1, double y1, double x2, double y2, double x, double y) {
+      path.curveTo(x1, y1, x2, y2, x, y);
+    }
+
+    @Override
+    public void arcTo(
+        double rx,
+        double ry,
+        double xAxisRotation,
+        boolean largeArcFlag,
+        boolean sweepFlag,
+        double x,
+        double y) {
+      path.arcTo(rx, ry, xAxisRotation, largeArcFlag, sweepFlag, x, y);
+    }
+
+    @Override
+    public void closePath() {
+      if (path.size() > 1) {
+        BezierPath.Node first = path.nodes().get(0);
+        BezierPath.Node last = path.nodes().get(path.size() - 1);
+        if (first.x[0] == last.x[0] && first.y[0] == last.y[0]) {
+          if ((last.mask & BezierPath.C1_MASK) != 0) {
+            first.mask |= BezierPath.C1_MASK;
+            first.x[1] = last.x[1];
+            first.y[1] = last.y[1];
+          }
+          path.remove(path.size() - 1);
+        }
+      }
+      path.setClosed(true);
+    }
+
+    BezierPath[] getPaths() {
+      return paths.toArray(new BezierPath[paths.size()]);
+    }
+  }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.BezierFigure;
+import org.jhotdraw.draw.figure.CompositeFigure;
+import org.jhotdraw.draw.figure.Figure;
+
+/** Compares the figures of drawings which have been read in different ways. */
+public final class DrawingAssertions {
+
+  private DrawingAssertions() {}
+
+  /**
+   * Asserts that two drawings have figures of the same classes, in the same order, with the same
+   * bounds, the same attributes and the same children.
+   */
+  public static void assertSameFigures(Drawing actual, Drawing expected) {
+    assertSameFigures(actual.getChildren(), expected.getChildren(), "drawing");
+  }
+
+  private static void assertSameFigures(List<Figure> actual, List<Figure> expected, String path) {
+    assertThat(actual).as("children of %s", path).hasSameSizeAs(expected);
+    for (int i = 0; i < expected.size(); i++) {
+      assertSameFigure(actual.get(i), expected.get(i), path + "/" + i);
+    }
+  }
+
+  private static void assertSameFigure(Figure actual, Figure expected, String path) {
+    assertThat(actual.getClass()).as("class of %s", path).isEqualTo(expected.getClass());
+    assertThat(actual.getBounds()).as("bounds of %s", path).isEqualTo(expected.getBounds());
+    Map<AttributeKey<?>, Object> actualAttributes = actual.attr().getAttributes();
+    Map<AttributeKey<?>, Object> expectedAttributes = expected.attr().getAttributes();
+    assertThat(actualAttributes.keySet())
+        .as("attributes of %s", path)
+        .containsExactlyInAnyOrderElementsOf(expectedAttributes.keySet());
+    for (Map.Entry<AttributeKey<?>, Object> entry : expectedAttributes.entrySet()) {
+      assertThat(Objects.deepEquals(actualAttributes.get(entry.getKey()), entry.getValue()))
+          .as("attribute %s of %s", entry.getKey().getKey(), path)
+          .isTrue();
+    }
+    if (expected instanceof BezierFigure) {
+      assertThat(((BezierFigure) actual).getBezierPath().nodes())
+          .as("path of %s", path)
+          .isEqualTo(((BezierFigure) expected).getBezierPath().nodes());
+    }
+    if (expected instanceof CompositeFigure) {
+      assertSameFigures(
+          ((CompositeFigure) actual).getChildren(),
+          ((CompositeFigure) expected).getChildren(),
+          path);
+    }
+  }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.odg.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jhotdraw.samples.DrawingAssertions.assertSameFigures;
+
+import java.awt.Color;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.samples.odg.ODGAttributeKeys;
+import org.jhotdraw.samples.odg.figures.ODGEllipseFigure;
+import org.jhotdraw.samples.odg.figures.ODGGroupFigure;
+import org.jhotdraw.samples.odg.figures.ODGPathFigure;
+import org.jhotdraw.samples.odg.figures.ODGRectFigure;
+import org.junit.jupiter.api.Test;
+
+public class ODGInputFormatTest {
+
+  static final String MINIMAL_DOCUMENT =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+          + "<office:document-content"
+          + " xmlns:office=\"urn:oasis:names:tc:opendocument:xmlns:office:1.0\""
+          + " xmlns:style=\"urn:oasis:names:tc:opendocument:xmlns:style:1.0\""
+          + " xmlns:draw=\"urn:oasis:names:tc:opendocument:xmlns:drawing:1.0\""
+          + " xmlns:svg=\"urn:oasis:names:tc:opendocument:xmlns:svg-compatible:1.0\""
+          + " office:version=\"1.0\">\n"
+          + " <office:automatic-styles>\n"
+          + "  <style:style style:name=\"gr1\" style:family=\"graphic\">"
+          + "<style:graphic-properties draw:fill-color=\"#ff0000\"/></style:style>\n"
+          + " </office:automatic-styles>\n"
+          + " <office:body>\n"
+          + "  <office:drawing>\n"
+          + "   <draw:page draw:name=\"page1\">\n"
+          + "    <draw:custom-shape draw:style-name=\"gr1\" svg:x=\"10px\" svg:y=\"20px\""
+          + " svg:width=\"30px\" svg:height=\"40px\">\n"
+          + "     <draw:enhanced-geometry draw:type=\"rectangle\" svg:viewBox=\"0 0 21600 21600\"/>\n"
+          + "    </draw:custom-shape>\n"
+          + "    <draw:g>\n"
+          + "     <draw:custom-shape svg:x=\"1px\" svg:y=\"2px\" svg:width=\"3px\" svg:height=\"4px\">"
+          + "<draw:enhanced-geometry draw:type=\"ellipse\" svg:viewBox=\"0 0 21600 21600\"/>"
+          + "</draw:custom-shape>\n"
+          + "    </draw:g>\n"
+          + "   </draw:page>\n"
+          + "  </office:drawing>\n"
+          + " </office:body>\n"
+          + "</office:document-content>\n";
+
+  static Drawing read(ODGInputFormat format, String document) throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    format.read(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), drawing, true);
+    return drawing;
+  }
+
+  @Test
+  public void testReadsMinimalDocument() throws IOException {
+    Drawing drawing = read(new ODGInputFormat(), MINIMAL_DOCUMENT);
+
+    assertThat(drawing.getChildCount()).isEqualTo(2);
+    assertThat(drawing.getChild(0).getBounds().getWidth()).isEqualTo(30);
+    assertThat(drawing.getChild(0).getBounds().getHeight()).isEqualTo(40);
+    assertThat(drawing.getChild(0).attr().get(ODGAttributeKeys.FILL_COLOR).getRed()).isEqualTo(255);
+    assertThat(drawing.getChild(1)).isInstanceOf(ODGGroupFigure.class);
+    assertThat(((ODGGroupFigure) drawing.getChild(1)).getChildCount()).isEqualTo(1);
+  }
+
+  /**
+   * Returns a document with more sibling elements than a parallel task reads, in a page and in
+   * nested groups.
+   */
+  static String createLargeDocument() {
+    StringBuilder buf = new StringBuilder();
+    buf.append(MINIMAL_DOCUMENT, 0, MINIMAL_DOCUMENT.indexOf(" </office:automatic-styles>"));
+    buf.append("  <style:style style:name=\"gr2\" style:family=\"graphic\">");
+    buf.append("<style:graphic-properties svg:stroke-color=\"#0000ff\"/></style:style>\n");
+    buf.append(" </office:automatic-styles>\n");
+    buf.append(" <office:body>\n  <office:drawing>\n   <draw:page draw:name=\"page1\">\n");
+    appendShapes(buf, 0, 150);
+    buf.append("<draw:g>\n");
+    appendShapes(buf, 150, 100);
+    buf.append("<draw:g>\n");
+    appendShapes(buf, 250, 70);
+    buf.append("</draw:g>\n");
+    buf.append("</draw:g>\n");
+    appendShapes(buf, 320, 100);
+    buf.append(
+        "   </draw:page>\n  </office:drawing>\n </office:body>\n</office:document-content>\n");
+    return buf.toString();
+  }
+
+  private static void appendShapes(StringBuilder buf, int from, int count) {
+    for (int i = from; i < from + count; i++) {
+      int x = (i % 40) * 20;
+      int y = (i / 40) * 20;
+      String style = (i % 2 == 0) ? "gr1" : "gr2";
+      switch (i % 4) {
+        case 0:
+        case 1:
+          buf.append(
+              String.format(
+                  "<draw:custom-shape draw:style-name=\"%s\" svg:x=\"%dpx\" svg:y=\"%dpx\""
+                      + " svg:width=\"10px\" svg:height=\"15px\"><draw:enhanced-geometry"
+                      + " draw:type=\"%s\" svg:viewBox=\"0 0 21600 21600\"/></draw:custom-shape>\n",
+                  style, x, y, (i % 4 == 0) ? "rectangle" : "ellipse"));
+          break;
+        case 2:
+          buf.append(
+              String.format(
+                  "<draw:line draw:style-name=\"%s\" svg:x1=\"%dpx\" svg:y1=\"%dpx\""
+                      + " svg:x2=\"%dpx\" svg:y2=\"%dpx\"/>\n",
+                  style, x, y, x + 10, y + 5));
+          break;
+        default:
+          buf.append(
+              String.format(
+                  "<draw:polygon draw:style-name=\"%s\" svg:x=\"%dpx\" svg:y=\"%dpx\""
+                      + " svg:width=\"10px\" svg:height=\"10px\" svg:viewBox=\"0 0 100 100\""
+                      + " draw:points=\"0,0 100,0 50,100\"/>\n",
+                  style, x, y));
+          break;
+      }
+    }
+  }
+
+  @Test
+  public void testParallelReadingReadsLikeSequentialReading() throws IOException {
+    String document = createLargeDocument();
+    Drawing expected = read(new ODGInputFormat(), document);
+    ODGInputFormat format = new ODGInputFormat();
+    format.setParallel(true);
+    Drawing actual = read(format, document);
+
+    assertThat(expected.getChildCount()).isEqualTo(251);
+    assertSameFigures(actual, expected);
+  }
+
+  /**
+   * Checks that the figures at the specified index are the shapes which {@link #appendShapes}
+   * appends for the specified range.
+   */
+  private static void assertShapes(
+      List<Figure> figures, int index, int from, int count, Color gr1FillColor) {
+    for (int i = from; i < from + count; i++) {
+      Figure f = figures.get(index + i - from);
+      Class<?> type;
+      double height;
+      switch (i % 4) {
+        case 0:
+          type = ODGRectFigure.class;
+          height = 15;
+          break;
+        case 1:
+          type = ODGEllipseFigure.class;
+          height = 15;
+          break;
+        case 2:
+          type = ODGPathFigure.class;
+          height = 5;
+          break;
+        default:
+          type = ODGPathFigure.class;
+          height = 10;
+          break;
+      }
+      assertThat(f).isInstanceOf(type);
+      assertThat(f.getBounds())
+          .isEqualTo(new Rectangle2D.Double((i % 40) * 20, (i / 40) * 20, 10, height));
+      assertThat(f.attr().get(ODGAttributeKeys.FILL_COLOR))
+          .isEqualTo((i % 2 == 0) ? gr1FillColor : Color.BLACK);
+      assertThat(f.attr().get(ODGAttributeKeys.STROKE_COLOR))
+          .isEqualTo((i % 2 == 0) ? null : Color.BLUE);
+    }
+  }
+
+  /** Checks that the figures are the figures of {@link #createLargeDocument}. */
+  private static void assertLargeDocument(List<Figure> figures, Color gr1FillColor) {
+    assertShapes(figures, 0, 0, 150, gr1FillColor);
+    List<Figure> group = ((ODGGroupFigure) figures.get(150)).getChildren();
+    assertThat(group).hasSize(101);
+    assertShapes(group, 0, 150, 100, gr1FillColor);
+    List<Figure> nestedGroup = ((ODGGroupFigure) group.get(100)).getChildren();
+    assertThat(nestedGroup).hasSize(70);
+    assertShapes(nestedGroup, 0, 250, 70, gr1FillColor);
+    assertShapes(figures, 151, 320, 100, gr1FillColor);
+  }
+
+  @Test
+  public void testReadsLargeDocument() throws IOException {
+    for (boolean isParallel : new boolean[] {false, true}) {
+      ODGInputFormat format = new ODGInputFormat();
+      format.setParallel(isParallel);
+      List<Figure> figures = read(format, createLargeDocument()).getChildren();
+
+      assertThat(figures).hasSize(251);
+      assertLargeDocument(figures, Color.RED);
+    }
+  }
+
+  /**
+   * The shapes of a page are streamed in batches, and the shapes of all pages are read. Elements
+   * which follow the first drawing are skipped.
+   */
+  @Test
+  public void testReadsPagesWithMoreShapesThanABatch() throws IOException {
+    String largeDocument = createLargeDocument();
+    StringBuilder buf = new StringBuilder();
+    buf.append(largeDocument, 0, largeDocument.indexOf("   </draw:page>"));
+    appendShapes(buf, 1000, 2500);
+    buf.append("   </draw:page>\n   <draw:page draw:name=\"page2\">\n");
+    appendShapes(buf, 0, 10);
+    buf.append("   </draw:page>\n  </office:drawing>\n  <office:drawing>\n");
+    buf.append("   <draw:page draw:name=\"page3\">\n");
+    appendShapes(buf, 0, 10);
+    buf.append(
+        "   </draw:page>\n  </office:drawing>\n </office:body>\n</office:document-content>\n");
+
+    for (boolean isParallel : new boolean[] {false, true}) {
+      ODGInputFormat format = new ODGInputFormat();
+      format.setParallel(isParallel);
+      List<Figure> figures = read(format, buf.toString()).getChildren();
+
+      assertThat(figures).hasSize(251 + 2500 + 10);
+      assertLargeDocument(figures.subList(0, 251), Color.RED);
+      assertShapes(figures, 251, 1000, 2500, Color.RED);
+      assertShapes(figures, 251 + 2500, 0, 10, Color.RED);
+    }
+  }
+
+  private static final String AUTOMATIC_GR1_STYLE =
+      "  <style:style style:name=\"gr1\" style:family=\"graphic\">"
+          + "<style:graphic-properties draw:fill-color=\"#ff0000\"/></style:style>\n";
+
+  /**
+   * The styles of an archive are read before its content, even if the "styles.xml" entry follows
+   * the "content.xml" entry.
+   */
+  @Test
+  public void testReadsStylesOfAnArchive() throws IOException {
+    String stylesElement =
+        "<office:styles>"
+            + "<style:style style:name=\"gr1\" style:family=\"graphic\">"
+            + "<style:graphic-properties draw:fill-color=\"#00ff00\"/></style:style>"
+            + "</office:styles>\n";
+    String content = createLargeDocument().replace(AUTOMATIC_GR1_STYLE, "");
+    String namespaces =
+        content.substring(content.indexOf(" xmlns:office"), content.indexOf(" office:version"));
+    String styles =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<office:document-styles"
+            + namespaces
+            + ">\n"
+            + stylesElement
+            + "</office:document-styles>\n";
+    for (boolean isContentFirst : new boolean[] {false, true}) {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      try (ZipOutputStream zout = new ZipOutputStream(out)) {
+        zout.putNextEntry(new ZipEntry(isContentFirst ? "content.xml" : "styles.xml"));
+        zout.write((isContentFirst ? content : styles).getBytes(StandardCharsets.UTF_8));
+        zout.putNextEntry(new ZipEntry(isContentFirst ? "styles.xml" : "content.xml"));
+        zout.write((isContentFirst ? styles : content).getBytes(StandardCharsets.UTF_8));
+      }
+      Drawing drawing = new DefaultDrawing();
+      new ODGInputFormat().read(new ByteArrayInputStream(out.toByteArray()), drawing, true);
+
+      assertThat(drawing.getChildren()).hasSize(251);
+      assertLargeDocument(drawing.getChildren(), Color.GREEN);
+    }
+  }
+}
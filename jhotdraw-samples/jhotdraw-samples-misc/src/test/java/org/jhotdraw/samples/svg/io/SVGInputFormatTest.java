@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.svg.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jhotdraw.samples.DrawingAssertions.assertSameFigures;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.draw.figure.Figure;
+import org.jhotdraw.samples.svg.LinearGradient;
+import org.jhotdraw.samples.svg.RadialGradient;
+import org.jhotdraw.samples.svg.SVGAttributeKeys;
+import org.jhotdraw.samples.svg.figures.SVGGroupFigure;
+import org.jhotdraw.samples.svg.figures.SVGPathFigure;
+import org.jhotdraw.samples.svg.figures.SVGRectFigure;
+import org.junit.jupiter.api.Test;
+
+public class SVGInputFormatTest {
+
+  static Drawing read(SVGInputFormat format, String document) throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    format.read(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), drawing, true);
+    return drawing;
+  }
+
+  @Test
+  public void testReadsMinimalDocument() throws IOException {
+    Drawing drawing =
+        read(
+            new SVGInputFormat(),
+            "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+                + "<!-- comment -->\n"
+                + "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"200\" height=\"100\">\n"
+                + "  <defs>\n"
+                + "    <linearGradient id=\"g1\"><stop offset=\"0\" stop-color=\"red\"/></linearGradient>\n"
+                + "  </defs>\n"
+                + "  <rect x=\"10\" y=\"20\" width=\"30\" height=\"40\" fill=\"#00ff00\"/>\n"
+                + "  <g>\n"
+                + "    <rect x=\"1\" y=\"2\" width=\"3\" height=\"4\" fill=\"url(#g1)\"/>\n"
+                + "  </g>\n"
+                + "</svg>\n");
+
+    assertThat(drawing.getChildCount()).isEqualTo(2);
+    Figure rect = drawing.getChild(0);
+    assertThat(rect).isInstanceOf(SVGRectFigure.class);
+    assertThat(rect.getBounds()).isEqualTo(new Rectangle2D.Double(10, 20, 30, 40));
+    assertThat(rect.attr().get(SVGAttributeKeys.FILL_COLOR)).isEqualTo(Color.GREEN);
+    Figure group = drawing.getChild(1);
+    assertThat(group).isInstanceOf(SVGGroupFigure.class);
+    Figure child = ((SVGGroupFigure) group).getChild(0);
+    assertThat(child.attr().get(SVGAttributeKeys.FILL_GRADIENT)).isNotNull();
+  }
+
+  @Test
+  public void testFlatteningOneFigureDoesNotChangeTheGradientOfAnother() throws IOException {
+    Drawing drawing =
+        read(
+            new SVGInputFormat(),
+            "<svg xmlns=\"http://www.w3.org/2000/svg\">\n"
+                + "  <defs>\n"
+                + "    <linearGradient id=\"g\" x1=\"0\" y1=\"0\" x2=\"1\" y2=\"0\">\n"
+                + "      <stop offset=\"0\" stop-color=\"red\"/>\n"
+                + "      <stop offset=\"1\" stop-color=\"blue\"/>\n"
+                + "    </linearGradient>\n"
+                + "  </defs>\n"
+                + "  <path d=\"M0,0 L10,0 L10,10 Z\" fill=\"url(#g)\""
+                + " transform=\"rotate(30)\"/>\n"
+                + "  <path d=\"M0,0 L10,0 L10,10 Z\" fill=\"url(#g)\""
+                + " transform=\"rotate(30)\"/>\n"
+                + "</svg>\n");
+
+    SVGPathFigure flattened = (SVGPathFigure) drawing.getChild(0);
+    SVGPathFigure other = (SVGPathFigure) drawing.getChild(1);
+    AffineTransform before = new AffineTransform(gradientTransform(other));
+    assertThat(flattened.attr().get(SVGAttributeKeys.TRANSFORM)).isNotNull();
+
+    flattened.flattenTransform();
+
+    assertThat(gradientTransform(flattened)).isNotEqualTo(before);
+    assertThat(gradientTransform(other)).isEqualTo(before);
+  }
+
+  private static AffineTransform gradientTransform(Figure f) {
+    return ((LinearGradient) f.attr().get(SVGAttributeKeys.FILL_GRADIENT)).getTransform();
+  }
+
+  /**
+   * Returns a document with more sibling elements than a parallel task reads, in the root element,
+   * in nested groups and in a nested "svg" element. The figures reference a gradient which is
+   * declared after them.
+   */
+  private static String createLargeDocument() {
+    StringBuilder buf = new StringBuilder();
+    buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"2000\" height=\"2000\">\n");
+    appendShapes(buf, 0, 150);
+    buf.append("<g transform=\"translate(10,10)\" fill=\"blue\">\n");
+    appendShapes(buf, 150, 100);
+    buf.append("<g transform=\"scale(0.5)\">\n");
+    appendShapes(buf, 250, 70);
+    buf.append("</g>\n");
+    buf.append("</g>\n");
+    buf.append(
+        "<svg x=\"100\" y=\"100\" width=\"500\" height=\"500\" viewBox=\"0 0 1000 1000\">\n");
+    appendShapes(buf, 320, 80);
+    buf.append("</svg>\n");
+    appendShapes(buf, 400, 100);
+    buf.append("<linearGradient id=\"lg\"><stop offset=\"0\" stop-color=\"red\"/>");
+    buf.append("<stop offset=\"1\" stop-color=\"yellow\"/></linearGradient>\n");
+    buf.append("</svg>\n");
+    return buf.toString();
+  }
+
+  private static void appendShapes(StringBuilder buf, int from, int count) {
+    for (int i = from; i < from + count; i++) {
+      int x = (i % 40) * 20;
+      int y = (i / 40) * 20;
+      switch (i % 5) {
+        case 0:
+          buf.append(
+              String.format(
+                  "<rect x=\"%d\" y=\"%d\" width=\"10\" height=\"15\" fill=\"url(#lg)\"/>\n",
+                  x, y));
+          break;
+        case 1:
+          buf.append(String.format("<circle cx=\"%d\" cy=\"%d\" r=\"5\"/>\n", x, y));
+          break;
+        case 2:
+          buf.append(
+              String.format(
+                  "<path d=\"M%d %d l10 0 l-5 10 z\" stroke=\"black\" transform=\"rotate(%d)\"/>\n",
+                  x, y, i));
+          break;
+        case 3:
+          buf.append(
+              String.format(
+                  "<polygon points=\"%d,%d %d,%d %d,%d\" display=\"%s\"/>\n",
+                  x, y, x + 10, y, x, y + 10, (i % 3 == 0) ? "none" : "inline"));
+          break;
+        default:
+          buf.append(String.format("<g><ellipse cx=\"%d\" cy=\"%d\" rx=\"5\" ry=\"3\"/>", x, y));
+          buf.append(String.format("<line x1=\"%d\" y1=\"%d\" x2=\"0\" y2=\"0\"/></g>\n", x, y));
+          break;
+      }
+    }
+  }
+
+  @Test
+  public void testParallelReadingReadsLikeSequentialReading() throws IOException {
+    String document = createLargeDocument();
+    Drawing expected = read(new SVGInputFormat(), document);
+    SVGInputFormat format = new SVGInputFormat();
+    format.setParallel(true);
+    Drawing actual = read(format, document);
+
+    assertThat(expected.getChildCount()).isGreaterThan(300);
+    assertThat(expected.getChild(0).attr().get(SVGAttributeKeys.FILL_GRADIENT)).isNotNull();
+    assertSameFigures(actual, expected);
+  }
+
+  /**
+   * Reads a document with the DOM reader and with the streaming reader, and asserts that both
+   * readers produce the same figures. The streaming reader is also run with a batch size of one
+   * figure, so that each figure is added to the drawing as soon as possible.
+   */
+  private static Drawing readWithAllReaders(String document) throws IOException {
+    Drawing expected = read(new SVGInputFormat(), document);
+    for (int batchSize : new int[] {1, 1024}) {
+      SVGInputFormat format = new SVGInputFormat();
+      format.setStreaming(true);
+      format.setBatchSize(batchSize);
+      assertSameFigures(read(format, document), expected);
+    }
+    return expected;
+  }
+
+  @Test
+  public void testStreamingResolvesForwardReferencesOfUseElements() throws IOException {
+    Drawing drawing =
+        readWithAllReaders(
+            "<svg xmlns=\"http://www.w3.org/2000/svg\""
+                + " xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
+                + "  <rect x=\"0\" y=\"0\" width=\"5\" height=\"5\"/>\n"
+                + "  <use xlink:href=\"#r\" x=\"50\" y=\"10\"/>\n"
+                + "  <g transform=\"translate(5,5)\">\n"
+                + "    <use xlink:href=\"#r\" transform=\"scale(2)\"/>\n"
+                + "    <circle cx=\"1\" cy=\"1\" r=\"1\"/>\n"
+                + "  </g>\n"
+                + "  <ellipse cx=\"100\" cy=\"100\" rx=\"10\" ry=\"5\"/>\n"
+                + "  <defs>\n"
+                + "    <rect id=\"r\" x=\"1\" y=\"2\" width=\"10\" height=\"20\" fill=\"blue\"/>\n"
+                + "  </defs>\n"
+                + "</svg>\n");
+
+    assertThat(drawing.getChildCount()).isEqualTo(4);
+    assertThat(drawing.getChild(1).getBounds()).isEqualTo(new Rectangle2D.Double(51, 12, 10, 20));
+    assertThat(drawing.getChild(1).attr().get(SVGAttributeKeys.FILL_COLOR)).isEqualTo(Color.BLUE);
+  }
+
+  @Test
+  public void testStreamingResolvesPaintsWhichAreDeclaredAfterTheirUse() throws IOException {
+    Drawing drawing =
+        readWithAllReaders(
+            "<svg xmlns=\"http://www.w3.org/2000/svg\" version=\"1.2\">\n"
+                + "  <rect x=\"0\" y=\"0\" width=\"10\" height=\"10\" fill=\"url(#lg)\"/>\n"
+                + "  <g><circle cx=\"5\" cy=\"5\" r=\"5\" fill=\"url(#rg)\""
+                + " stroke=\"url(#sc)\"/></g>\n"
+                + "  <rect x=\"20\" y=\"0\" width=\"10\" height=\"10\" fill=\"red\"/>\n"
+                + "  <linearGradient id=\"lg\">\n"
+                + "    <stop offset=\"0\" stop-color=\"red\"/>\n"
+                + "    <stop offset=\"1\" stop-color=\"blue\"/>\n"
+                + "  </linearGradient>\n"
+                + "  <defs>\n"
+                + "    <radialGradient id=\"rg\"><stop offset=\"0\" stop-color=\"green\"/>"
+                + "</radialGradient>\n"
+                + "    <solidColor id=\"sc\" solid-color=\"#00ff00\"/>\n"
+                + "  </defs>\n"
+                + "</svg>\n");
+
+    assertThat(drawing.getChildCount()).isEqualTo(3);
+    assertThat(drawing.getChild(0).attr().get(SVGAttributeKeys.FILL_GRADIENT))
+        .isInstanceOf(LinearGradient.class);
+    Figure circle = ((SVGGroupFigure) drawing.getChild(1)).getChild(0);
+    assertThat(circle.attr().get(SVGAttributeKeys.FILL_GRADIENT))
+        .isInstanceOf(RadialGradient.class);
+    assertThat(circle.attr().get(SVGAttributeKeys.STROKE_COLOR)).isEqualTo(Color.GREEN);
+  }
+
+  @Test
+  public void testStreamingReadsNestedLinksAndGroupsWithTransforms() throws IOException {
+    Drawing drawing =
+        readWithAllReaders(
+            "<svg xmlns=\"http://www.w3.org/2000/svg\""
+                + " xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n"
+                + "  <g transform=\"translate(10,10)\" fill=\"red\">\n"
+                + "    <a xlink:href=\"http://www.example.com\" target=\"_blank\""
+                + " transform=\"scale(2)\">\n"
+                + "      <g transform=\"rotate(45)\">\n"
+                + "        <rect x=\"0\" y=\"0\" width=\"10\" height=\"10\"/>\n"
+                + "        <a xlink:href=\"#inner\"><circle cx=\"5\" cy=\"5\" r=\"2\"/></a>\n"
+                + "      </g>\n"
+                + "      <ellipse cx=\"20\" cy=\"20\" rx=\"4\" ry=\"2\" fill=\"blue\"/>\n"
+                + "    </a>\n"
+                + "    <line x1=\"0\" y1=\"0\" x2=\"30\" y2=\"30\" stroke=\"black\"/>\n"
+                + "  </g>\n"
+                + "  <a xlink:href=\"http://www.example.org\">"
+                + "<rect x=\"50\" y=\"50\" width=\"5\" height=\"5\"/></a>\n"
+                + "</svg>\n");
+
+    assertThat(drawing.getChildCount()).isEqualTo(2);
+    assertThat(drawing.getChild(0)).isInstanceOf(SVGGroupFigure.class);
+  }
+
+  @Test
+  public void testStreamingSkipsElementsWhichAreNotDisplayed() throws IOException {
+    Drawing drawing =
+        readWithAllReaders(
+            "<svg xmlns=\"http://www.w3.org/2000/svg\">\n"
+                + "  <rect x=\"0\" y=\"0\" width=\"10\" height=\"10\" display=\"none\"/>\n"
+                + "  <g display=\"none\"><rect x=\"1\" y=\"1\" width=\"1\" height=\"1\"/></g>\n"
+                + "  <g><circle cx=\"5\" cy=\"5\" r=\"5\" style=\"display:none\"/>"
+                + "<rect x=\"2\" y=\"2\" width=\"2\" height=\"2\"/></g>\n"
+                + "  <rect x=\"20\" y=\"20\" width=\"10\" height=\"10\"/>\n"
+                + "</svg>\n");
+
+    assertThat(drawing.getChild(drawing.getChildCount() - 1).getBounds())
+        .isEqualTo(new Rectangle2D.Double(20, 20, 10, 10));
+  }
+
+  @Test
+  public void testStreamingOnlyKeepsReferencedElements() throws IOException {
+    StringBuilder buf = new StringBuilder();
+    buf.append("<svg xmlns=\"http://www.w3.org/2000/svg\"")
+        .append(" xmlns:xlink=\"http://www.w3.org/1999/xlink\">\n")
+        .append("  <defs id=\"defs\">\n")
+        .append("    <linearGradient id=\"lg\"><stop offset=\"0\" stop-color=\"red\"/>")
+        .append("</linearGradient>\n")
+        .append("    <linearGradient id=\"unused\"><stop offset=\"0\" stop-color=\"blue\"/>")
+        .append("</linearGradient>\n")
+        .append("  </defs>\n")
+        .append("  <g id=\"layer1\">\n");
+    for (int i = 0; i < 20; i++) {
+      buf.append("    <rect id=\"rect")
+          .append(i)
+          .append("\" x=\"")
+          .append(i * 10)
+          .append("\" y=\"0\" width=\"5\" height=\"5\"")
+          .append(i == 5 ? " fill=\"url(#lg)\"" : "")
+          .append("/>\n");
+    }
+    buf.append("    <use xlink:href=\"#rect3\" x=\"0\" y=\"50\"/>\n")
+        .append("    <use xlink:href=\"#circle\"/>\n")
+        .append("  </g>\n")
+        .append("  <circle id=\"circle\" cx=\"5\" cy=\"100\" r=\"5\"/>\n")
+        .append("</svg>\n");
+    String document = buf.toString();
+    Drawing drawing = readWithAllReaders(document);
+
+    assertThat(drawing.getChildCount()).isEqualTo(2);
+    assertThat(((SVGGroupFigure) drawing.getChild(0)).getChildCount()).isEqualTo(22);
+    SVGInputFormat format = new SVGInputFormat();
+    format.setStreaming(true);
+    read(format, document);
+    assertThat(format.getKeptElementCount()).isEqualTo(3);
+  }
+
+  @Test
+  public void testStreamingReplacesTheFiguresOfTheDrawingWithAnEmptyDocument() throws IOException {
+    String document =
+        "<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"300\" height=\"200\""
+            + " viewport-fill=\"#ff0000\"/>";
+    for (boolean isStreaming : new boolean[] {false, true}) {
+      Drawing drawing = new DefaultDrawing();
+      drawing.add(new SVGRectFigure(1, 2, 3, 4));
+      SVGInputFormat format = new SVGInputFormat();
+      format.setStreaming(isStreaming);
+      format.read(
+          new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)), drawing, true);
+
+      assertThat(drawing.getChildCount()).as("streaming=%s", isStreaming).isZero();
+      assertThat(drawing.attr().get(SVGAttributeKeys.VIEWPORT_WIDTH)).isEqualTo(300d);
+      assertThat(drawing.attr().get(SVGAttributeKeys.VIEWPORT_HEIGHT)).isEqualTo(200d);
+      assertThat(drawing.attr().get(SVGAttributeKeys.VIEWPORT_FILL)).isEqualTo(Color.RED);
+    }
+  }
+
+  @Test
+  public void testReadsPrefixedDocument() throws IOException {
+    Drawing drawing =
+        read(
+            new SVGInputFormat(),
+            "<s:svg xmlns:s=\"http://www.w3.org/2000/svg\">"
+                + "<s:rect x=\"1\" y=\"2\" width=\"3\" height=\"4\"/></s:svg>");
+
+    assertThat(drawing.getChildCount()).isEqualTo(1);
+    assertThat(drawing.getChild(0).getBounds()).isEqualTo(new Rectangle2D.Double(1, 2, 3, 4));
+  }
+}
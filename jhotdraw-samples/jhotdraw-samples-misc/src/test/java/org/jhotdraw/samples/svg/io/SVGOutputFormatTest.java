@@ -0,0 +1,181 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.svg.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.jhotdraw.samples.DrawingAssertions.assertSameFigures;
+import static org.jhotdraw.samples.svg.SVGAttributeKeys.*;
+
+import java.awt.Color;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import org.jhotdraw.draw.AttributeKey;
+import org.jhotdraw.draw.DefaultDrawing;
+import org.jhotdraw.draw.Drawing;
+import org.jhotdraw.samples.svg.Gradient;
+import org.jhotdraw.samples.svg.LinearGradient;
+import org.jhotdraw.samples.svg.RadialGradient;
+import org.jhotdraw.samples.svg.figures.SVGEllipseFigure;
+import org.jhotdraw.samples.svg.figures.SVGGroupFigure;
+import org.jhotdraw.samples.svg.figures.SVGRectFigure;
+import org.jhotdraw.samples.svg.figures.SVGTextFigure;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.w3c.dom.Element;
+
+public class SVGOutputFormatTest {
+
+  static String write(SVGOutputFormat format, Drawing drawing) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    format.write(out, drawing);
+    return out.toString(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testWritesOneXmlDeclaration() throws IOException {
+    Drawing drawing = new DefaultDrawing();
+    drawing.add(new SVGRectFigure(10, 20, 30, 40));
+    String document = write(new SVGOutputFormat(), drawing);
+
+    assertThat(document.indexOf("<?xml")).isEqualTo(document.lastIndexOf("<?xml"));
+    Drawing read = SVGInputFormatTest.read(new SVGInputFormat(), document);
+    assertThat(read.getChildCount()).isEqualTo(1);
+    assertThat(read.getChild(0).getBounds()).isEqualTo(new Rectangle2D.Double(10, 20, 30, 40));
+  }
+
+  private static final String TEXT = "a & b < c > d \"e\" 'f'";
+
+  private static final LinearGradient LINEAR_GRADIENT =
+      new LinearGradient(
+          0,
+          0,
+          1,
+          0,
+          new double[] {0, 1},
+          new Color[] {Color.RED, Color.BLUE},
+          new double[] {1, 0.5},
+          true,
+          new AffineTransform());
+
+  private static final RadialGradient RADIAL_GRADIENT =
+      new RadialGradient(
+          0.5,
+          0.5,
+          0.5,
+          0.5,
+          0.5,
+          new double[] {0, 1},
+          new Color[] {Color.GREEN, Color.YELLOW},
+          new double[] {1, 1},
+          true,
+          new AffineTransform());
+
+  private static Drawing createDrawing() {
+    Drawing drawing = new DefaultDrawing();
+    SVGRectFigure rect = new SVGRectFigure(10, 20, 30, 40);
+    rect.attr().set(FILL_GRADIENT, LINEAR_GRADIENT);
+    rect.attr().set(LINK, "http://www.jhotdraw.org/?a=1&b=\"2\"");
+    drawing.add(rect);
+    SVGGroupFigure group = new SVGGroupFigure();
+    SVGEllipseFigure ellipse = new SVGEllipseFigure(50, 50, 20, 10);
+    ellipse.attr().set(STROKE_GRADIENT, RADIAL_GRADIENT);
+    group.add(ellipse);
+    SVGRectFigure sameGradient = new SVGRectFigure(80, 20, 10, 10);
+    sameGradient.attr().set(FILL_GRADIENT, LINEAR_GRADIENT);
+    group.add(sameGradient);
+    drawing.add(group);
+    drawing.add(new SVGTextFigure(TEXT));
+    return drawing;
+  }
+
+  /**
+   * The streaming writer escapes text and attribute values, and writes the same document with and
+   * without pretty printing.
+   */
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void testRoundTripsTextAndGradients(boolean isPrettyPrint) throws IOException {
+    SVGOutputFormat format = new SVGOutputFormat();
+    format.setPrettyPrint(isPrettyPrint);
+    String document = write(format, createDrawing());
+
+    assertThat(document.contains("\n")).isEqualTo(isPrettyPrint);
+    assertThat(document.indexOf("<linearGradient")).isLessThan(document.indexOf("<rect"));
+    assertThat(document.indexOf("<linearGradient"))
+        .isEqualTo(document.lastIndexOf("<linearGradient"));
+    Drawing read = SVGInputFormatTest.read(new SVGInputFormat(), document);
+    SVGInputFormat streamingFormat = new SVGInputFormat();
+    streamingFormat.setStreaming(true);
+    assertSameFigures(SVGInputFormatTest.read(streamingFormat, document), read);
+    SVGOutputFormat otherFormat = new SVGOutputFormat();
+    otherFormat.setPrettyPrint(!isPrettyPrint);
+    assertSameFigures(
+        SVGInputFormatTest.read(new SVGInputFormat(), write(otherFormat, createDrawing())), read);
+
+    assertThat(read.getChildCount()).isEqualTo(3);
+    assertThat(read.getChild(0).attr().get(FILL_GRADIENT)).isEqualTo(LINEAR_GRADIENT);
+    assertThat(read.getChild(0).attr().get(LINK)).isEqualTo("http://www.jhotdraw.org/?a=1&b=\"2\"");
+    SVGGroupFigure group = (SVGGroupFigure) read.getChild(1);
+    assertThat(group.getChild(0).attr().get(STROKE_GRADIENT)).isEqualTo(RADIAL_GRADIENT);
+    assertThat(group.getChild(1).attr().get(FILL_GRADIENT)).isEqualTo(LINEAR_GRADIENT);
+    assertThat(((SVGTextFigure) read.getChild(2)).getText()).isEqualTo(TEXT);
+  }
+
+  /**
+   * A gradient which is not found by the pre-scan of the figures, is written into a definitions
+   * section after the figures, and can still be read back.
+   */
+  @ParameterizedTest
+  @ValueSource(booleans = {false, true})
+  public void testWritesGradientsWhichAreMissedByThePreScanAfterTheFigures(boolean isPrettyPrint)
+      throws IOException {
+    SVGOutputFormat format =
+        new SVGOutputFormat() {
+          @Override
+          protected void writeShapeAttributes(Element elem, Map<AttributeKey<?>, Object> m)
+              throws IOException {
+            Map<AttributeKey<?>, Object> attributes = new HashMap<>(m);
+            FILL_GRADIENT.put(attributes, (Gradient) RADIAL_GRADIENT);
+            super.writeShapeAttributes(elem, attributes);
+          }
+        };
+    format.setPrettyPrint(isPrettyPrint);
+    Drawing drawing = new DefaultDrawing();
+    drawing.add(new SVGRectFigure(10, 20, 30, 40));
+    drawing.add(new SVGEllipseFigure(50, 50, 20, 10));
+    String document = write(format, drawing);
+
+    assertThat(document.indexOf("<radialGradient")).isGreaterThan(document.indexOf("<ellipse"));
+    assertThat(document.indexOf("<radialGradient"))
+        .isEqualTo(document.lastIndexOf("<radialGradient"));
+    Drawing read = SVGInputFormatTest.read(new SVGInputFormat(), document);
+    SVGInputFormat streamingFormat = new SVGInputFormat();
+    streamingFormat.setStreaming(true);
+    assertSameFigures(SVGInputFormatTest.read(streamingFormat, document), read);
+    assertThat(read.getChildCount()).isEqualTo(2);
+    assertThat(read.getChild(0).attr().get(FILL_GRADIENT)).isEqualTo(RADIAL_GRADIENT);
+    assertThat(read.getChild(1).attr().get(FILL_GRADIENT)).isEqualTo(RADIAL_GRADIENT);
+  }
+}
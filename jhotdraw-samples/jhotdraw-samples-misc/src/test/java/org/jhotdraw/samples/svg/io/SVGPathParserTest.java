@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.samples.svg.io;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import org.jhotdraw.geom.path.BezierPath;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class SVGPathParserTest {
+
+  private final SVGPathParser parser = new SVGPathParser();
+
+  /** Formats a number with at most six fraction digits. */
+  private static String toString(double value) {
+    String str =
+        new BigDecimal(value)
+            .setScale(6, RoundingMode.HALF_EVEN)
+            .stripTrailingZeros()
+            .toPlainString();
+    return str.equals("-0") ? "0" : str;
+  }
+
+  /**
+   * Describes the nodes of paths. A node is written as "x,y". Its control points are written before
+   * and after it, separated by "&gt;". Nodes are separated by ";", and paths by "|".
+   */
+  private static String describe(BezierPath[] paths) {
+    StringBuilder buf = new StringBuilder();
+    for (BezierPath path : paths) {
+      if (buf.length() > 0) {
+        buf.append(" | ");
+      }
+      for (int i = 0; i < path.size(); i++) {
+        BezierPath.Node node = path.nodes().get(i);
+        if (i > 0) {
+          buf.append("; ");
+        }
+        if ((node.mask & BezierPath.C1_MASK) != 0) {
+          buf.append(toString(node.x[1])).append(',').append(toString(node.y[1])).append(" > ");
+        }
+        buf.append(toString(node.x[0])).append(',').append(toString(node.y[0]));
+        if ((node.mask & BezierPath.C2_MASK) != 0) {
+          buf.append(" > ").append(toString(node.x[2])).append(',').append(toString(node.y[2]));
+        }
+      }
+      if (path.isClosed()) {
+        buf.append(" Z");
+      }
+    }
+    return buf.toString();
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "'M10 20 L30 40 Z', '10,20; 30,40 Z'",
+    "'M10,20L30,40', '10,20; 30,40'",
+    // Exponents
+    "'M1e2 2E-1 L-3.5e1,5e1 l1.5E2 -2e-2', '100,0.2; -35,50; 115,49.98'",
+    "'M1e+2 2E+1 L-3.5e+1,5e+1', '100,20; -35,50'",
+    // Implicit lineto commands after a moveto, and implicit repetition of commands
+    "'M0 0 10 10 20 0', '0,0; 10,10; 20,0'",
+    "'m5 5 10 0 0 10z', '5,5; 15,5; 15,15 Z'",
+    "'M0 0 L10 0 20 10 30 0', '0,0; 10,0; 20,10; 30,0'",
+    "'M0 0 C10 0 20 10 30 10 40 10 50 0 60 0', '0,0 > 10,0; 20,10 > 30,10 > 40,10; 50,0 > 60,0'",
+    "'M0 0 h10 20 v10 20 H0 V0', '0,0; 10,0; 30,0; 30,10; 30,30; 0,30; 0,0'",
+    // Smooth curves
+    "'M0 0 C10 -10 20 -10 30 0 S50 10 60 0 s20 -10 30 0',"
+        + " '0,0 > 10,-10; 20,-10 > 30,0 > 40,10; 50,10 > 60,0 > 70,-10; 80,-10 > 90,0'",
+    "'M0 0 Q10 -10 20 0 T40 0 t20 0', '0,0; 10,-10 > 20,0; 30,10 > 40,0; 50,-10 > 60,0'",
+    "'m10 10 q10 -10 20 0 t20 0 z', '10,10; 20,0 > 30,10; 40,20 > 50,10 Z'",
+    // A segment after Z is appended to the closed path
+    "'M10 10 L20 10 L20 20 Z L30 30', '10,10; 20,10; 20,20; 30,30 Z'",
+    "'M10 10 l10 0 0 10 z l5 5 z', '10,10; 20,10; 20,20; 15,15 Z'",
+    // A closing segment to the first point is omitted
+    "'M10 10 L20 10 L20 20 L10 10 Z', '10,10; 20,10; 20,20 Z'",
+    "'M0 0 C0 10 10 10 10 0 C10 -10 0 -10 0 0 Z', '0,-10 > 0,0 > 0,10; 10,10 > 10,0 > 10,-10 Z'",
+    // Arcs
+    "'M10 10 A20 20 0 0 1 50 50',"
+        + " '10,10 > 21.045695,-1.045695; 38.954305,-1.045695 > 50,10 > 61.045695,21.045695;"
+        + " 61.045695,38.954305 > 50,50'",
+    "'M10 10 A20 30 45 1 0 50 10 a10 10 0 0 1 -20 0',"
+        + " '10,10 > -0.228261,20.686907; -3.594675,34.610216 > 2.070932,42.794203"
+        + " > 7.736539,50.978191; 20.741776,50.978191 > 32.702758,42.794203 > 44.66374,34.610216;"
+        + " 52.007564,20.686907 > 50,10 > 50,15.522847; 45.522847,20 > 40,20 > 34.477153,20;"
+        + " 30,15.522847 > 30,10'",
+    "'M10 10 a20,20 30 1,0 10,10 Z',"
+        + " '10,10 > 1.196,6.025732; -9.190376,8.911714 > -14.682044,16.85821"
+        + " > -20.173713,24.804706; -19.201164,35.540621 > -12.370892,42.370892"
+        + " > -5.540621,49.201164; 5.195294,50.173713 > 13.14179,44.682044 > 21.088286,39.190376;"
+        + " 23.974268,28.804 > 20,20 Z'",
+    // Several subpaths
+    "'M0 0 L10 0 L10 10 Z M20 20 L30 20 L30 30 Z', '0,0; 10,0; 10,10 Z | 20,20; 30,20; 30,30 Z'",
+    "'m0 0 l10 0 m10 10 l10 0', '0,0; 10,0 | 20,10; 30,10'",
+    "'', ''",
+    // Parsing stops at an unknown command
+    "'M10 20 L30 40 # L50 60', '10,20; 30,40'",
+    "'M10 20 L30 40 X50 60', '10,20; 30,40'"
+  })
+  public void testParsesPathData(String d, String expected) throws IOException {
+    assertThat(describe(parser.parsePath(d))).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"M10", "M10 20 L30", "M10 20 C1 2 3 4 5", "M10 20 A5 5 0 1"})
+  public void testRejectsIncompletePathData(String d) {
+    assertThatThrownBy(() -> parser.parsePath(d)).isInstanceOf(IOException.class);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "'translate(12.5 -3)', '1 0 0 1 12.5 -3'",
+    "'translate(5)', '1 0 0 1 5 0'",
+    "'scale(2)', '2 0 0 2 0 0'",
+    "'scale(2 0.5)', '2 0 0 0.5 0 0'",
+    "'rotate(45 100 100)', '0.707107 0.707107 -0.707107 0.707107 100 -41.421356'",
+    "'rotate(-90) translate(-480.5 0)', '0 -1 1 0 0 480.5'",
+    "'matrix(0.70710677 0.70710677 -0.70710677 0.70710677 150.25 -20.125)',"
+        + " '0.707107 0.707107 -0.707107 0.707107 150.25 -20.125'",
+    "'matrix(1,0,0,1,-247.14285,-195.21933)', '1 0 0 1 -247.14285 -195.21933'",
+    "'translate(10,20) scale(1.5,0.5)', '1.5 0 0 0.5 10 20'",
+    "'skewX(30)', '1 0 0.57735 1 0 0'",
+    "'skewY(-15)', '1 -0.267949 0 1 0 0'",
+    "'translate(1e2 -2.5E-1) scale(1e-1)', '0.1 0 0 0.1 100 -0.25'",
+    "'none', '1 0 0 1 0 0'",
+    "'', '1 0 0 1 0 0'"
+  })
+  public void testParsesTransforms(String transform, String expected) throws IOException {
+    double[] matrix = new double[6];
+    parser.parseTransform(transform).getMatrix(matrix);
+    StringBuilder buf = new StringBuilder();
+    for (double value : matrix) {
+      if (buf.length() > 0) {
+        buf.append(' ');
+      }
+      buf.append(toString(value));
+    }
+    assertThat(buf.toString()).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @ValueSource(
+      strings = {"translate(", "translate()", "foo(1)", "matrix(1 2 3)", "scale(2", "rotate(1 2)"})
+  public void testRejectsMalformedTransforms(String transform) {
+    assertThatThrownBy(() -> parser.parseTransform(transform)).isInstanceOf(IOException.class);
+  }
+
+  @ParameterizedTest
+  @CsvSource({
+    "'10,20 30,40', '10.0 20.0 30.0 40.0'",
+    "'10 20 30 40 50 60', '10.0 20.0 30.0 40.0 50.0 60.0'",
+    "'1e1 2E1,-3.5 .5', '10.0 20.0 -3.5 0.5'",
+    "'  5 , 6  ', '5.0 6.0'",
+    "'1 2 3', '1.0 2.0 3.0'",
+    "'', ''"
+  })
+  public void testParsesNumbers(String points, String expected) throws IOException {
+    StringBuilder buf = new StringBuilder();
+    for (double value : parser.parseNumbers(points)) {
+      if (buf.length() > 0) {
+        buf.append(' ');
+      }
+      buf.append(value);
+    }
+    assertThat(buf.toString()).isEqualTo(expected);
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"10,abc", "10 20 x 30"})
+  public void testRejectsMalformedNumbers(String points) {
+    assertThatThrownBy(() -> parser.parseNumbers(points)).isInstanceOf(IOException.class);
+  }
+}
@@ -0,0 +1,241 @@
+/*
+ * @(#)FlattenedPath.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.Shape;
+import java.awt.geom.Line2D;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+
+/**
+ * A shape which has been flattened into line segments for fast hit tests.
+ *
+ * <p>The shape is flattened once, when the path is created. The segments are stored in a double
+ * array, and are grouped into blocks of consecutive segments. The bounds of each block are kept as
+ * an index, so that a hit test only has to look at the segments of the blocks which lie near the
+ * point. Flattening the shape again for every hit test, as {@link Shapes#outlineContains} does, is
+ * thus avoided.
+ *
+ * <p>A flattened path is immutable, and may be used concurrently. Figures cache it, and discard it
+ * when their geometry changes.
+ */
+public final class FlattenedPath {
+
+  /** The number of consecutive segments which are grouped into a block. */
+  private static final int BLOCK_SIZE = 16;
+
+  private final double flatness;
+
+  /** The segments of the outline: x1, y1, x2, y2 for each segment. */
+  private final double[] segments;
+
+  private final int segmentCount;
+
+  /**
+   * The segments which close subpaths which are not explicitly closed: x1, y1, x2, y2 for each
+   * segment. They are not part of the outline, but they bound the area of the path.
+   */
+  private final double[] closings;
+
+  private final int closingCount;
+
+  /** Bounds of the blocks: minX, minY, maxX, maxY for each block. */
+  private final double[] blocks;
+
+  private final boolean isEvenOdd;
+  private final Rectangle2D.Double bounds;
+
+  /**
+   * Flattens the specified shape.
+   *
+   * @param shape The shape.
+   * @param flatness The maximal distance of the segments from the curves of the shape.
+   */
+  public FlattenedPath(Shape shape, double flatness) {
+    this.flatness = flatness;
+    double[] segs = new double[64];
+    double[] closes = new double[8];
+    int n = 0;
+    int nc = 0;
+    double[] coords = new double[6];
+    double prevX = 0, prevY = 0;
+    double moveX = 0, moveY = 0;
+    boolean isOpen = false;
+    PathIterator i = shape.getPathIterator(null, flatness);
+    isEvenOdd = i.getWindingRule() == PathIterator.WIND_EVEN_ODD;
+    for (; !i.isDone(); i.next()) {
+      switch (i.currentSegment(coords)) {
+        case PathIterator.SEG_MOVETO:
+          if (isOpen) {
+            closes = add(closes, nc++, prevX, prevY, moveX, moveY);
+          }
+          moveX = prevX = coords[0];
+          moveY = prevY = coords[1];
+          isOpen = false;
+          break;
+        case PathIterator.SEG_LINETO:
+          segs = add(segs, n++, prevX, prevY, coords[0], coords[1]);
+          prevX = coords[0];
+          prevY = coords[1];
+          isOpen = true;
+          break;
+        case PathIterator.SEG_CLOSE:
+          segs = add(segs, n++, prevX, prevY, moveX, moveY);
+          prevX = moveX;
+          prevY = moveY;
+          isOpen = false;
+          break;
+        default:
+          // The iterator is flattened, there are no curves
+          break;
+      }
+    }
+    if (isOpen) {
+      closes = add(closes, nc++, prevX, prevY, moveX, moveY);
+    }
+    segments = segs;
+    segmentCount = n;
+    closings = closes;
+    closingCount = nc;
+
+    blocks = new double[(n + BLOCK_SIZE - 1) / BLOCK_SIZE * 4];
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int b = 0; b * BLOCK_SIZE < n; b++) {
+      double bMinX = Double.POSITIVE_INFINITY, bMinY = Double.POSITIVE_INFINITY;
+      double bMaxX = Double.NEGATIVE_INFINITY, bMaxY = Double.NEGATIVE_INFINITY;
+      for (int s = b * BLOCK_SIZE, end = Math.min(n, s + BLOCK_SIZE); s < end; s++) {
+        int j = s * 4;
+        bMinX = Math.min(bMinX, Math.min(segs[j], segs[j + 2]));
+        bMinY = Math.min(bMinY, Math.min(segs[j + 1], segs[j + 3]));
+        bMaxX = Math.max(bMaxX, Math.max(segs[j], segs[j + 2]));
+        bMaxY = Math.max(bMaxY, Math.max(segs[j + 1], segs[j + 3]));
+      }
+      blocks[b * 4] = bMinX;
+      blocks[b * 4 + 1] = bMinY;
+      blocks[b * 4 + 2] = bMaxX;
+      blocks[b * 4 + 3] = bMaxY;
+      minX = Math.min(minX, bMinX);
+      minY = Math.min(minY, bMinY);
+      maxX = Math.max(maxX, bMaxX);
+      maxY = Math.max(maxY, bMaxY);
+    }
+    bounds =
+        n == 0
+            ? new Rectangle2D.Double(moveX, moveY, 0, 0)
+            : new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+  }
+
+  private static double[] add(double[] a, int index, double x1, double y1, double x2, double y2) {
+    int j = index * 4;
+    if (j + 4 > a.length) {
+      a = Arrays.copyOf(a, a.length * 2);
+    }
+    a[j] = x1;
+    a[j + 1] = y1;
+    a[j + 2] = x2;
+    a[j + 3] = y2;
+    return a;
+  }
+
+  /** Returns the flatness with which the shape has been flattened. */
+  public double getFlatness() {
+    return flatness;
+  }
+
+  /** Returns the number of segments of the outline. */
+  public int getSegmentCount() {
+    return segmentCount;
+  }
+
+  /** Returns the bounds of the outline. */
+  public Rectangle2D.Double getBounds() {
+    return (Rectangle2D.Double) bounds.clone();
+  }
+
+  /**
+   * Returns true, if the distance of the specified point from the outline is less than or equal to
+   * the tolerance.
+   *
+   * @param x The x coordinate of the point.
+   * @param y The y coordinate of the point.
+   * @param tolerance The tolerance for the test.
+   */
+  public boolean outlineContains(double x, double y, double tolerance) {
+    if (x < bounds.x - tolerance
+        || y < bounds.y - tolerance
+        || x > bounds.x + bounds.width + tolerance
+        || y > bounds.y + bounds.height + tolerance) {
+      return false;
+    }
+    double toleranceSq = tolerance * tolerance;
+    for (int b = 0, j = 0; j < blocks.length; b++, j += 4) {
+      if (x < blocks[j] - tolerance
+          || y < blocks[j + 1] - tolerance
+          || x > blocks[j + 2] + tolerance
+          || y > blocks[j + 3] + tolerance) {
+        continue;
+      }
+      for (int s = b * BLOCK_SIZE, end = Math.min(segmentCount, s + BLOCK_SIZE); s < end; s++) {
+        int k = s * 4;
+        if (Line2D.ptSegDistSq(segments[k], segments[k + 1], segments[k + 2], segments[k + 3], x, y)
+            <= toleranceSq) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Returns true, if the specified point lies inside the area of the path. Subpaths which are not
+   * closed explicitly are closed with a straight line, as by {@link Shape#contains}.
+   *
+   * @param x The x coordinate of the point.
+   * @param y The y coordinate of the point.
+   */
+  public boolean contains(double x, double y) {
+    if (x < bounds.x
+        || y < bounds.y
+        || x >= bounds.x + bounds.width
+        || y >= bounds.y + bounds.height) {
+      return false;
+    }
+    int winding = 0;
+    for (int b = 0, j = 0; j < blocks.length; b++, j += 4) {
+      // A block can only be crossed by a ray to the right, if it spans the y coordinate
+      if (y < blocks[j + 1] || y >= blocks[j + 3] || x >= blocks[j + 2]) {
+        continue;
+      }
+      for (int s = b * BLOCK_SIZE, end = Math.min(segmentCount, s + BLOCK_SIZE); s < end; s++) {
+        winding += crossing(segments, s * 4, x, y);
+      }
+    }
+    for (int s = 0; s < closingCount; s++) {
+      winding += crossing(closings, s * 4, x, y);
+    }
+    return isEvenOdd ? (winding & 1) != 0 : winding != 0;
+  }
+
+  /**
+   * Returns the direction in which a segment crosses a ray from the point to the right: 1 if the
+   * segment goes downwards, -1 if it goes upwards, and 0 if it does not cross the ray.
+   */
+  private static int crossing(double[] a, int j, double x, double y) {
+    double x1 = a[j], y1 = a[j + 1], x2 = a[j + 2], y2 = a[j + 3];
+    if (y1 <= y == y2 <= y) {
+      return 0;
+    }
+    double cx = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+    if (cx <= x) {
+      return 0;
+    }
+    return y1 < y2 ? 1 : -1;
+  }
+}
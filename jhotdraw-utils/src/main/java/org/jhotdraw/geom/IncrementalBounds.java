@@ -0,0 +1,219 @@
+/*
+ * @(#)IncrementalBounds.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Rectangle2D;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Maintains the union of the bounds of a set of objects.
+ *
+ * <p>The union is computed from four indexed binary heaps, one for each edge of the bounds: the
+ * objects with the smallest x and y, and the objects with the largest x + width and y + height
+ * are at the top of their heaps. Adding, moving and removing an object costs O(log n); the union
+ * is available in constant time.
+ *
+ * <p>Objects are compared by identity. This class is not thread-safe.
+ *
+ * @param <T> the type of the objects
+ */
+public class IncrementalBounds<T> {
+
+  private static final int MIN_X = 0;
+  private static final int MIN_Y = 1;
+  private static final int MAX_X = 2;
+  private static final int MAX_Y = 3;
+
+  private final IdentityHashMap<T, Integer> ids = new IdentityHashMap<>();
+  private Object[] items = new Object[16];
+
+  /** Bounds of the objects: minX, minY, maxX, maxY for each id. */
+  private double[] coords = new double[16 * 4];
+
+  /** Four heaps of ids, one for each edge. */
+  private final int[][] heaps = new int[4][16];
+
+  /** Position of each id in each of the heaps. */
+  private final int[][] positions = new int[4][16];
+
+  private int size;
+
+  /** Returns the number of objects. */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean contains(T o) {
+    return ids.containsKey(o);
+  }
+
+  /** Removes all objects. */
+  public void clear() {
+    ids.clear();
+    Arrays.fill(items, 0, size, null);
+    size = 0;
+  }
+
+  /**
+   * Adds an object, or moves it to the specified bounds if it has been added before. The bounds
+   * are copied.
+   */
+  public void put(T o, Rectangle2D.Double bounds) {
+    Integer boxedId = ids.get(o);
+    int id;
+    if (boxedId == null) {
+      id = size++;
+      if (id == items.length) {
+        int n = id * 2;
+        items = Arrays.copyOf(items, n);
+        coords = Arrays.copyOf(coords, n * 4);
+        for (int k = 0; k < 4; k++) {
+          heaps[k] = Arrays.copyOf(heaps[k], n);
+          positions[k] = Arrays.copyOf(positions[k], n);
+        }
+      }
+      ids.put(o, id);
+      items[id] = o;
+      setCoords(id, bounds);
+      for (int k = 0; k < 4; k++) {
+        heaps[k][id] = id;
+        positions[k][id] = id;
+        siftUp(k, id);
+      }
+    } else {
+      id = boxedId;
+      setCoords(id, bounds);
+      for (int k = 0; k < 4; k++) {
+        siftDown(k, siftUp(k, positions[k][id]));
+      }
+    }
+  }
+
+  /** Removes an object. Does nothing if the object has not been added. */
+  public void remove(T o) {
+    Integer boxedId = ids.remove(o);
+    if (boxedId == null) {
+      return;
+    }
+    int id = boxedId;
+    int last = --size;
+    // Remove the id from the heaps by replacing it with the last heap entry.
+    for (int k = 0; k < 4; k++) {
+      int[] heap = heaps[k];
+      int pos = positions[k][id];
+      int moved = heap[last];
+      heap[pos] = moved;
+      positions[k][moved] = pos;
+      if (pos != last) {
+        siftDown(k, siftUp(k, pos));
+      }
+    }
+    // Keep ids dense by moving the object with the last id into the freed id.
+    if (id != last) {
+      @SuppressWarnings("unchecked")
+      T lastItem = (T) items[last];
+      items[id] = lastItem;
+      System.arraycopy(coords, last * 4, coords, id * 4, 4);
+      for (int k = 0; k < 4; k++) {
+        int pos = positions[k][last];
+        heaps[k][pos] = id;
+        positions[k][id] = pos;
+      }
+      ids.put(lastItem, id);
+    }
+    items[last] = null;
+  }
+
+  /**
+   * Copies the bounds of the specified object into the rectangle.
+   *
+   * @return false if the object has not been added
+   */
+  public boolean getBounds(T o, Rectangle2D.Double bounds) {
+    Integer id = ids.get(o);
+    if (id == null) {
+      return false;
+    }
+    int c = id * 4;
+    bounds.setRect(
+        coords[c], coords[c + 1], coords[c + 2] - coords[c], coords[c + 3] - coords[c + 1]);
+    return true;
+  }
+
+  /** Returns the union of the bounds of all objects, or an empty rectangle if there are none. */
+  public Rectangle2D.Double getBounds() {
+    if (size == 0) {
+      return new Rectangle2D.Double();
+    }
+    double minX = coords[heaps[MIN_X][0] * 4 + MIN_X];
+    double minY = coords[heaps[MIN_Y][0] * 4 + MIN_Y];
+    double maxX = coords[heaps[MAX_X][0] * 4 + MAX_X];
+    double maxY = coords[heaps[MAX_Y][0] * 4 + MAX_Y];
+    return new Rectangle2D.Double(minX, minY, maxX - minX, maxY - minY);
+  }
+
+  private void setCoords(int id, Rectangle2D.Double bounds) {
+    int c = id * 4;
+    coords[c] = bounds.x;
+    coords[c + 1] = bounds.y;
+    coords[c + 2] = bounds.x + bounds.width;
+    coords[c + 3] = bounds.y + bounds.height;
+  }
+
+  /** Returns true if the id at heap position a belongs above the id at heap position b. */
+  private boolean above(int k, int a, int b) {
+    double ca = coords[heaps[k][a] * 4 + k];
+    double cb = coords[heaps[k][b] * 4 + k];
+    return (k < MAX_X) ? ca < cb : ca > cb;
+  }
+
+  private void swap(int k, int a, int b) {
+    int[] heap = heaps[k];
+    int ia = heap[a];
+    int ib = heap[b];
+    heap[a] = ib;
+    heap[b] = ia;
+    positions[k][ib] = a;
+    positions[k][ia] = b;
+  }
+
+  /** Moves the entry at the specified position up, and returns its new position. */
+  private int siftUp(int k, int pos) {
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (!above(k, pos, parent)) {
+        break;
+      }
+      swap(k, pos, parent);
+      pos = parent;
+    }
+    return pos;
+  }
+
+  private void siftDown(int k, int pos) {
+    while (true) {
+      int child = pos * 2 + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && above(k, child + 1, child)) {
+        child++;
+      }
+      if (!above(k, child, pos)) {
+        return;
+      }
+      swap(k, pos, child);
+      pos = child;
+    }
+  }
+}
@@ -0,0 +1,740 @@
+/*
+ * @(#)LooseQuadTree.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A loose quadtree allows to quickly find an object on a two-dimensional space.
+ *
+ * <p>Like {@link QuadTree}, each node subdivides the square covered by its parent into four
+ * quadrants. Unlike {@link QuadTree}, each object is stored in exactly one node: the deepest node
+ * whose <em>loose</em> bounds - its square grown by half its size on each side - contain the
+ * bounds of the object. Queries therefore never produce duplicates and can write their results
+ * directly into a collection supplied by the caller.
+ *
+ * <p>The tree keeps its data in primitive arrays which are indexed by integer ids. Adding, moving
+ * and removing an object does not allocate memory, unless an array has to grow. Queries do not
+ * allocate memory at all. When an object is added outside of the tree, the root grows by doubling
+ * its size towards the object; the existing nodes are kept and no rebuild is necessary.
+ *
+ * <p>Each object has an order key. The objects of a node are kept sorted by their order key, and
+ * queries into a {@link SortedBuffer} merge the sorted runs of the visited nodes, so that the
+ * results come out in ascending order without sorting them.
+ *
+ * <p>Objects are compared by identity. Bounds are treated as closed intervals: objects which touch
+ * the query region are reported.
+ *
+ * <p>This class is not thread-safe. Queries may run concurrently as long as the tree is not being
+ * modified.
+ *
+ * @param <T> the type of the stored objects
+ */
+public class LooseQuadTree<T> implements Serializable {
+
+  private static final long serialVersionUID = 1L;
+  private static final int NONE = -1;
+
+  /**
+   * Node 0 is not part of the tree. It holds objects with non-finite bounds, and is searched on
+   * every query.
+   */
+  private static final int UNBOUNDED = 0;
+
+  /** Number of objects a node may hold before it is split. */
+  private static final int MAX_CAPACITY = 32;
+
+  /** Nodes more than this number of levels below the root are not split. */
+  private static final int MAX_DEPTH = 24;
+
+  // Object storage. Object ids index into these arrays.
+  private Object[] items;
+  /** Bounds of the objects: minX, minY, maxX, maxY for each id. */
+  private double[] coords;
+
+  private long[] itemOrder;
+
+  private int[] itemNode;
+  /**
+   * Doubly linked list of the objects in a node, sorted by order key. Freed ids are chained through
+   * itemNext.
+   */
+  private int[] itemNext;
+
+  private int[] itemPrev;
+  private int itemTop;
+  private int freeItem = NONE;
+  private int size;
+
+  // Node storage. Node ids index into these arrays.
+  /** Center of the square of the node: cx, cy for each node. */
+  private double[] nodeCenter;
+
+  /** Half of the side length of the square of the node. */
+  private double[] nodeHalf;
+
+  /** Level of the node, decreases by one with each subdivision. */
+  private int[] nodeLevel;
+
+  /** Children of the node: northWest, northEast, southWest, southEast for each node. */
+  private int[] nodeChildren;
+
+  private int[] nodeHead;
+  private int[] nodeTail;
+  private int[] nodeCount;
+  private boolean[] nodeSplit;
+  private int nodeTop;
+  private int root;
+
+  // Identity hash table which maps objects to ids. Rebuilt after deserialization.
+  private transient Object[] keys;
+  private transient int[] keyIds;
+
+  private final double initialX;
+  private final double initialY;
+  private final double initialHalf;
+
+  public LooseQuadTree() {
+    this(new Rectangle2D.Double(0, 0, 800, 600));
+  }
+
+  public LooseQuadTree(Rectangle2D.Double bounds) {
+    initialX = bounds.getCenterX();
+    initialY = bounds.getCenterY();
+    initialHalf = Math.max(Math.max(bounds.width, bounds.height) / 2, 1);
+    clear();
+  }
+
+  /** Removes all objects from the tree. */
+  public final void clear() {
+    items = new Object[16];
+    coords = new double[16 * 4];
+    itemOrder = new long[16];
+    itemNode = new int[16];
+    itemNext = new int[16];
+    itemPrev = new int[16];
+    itemTop = 0;
+    freeItem = NONE;
+    size = 0;
+    nodeCenter = new double[8 * 2];
+    nodeHalf = new double[8];
+    nodeLevel = new int[8];
+    nodeChildren = new int[8 * 4];
+    nodeHead = new int[8];
+    nodeTail = new int[8];
+    nodeCount = new int[8];
+    nodeSplit = new boolean[8];
+    nodeTop = 0;
+    keys = new Object[32];
+    keyIds = new int[32];
+    createNode(0, 0, Double.POSITIVE_INFINITY, 0);
+    root = createNode(initialX, initialY, initialHalf, 0);
+  }
+
+  /** Returns the number of objects in the tree. */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns true if the tree contains the specified object. */
+  public boolean contains(T o) {
+    return lookup(o) != NONE;
+  }
+
+  /**
+   * Adds an object to the tree. If the tree already contains the object, the object is moved to
+   * the specified bounds and keeps its order key. New objects get the order key 0.
+   *
+   * <p>The bounds are copied; the caller may reuse the rectangle.
+   */
+  public void add(T o, Rectangle2D.Double bounds) {
+    int id = lookup(o);
+    if (id == NONE) {
+      add(o, bounds, 0L);
+    } else {
+      move(id, bounds);
+    }
+  }
+
+  /**
+   * Adds an object with the specified order key to the tree. If the tree already contains the
+   * object, the object is moved to the specified bounds and gets the specified order key.
+   */
+  public void add(T o, Rectangle2D.Double bounds, long order) {
+    int id = lookup(o);
+    if (id == NONE) {
+      id = createItem(o);
+      insertKey(o, id);
+      size++;
+    } else if (itemOrder[id] != order) {
+      unlink(id);
+    }
+    itemOrder[id] = order;
+    move(id, bounds);
+  }
+
+  /**
+   * Returns the order key of the specified object.
+   *
+   * @throws IllegalArgumentException if the tree does not contain the object
+   */
+  public long getOrder(T o) {
+    int id = lookup(o);
+    if (id == NONE) {
+      throw new IllegalArgumentException("not in tree: " + o);
+    }
+    return itemOrder[id];
+  }
+
+  /**
+   * Changes the order key of the specified object.
+   *
+   * @throws IllegalArgumentException if the tree does not contain the object
+   */
+  public void setOrder(T o, long order) {
+    int id = lookup(o);
+    if (id == NONE) {
+      throw new IllegalArgumentException("not in tree: " + o);
+    }
+    itemOrder[id] = order;
+    int prev = itemPrev[id];
+    int next = itemNext[id];
+    if ((prev != NONE && itemOrder[prev] > order) || (next != NONE && itemOrder[next] < order)) {
+      int node = itemNode[id];
+      unlink(id);
+      link(id, node);
+    }
+  }
+
+  private void move(int id, Rectangle2D.Double bounds) {
+    int c = id * 4;
+    coords[c] = bounds.x;
+    coords[c + 1] = bounds.y;
+    coords[c + 2] = bounds.x + bounds.width;
+    coords[c + 3] = bounds.y + bounds.height;
+    int node = locate(id);
+    if (node != itemNode[id]) {
+      if (itemNode[id] != NONE) {
+        unlink(id);
+      }
+      link(id, node);
+      if (node != UNBOUNDED
+          && nodeCount[node] > MAX_CAPACITY
+          && !nodeSplit[node]
+          && nodeLevel[root] - nodeLevel[node] < MAX_DEPTH) {
+        split(node);
+      }
+    }
+  }
+
+  /** Removes an object from the tree. Does nothing if the tree does not contain the object. */
+  public void remove(T o) {
+    int id = removeKey(o);
+    if (id != NONE) {
+      unlink(id);
+      items[id] = null;
+      itemNode[id] = NONE;
+      itemNext[id] = freeItem;
+      freeItem = id;
+      size--;
+    }
+  }
+
+  /**
+   * Puts the objects which contain the specified point into the buffer, sorted by ascending order
+   * key. The buffer is cleared first.
+   */
+  public void findContains(Point2D.Double p, SortedBuffer<T> buffer) {
+    buffer.clear();
+    find(UNBOUNDED, p.x, p.y, p.x, p.y, false, null, buffer);
+    find(root, p.x, p.y, p.x, p.y, false, null, buffer);
+    buffer.merge();
+  }
+
+  /**
+   * Puts the objects which intersect the specified rectangle into the buffer, sorted by ascending
+   * order key. The buffer is cleared first.
+   */
+  public void findIntersects(Rectangle2D r, SortedBuffer<T> buffer) {
+    buffer.clear();
+    find(UNBOUNDED, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), false, null, buffer);
+    find(root, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), false, null, buffer);
+    buffer.merge();
+  }
+
+  /** Convenience method which returns the objects which contain the specified point in a list. */
+  public List<T> findContains(Point2D.Double p) {
+    List<T> result = new ArrayList<>();
+    findContains(p, result);
+    return result;
+  }
+
+  /** Adds the objects which contain the specified point to the result collection. */
+  public void findContains(Point2D.Double p, Collection<? super T> result) {
+    find(UNBOUNDED, p.x, p.y, p.x, p.y, false, result, null);
+    find(root, p.x, p.y, p.x, p.y, false, result, null);
+  }
+
+  /** Convenience method which returns the objects which intersect the rectangle in a list. */
+  public List<T> findIntersects(Rectangle2D r) {
+    List<T> result = new ArrayList<>();
+    findIntersects(r, result);
+    return result;
+  }
+
+  /** Adds the objects which intersect the specified rectangle to the result collection. */
+  public void findIntersects(Rectangle2D r, Collection<? super T> result) {
+    find(UNBOUNDED, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), false, result, null);
+    find(root, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), false, result, null);
+  }
+
+  /** Convenience method which returns the objects inside of the rectangle in a list. */
+  public List<T> findInside(Rectangle2D r) {
+    List<T> result = new ArrayList<>();
+    findInside(r, result);
+    return result;
+  }
+
+  /** Adds the objects which are inside of the specified rectangle to the result collection. */
+  public void findInside(Rectangle2D r, Collection<? super T> result) {
+    find(UNBOUNDED, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), true, result, null);
+    find(root, r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), true, result, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  private void find(
+      int node,
+      double minX,
+      double minY,
+      double maxX,
+      double maxY,
+      boolean inside,
+      Collection<? super T> result,
+      SortedBuffer<T> buffer) {
+    if (node != UNBOUNDED) {
+      double reach = nodeHalf[node] * 2;
+      double cx = nodeCenter[node * 2];
+      double cy = nodeCenter[node * 2 + 1];
+      if (cx - reach > maxX || cx + reach < minX || cy - reach > maxY || cy + reach < minY) {
+        return;
+      }
+    }
+    if (buffer != null) {
+      buffer.beginRun();
+    }
+    for (int id = nodeHead[node]; id != NONE; id = itemNext[id]) {
+      int c = id * 4;
+      boolean match;
+      if (inside) {
+        match =
+            coords[c] >= minX && coords[c + 1] >= minY && coords[c + 2] <= maxX
+                && coords[c + 3] <= maxY;
+      } else {
+        match =
+            coords[c] <= maxX && coords[c + 1] <= maxY && coords[c + 2] >= minX
+                && coords[c + 3] >= minY;
+      }
+      if (!match) {
+        continue;
+      }
+      if (buffer != null) {
+        buffer.add(items[id], itemOrder[id]);
+      } else {
+        result.add((T) items[id]);
+      }
+    }
+    if (nodeSplit[node]) {
+      for (int i = node * 4, n = i + 4; i < n; i++) {
+        if (nodeChildren[i] != NONE) {
+          find(nodeChildren[i], minX, minY, maxX, maxY, inside, result, buffer);
+        }
+      }
+    }
+  }
+
+  /** Returns the node into which the object with the specified id belongs. */
+  private int locate(int id) {
+    int c = id * 4;
+    double minX = coords[c];
+    double minY = coords[c + 1];
+    double maxX = coords[c + 2];
+    double maxY = coords[c + 3];
+    double cx = (minX + maxX) / 2;
+    double cy = (minY + maxY) / 2;
+    double extent = Math.max(maxX - minX, maxY - minY) / 2;
+    if (!Double.isFinite(cx) || !Double.isFinite(cy) || !Double.isFinite(extent)) {
+      return UNBOUNDED;
+    }
+    growRoot(cx, cy, extent);
+    return descend(root, cx, cy, extent);
+  }
+
+  private int descend(int node, double cx, double cy, double extent) {
+    while (nodeSplit[node] && extent <= nodeHalf[node] / 2) {
+      int q = quadrant(node, cx, cy);
+      int child = nodeChildren[node * 4 + q];
+      if (child == NONE) {
+        double h = nodeHalf[node] / 2;
+        double ccx = nodeCenter[node * 2] + ((q & 1) == 0 ? -h : h);
+        double ccy = nodeCenter[node * 2 + 1] + ((q & 2) == 0 ? -h : h);
+        child = createNode(ccx, ccy, h, nodeLevel[node] - 1);
+        nodeChildren[node * 4 + q] = child;
+      }
+      node = child;
+    }
+    return node;
+  }
+
+  /** Doubles the size of the root until it can hold an object with the specified geometry. */
+  private void growRoot(double cx, double cy, double extent) {
+    while (true) {
+      double h = nodeHalf[root];
+      double rcx = nodeCenter[root * 2];
+      double rcy = nodeCenter[root * 2 + 1];
+      if (extent <= h && Math.abs(cx - rcx) <= h && Math.abs(cy - rcy) <= h) {
+        return;
+      }
+      int newRoot =
+          createNode(
+              cx >= rcx ? rcx + h : rcx - h,
+              cy >= rcy ? rcy + h : rcy - h,
+              h * 2,
+              nodeLevel[root] + 1);
+      nodeSplit[newRoot] = true;
+      nodeChildren[newRoot * 4 + quadrant(newRoot, rcx, rcy)] = root;
+      root = newRoot;
+    }
+  }
+
+  /** Moves the objects of a node into its children where they fit. */
+  private void split(int node) {
+    nodeSplit[node] = true;
+    int id = nodeHead[node];
+    while (id != NONE) {
+      int next = itemNext[id];
+      int c = id * 4;
+      double cx = (coords[c] + coords[c + 2]) / 2;
+      double cy = (coords[c + 1] + coords[c + 3]) / 2;
+      double extent = Math.max(coords[c + 2] - coords[c], coords[c + 3] - coords[c + 1]) / 2;
+      int target = descend(node, cx, cy, extent);
+      if (target != node) {
+        unlink(id);
+        link(id, target);
+      }
+      id = next;
+    }
+  }
+
+  private int quadrant(int node, double x, double y) {
+    return (x >= nodeCenter[node * 2] ? 1 : 0) | (y >= nodeCenter[node * 2 + 1] ? 2 : 0);
+  }
+
+  /** Inserts an object into the list of a node, behind all objects with a lower or equal order. */
+  private void link(int id, int node) {
+    long order = itemOrder[id];
+    int next = NONE;
+    int prev = nodeTail[node];
+    if (prev != NONE && itemOrder[prev] > order) {
+      next = nodeHead[node];
+      while (itemOrder[next] <= order) {
+        next = itemNext[next];
+      }
+      prev = itemPrev[next];
+    }
+    itemPrev[id] = prev;
+    itemNext[id] = next;
+    if (prev == NONE) {
+      nodeHead[node] = id;
+    } else {
+      itemNext[prev] = id;
+    }
+    if (next == NONE) {
+      nodeTail[node] = id;
+    } else {
+      itemPrev[next] = id;
+    }
+    nodeCount[node]++;
+    itemNode[id] = node;
+  }
+
+  private void unlink(int id) {
+    int node = itemNode[id];
+    int prev = itemPrev[id];
+    int next = itemNext[id];
+    if (prev == NONE) {
+      nodeHead[node] = next;
+    } else {
+      itemNext[prev] = next;
+    }
+    if (next == NONE) {
+      nodeTail[node] = prev;
+    } else {
+      itemPrev[next] = prev;
+    }
+    nodeCount[node]--;
+    itemNode[id] = NONE;
+  }
+
+  private int createItem(Object o) {
+    int id;
+    if (freeItem != NONE) {
+      id = freeItem;
+      freeItem = itemNext[id];
+    } else {
+      if (itemTop == items.length) {
+        int n = items.length * 2;
+        items = Arrays.copyOf(items, n);
+        coords = Arrays.copyOf(coords, n * 4);
+        itemOrder = Arrays.copyOf(itemOrder, n);
+        itemNode = Arrays.copyOf(itemNode, n);
+        itemNext = Arrays.copyOf(itemNext, n);
+        itemPrev = Arrays.copyOf(itemPrev, n);
+      }
+      id = itemTop++;
+    }
+    items[id] = o;
+    itemNode[id] = NONE;
+    return id;
+  }
+
+  private int createNode(double cx, double cy, double half, int level) {
+    if (nodeTop == nodeHalf.length) {
+      int n = nodeHalf.length * 2;
+      nodeCenter = Arrays.copyOf(nodeCenter, n * 2);
+      nodeHalf = Arrays.copyOf(nodeHalf, n);
+      nodeLevel = Arrays.copyOf(nodeLevel, n);
+      nodeChildren = Arrays.copyOf(nodeChildren, n * 4);
+      nodeHead = Arrays.copyOf(nodeHead, n);
+      nodeTail = Arrays.copyOf(nodeTail, n);
+      nodeCount = Arrays.copyOf(nodeCount, n);
+      nodeSplit = Arrays.copyOf(nodeSplit, n);
+    }
+    int node = nodeTop++;
+    nodeCenter[node * 2] = cx;
+    nodeCenter[node * 2 + 1] = cy;
+    nodeHalf[node] = half;
+    nodeLevel[node] = level;
+    Arrays.fill(nodeChildren, node * 4, node * 4 + 4, NONE);
+    nodeHead[node] = NONE;
+    nodeTail[node] = NONE;
+    nodeCount[node] = 0;
+    nodeSplit[node] = false;
+    return node;
+  }
+
+  private static int hash(Object o) {
+    int h = System.identityHashCode(o);
+    return h ^ (h >>> 16);
+  }
+
+  private int lookup(Object o) {
+    int mask = keys.length - 1;
+    for (int i = hash(o) & mask; keys[i] != null; i = (i + 1) & mask) {
+      if (keys[i] == o) {
+        return keyIds[i];
+      }
+    }
+    return NONE;
+  }
+
+  private void insertKey(Object o, int id) {
+    if ((size + 1) * 2 > keys.length) {
+      Object[] oldKeys = keys;
+      int[] oldIds = keyIds;
+      keys = new Object[oldKeys.length * 2];
+      keyIds = new int[oldKeys.length * 2];
+      for (int i = 0; i < oldKeys.length; i++) {
+        if (oldKeys[i] != null) {
+          putKey(oldKeys[i], oldIds[i]);
+        }
+      }
+    }
+    putKey(o, id);
+  }
+
+  private void putKey(Object o, int id) {
+    int mask = keys.length - 1;
+    int i = hash(o) & mask;
+    while (keys[i] != null) {
+      i = (i + 1) & mask;
+    }
+    keys[i] = o;
+    keyIds[i] = id;
+  }
+
+  /** Removes an object from the hash table and returns its id. */
+  private int removeKey(Object o) {
+    int mask = keys.length - 1;
+    int i = hash(o) & mask;
+    while (keys[i] != o) {
+      if (keys[i] == null) {
+        return NONE;
+      }
+      i = (i + 1) & mask;
+    }
+    int id = keyIds[i];
+    keys[i] = null;
+    // Shift back the entries which follow in the same probe sequence.
+    for (int j = (i + 1) & mask; keys[j] != null; j = (j + 1) & mask) {
+      int k = hash(keys[j]) & mask;
+      if (i <= j ? (i >= k || k > j) : (i >= k && k > j)) {
+        keys[i] = keys[j];
+        keyIds[i] = keyIds[j];
+        keys[j] = null;
+        i = j;
+      }
+    }
+    return id;
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    in.defaultReadObject();
+    int n = 32;
+    while (n < size * 2) {
+      n *= 2;
+    }
+    keys = new Object[n];
+    keyIds = new int[n];
+    for (int id = 0; id < itemTop; id++) {
+      if (items[id] != null) {
+        putKey(items[id], id);
+      }
+    }
+  }
+
+  /**
+   * A reusable buffer for query results which are sorted by order key.
+   *
+   * <p>A query appends the matching objects of each visited node as a sorted run, and then merges
+   * the runs pairwise. Once the buffer has grown to the size of the largest result, queries do not
+   * allocate memory.
+   *
+   * <p>A buffer must not be used by more than one thread at a time.
+   *
+   * @param <T> the type of the stored objects
+   */
+  public static class SortedBuffer<T> {
+
+    private Object[] items = new Object[16];
+    private long[] orders = new long[16];
+    private Object[] mergedItems = new Object[16];
+    private long[] mergedOrders = new long[16];
+    private int size;
+
+    /** Start indices of the sorted runs. */
+    private int[] runs = new int[16];
+
+    private int runCount;
+
+    /** Returns the number of objects in the buffer. */
+    public int size() {
+      return size;
+    }
+
+    public boolean isEmpty() {
+      return size == 0;
+    }
+
+    /** Returns the object at the specified index. Index 0 has the lowest order key. */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return (T) items[index];
+    }
+
+    /** Returns the order key of the object at the specified index. */
+    public long getOrder(int index) {
+      if (index < 0 || index >= size) {
+        throw new IndexOutOfBoundsException(index);
+      }
+      return orders[index];
+    }
+
+    /** Removes all objects from the buffer. The buffer keeps its capacity. */
+    public void clear() {
+      Arrays.fill(items, 0, size, null);
+      size = 0;
+      runCount = 0;
+    }
+
+    private void beginRun() {
+      if (runCount > 0 && runs[runCount - 1] == size) {
+        // the previous run is empty, reuse it
+        return;
+      }
+      if (runCount == runs.length) {
+        runs = Arrays.copyOf(runs, runCount * 2);
+      }
+      runs[runCount++] = size;
+    }
+
+    private void add(Object item, long order) {
+      if (size == items.length) {
+        int n = size * 2;
+        items = Arrays.copyOf(items, n);
+        orders = Arrays.copyOf(orders, n);
+        mergedItems = new Object[n];
+        mergedOrders = new long[n];
+      }
+      items[size] = item;
+      orders[size++] = order;
+    }
+
+    /** Merges the sorted runs pairwise until a single run is left. */
+    private void merge() {
+      while (runCount > 1) {
+        int newCount = 0;
+        for (int i = 0; i < runCount; i += 2) {
+          int start = runs[i];
+          int middle = (i + 1 < runCount) ? runs[i + 1] : size;
+          int end = (i + 2 < runCount) ? runs[i + 2] : size;
+          runs[newCount++] = start;
+          int a = start;
+          int b = middle;
+          int out = start;
+          while (a < middle && b < end) {
+            if (orders[b] < orders[a]) {
+              mergedOrders[out] = orders[b];
+              mergedItems[out++] = items[b++];
+            } else {
+              mergedOrders[out] = orders[a];
+              mergedItems[out++] = items[a++];
+            }
+          }
+          System.arraycopy(orders, a, mergedOrders, out, middle - a);
+          System.arraycopy(items, a, mergedItems, out, middle - a);
+          out += middle - a;
+          System.arraycopy(orders, b, mergedOrders, out, end - b);
+          System.arraycopy(items, b, mergedItems, out, end - b);
+        }
+        runCount = newCount;
+        Object[] tmpItems = items;
+        items = mergedItems;
+        mergedItems = tmpItems;
+        long[] tmpOrders = orders;
+        orders = mergedOrders;
+        mergedOrders = tmpOrders;
+      }
+      Arrays.fill(mergedItems, 0, size, null);
+    }
+  }
+}
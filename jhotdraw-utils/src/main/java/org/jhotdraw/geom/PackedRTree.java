@@ -0,0 +1,406 @@
+/*
+ * @(#)PackedRTree.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.geom;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+/**
+ * A static R-tree which is packed along a Hilbert curve.
+ *
+ * <p>Unlike {@link LooseQuadTree}, the tree can not be modified once it has been built. In return,
+ * it has a flat layout: the nodes are stored level by level in a float array with the bounds of
+ * each node, and an int array with the index of the first child of each node. The tree can be
+ * written to a file and queried directly from a memory-mapped buffer, without reading it into the
+ * heap.
+ *
+ * <p>The objects are identified by the index in which they were added to the {@link Builder}. Their
+ * bounds are rounded outwards to floats; queries may therefore report objects which lie very close
+ * to the query region. Objects with NaN bounds are reported by every query. Bounds are treated as
+ * closed intervals: objects which touch the query region are reported.
+ *
+ * <p>Queries may run concurrently.
+ */
+public final class PackedRTree {
+
+  /** The default number of children of a node. */
+  public static final int DEFAULT_NODE_SIZE = 16;
+
+  private static final int HILBERT_MAX = (1 << 16) - 1;
+
+  private final int size;
+  private final int nodeSize;
+
+  /** The end of each level in node units. Level 0 holds the objects, the last level the root. */
+  private final int[] levelBounds;
+
+  /** Bounds of the nodes: minX, minY, maxX, maxY for each node. */
+  private final FloatBuffer boxes;
+
+  /** Object index of each leaf, and position of the first child of each inner node. */
+  private final IntBuffer indices;
+
+  private PackedRTree(
+      int size, int nodeSize, int[] levelBounds, FloatBuffer boxes, IntBuffer indices) {
+    this.size = size;
+    this.nodeSize = nodeSize;
+    this.levelBounds = levelBounds;
+    this.boxes = boxes;
+    this.indices = indices;
+  }
+
+  /** Returns the number of objects in the tree. */
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the union of the bounds of all objects, or an empty rectangle if there are none. */
+  public Rectangle2D.Double getBounds() {
+    if (size == 0) {
+      return new Rectangle2D.Double();
+    }
+    int root = (levelBounds[levelBounds.length - 1] - 1) * 4;
+    double minX = boxes.get(root);
+    double minY = boxes.get(root + 1);
+    return new Rectangle2D.Double(
+        minX, minY, boxes.get(root + 2) - minX, boxes.get(root + 3) - minY);
+  }
+
+  /** Passes the indices of the objects which contain the specified point to the consumer. */
+  public void findContains(Point2D.Double p, IntConsumer result) {
+    find(p.x, p.y, p.x, p.y, result);
+  }
+
+  /** Passes the indices of the objects which intersect the specified rectangle to the consumer. */
+  public void findIntersects(Rectangle2D r, IntConsumer result) {
+    find(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY(), result);
+  }
+
+  /**
+   * Passes the indices of the objects which intersect the specified region to the consumer. The
+   * indices are not reported in any particular order.
+   */
+  public void find(double minX, double minY, double maxX, double maxY, IntConsumer result) {
+    if (size == 0) {
+      return;
+    }
+    int[] stack = new int[levelBounds.length * nodeSize];
+    int top = 0;
+    int node = levelBounds[levelBounds.length - 1] - 1;
+    while (true) {
+      int end = Math.min(node + nodeSize, upperBound(node));
+      for (int pos = node; pos < end; pos++) {
+        int b = pos * 4;
+        if (maxX < boxes.get(b)
+            || maxY < boxes.get(b + 1)
+            || minX > boxes.get(b + 2)
+            || minY > boxes.get(b + 3)) {
+          continue;
+        }
+        if (node < size) {
+          result.accept(indices.get(pos));
+        } else {
+          stack[top++] = indices.get(pos);
+        }
+      }
+      if (top == 0) {
+        return;
+      }
+      node = stack[--top];
+    }
+  }
+
+  /** Returns the end of the level which contains the specified node. */
+  private int upperBound(int node) {
+    for (int bound : levelBounds) {
+      if (bound > node) {
+        return bound;
+      }
+    }
+    return levelBounds[levelBounds.length - 1];
+  }
+
+  /** Returns the number of bytes which are written by {@link #write}. */
+  public int getByteSize() {
+    int nodeCount = levelBounds.length == 0 ? 0 : levelBounds[levelBounds.length - 1];
+    return 4 * (3 + levelBounds.length) + nodeCount * 20;
+  }
+
+  /** Writes the tree in big-endian byte order. */
+  public void write(DataOutput out) throws IOException {
+    out.writeInt(size);
+    out.writeInt(nodeSize);
+    out.writeInt(levelBounds.length);
+    for (int bound : levelBounds) {
+      out.writeInt(bound);
+    }
+    for (int i = 0, n = boxes.limit(); i < n; i++) {
+      out.writeFloat(boxes.get(i));
+    }
+    for (int i = 0, n = indices.limit(); i < n; i++) {
+      out.writeInt(indices.get(i));
+    }
+  }
+
+  /**
+   * Reads a tree which has been written by {@link #write}. The tree is backed by the buffer: the
+   * nodes are not copied. The position of the buffer is advanced to the end of the tree.
+   *
+   * @throws IllegalArgumentException if the buffer does not hold a valid tree
+   */
+  public static PackedRTree read(ByteBuffer buffer) {
+    int size = buffer.getInt();
+    int nodeSize = buffer.getInt();
+    int levelCount = buffer.getInt();
+    if (size < 0
+        || nodeSize < 2
+        || levelCount < 0
+        || levelCount > 32
+        || (size == 0) != (levelCount == 0)) {
+      throw new IllegalArgumentException("Illegal tree header.");
+    }
+    int[] levelBounds = levelBounds(size, nodeSize);
+    if (levelBounds.length != levelCount || buffer.remaining() < levelCount * 4) {
+      throw new IllegalArgumentException("Illegal tree levels.");
+    }
+    for (int bound : levelBounds) {
+      if (buffer.getInt() != bound) {
+        throw new IllegalArgumentException("Illegal tree levels.");
+      }
+    }
+    int nodeCount = levelCount == 0 ? 0 : levelBounds[levelCount - 1];
+    int position = buffer.position();
+    if (buffer.remaining() < nodeCount * 20L) {
+      throw new IllegalArgumentException("Truncated tree.");
+    }
+    FloatBuffer boxes = buffer.slice(position, nodeCount * 16).asFloatBuffer();
+    IntBuffer indices = buffer.slice(position + nodeCount * 16, nodeCount * 4).asIntBuffer();
+    buffer.position(position + nodeCount * 20);
+    return new PackedRTree(size, nodeSize, levelBounds, boxes, indices);
+  }
+
+  private static int[] levelBounds(int size, int nodeSize) {
+    if (size == 0) {
+      return new int[0];
+    }
+    int[] bounds = new int[32];
+    int count = 0;
+    int n = size;
+    int nodeCount = n;
+    bounds[count++] = nodeCount;
+    do {
+      n = (n + nodeSize - 1) / nodeSize;
+      nodeCount += n;
+      bounds[count++] = nodeCount;
+    } while (n != 1);
+    return Arrays.copyOf(bounds, count);
+  }
+
+  /** Returns the largest float which is not greater than the specified value. */
+  private static float floor(double v) {
+    float f = (float) v;
+    return f > v ? Math.nextDown(f) : f;
+  }
+
+  /** Returns the smallest float which is not less than the specified value. */
+  private static float ceil(double v) {
+    float f = (float) v;
+    return f < v ? Math.nextUp(f) : f;
+  }
+
+  /**
+   * Returns the position of a point on a Hilbert curve of order 16.
+   *
+   * <p>This is the branch-free algorithm from "Fast Hilbert curve generation, sorting, and range
+   * queries" by rawrunprotected, which is also used by the flatbush library.
+   */
+  static int hilbert(int x, int y) {
+    int a = x ^ y;
+    int b = 0xFFFF ^ a;
+    int c = 0xFFFF ^ (x | y);
+    int d = x & (y ^ 0xFFFF);
+
+    int aa = a | (b >> 1);
+    int bb = (a >> 1) ^ a;
+    int cc = ((c >> 1) ^ (b & (d >> 1))) ^ c;
+    int dd = ((a & (c >> 1)) ^ (d >> 1)) ^ d;
+
+    a = aa;
+    b = bb;
+    c = cc;
+    d = dd;
+    aa = (a & (a >> 2)) ^ (b & (b >> 2));
+    bb = (a & (b >> 2)) ^ (b & ((a ^ b) >> 2));
+    cc ^= (a & (c >> 2)) ^ (b & (d >> 2));
+    dd ^= (b & (c >> 2)) ^ ((a ^ b) & (d >> 2));
+
+    a = aa;
+    b = bb;
+    c = cc;
+    d = dd;
+    aa = (a & (a >> 4)) ^ (b & (b >> 4));
+    bb = (a & (b >> 4)) ^ (b & ((a ^ b) >> 4));
+    cc ^= (a & (c >> 4)) ^ (b & (d >> 4));
+    dd ^= (b & (c >> 4)) ^ ((a ^ b) & (d >> 4));
+
+    a = aa;
+    b = bb;
+    c = cc;
+    d = dd;
+    cc ^= (a & (c >> 8)) ^ (b & (d >> 8));
+    dd ^= (b & (c >> 8)) ^ ((a ^ b) & (d >> 8));
+
+    a = cc ^ (cc >> 1);
+    b = dd ^ (dd >> 1);
+
+    int i0 = x ^ y;
+    int i1 = b | (0xFFFF ^ (i0 | a));
+
+    i0 = (i0 | (i0 << 8)) & 0x00FF00FF;
+    i0 = (i0 | (i0 << 4)) & 0x0F0F0F0F;
+    i0 = (i0 | (i0 << 2)) & 0x33333333;
+    i0 = (i0 | (i0 << 1)) & 0x55555555;
+
+    i1 = (i1 | (i1 << 8)) & 0x00FF00FF;
+    i1 = (i1 | (i1 << 4)) & 0x0F0F0F0F;
+    i1 = (i1 | (i1 << 2)) & 0x33333333;
+    i1 = (i1 | (i1 << 1)) & 0x55555555;
+
+    return (i1 << 1) | i0;
+  }
+
+  /** Collects the bounds of the objects and builds a {@link PackedRTree}. */
+  public static class Builder {
+
+    private float[] coords;
+    private int size;
+
+    public Builder() {
+      this(64);
+    }
+
+    public Builder(int initialCapacity) {
+      coords = new float[Math.max(1, initialCapacity) * 4];
+    }
+
+    /** Adds an object and returns its index. */
+    public int add(Rectangle2D r) {
+      return add(r.getMinX(), r.getMinY(), r.getMaxX(), r.getMaxY());
+    }
+
+    /** Adds an object and returns its index. */
+    public int add(double minX, double minY, double maxX, double maxY) {
+      if (size * 4 == coords.length) {
+        coords = Arrays.copyOf(coords, coords.length * 2);
+      }
+      int c = size * 4;
+      if (Double.isNaN(minX + minY + maxX + maxY)) {
+        coords[c] = Float.NEGATIVE_INFINITY;
+        coords[c + 1] = Float.NEGATIVE_INFINITY;
+        coords[c + 2] = Float.POSITIVE_INFINITY;
+        coords[c + 3] = Float.POSITIVE_INFINITY;
+      } else {
+        coords[c] = floor(minX);
+        coords[c + 1] = floor(minY);
+        coords[c + 2] = ceil(maxX);
+        coords[c + 3] = ceil(maxY);
+      }
+      return size++;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /** Builds a tree with {@link #DEFAULT_NODE_SIZE} children per node. */
+    public PackedRTree build() {
+      return build(DEFAULT_NODE_SIZE);
+    }
+
+    /** Builds a tree with the specified number of children per node. */
+    public PackedRTree build(int nodeSize) {
+      if (nodeSize < 2) {
+        throw new IllegalArgumentException("nodeSize < 2: " + nodeSize);
+      }
+      int[] levelBounds = levelBounds(size, nodeSize);
+      int nodeCount = size == 0 ? 0 : levelBounds[levelBounds.length - 1];
+      float[] boxes = new float[nodeCount * 4];
+      int[] indices = new int[nodeCount];
+
+      // Sort the objects by the Hilbert value of their centers
+      double minX = Double.POSITIVE_INFINITY;
+      double minY = Double.POSITIVE_INFINITY;
+      double maxX = Double.NEGATIVE_INFINITY;
+      double maxY = Double.NEGATIVE_INFINITY;
+      for (int i = 0; i < size; i++) {
+        double cx = ((double) coords[i * 4] + coords[i * 4 + 2]) / 2;
+        double cy = ((double) coords[i * 4 + 1] + coords[i * 4 + 3]) / 2;
+        if (Double.isFinite(cx) && Double.isFinite(cy)) {
+          minX = Math.min(minX, cx);
+          minY = Math.min(minY, cy);
+          maxX = Math.max(maxX, cx);
+          maxY = Math.max(maxY, cy);
+        }
+      }
+      double scaleX = maxX > minX ? HILBERT_MAX / (maxX - minX) : 0;
+      double scaleY = maxY > minY ? HILBERT_MAX / (maxY - minY) : 0;
+      long[] keys = new long[size];
+      for (int i = 0; i < size; i++) {
+        double cx = ((double) coords[i * 4] + coords[i * 4 + 2]) / 2;
+        double cy = ((double) coords[i * 4 + 1] + coords[i * 4 + 3]) / 2;
+        int x = (int) Math.max(0, Math.min(HILBERT_MAX, (cx - minX) * scaleX));
+        int y = (int) Math.max(0, Math.min(HILBERT_MAX, (cy - minY) * scaleY));
+        keys[i] = (Integer.toUnsignedLong(hilbert(x, y)) << 31) | i;
+      }
+      Arrays.sort(keys);
+      for (int pos = 0; pos < size; pos++) {
+        int i = (int) (keys[pos] & Integer.MAX_VALUE);
+        System.arraycopy(coords, i * 4, boxes, pos * 4, 4);
+        indices[pos] = i;
+      }
+
+      // Build the inner nodes level by level
+      int pos = 0;
+      int top = size;
+      for (int level = 0; level < levelBounds.length - 1; level++) {
+        int end = levelBounds[level];
+        while (pos < end) {
+          int first = pos;
+          float nodeMinX = Float.POSITIVE_INFINITY;
+          float nodeMinY = Float.POSITIVE_INFINITY;
+          float nodeMaxX = Float.NEGATIVE_INFINITY;
+          float nodeMaxY = Float.NEGATIVE_INFINITY;
+          for (int j = 0; j < nodeSize && pos < end; j++, pos++) {
+            nodeMinX = Math.min(nodeMinX, boxes[pos * 4]);
+            nodeMinY = Math.min(nodeMinY, boxes[pos * 4 + 1]);
+            nodeMaxX = Math.max(nodeMaxX, boxes[pos * 4 + 2]);
+            nodeMaxY = Math.max(nodeMaxY, boxes[pos * 4 + 3]);
+          }
+          boxes[top * 4] = nodeMinX;
+          boxes[top * 4 + 1] = nodeMinY;
+          boxes[top * 4 + 2] = nodeMaxX;
+          boxes[top * 4 + 3] = nodeMaxY;
+          indices[top++] = first;
+        }
+      }
+      return new PackedRTree(
+          size, nodeSize, levelBounds, FloatBuffer.wrap(boxes), IntBuffer.wrap(indices));
+    }
+  }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.PathIterator;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class FlattenedPathTest {
+
+  private static Path2D.Double createPolyline(Random random, int count) {
+    Path2D.Double p = new Path2D.Double();
+    p.moveTo(random.nextDouble() * 1000, random.nextDouble() * 1000);
+    for (int i = 1; i < count; i++) {
+      p.lineTo(random.nextDouble() * 1000, random.nextDouble() * 1000);
+    }
+    return p;
+  }
+
+  @Test
+  public void testOutlineContainsMatchesDistanceToEachSegment() {
+    Random random = new Random(3);
+    Path2D.Double shape = createPolyline(random, 200);
+    FlattenedPath path = new FlattenedPath(shape, 1);
+    assertThat(path.getSegmentCount()).isEqualTo(199);
+    double[] coords = new double[6];
+    for (int i = 0; i < 2000; i++) {
+      double x = random.nextDouble() * 1100 - 50;
+      double y = random.nextDouble() * 1100 - 50;
+      double tolerance = random.nextDouble() * 4;
+      boolean expected = false;
+      double prevX = 0, prevY = 0;
+      for (PathIterator it = shape.getPathIterator(null); !it.isDone(); it.next()) {
+        if (it.currentSegment(coords) == PathIterator.SEG_LINETO
+            && Line2D.ptSegDist(prevX, prevY, coords[0], coords[1], x, y) <= tolerance) {
+          expected = true;
+        }
+        prevX = coords[0];
+        prevY = coords[1];
+      }
+      assertThat(path.outlineContains(x, y, tolerance)).as("%f,%f", x, y).isEqualTo(expected);
+    }
+  }
+
+  @Test
+  public void testOpenSubpathsAreNotPartOfTheOutline() {
+    Path2D.Double shape = new Path2D.Double();
+    shape.moveTo(0, 0);
+    shape.lineTo(100, 0);
+    shape.lineTo(100, 100);
+    FlattenedPath path = new FlattenedPath(shape, 1);
+    assertThat(path.outlineContains(50, 1, 2)).isTrue();
+    assertThat(path.outlineContains(50, 50, 2)).isFalse();
+    assertThat(path.contains(60, 50)).isTrue();
+    assertThat(path.contains(40, 50)).isFalse();
+
+    shape.closePath();
+    path = new FlattenedPath(shape, 1);
+    assertThat(path.outlineContains(50, 50, 2)).isTrue();
+  }
+
+  @Test
+  public void testContainsMatchesShape() {
+    Random random = new Random(5);
+    Path2D.Double shape = createPolyline(random, 50);
+    shape.append(new Ellipse2D.Double(200, 300, 400, 250), false);
+    for (int rule : new int[] {Path2D.WIND_EVEN_ODD, Path2D.WIND_NON_ZERO}) {
+      shape.setWindingRule(rule);
+      FlattenedPath path = new FlattenedPath(shape, 0.01);
+      for (int i = 0; i < 2000; i++) {
+        double x = random.nextDouble() * 1000;
+        double y = random.nextDouble() * 1000;
+        if (!path.outlineContains(x, y, 0.1)) {
+          assertThat(path.contains(x, y)).as("%f,%f", x, y).isEqualTo(shape.contains(x, y));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBoundsOfCurves() {
+    FlattenedPath path = new FlattenedPath(new Ellipse2D.Double(10, 20, 100, 50), 0.1);
+    assertThat(path.getSegmentCount()).isGreaterThan(16);
+    assertThat(path.getBounds().x).isCloseTo(10, within(0.01));
+    assertThat(path.getBounds().getMaxY()).isCloseTo(70, within(0.01));
+    assertThat(path.outlineContains(60, 20, 0.2)).isTrue();
+    assertThat(path.outlineContains(60, 45, 0.2)).isFalse();
+    assertThat(path.contains(60, 45)).isTrue();
+  }
+}
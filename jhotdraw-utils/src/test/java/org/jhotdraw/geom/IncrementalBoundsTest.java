@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.awt.geom.Rectangle2D;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class IncrementalBoundsTest {
+
+  @Test
+  public void testBoundsMatchUnionWhileMovingAndRemoving() {
+    Random random = new Random(7);
+    IncrementalBounds<Object> bounds = new IncrementalBounds<>();
+    Map<Object, Rectangle2D.Double> expected = new IdentityHashMap<>();
+    List<Object> objects = new ArrayList<>();
+    assertThat(bounds.getBounds()).isEqualTo(new Rectangle2D.Double());
+    for (int i = 0; i < 5000; i++) {
+      int op = random.nextInt(3);
+      if (op == 0 || objects.isEmpty()) {
+        Object o = new Object();
+        objects.add(o);
+        Rectangle2D.Double r = randomRect(random);
+        bounds.put(o, r);
+        expected.put(o, r);
+      } else if (op == 1) {
+        Object o = objects.get(random.nextInt(objects.size()));
+        Rectangle2D.Double r = randomRect(random);
+        bounds.put(o, r);
+        expected.put(o, r);
+      } else {
+        Object o = objects.remove(random.nextInt(objects.size()));
+        bounds.remove(o);
+        expected.remove(o);
+      }
+      Rectangle2D.Double union = null;
+      for (Rectangle2D.Double r : expected.values()) {
+        if (union == null) {
+          union = (Rectangle2D.Double) r.clone();
+        } else {
+          union.add(r);
+        }
+      }
+      assertThat(bounds.size()).isEqualTo(expected.size());
+      assertThat(bounds.getBounds()).isEqualTo(union == null ? new Rectangle2D.Double() : union);
+    }
+    Rectangle2D.Double r = new Rectangle2D.Double();
+    for (Object o : objects) {
+      assertThat(bounds.getBounds(o, r)).isTrue();
+      assertThat(r).isEqualTo(expected.get(o));
+    }
+  }
+
+  private static Rectangle2D.Double randomRect(Random random) {
+    return new Rectangle2D.Double(
+        random.nextInt(1000) - 500,
+        random.nextInt(1000) - 500,
+        random.nextInt(100),
+        random.nextInt(100));
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+
+public class LooseQuadTreeTest {
+
+  private final Random random = new Random(42);
+
+  private Rectangle2D.Double randomRect(double range) {
+    return new Rectangle2D.Double(
+        random.nextDouble() * range - range / 2,
+        random.nextDouble() * range - range / 2,
+        random.nextDouble() * range / 20,
+        random.nextDouble() * range / 20);
+  }
+
+  private static boolean closedIntersects(Rectangle2D.Double a, Rectangle2D.Double b) {
+    return a.x <= b.getMaxX() && a.y <= b.getMaxY() && a.getMaxX() >= b.x && a.getMaxY() >= b.y;
+  }
+
+  private static void assertQueriesMatch(
+      LooseQuadTree<Object> tree, Map<Object, Rectangle2D.Double> expected, Random random) {
+    assertThat(tree.size()).isEqualTo(expected.size());
+    for (int i = 0; i < 50; i++) {
+      Rectangle2D.Double q =
+          new Rectangle2D.Double(
+              random.nextDouble() * 4000 - 2000,
+              random.nextDouble() * 4000 - 2000,
+              random.nextDouble() * 800,
+              random.nextDouble() * 800);
+      Point2D.Double p = new Point2D.Double(q.x, q.y);
+      List<Object> intersects = new ArrayList<>();
+      List<Object> inside = new ArrayList<>();
+      List<Object> contains = new ArrayList<>();
+      for (Map.Entry<Object, Rectangle2D.Double> e : expected.entrySet()) {
+        Rectangle2D.Double r = e.getValue();
+        if (closedIntersects(r, q)) {
+          intersects.add(e.getKey());
+        }
+        if (q.x <= r.x && q.y <= r.y && q.getMaxX() >= r.getMaxX() && q.getMaxY() >= r.getMaxY()) {
+          inside.add(e.getKey());
+        }
+        if (r.x <= p.x && r.y <= p.y && r.getMaxX() >= p.x && r.getMaxY() >= p.y) {
+          contains.add(e.getKey());
+        }
+      }
+      assertThat(tree.findIntersects(q)).containsExactlyInAnyOrderElementsOf(intersects);
+      assertThat(tree.findInside(q)).containsExactlyInAnyOrderElementsOf(inside);
+      assertThat(tree.findContains(p)).containsExactlyInAnyOrderElementsOf(contains);
+    }
+  }
+
+  @Test
+  public void testQueriesMatchBruteForceWhileGrowingMovingAndRemoving() {
+    LooseQuadTree<Object> tree = new LooseQuadTree<>();
+    Map<Object, Rectangle2D.Double> expected = new IdentityHashMap<>();
+    List<Object> objects = new ArrayList<>();
+    for (int i = 0; i < 3000; i++) {
+      Object o = new Object();
+      Rectangle2D.Double r = randomRect(i < 1000 ? 800 : 4000);
+      tree.add(o, r);
+      expected.put(o, r);
+      objects.add(o);
+    }
+    assertQueriesMatch(tree, expected, random);
+
+    for (int i = 0; i < 1000; i++) {
+      Object o = objects.get(random.nextInt(objects.size()));
+      Rectangle2D.Double r = randomRect(4000);
+      tree.add(o, r);
+      expected.put(o, r);
+    }
+    assertQueriesMatch(tree, expected, random);
+
+    for (int i = 0; i < 1500; i++) {
+      Object o = objects.remove(random.nextInt(objects.size()));
+      tree.remove(o);
+      expected.remove(o);
+    }
+    assertQueriesMatch(tree, expected, random);
+  }
+
+  @Test
+  public void testSortedBufferReturnsResultsInOrder() {
+    LooseQuadTree<Object> tree = new LooseQuadTree<>();
+    Map<Object, Rectangle2D.Double> bounds = new IdentityHashMap<>();
+    List<Object> objects = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      Object o = new Object();
+      Rectangle2D.Double r = randomRect(i % 10 == 0 ? 40000 : 2000);
+      tree.add(o, r, random.nextInt(1000));
+      bounds.put(o, r);
+      objects.add(o);
+    }
+    for (int i = 0; i < 500; i++) {
+      tree.setOrder(objects.get(random.nextInt(objects.size())), random.nextInt(1000));
+    }
+    LooseQuadTree.SortedBuffer<Object> buffer = new LooseQuadTree.SortedBuffer<>();
+    for (int i = 0; i < 50; i++) {
+      Rectangle2D.Double q = randomRect(2000);
+      List<Object> expected = new ArrayList<>();
+      for (Object o : objects) {
+        if (closedIntersects(bounds.get(o), q)) {
+          expected.add(o);
+        }
+      }
+      tree.findIntersects(q, buffer);
+      List<Object> actual = new ArrayList<>();
+      for (int j = 0; j < buffer.size(); j++) {
+        actual.add(buffer.get(j));
+        if (j > 0) {
+          assertThat(buffer.getOrder(j)).isGreaterThanOrEqualTo(buffer.getOrder(j - 1));
+        }
+        assertThat(buffer.getOrder(j)).isEqualTo(tree.getOrder(buffer.get(j)));
+      }
+      assertThat(actual).containsExactlyInAnyOrderElementsOf(expected);
+    }
+  }
+
+  @Test
+  public void testSortedBufferRejectsIndicesOutsideOfTheResult() {
+    LooseQuadTree<Object> tree = new LooseQuadTree<>();
+    tree.add(new Object(), new Rectangle2D.Double(0, 0, 10, 10), 1);
+    LooseQuadTree.SortedBuffer<Object> buffer = new LooseQuadTree.SortedBuffer<>();
+    tree.findIntersects(new Rectangle2D.Double(0, 0, 5, 5), buffer);
+
+    assertThat(buffer.size()).isEqualTo(1);
+    assertThatThrownBy(() -> buffer.get(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> buffer.getOrder(-1)).isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> buffer.get(1)).isInstanceOf(IndexOutOfBoundsException.class);
+    assertThatThrownBy(() -> buffer.getOrder(1)).isInstanceOf(IndexOutOfBoundsException.class);
+  }
+
+  @Test
+  public void testIdenticalBoundsDoNotExhaustTheTree() {
+    LooseQuadTree<Object> tree = new LooseQuadTree<>();
+    for (int i = 0; i < 10000; i++) {
+      tree.add(new Object(), new Rectangle2D.Double(5, 5, 0, 0));
+    }
+    assertThat(tree.findContains(new Point2D.Double(5, 5))).hasSize(10000);
+    assertThat(tree.findContains(new Point2D.Double(6, 5))).isEmpty();
+  }
+
+  @Test
+  public void testUnboundedObjectsAreAlwaysFound() {
+    LooseQuadTree<Object> tree = new LooseQuadTree<>();
+    Object o = new Object();
+    tree.add(o, new Rectangle2D.Double(0, 0, Double.POSITIVE_INFINITY, 10));
+    assertThat(tree.findIntersects(new Rectangle2D.Double(1e9, 5, 1, 1))).containsExactly(o);
+    tree.remove(o);
+    assertThat(tree.isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testSerialization() throws Exception {
+    LooseQuadTree<String> tree = new LooseQuadTree<>();
+    for (int i = 0; i < 100; i++) {
+      tree.add("s" + i, new Rectangle2D.Double(i * 10, i * 10, 5, 5));
+    }
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    try (ObjectOutputStream out = new ObjectOutputStream(buf)) {
+      out.writeObject(tree);
+    }
+    @SuppressWarnings("unchecked")
+    LooseQuadTree<String> copy =
+        (LooseQuadTree<String>)
+            new ObjectInputStream(new ByteArrayInputStream(buf.toByteArray())).readObject();
+    String s50 = copy.findContains(new Point2D.Double(502, 502)).get(0);
+    assertThat(s50).isEqualTo("s50");
+    assertThat(copy.contains(s50)).isTrue();
+    copy.remove(s50);
+    assertThat(copy.size()).isEqualTo(99);
+    assertThat(copy.findContains(new Point2D.Double(502, 502))).isEmpty();
+  }
+}
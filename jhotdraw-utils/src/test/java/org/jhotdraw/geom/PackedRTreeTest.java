@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.geom;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.awt.geom.Point2D;
+import java.awt.geom.Rectangle2D;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class PackedRTreeTest {
+
+  private final Random random = new Random(42);
+
+  /** Returns a rectangle with integer coordinates, which are exactly representable as floats. */
+  private Rectangle2D.Double randomRect() {
+    return new Rectangle2D.Double(
+        random.nextInt(4000) - 2000,
+        random.nextInt(4000) - 2000,
+        random.nextInt(200),
+        random.nextInt(200));
+  }
+
+  private static boolean closedIntersects(Rectangle2D.Double a, Rectangle2D b) {
+    return a.x <= b.getMaxX()
+        && a.y <= b.getMaxY()
+        && a.getMaxX() >= b.getMinX()
+        && a.getMaxY() >= b.getMinY();
+  }
+
+  private static List<Integer> find(PackedRTree tree, Rectangle2D r) {
+    List<Integer> result = new ArrayList<>();
+    tree.findIntersects(r, result::add);
+    result.sort(null);
+    return result;
+  }
+
+  private static PackedRTree roundtrip(PackedRTree tree) throws IOException {
+    ByteArrayOutputStream buf = new ByteArrayOutputStream();
+    tree.write(new DataOutputStream(buf));
+    assertThat(buf.size()).isEqualTo(tree.getByteSize());
+    ByteBuffer bytes = ByteBuffer.allocate(buf.size() + 3);
+    bytes.put(new byte[3]).put(buf.toByteArray()).position(3);
+    PackedRTree read = PackedRTree.read(bytes);
+    assertThat(bytes.remaining()).isZero();
+    return read;
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 2, 16, 17, 1000, 5000})
+  public void testQueriesMatchBruteForce(int count) throws IOException {
+    List<Rectangle2D.Double> rects = new ArrayList<>();
+    PackedRTree.Builder builder = new PackedRTree.Builder();
+    for (int i = 0; i < count; i++) {
+      Rectangle2D.Double r = randomRect();
+      rects.add(r);
+      assertThat(builder.add(r)).isEqualTo(i);
+    }
+    for (PackedRTree tree :
+        List.of(builder.build(), builder.build(4), roundtrip(builder.build()))) {
+      assertThat(tree.size()).isEqualTo(count);
+      for (int q = 0; q < 50; q++) {
+        Rectangle2D.Double query = randomRect();
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+          if (closedIntersects(rects.get(i), query)) {
+            expected.add(i);
+          }
+        }
+        assertThat(find(tree, query)).isEqualTo(expected);
+      }
+    }
+  }
+
+  @Test
+  public void testBoundsAreRoundedOutwards() {
+    PackedRTree.Builder builder = new PackedRTree.Builder();
+    builder.add(0.1, 0.1, 0.3, 0.3);
+    builder.add(1e10 + 0.5, 0, 1e10 + 1.5, 1);
+    PackedRTree tree = builder.build();
+
+    assertThat(find(tree, new Rectangle2D.Double(0.3, 0.3, 0, 0))).containsExactly(0);
+    assertThat(find(tree, new Rectangle2D.Double(0.1, 0.1, 0, 0))).containsExactly(0);
+    assertThat(find(tree, new Rectangle2D.Double(1e10 + 1, 0.5, 0, 0))).containsExactly(1);
+    assertThat(tree.getBounds().contains(0.1, 0.1)).isTrue();
+  }
+
+  @Test
+  public void testNaNBoundsAreAlwaysFound() {
+    PackedRTree.Builder builder = new PackedRTree.Builder();
+    for (int i = 0; i < 100; i++) {
+      builder.add(randomRect());
+    }
+    builder.add(Double.NaN, 0, 1, 1);
+    PackedRTree tree = builder.build();
+
+    List<Integer> result = new ArrayList<>();
+    tree.findContains(new Point2D.Double(1e9, -1e9), result::add);
+    assertThat(result).containsExactly(100);
+  }
+
+  @Test
+  public void testEmptyTree() throws IOException {
+    PackedRTree tree = roundtrip(new PackedRTree.Builder().build());
+
+    assertThat(tree.isEmpty()).isTrue();
+    assertThat(find(tree, new Rectangle2D.Double(-1e9, -1e9, 2e9, 2e9))).isEmpty();
+    assertThat(tree.getBounds().isEmpty()).isTrue();
+  }
+
+  @Test
+  public void testMalformedTree() {
+    ByteBuffer bytes = ByteBuffer.allocate(16).putInt(10).putInt(16).putInt(5).putInt(10).flip();
+
+    assertThatThrownBy(() -> PackedRTree.read(bytes)).isInstanceOf(IllegalArgumentException.class);
+  }
+}
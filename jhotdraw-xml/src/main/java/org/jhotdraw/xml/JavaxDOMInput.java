@@ -13,15 +13,12 @@ import java.io.Reader;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import javax.xml.XMLConstants;
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 import org.xml.sax.InputSource;
-import org.xml.sax.SAXException;
 
 public class JavaxDOMInput implements DOMInput {
 
@@ -40,49 +37,27 @@ public class JavaxDOMInput implements DOMInput {
   /** The factory used to create objects from XML tag names. */
   private DOMFactory factory;
 
-  protected static DocumentBuilder documentBuilder;
-
-  /** Lazily create the document builder and keep a reference to it for performance improvement. */
+  /**
+   * Returns a document builder which is owned by the caller.
+   *
+   * @deprecated Use {@link XMLPool#borrowDocumentBuilder} and {@link
+   *     XMLPool#returnDocumentBuilder}, or {@link XMLPool#parse}.
+   */
+  @Deprecated
   protected static DocumentBuilder getBuilder() throws IOException {
-    if (documentBuilder == null) {
-      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-      factory.setNamespaceAware(true);
-      factory.setValidating(false);
-      factory.setXIncludeAware(false);
-      try {
-        factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
-        documentBuilder = factory.newDocumentBuilder();
-      } catch (Exception ex) {
-        InternalError error = new InternalError("Unable to create DocumentBuilder");
-        error.initCause(ex);
-        throw error;
-      }
-    }
-    return documentBuilder;
+    return XMLPool.borrowDocumentBuilder();
   }
 
   public JavaxDOMInput(DOMFactory factory, InputStream in) throws IOException {
     this.factory = factory;
-    try {
-      document = getBuilder().parse(in);
-      current = document;
-    } catch (SAXException ex) {
-      IOException e = new IOException(ex.getMessage());
-      e.initCause(ex);
-      throw e;
-    }
+    document = XMLPool.parse(in);
+    current = document;
   }
 
   public JavaxDOMInput(DOMFactory factory, Reader in) throws IOException {
     this.factory = factory;
-    try {
-      document = getBuilder().parse(new InputSource(in));
-      current = document;
-    } catch (SAXException ex) {
-      IOException e = new IOException(ex.getMessage());
-      e.initCause(ex);
-      throw e;
-    }
+    document = XMLPool.parse(new InputSource(in));
+    current = document;
   }
 
   /** Returns the tag name of the current element. */
@@ -9,8 +9,6 @@ package org.jhotdraw.xml;
 
 import java.io.*;
 import java.util.*;
-import javax.xml.parsers.*;
-import javax.xml.transform.*;
 import javax.xml.transform.dom.*;
 import javax.xml.transform.stream.*;
 import org.w3c.dom.*;
@@ -44,51 +42,31 @@ public class JavaxDOMOutput implements DOMOutput {
   }
 
   protected void reset() throws IOException {
-    try {
-      objectids = new HashMap<Object, String>();
-      document = DocumentBuilderFactory.newInstance().newDocumentBuilder().newDocument();
-      current = document;
-    } catch (ParserConfigurationException e) {
-      IOException error = new IOException(e.getMessage());
-      error.initCause(e);
-      throw error;
-    }
+    objectids = new HashMap<Object, String>();
+    document = XMLPool.newDocument();
+    current = document;
   }
 
   /** Writes the contents of the DOMOutput into the specified output stream. */
   public void save(OutputStream out) throws IOException {
-    try {
-      if (doctype != null) {
-        OutputStreamWriter w = new OutputStreamWriter(out, "UTF8");
-        w.write("<!DOCTYPE ");
-        w.write(doctype);
-        w.write(">\n");
-        w.flush();
-      }
-      Transformer t = TransformerFactory.newInstance().newTransformer();
-      t.transform(new DOMSource(document), new StreamResult(out));
-    } catch (TransformerException e) {
-      IOException error = new IOException(e.getMessage());
-      error.initCause(e);
-      throw error;
+    if (doctype != null) {
+      OutputStreamWriter w = new OutputStreamWriter(out, "UTF8");
+      w.write("<!DOCTYPE ");
+      w.write(doctype);
+      w.write(">\n");
+      w.flush();
     }
+    XMLPool.transform(new DOMSource(document), new StreamResult(out));
   }
 
   /** Writes the contents of the DOMOutput into the specified output stream. */
   public void save(Writer out) throws IOException {
-    try {
-      if (doctype != null) {
-        out.write("<!DOCTYPE ");
-        out.write(doctype);
-        out.write(">\n");
-      }
-      Transformer t = TransformerFactory.newInstance().newTransformer();
-      t.transform(new DOMSource(document), new StreamResult(out));
-    } catch (TransformerException e) {
-      IOException error = new IOException(e.getMessage());
-      error.initCause(e);
-      throw error;
+    if (doctype != null) {
+      out.write("<!DOCTYPE ");
+      out.write(doctype);
+      out.write(">\n");
     }
+    XMLPool.transform(new DOMSource(document), new StreamResult(out));
   }
 
   /**
@@ -0,0 +1,327 @@
+/*
+ * @(#)XMLPool.java
+ *
+ * Copyright (c) 1996-2010 The authors and contributors of JHotDraw.
+ * You may not use, copy or modify this file, except in compliance with the
+ * accompanying license terms.
+ */
+package org.jhotdraw.xml;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+/**
+ * Shares configured XML parsers and identity transformers between threads.
+ *
+ * <p>Looking up and configuring the JAXP factories is expensive, but the parsers and transformers
+ * which they create must not be used by several threads at the same time. This class keeps a
+ * bounded number of idle parsers and transformers. A thread borrows an instance, uses it
+ * exclusively, and returns it when it is done:
+ *
+ * <pre>
+ * DocumentBuilder builder = XMLPool.borrowDocumentBuilder();
+ * try {
+ *   ...
+ * } finally {
+ *   XMLPool.returnDocumentBuilder(builder);
+ * }
+ * </pre>
+ *
+ * The convenience methods {@link #parse}, {@link #newDocument} and {@link #transform} do this
+ * internally.
+ *
+ * <p>Streaming parsers are created with {@link #createXMLStreamReader}. {@link #readElement} reads
+ * a single element of a stream into a DOM subtree, so that large documents can be converted element
+ * by element.
+ *
+ * <p>The parsers are namespace aware and do not validate. They use secure processing, and neither
+ * load external DTDs nor resolve external entities or XIncludes. The documents are fully expanded
+ * while they are parsed, so that several threads can read a document at the same time, as long as
+ * no thread modifies it.
+ *
+ * <p>The transformers use secure processing and do not access external DTDs and stylesheets.
+ */
+public final class XMLPool {
+
+  private static final Logger LOG = Logger.getLogger(XMLPool.class.getName());
+
+  /** The maximal number of idle parsers, and of idle transformers. */
+  private static final int MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+  /** The factories are not thread-safe. They are locked while they create an instance. */
+  private static final DocumentBuilderFactory BUILDER_FACTORY = createDocumentBuilderFactory();
+
+  private static final TransformerFactory TRANSFORMER_FACTORY = createTransformerFactory();
+
+  private static final XMLInputFactory STREAM_FACTORY = createXMLInputFactory();
+
+  private static final ArrayBlockingQueue<DocumentBuilder> BUILDERS =
+      new ArrayBlockingQueue<>(MAX_IDLE);
+
+  private static final ArrayBlockingQueue<Transformer> TRANSFORMERS =
+      new ArrayBlockingQueue<>(MAX_IDLE);
+
+  private XMLPool() {}
+
+  private static DocumentBuilderFactory createDocumentBuilderFactory() {
+    DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+    factory.setNamespaceAware(true);
+    factory.setValidating(false);
+    factory.setXIncludeAware(false);
+    try {
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    } catch (ParserConfigurationException ex) {
+      throw new InternalError("Unable to configure DocumentBuilderFactory", ex);
+    }
+    setFeature(factory, "http://xml.org/sax/features/external-general-entities", false);
+    setFeature(factory, "http://xml.org/sax/features/external-parameter-entities", false);
+    setFeature(factory, "http://apache.org/xml/features/nonvalidating/load-external-dtd", false);
+    setFeature(factory, "http://apache.org/xml/features/dom/defer-node-expansion", false);
+    return factory;
+  }
+
+  /** Sets a feature which is specific to the parser implementation, if it is supported. */
+  private static void setFeature(DocumentBuilderFactory factory, String name, boolean value) {
+    try {
+      factory.setFeature(name, value);
+    } catch (ParserConfigurationException ex) {
+      LOG.log(Level.WARNING, "XML parser does not support feature " + name, ex);
+    }
+  }
+
+  private static TransformerFactory createTransformerFactory() {
+    TransformerFactory factory = TransformerFactory.newInstance();
+    try {
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+    } catch (TransformerConfigurationException ex) {
+      throw new InternalError("Unable to configure TransformerFactory", ex);
+    }
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+    factory.setAttribute(XMLConstants.ACCESS_EXTERNAL_STYLESHEET, "");
+    return factory;
+  }
+
+  private static XMLInputFactory createXMLInputFactory() {
+    XMLInputFactory factory = XMLInputFactory.newInstance();
+    factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+    factory.setProperty(XMLInputFactory.IS_COALESCING, true);
+    factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+    // Do not fetch external DTD's, but resolve entities of the internal DTD subset.
+    factory.setXMLResolver(
+        (publicID, systemID, baseURI, namespace) -> new ByteArrayInputStream(new byte[0]));
+    return factory;
+  }
+
+  /**
+   * Borrows a parser. The parser must be returned with {@link #returnDocumentBuilder}, unless it is
+   * dropped.
+   */
+  public static DocumentBuilder borrowDocumentBuilder() throws IOException {
+    DocumentBuilder builder = BUILDERS.poll();
+    if (builder == null) {
+      try {
+        synchronized (BUILDER_FACTORY) {
+          builder = BUILDER_FACTORY.newDocumentBuilder();
+        }
+      } catch (ParserConfigurationException ex) {
+        throw new IOException(ex.getMessage(), ex);
+      }
+    }
+    return builder;
+  }
+
+  /**
+   * Returns a parser which has been borrowed with {@link #borrowDocumentBuilder}. The parser is
+   * reset to its initial configuration.
+   */
+  public static void returnDocumentBuilder(DocumentBuilder builder) {
+    try {
+      builder.reset();
+    } catch (UnsupportedOperationException ex) {
+      // The parser can not be reused.
+      return;
+    }
+    BUILDERS.offer(builder);
+  }
+
+  /**
+   * Borrows an identity transformer. The transformer must be returned with {@link
+   * #returnTransformer}, unless it is dropped.
+   */
+  public static Transformer borrowTransformer() throws IOException {
+    Transformer transformer = TRANSFORMERS.poll();
+    if (transformer == null) {
+      try {
+        synchronized (TRANSFORMER_FACTORY) {
+          transformer = TRANSFORMER_FACTORY.newTransformer();
+        }
+      } catch (TransformerConfigurationException ex) {
+        throw new IOException(ex.getMessage(), ex);
+      }
+    }
+    return transformer;
+  }
+
+  /**
+   * Returns a transformer which has been borrowed with {@link #borrowTransformer}. The output
+   * properties and parameters of the transformer are reset.
+   */
+  public static void returnTransformer(Transformer transformer) {
+    transformer.reset();
+    TRANSFORMERS.offer(transformer);
+  }
+
+  /** Parses a document with a pooled parser. */
+  public static Document parse(InputStream in) throws IOException {
+    return parse(new InputSource(in));
+  }
+
+  /** Parses a document with a pooled parser. */
+  public static Document parse(InputSource in) throws IOException {
+    DocumentBuilder builder = borrowDocumentBuilder();
+    try {
+      return builder.parse(in);
+    } catch (SAXException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    } finally {
+      returnDocumentBuilder(builder);
+    }
+  }
+
+  /** Creates an empty document with a pooled parser. */
+  public static Document newDocument() throws IOException {
+    DocumentBuilder builder = borrowDocumentBuilder();
+    try {
+      return builder.newDocument();
+    } finally {
+      returnDocumentBuilder(builder);
+    }
+  }
+
+  /**
+   * Creates a namespace aware streaming parser. The parser is not pooled, it must be closed when it
+   * is no longer needed. Closing the parser does not close the input stream.
+   */
+  public static XMLStreamReader createXMLStreamReader(InputStream in) throws IOException {
+    try {
+      synchronized (STREAM_FACTORY) {
+        return STREAM_FACTORY.createXMLStreamReader(in);
+      }
+    } catch (XMLStreamException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Reads the element on which a streaming parser is positioned, including its attributes and
+   * descendants, into a new element of the specified document. The element is not added to the
+   * document. When this method returns, the parser is positioned on the end of the element.
+   */
+  public static Element readElement(XMLStreamReader reader, Document doc) throws IOException {
+    try {
+      Element elem = createElement(reader, doc);
+      Element current = elem;
+      while (current != null) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            Element child = createElement(reader, doc);
+            current.appendChild(child);
+            current = child;
+            break;
+          case XMLStreamConstants.CHARACTERS:
+          case XMLStreamConstants.CDATA:
+          case XMLStreamConstants.SPACE:
+            current.appendChild(doc.createTextNode(reader.getText()));
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            current = current == elem ? null : (Element) current.getParentNode();
+            break;
+          default:
+            break;
+        }
+      }
+      return elem;
+    } catch (XMLStreamException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    }
+  }
+
+  /**
+   * Skips the element on which a streaming parser is positioned. When this method returns, the
+   * parser is positioned on the end of the element.
+   */
+  public static void skipElement(XMLStreamReader reader) throws IOException {
+    try {
+      for (int depth = 1; depth > 0; ) {
+        switch (reader.next()) {
+          case XMLStreamConstants.START_ELEMENT:
+            depth++;
+            break;
+          case XMLStreamConstants.END_ELEMENT:
+            depth--;
+            break;
+          default:
+            break;
+        }
+      }
+    } catch (XMLStreamException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    }
+  }
+
+  private static Element createElement(XMLStreamReader reader, Document doc) {
+    Element elem =
+        doc.createElementNS(
+            emptyToNull(reader.getNamespaceURI()),
+            qualifiedName(reader.getPrefix(), reader.getLocalName()));
+    for (int i = 0, n = reader.getAttributeCount(); i < n; i++) {
+      elem.setAttributeNS(
+          emptyToNull(reader.getAttributeNamespace(i)),
+          qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)),
+          reader.getAttributeValue(i));
+    }
+    return elem;
+  }
+
+  private static String emptyToNull(String str) {
+    return str == null || str.isEmpty() ? null : str;
+  }
+
+  private static String qualifiedName(String prefix, String localName) {
+    return prefix == null || prefix.isEmpty() ? localName : prefix + ':' + localName;
+  }
+
+  /** Copies the source into the result with a pooled identity transformer. */
+  public static void transform(Source source, Result result) throws IOException {
+    Transformer transformer = borrowTransformer();
+    try {
+      transformer.transform(source, result);
+    } catch (TransformerException ex) {
+      throw new IOException(ex.getMessage(), ex);
+    } finally {
+      returnTransformer(transformer);
+    }
+  }
+}
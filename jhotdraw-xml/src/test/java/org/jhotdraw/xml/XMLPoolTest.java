@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2023 JHotDraw.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation; either
+ * version 2.1 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library; if not, write to the Free Software
+ * Foundation, Inc., 51 Franklin Street, Fifth Floor, Boston,
+ * MA 02110-1301  USA
+ */
+package org.jhotdraw.xml;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+public class XMLPoolTest {
+
+  private static final Logger LOG = Logger.getLogger(XMLPoolTest.class.getName());
+
+  private static InputStream stream(String xml) {
+    return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testParseAndTransform() throws IOException {
+    Document doc = XMLPool.parse(stream("<a x=\"1\"><b>text</b></a>"));
+    assertThat(doc.getDocumentElement().getAttribute("x")).isEqualTo("1");
+    StringWriter out = new StringWriter();
+    XMLPool.transform(new DOMSource(doc), new StreamResult(out));
+    assertThat(out.toString()).contains("<a x=\"1\"><b>text</b></a>");
+  }
+
+  @Test
+  public void testExternalDTDIsNotLoaded() throws IOException {
+    Document doc =
+        XMLPool.parse(
+            stream(
+                "<!DOCTYPE svg SYSTEM \"http://unreachable.invalid/svg.dtd\">"
+                    + "<svg xmlns=\"http://www.w3.org/2000/svg\"/>"));
+    assertThat(doc.getDocumentElement().getLocalName()).isEqualTo("svg");
+    assertThat(doc.getDocumentElement().getNamespaceURI()).isEqualTo("http://www.w3.org/2000/svg");
+  }
+
+  @Test
+  public void testExternalEntityIsNotResolved(@TempDir Path dir) throws IOException {
+    Path secret = Files.writeString(dir.resolve("secret.txt"), "secret");
+    Document doc =
+        XMLPool.parse(
+            stream("<!DOCTYPE a [<!ENTITY e SYSTEM \"" + secret.toUri() + "\">]><a>&e;</a>"));
+    assertThat(doc.getDocumentElement().getTextContent()).doesNotContain("secret");
+  }
+
+  @Test
+  public void testReadElementFromStream(@TempDir Path dir) throws Exception {
+    Path secret = Files.writeString(dir.resolve("secret.txt"), "secret");
+    XMLStreamReader reader =
+        XMLPool.createXMLStreamReader(
+            stream(
+                "<!DOCTYPE r [<!ENTITY e SYSTEM \""
+                    + secret.toUri()
+                    + "\">]>"
+                    + "<r xmlns=\"urn:r\" xmlns:x=\"urn:x\"><skip><a/></skip>"
+                    + "<x:e x:v=\"1\" w=\"2\"><b>t&e;</b><c/></x:e><after/></r>"));
+    Document doc = XMLPool.newDocument();
+    try {
+      while (reader.next() != XMLStreamConstants.START_ELEMENT) {}
+      reader.nextTag();
+      XMLPool.skipElement(reader);
+      reader.nextTag();
+      Element elem = XMLPool.readElement(reader, doc);
+      assertThat(reader.getEventType()).isEqualTo(XMLStreamConstants.END_ELEMENT);
+      assertThat(reader.getLocalName()).isEqualTo("e");
+      reader.nextTag();
+      assertThat(reader.getLocalName()).isEqualTo("after");
+
+      assertThat(elem.getNamespaceURI()).isEqualTo("urn:x");
+      assertThat(elem.getLocalName()).isEqualTo("e");
+      assertThat(elem.getAttributeNS("urn:x", "v")).isEqualTo("1");
+      assertThat(elem.getAttribute("w")).isEqualTo("2");
+      assertThat(elem.getChildNodes().getLength()).isEqualTo(2);
+      Element b = (Element) elem.getFirstChild();
+      assertThat(b.getNamespaceURI()).isEqualTo("urn:r");
+      assertThat(b.getTextContent()).isEqualTo("t");
+      assertThat(elem.getParentNode()).isNull();
+    } finally {
+      reader.close();
+    }
+  }
+
+  @Test
+  public void testTransformerIsResetWhenReturned() throws Exception {
+    Transformer t = XMLPool.borrowTransformer();
+    t.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+    XMLPool.returnTransformer(t);
+    Transformer t2 = XMLPool.borrowTransformer();
+    try {
+      StringWriter out = new StringWriter();
+      t2.transform(new DOMSource(XMLPool.parse(stream("<a/>"))), new StreamResult(out));
+      assertThat(out.toString()).startsWith("<?xml");
+    } finally {
+      XMLPool.returnTransformer(t2);
+    }
+  }
+
+  /**
+   * Writes and reads documents with {@link JavaxDOMOutput} and {@link JavaxDOMInput} on several
+   * threads at the same time, and logs the throughput.
+   */
+  @Test
+  public void testConcurrentSaveAndLoad() throws Exception {
+    int threadCount = 8;
+    int documentsPerThread = 250;
+    ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+    try {
+      List<Future<Integer>> futures = new ArrayList<>();
+      long start = System.nanoTime();
+      for (int t = 0; t < threadCount; t++) {
+        int thread = t;
+        futures.add(
+            executor.submit(
+                () -> {
+                  int verified = 0;
+                  for (int i = 0; i < documentsPerThread; i++) {
+                    int id = thread * documentsPerThread + i;
+                    if (saveAndLoad(id) == id) {
+                      verified++;
+                    }
+                  }
+                  return verified;
+                }));
+      }
+      int verified = 0;
+      for (Future<Integer> f : futures) {
+        verified += f.get();
+      }
+      long elapsed = System.nanoTime() - start;
+      assertThat(verified).isEqualTo(threadCount * documentsPerThread);
+      LOG.info(
+          String.format(
+              "%d threads saved and loaded %d documents in %.1f ms (%.0f documents/s)",
+              threadCount, verified, elapsed / 1e6, verified / (elapsed / 1e9)));
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /** Writes a document with figures, reads it back and returns its id. */
+  private static int saveAndLoad(int id) throws IOException {
+    JavaxDOMOutput out = new JavaxDOMOutput(new DefaultDOMFactory());
+    out.openElement("drawing");
+    out.addAttribute("id", id);
+    for (int i = 0; i < 20; i++) {
+      out.openElement("figure");
+      out.addAttribute("index", i);
+      out.addText("figure " + i);
+      out.closeElement();
+    }
+    out.closeElement();
+    StringWriter w = new StringWriter();
+    out.save(w);
+
+    JavaxDOMInput in = new JavaxDOMInput(new DefaultDOMFactory(), new StringReader(w.toString()));
+    in.openElement("drawing");
+    assertThat(in.getElementCount("figure")).isEqualTo(20);
+    in.openElement("figure", 19);
+    assertThat(in.getAttribute("index", -1)).isEqualTo(19);
+    assertThat(in.getText()).isEqualTo("figure 19");
+    in.closeElement();
+    int result = in.getAttribute("id", -1);
+    in.closeElement();
+    return result;
+  }
+}